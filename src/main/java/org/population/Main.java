@@ -1,12 +1,18 @@
 package org.population;
+import org.population.service.ApiHttpService;
 import org.population.service.DatabaseUpdateService;
 import org.population.ui.components.*;
 import org.population.ui.utils.Styles;
 import org.population.modele.*;
 import org.population.modele.Localite.TypePopulation;
+import org.population.gestion.EcritureDifferee;
 import org.population.gestion.GestionPopulation;
+import org.population.gestion.RequeteLocalites;
+import org.population.gestion.ResultatExport;
 import org.population.gestion.GestionPopulation.ConfigurationRapport;
 import org.population.gestion.GestionPopulation.FormatRapport;
+import org.population.index.AgregatsParTranches.Agregat;
+import org.population.utils.Formatage;
 
 import javax.swing.*;
 import javax.swing.border.BevelBorder;
@@ -19,11 +25,21 @@ import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.InputEvent;
 import java.awt.event.KeyEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.io.File;
 import java.io.IOException;
-import java.util.DoubleSummaryStatistics;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
 
 import static org.population.ui.utils.Styles.*;
 import static org.population.ui.utils.Styles.Colors.ACCENT;
@@ -32,19 +48,35 @@ import static org.population.ui.utils.Styles.Fonts.BASE;
 import static org.population.ui.utils.Styles.Fonts.SUBTITLE;
 
 public class Main extends JFrame {
+    // Au-delà de ce nombre de localités, la table lit ses lignes page par page en base
+    private static final int SEUIL_PAGINATION = 10_000;
+    // Nombre de localités au-delà duquel les statistiques s'affichent d'abord en valeurs approchées
+    private static final int SEUIL_STATISTIQUES_APPROCHEES =
+            Integer.getInteger("population.statistiques.approchees", 200_000);
+    private static final Logger logger = Logger.getLogger(Main.class.getName());
+
     private GestionPopulation gestion;
     private FormPanel formPanel;
     private TablePanel tablePanel;
     private StatsPanel statsPanel;
+    private CartePanel cartePanel;
     private DatabaseUpdateService updateService;
+    private ApiHttpService apiService;
+    private JLabel statusLabel;
+    // Incrémenté sur l'EDT à chaque mise à jour des statistiques ; lu par les calculs exacts en retard
+    private int demandeStatistiques;
 
     public Main() {
         try {
-            gestion = new GestionPopulation();
+            // Journal local pour travailler sans la base : -Dpopulation.journal=<répertoire>
+            String journal = System.getProperty("population.journal");
+            gestion = new GestionPopulation(journal == null ? null : Path.of(journal));
+            activerEcritureDifferee();
             updateService = new DatabaseUpdateService(gestion);
             UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
             initUI();
             setupRealTimeUpdates();
+            demarrerApi();
         } catch (Exception e) {
             handleInitializationError(e);
         }
@@ -53,37 +85,89 @@ public class Main extends JFrame {
     private void setupRealTimeUpdates() {
         updateService.addUpdateListener(updatedData -> {
             SwingUtilities.invokeLater(() -> {
-                tablePanel.updateTable(updatedData);
-                Map<TypePopulation, DoubleSummaryStatistics> stats = gestion.analyserParType();
-                statsPanel.updateCharts(stats);
+                if (tablePanel.isFiltreTrancheActif() || updatedData.size() > SEUIL_PAGINATION) {
+                    tablePanel.afficherPagination(gestion.sourcePaginee(construireRequete()));
+                    majResumeTranche();
+                } else {
+                    tablePanel.updateTable(updatedData);
+                }
+                majStatistiques();
             });
+            majProjections();
+            cartePanel.rafraichir();
         });
 
         updateService.startMonitoring();
     }
 
+    // API HTTP optionnelle, activée par -Dpopulation.api.port=<port>
+    private void demarrerApi() throws IOException {
+        String port = System.getProperty("population.api.port");
+        if (port != null) {
+            apiService = new ApiHttpService(gestion, Integer.parseInt(port));
+            apiService.demarrer();
+        }
+    }
+
+    // Écriture différée des ajouts, activée par -Dpopulation.ecriture.differee=true
+    private void activerEcritureDifferee() {
+        if (!Boolean.getBoolean("population.ecriture.differee")) {
+            return;
+        }
+        gestion.activerEcritureDifferee();
+        gestion.ajouterEcouteurEchecEcriture((localite, cause) -> SwingUtilities.invokeLater(() -> {
+            refreshData();
+            JOptionPane.showMessageDialog(this,
+                    "L'enregistrement de " + localite.getNom() + " a échoué: " + cause.getMessage(),
+                    "Erreur",
+                    JOptionPane.ERROR_MESSAGE);
+        }));
+        // Vider la file avant l'arrêt de la JVM (EXIT_ON_CLOSE n'appelle pas dispose)
+        Runtime.getRuntime().addShutdownHook(new Thread(gestion::close, "arret-ecriture-differee"));
+    }
+
     @Override
     public void dispose() {
         updateService.stopMonitoring();
+        cartePanel.arreter();
+        tablePanel.arreter();
+        if (apiService != null) {
+            apiService.arreter();
+        }
         super.dispose();
     }
 
     private void initUI() {
-        setTitle("Gestion de la Population - Région de l'Extrême-Nord");
+        setTitle("Gestion de la Population - Régions du Cameroun");
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        // EXIT_ON_CLOSE n'appelle pas dispose : le chargeur de pages de la table est arrêté ici
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                tablePanel.arreter();
+            }
+        });
         setSize(1200, 800);
         setLocationRelativeTo(null);
 
         formPanel = new FormPanel();
         tablePanel = new TablePanel();
         statsPanel = new StatsPanel();
+        cartePanel = new CartePanel();
+        cartePanel.setSource(gestion::rechercherDansRectangle);
+        statsPanel.setSourcePyramide(gestion::pyramide);
+
+        // Statistiques et carte partagent la colonne de droite
+        JTabbedPane onglets = new JTabbedPane();
+        onglets.addTab("Statistiques", statsPanel);
+        onglets.addTab("Carte", cartePanel);
 
         JPanel content = new JPanel(new BorderLayout(10, 10));
         content.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
 
         content.add(formPanel, BorderLayout.WEST);
         content.add(tablePanel, BorderLayout.CENTER);
-        content.add(statsPanel, BorderLayout.EAST);
+        content.add(onglets, BorderLayout.EAST);
 
         add(content, BorderLayout.CENTER);
         add(createToolBar(), BorderLayout.NORTH);
@@ -98,14 +182,17 @@ public class Main extends JFrame {
         toolbar.setFloatable(false);
 
         JButton btnExporter = Styles.createStyledButton("Rapport de densité");
+        JButton btnRecensement = Styles.createStyledButton("Importer un recensement");
         JButton btnRafraichir = Styles.createStyledButton("Rafraîchir");
         JButton btnAide = Styles.createStyledButton("Aide");
 
         btnExporter.addActionListener(e -> exporterRapportDensite());
+        btnRecensement.addActionListener(e -> importerRecensement());
         btnRafraichir.addActionListener(e -> refreshData());
         btnAide.addActionListener(e -> showHelp());
 
         toolbar.add(btnExporter);
+        toolbar.add(btnRecensement);
         toolbar.add(btnRafraichir);
         toolbar.add(Box.createHorizontalGlue());
         toolbar.add(btnAide);
@@ -116,17 +203,48 @@ public class Main extends JFrame {
     private JPanel createStatusBar() {
         JPanel statusBar = new JPanel(new BorderLayout());
         statusBar.setBorder(BorderFactory.createBevelBorder(BevelBorder.LOWERED));
-        JLabel statusLabel = new JLabel(" Prêt");
+        statusLabel = new JLabel(" Prêt");
         statusBar.add(statusLabel, BorderLayout.WEST);
+
+        new Timer(500, e -> majStatut()).start();
         return statusBar;
     }
 
+    private void majStatut() {
+        StringBuilder statut = new StringBuilder(" ");
+        if (gestion.isHorsLigne()) {
+            statut.append("Hors ligne | ");
+        }
+        if (gestion.getModificationsEnAttente() > 0) {
+            statut.append("Modifications locales à rejouer: ").append(gestion.getModificationsEnAttente()).append(" | ");
+        }
+        EcritureDifferee ecriture = gestion.getEcritureDifferee();
+        if (ecriture != null) {
+            statut.append("En attente d'écriture: ").append(ecriture.getTailleFile())
+                    .append(" | dernier lot: ").append(ecriture.getTailleDernierLot())
+                    .append(" en ").append(ecriture.getLatenceDernierLotMs())
+                    .append(" ms | échecs: ").append(ecriture.getNombreEchecs());
+        }
+        if (statut.length() > 1 && statut.charAt(statut.length() - 2) == '|') {
+            statut.setLength(statut.length() - 3);
+        }
+        statusLabel.setText(statut.length() == 1 ? " Prêt" : statut.toString());
+    }
+
     private void setupEventHandlers() {
         formPanel.addAjouterListener(e -> ajouterLocalite());
+        tablePanel.addModifierListener(this::modifierLocalites);
+        tablePanel.addSupprimerListener(this::supprimerLocalites);
 
+        tablePanel.setFournisseurSuggestions(prefixe -> gestion.suggerer(prefixe, 8));
+        tablePanel.addFiltreTrancheListener(this::refreshData);
         tablePanel.addSearchListener(new DocumentListener() {
             private void searchLocalites() {
                 String searchText = tablePanel.getSearchText();
+                if (tablePanel.isFiltreTrancheActif() || gestion.getNombreLocalites() > SEUIL_PAGINATION) {
+                    tablePanel.afficherPagination(gestion.sourcePaginee(construireRequete()));
+                    return;
+                }
                 List<Localite> results = gestion.rechercherParNom(searchText);
                 tablePanel.updateTable(results);
             }
@@ -149,8 +267,12 @@ public class Main extends JFrame {
             double superficie = Double.parseDouble(formPanel.getSuperficie());
             TypePopulation type = formPanel.getType();
 
-            Localite localite = new Localite(nom, population, superficie, type);
-            gestion.ajouterLocalite(localite);
+            Localite localite = new Localite(nom, population, superficie, type, formPanel.getRegion(),
+                    lireCoordonnee(formPanel.getLatitude()), lireCoordonnee(formPanel.getLongitude()), null);
+            if (!confirmerNomsProches(localite)) {
+                return;
+            }
+            gestion.ajouterLocaliteAsync(localite);
             refreshData();
             updateService.checkForUpdates();
             formPanel.clear();
@@ -167,11 +289,226 @@ public class Main extends JFrame {
         }
     }
 
+    // Champ de coordonnée facultatif : vide pour une localité non géolocalisée
+    private static Double lireCoordonnee(String saisie) {
+        String valeur = saisie.trim().replace(',', '.');
+        return valeur.isEmpty() ? null : Double.parseDouble(valeur);
+    }
+
+    // Un nom très proche d'une localité existante est souvent une autre graphie de la même
+    private boolean confirmerNomsProches(Localite localite) {
+        List<Localite> proches = gestion.trouverNomsProches(localite.getNom());
+        if (proches.isEmpty()) {
+            return true;
+        }
+        String noms = proches.stream().limit(5)
+                .map(l -> l.getNom() + " (" + l.getRegion() + ")")
+                .collect(Collectors.joining("\n- ", "- ", ""));
+        return JOptionPane.showConfirmDialog(this,
+                "Des localités au nom proche existent déjà :\n" + noms + "\n\nAjouter " + localite.getNom() + " quand même ?",
+                "Doublon possible",
+                JOptionPane.YES_NO_OPTION,
+                JOptionPane.WARNING_MESSAGE) == JOptionPane.YES_OPTION;
+    }
+
+    // Toutes les lignes éditées dans le dialogue partent en un seul lot
+    private void modifierLocalites(List<Localite> selection) {
+        Map<String, Localite> modifications = EditionLocalitesDialog.afficher(this, selection);
+        if (modifications == null || modifications.isEmpty()) {
+            return;
+        }
+        try {
+            gestion.modifierLocalites(modifications);
+            refreshData();
+        } catch (Exception e) {
+            JOptionPane.showMessageDialog(this,
+                    "Erreur lors de la modification: " + e.getMessage(),
+                    "Erreur",
+                    JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    private void supprimerLocalites(List<Localite> selection) {
+        String question = selection.size() == 1
+                ? "Supprimer la localité " + selection.get(0).getNom() + " ?"
+                : "Supprimer les " + selection.size() + " localités sélectionnées ?";
+        if (JOptionPane.showConfirmDialog(this, question, "Confirmation",
+                JOptionPane.YES_NO_OPTION) != JOptionPane.YES_OPTION) {
+            return;
+        }
+        try {
+            List<String> noms = new ArrayList<>(selection.size());
+            selection.forEach(l -> noms.add(l.getNom()));
+            gestion.supprimerLocalites(noms);
+            refreshData();
+        } catch (Exception e) {
+            JOptionPane.showMessageDialog(this,
+                    "Erreur lors de la suppression: " + e.getMessage(),
+                    "Erreur",
+                    JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    // Recensement au format CSV « nom;population » (une ligne d'en-tête facultative), pour
+    // l'année saisie ensuite
+    private void importerRecensement() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setFileFilter(new FileNameExtensionFilter("Fichiers CSV (*.csv)", "csv"));
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        String saisie = JOptionPane.showInputDialog(this, "Année du recensement :", "Importer un recensement",
+                JOptionPane.QUESTION_MESSAGE);
+        if (saisie == null) {
+            return;
+        }
+        try {
+            int annee = Integer.parseInt(saisie.trim());
+            Map<String, Integer> populations = new LinkedHashMap<>();
+            // Colonnes facultatives après la population : effectifs par tranche d'âge, hommes puis femmes
+            Map<String, int[]> repartitions = new LinkedHashMap<>();
+            List<String> lignes = Files.readAllLines(chooser.getSelectedFile().toPath(), StandardCharsets.UTF_8);
+            boolean premiere = true;
+            for (int numero = 1; numero <= lignes.size(); numero++) {
+                String[] champs = lignes.get(numero - 1).split(";");
+                if (champs.length < 2 || champs[0].isBlank()) {
+                    continue;
+                }
+                String nom = champs[0].trim();
+                String population = champs[1].trim();
+                // Seule une première ligne sans aucun chiffre dans la population est un en-tête
+                if (premiere) {
+                    premiere = false;
+                    if (population.chars().noneMatch(Character::isDigit)) {
+                        continue;
+                    }
+                }
+                try {
+                    populations.put(nom, Integer.parseInt(population));
+                } catch (NumberFormatException e) {
+                    throw new IOException("Ligne " + numero + " : population invalide pour " + nom + ": " + population);
+                }
+                if (champs.length >= 2 + Pyramide.TAILLE) {
+                    // Validée entièrement avant la première écriture : le recensement et les
+                    // répartitions sont enregistrés séparément
+                    int[] repartition = new int[Pyramide.TAILLE];
+                    for (int i = 0; i < Pyramide.TAILLE; i++) {
+                        String effectif = champs[2 + i].trim();
+                        try {
+                            repartition[i] = Integer.parseInt(effectif);
+                        } catch (NumberFormatException e) {
+                            repartition[i] = -1;
+                        }
+                        if (repartition[i] < 0) {
+                            throw new IOException("Ligne " + numero + ", colonne " + (3 + i) + " ("
+                                    + (i < Pyramide.NOMBRE_TRANCHES ? "hommes " : "femmes ")
+                                    + Pyramide.libelleTranche(i % Pyramide.NOMBRE_TRANCHES)
+                                    + ") : effectif invalide pour " + nom + ": " + effectif);
+                        }
+                    }
+                    repartitions.put(nom, repartition);
+                }
+            }
+            gestion.enregistrerRecensement(annee, populations);
+            try {
+                gestion.enregistrerRepartitions(repartitions);
+            } catch (SQLException e) {
+                throw new IOException("Recensement " + annee + " enregistré, mais pas les répartitions par âge: "
+                        + e.getMessage(), e);
+            }
+            JOptionPane.showMessageDialog(this,
+                    "Recensement " + annee + " importé pour " + populations.size() + " localités"
+                            + (repartitions.isEmpty() ? "" : ", dont " + repartitions.size() + " avec la répartition par âge"),
+                    "Import réussi",
+                    JOptionPane.INFORMATION_MESSAGE);
+        } catch (NumberFormatException e) {
+            JOptionPane.showMessageDialog(this,
+                    "Année invalide: " + saisie,
+                    "Erreur",
+                    JOptionPane.ERROR_MESSAGE);
+        } catch (Exception e) {
+            JOptionPane.showMessageDialog(this,
+                    "Erreur lors de l'import du recensement: " + e.getMessage(),
+                    "Erreur",
+                    JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    // Recherche par nom et, s'il est actif, filtre par tranche
+    private RequeteLocalites construireRequete() {
+        RequeteLocalites.Builder requete = new RequeteLocalites.Builder().nomContient(tablePanel.getSearchText());
+        if (tablePanel.isFiltreTrancheActif()) {
+            Double min = tablePanel.getTrancheMin();
+            Double max = tablePanel.getTrancheMax();
+            if (tablePanel.isTrancheSurDensite()) {
+                requete.densite(min, max);
+            } else {
+                requete.population(min == null ? null : (int) Math.ceil(min), max == null ? null : (int) Math.floor(max));
+            }
+        }
+        return requete.build();
+    }
+
+    // Totaux de la tranche, lus dans les agrégats par tranches sans parcourir les localités
+    private void majResumeTranche() {
+        if (!tablePanel.isFiltreTrancheActif()) {
+            return;
+        }
+        RequeteLocalites requete = construireRequete();
+        Agregat agregat = tablePanel.isTrancheSurDensite()
+                ? gestion.agregerParDensite(requete.getDensiteMin(), requete.getDensiteMax())
+                : gestion.agregerParPopulation(requete.getPopulationMin(), requete.getPopulationMax());
+        StringBuilder resume = Formatage.tampon();
+        Formatage.ENTIER_GROUPE.ajouter(resume, agregat.getNombre()).append(" localités, ");
+        Formatage.ENTIER_GROUPE.ajouter(resume, agregat.getPopulation()).append(" hab., ");
+        Formatage.DECIMAL_2.ajouter(resume, agregat.getDensite()).append(" hab/km²");
+        tablePanel.afficherResumeTranche(resume.toString());
+    }
+
     private void refreshData() {
-        List<Localite> localites = gestion.rechercherParNom("");
-        tablePanel.updateTable(localites);
-        Map<TypePopulation, DoubleSummaryStatistics> stats = gestion.analyserParType();
-        statsPanel.updateCharts(stats);
+        if (tablePanel.isFiltreTrancheActif() || gestion.getNombreLocalites() > SEUIL_PAGINATION) {
+            tablePanel.afficherPagination(gestion.sourcePaginee(construireRequete()));
+            majResumeTranche();
+        } else {
+            List<Localite> localites = gestion.rechercherParNom("");
+            tablePanel.updateTable(localites);
+        }
+        majStatistiques();
+        majProjections();
+        cartePanel.rafraichir();
+    }
+
+    // Les projections, recalculées seulement quand les données changent, sont produites hors de
+    // l'EDT puis affichées
+    // Au-delà du seuil, les graphiques de densité s'affichent d'abord à partir des estimations
+    // tenues à jour à chaque écriture, puis le calcul exact passe en arrière-plan et ne remplace
+    // l'affichage que si aucune mise à jour plus récente n'a été demandée entre-temps
+    private void majStatistiques() {
+        int demande = ++demandeStatistiques;
+        if (gestion.getNombreLocalites() <= SEUIL_STATISTIQUES_APPROCHEES) {
+            statsPanel.updateCharts(gestion.analyserParType());
+            return;
+        }
+        statsPanel.updateChartsApproches(gestion.estimerParType());
+        CompletableFuture.supplyAsync(gestion::analyserParType)
+                .thenAccept(stats -> SwingUtilities.invokeLater(() -> {
+                    if (demande == demandeStatistiques) {
+                        statsPanel.updateCharts(stats);
+                    }
+                }))
+                .exceptionally(e -> {
+                    logger.warning("Statistiques exactes indisponibles: " + e.getMessage());
+                    return null;
+                });
+    }
+
+    private void majProjections() {
+        CompletableFuture.supplyAsync(gestion::projeter)
+                .thenAccept(projections -> SwingUtilities.invokeLater(() -> statsPanel.updateProjections(projections)))
+                .exceptionally(e -> {
+                    logger.warning("Projections indisponibles: " + e.getMessage());
+                    return null;
+                });
     }
 
     private void setupKeyboardShortcuts() {
@@ -411,15 +748,12 @@ public class Main extends JFrame {
 
             // Configurer le filtre selon le format choisi
             assert format != null;
-            String extension = switch (format) {
-                case TXT -> "txt";
-                case CSV -> "csv";
-                case HTML -> "html";
-            };
+            String extension = format.getExtension();
 
+            // Le filtre ne compare que le dernier suffixe (gz pour csv.gz)
             FileNameExtensionFilter filter = new FileNameExtensionFilter(
                     "Fichiers " + extension.toUpperCase() + " (*." + extension + ")",
-                    extension
+                    extension.substring(extension.lastIndexOf('.') + 1)
             );
             chooser.setFileFilter(filter);
 
@@ -440,11 +774,12 @@ public class Main extends JFrame {
                             .build();
 
                     // Générer le rapport
-                    gestion.genererRapportDensite(config);
+                    ResultatExport resultat = gestion.genererRapportDensite(config);
 
                     // Afficher message de succès avec option pour ouvrir le fichier
                     int choice = JOptionPane.showOptionDialog(this,
-                            "Rapport généré avec succès dans " + fichier + "\nVoulez-vous ouvrir le fichier ?",
+                            "Rapport généré avec succès dans " + fichier + "\n" + resultat
+                                    + "\nVoulez-vous ouvrir le fichier ?",
                             "Export réussi",
                             JOptionPane.YES_NO_OPTION,
                             JOptionPane.INFORMATION_MESSAGE,
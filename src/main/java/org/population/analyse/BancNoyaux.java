@@ -0,0 +1,110 @@
+package org.population.analyse;
+
+import org.population.analyse.NoyauxAgregation.StatistiquesGroupes;
+import org.population.modele.Localite;
+import org.population.modele.Localite.TypePopulation;
+
+import java.util.*;
+
+// Banc d'essai des noyaux d'agrégation sur des localités générées : statistiques de densité
+// par type, population totale et population par type, mesurées sur les objets (flux, comme
+// avant les noyaux), puis sur les colonnes avec les noyaux scalaires et vectoriels.
+//   java --add-modules jdk.incubator.vector -cp Population.jar org.population.analyse.BancNoyaux [localités] [répétitions]
+// Sans --add-modules, seuls les flux et les noyaux scalaires sont mesurés.
+public final class BancNoyaux {
+    private static final int NOMBRE_TYPES = TypePopulation.values().length;
+
+    private BancNoyaux() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int nombre = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int repetitions = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+        Random aleatoire = new Random(42);
+        List<Localite> localites = new ArrayList<>(nombre);
+        for (int i = 0; i < nombre; i++) {
+            localites.add(new Localite("Localité " + i, aleatoire.nextInt(2_000_000),
+                    0.5 + aleatoire.nextDouble() * 2_000,
+                    aleatoire.nextInt(3) == 0 ? TypePopulation.URBAINE : TypePopulation.RURALE));
+        }
+        ColonnesLocalites colonnes = ColonnesLocalites.extraire(0, localites);
+        System.out.printf("%,d localités, %d répétitions (médiane en ms)%n", nombre, repetitions);
+
+        Map<String, NoyauxAgregation> implementations = new LinkedHashMap<>();
+        implementations.put("scalaires", NoyauxAgregation.scalaires());
+        if (NoyauxAgregation.instance() != NoyauxAgregation.scalaires()) {
+            implementations.put("vectoriels", NoyauxAgregation.instance());
+        } else {
+            System.out.println("Noyaux vectoriels indisponibles (java --add-modules jdk.incubator.vector)");
+        }
+
+        double reference = mesurer("Flux sur les objets", repetitions, () -> {
+            Map<TypePopulation, DoubleSummaryStatistics> parType = new EnumMap<>(TypePopulation.class);
+            for (Localite localite : localites) {
+                parType.computeIfAbsent(localite.getType(), t -> new DoubleSummaryStatistics())
+                        .accept(localite.calculerDensite());
+            }
+            long total = localites.stream().mapToLong(Localite::getPopulation).sum();
+            Map<TypePopulation, Long> populations = new EnumMap<>(TypePopulation.class);
+            for (Localite localite : localites) {
+                populations.merge(localite.getType(), (long) localite.getPopulation(), Long::sum);
+            }
+            return parType.get(TypePopulation.URBAINE).getSum() + total + populations.get(TypePopulation.RURALE);
+        }, 0);
+
+        double[] densites = new double[colonnes.taille()];
+        for (Map.Entry<String, NoyauxAgregation> implementation : implementations.entrySet()) {
+            NoyauxAgregation noyaux = implementation.getValue();
+            mesurer("Noyaux " + implementation.getKey(), repetitions, () -> {
+                noyaux.densites(colonnes.populations, colonnes.superficies, densites, densites.length);
+                StatistiquesGroupes parType = noyaux.statistiquesParGroupe(densites, colonnes.types, NOMBRE_TYPES,
+                        densites.length);
+                long total = noyaux.somme(colonnes.populations, densites.length);
+                long[] populations = noyaux.sommesParGroupe(colonnes.populations, colonnes.types, NOMBRE_TYPES,
+                        densites.length);
+                return parType.sommes[TypePopulation.URBAINE.ordinal()] + total
+                        + populations[TypePopulation.RURALE.ordinal()];
+            }, reference);
+        }
+
+        // Détail par noyau, pour voir d'où vient l'écart
+        for (Map.Entry<String, NoyauxAgregation> implementation : implementations.entrySet()) {
+            NoyauxAgregation noyaux = implementation.getValue();
+            String nom = implementation.getKey();
+            mesurer("  densités " + nom, repetitions, () -> {
+                noyaux.densites(colonnes.populations, colonnes.superficies, densites, densites.length);
+                return densites[0];
+            }, 0);
+            mesurer("  min/max/somme " + nom, repetitions, () -> noyaux.minimum(densites, densites.length)
+                    + noyaux.maximum(densites, densites.length) + noyaux.somme(densites, densites.length), 0);
+            mesurer("  statistiques par type " + nom, repetitions, () -> noyaux.statistiquesParGroupe(densites,
+                    colonnes.types, NOMBRE_TYPES, densites.length).sommes[0], 0);
+            mesurer("  population par type " + nom, repetitions, () -> (double) noyaux.sommesParGroupe(
+                    colonnes.populations, colonnes.types, NOMBRE_TYPES, densites.length)[0], 0);
+        }
+    }
+
+    private interface Calcul {
+        double executer();
+    }
+
+    // Médiane des durées après autant d'exécutions d'échauffement ; le résultat de chaque
+    // calcul est cumulé pour qu'il ne soit pas éliminé. Renvoie la médiane en millisecondes.
+    private static double mesurer(String libelle, int repetitions, Calcul calcul, double reference) {
+        double controle = 0;
+        for (int i = 0; i < repetitions; i++) {
+            controle += calcul.executer();
+        }
+        double[] durees = new double[repetitions];
+        for (int i = 0; i < repetitions; i++) {
+            long debut = System.nanoTime();
+            controle += calcul.executer();
+            durees[i] = (System.nanoTime() - debut) / 1e6;
+        }
+        Arrays.sort(durees);
+        double mediane = durees[repetitions / 2];
+        System.out.printf("%-40s %9.3f ms%s  (contrôle %.6g)%n", libelle, mediane,
+                reference > 0 ? String.format("  x%.1f", reference / mediane) : "", controle);
+        return mediane;
+    }
+}
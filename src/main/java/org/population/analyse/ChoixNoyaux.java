@@ -0,0 +1,29 @@
+package org.population.analyse;
+
+import java.util.logging.Logger;
+
+// Choix, une fois pour toutes, des noyaux d'agrégation renvoyés par NoyauxAgregation.instance()
+final class ChoixNoyaux {
+    private static final Logger logger = Logger.getLogger(ChoixNoyaux.class.getName());
+    static final NoyauxAgregation INSTANCE = choisir();
+
+    private ChoixNoyaux() {
+    }
+
+    private static NoyauxAgregation choisir() {
+        if ("scalaire".equals(System.getProperty("population.noyaux"))
+                || ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return NoyauxScalaires.INSTANCE;
+        }
+        try {
+            NoyauxAgregation vectoriels = (NoyauxAgregation) Class.forName("org.population.analyse.NoyauxVectoriels")
+                    .getDeclaredConstructor().newInstance();
+            logger.info("Noyaux d'agrégation: " + vectoriels.getNom());
+            return vectoriels;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // Classe absente (compilée sans le module) ou API différente de celle compilée
+            logger.info("Noyaux vectoriels indisponibles, noyaux scalaires utilisés: " + e);
+            return NoyauxScalaires.INSTANCE;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package org.population.analyse;
+
+import org.population.analyse.NoyauxAgregation.StatistiquesGroupes;
+import org.population.modele.Localite;
+import org.population.modele.Localite.TypePopulation;
+
+import java.util.*;
+
+// Instantané des localités en tableaux primitifs (population, superficie, type), extrait une
+// fois par version des données pour les calculs qui parcourent toutes les localités. La position
+// d'une localité est la même dans chaque tableau. Immuable ; les agrégats passent par les
+// noyaux de NoyauxAgregation.
+public final class ColonnesLocalites {
+    private final long version;
+    private final Localite[] localites;
+    final int[] populations;
+    final double[] superficies;
+    // Ordinal du TypePopulation
+    final byte[] types;
+    private Map<String, Integer> indexParNom;
+    private double[] densites;
+
+    private ColonnesLocalites(long version, Localite[] localites) {
+        this.version = version;
+        this.localites = localites;
+        int taille = localites.length;
+        populations = new int[taille];
+        superficies = new double[taille];
+        types = new byte[taille];
+        for (int i = 0; i < taille; i++) {
+            populations[i] = localites[i].getPopulation();
+            superficies[i] = localites[i].getSuperficie();
+            types[i] = (byte) localites[i].getType().ordinal();
+        }
+    }
+
+    public static ColonnesLocalites extraire(long version, List<Localite> localites) {
+        return new ColonnesLocalites(version, localites.toArray(new Localite[0]));
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int taille() {
+        return localites.length;
+    }
+
+    public Localite getLocalite(int index) {
+        return localites[index];
+    }
+
+    // Position d'une localité par son nom (insensible à la casse), -1 si elle est absente ;
+    // l'index est construit à la première recherche
+    public synchronized int indexDe(String nom) {
+        if (indexParNom == null) {
+            indexParNom = new HashMap<>(Math.max(16, localites.length * 2));
+            for (int i = 0; i < localites.length; i++) {
+                indexParNom.put(cle(localites[i].getNom()), i);
+            }
+        }
+        return indexParNom.getOrDefault(cle(nom), -1);
+    }
+
+    // Densité de chaque localité, calculée à la première demande ; le tableau ne doit pas être modifié
+    synchronized double[] densites() {
+        if (densites == null) {
+            double[] calculees = new double[taille()];
+            NoyauxAgregation.instance().densites(populations, superficies, calculees, calculees.length);
+            densites = calculees;
+        }
+        return densites;
+    }
+
+    // Statistiques des densités de toutes les localités
+    public DoubleSummaryStatistics statistiquesDensites() {
+        double[] valeurs = densites();
+        NoyauxAgregation noyaux = NoyauxAgregation.instance();
+        return valeurs.length == 0 ? new DoubleSummaryStatistics()
+                : new DoubleSummaryStatistics(valeurs.length, noyaux.minimum(valeurs, valeurs.length),
+                        noyaux.maximum(valeurs, valeurs.length), noyaux.somme(valeurs, valeurs.length));
+    }
+
+    // Statistiques des densités par type, pour les seuls types présents (comme analyserParType)
+    public Map<TypePopulation, DoubleSummaryStatistics> statistiquesParType() {
+        StatistiquesGroupes parType = NoyauxAgregation.instance()
+                .statistiquesParGroupe(densites(), types, TypePopulation.values().length, taille());
+        Map<TypePopulation, DoubleSummaryStatistics> statistiques = new EnumMap<>(TypePopulation.class);
+        for (TypePopulation type : TypePopulation.values()) {
+            if (parType.getNombre(type.ordinal()) > 0) {
+                statistiques.put(type, parType.versStatistiques(type.ordinal()));
+            }
+        }
+        return statistiques;
+    }
+
+    static String cle(String nom) {
+        return nom.toLowerCase(Locale.ROOT);
+    }
+}
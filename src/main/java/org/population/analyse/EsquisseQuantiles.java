@@ -0,0 +1,79 @@
+package org.population.analyse;
+
+// Esquisse de quantiles à erreur relative bornée, sur le principe de DDSketch : une valeur
+// positive x est comptée dans la case ceil(log_γ(x)), avec γ = (1 + α) / (1 - α), et toute
+// valeur de la case est rendue comme 2γ^i / (γ + 1), à moins de α de la vraie valeur en
+// relatif. Les cases ne sont que des compteurs : un retrait est exact, l'esquisse se tient à
+// jour à chaque écriture sans jamais dériver. Les valeurs nulles sont comptées à part ; celles
+// qui sortent de [minimum, maximum] tombent dans la case de la borne. Non synchronisée.
+public final class EsquisseQuantiles {
+    private final double erreurRelative;
+    private final double gamma;
+    private final double logGamma;
+    // Index de la case 0
+    private final int decalage;
+    private final long[] cases;
+    private long zeros;
+    private long nombre;
+
+    public EsquisseQuantiles(double erreurRelative, double minimum, double maximum) {
+        if (!(erreurRelative > 0 && erreurRelative < 1) || !(minimum > 0) || !(maximum > minimum)) {
+            throw new IllegalArgumentException("Paramètres d'esquisse invalides");
+        }
+        this.erreurRelative = erreurRelative;
+        this.gamma = (1 + erreurRelative) / (1 - erreurRelative);
+        this.logGamma = Math.log(gamma);
+        this.decalage = (int) Math.ceil(Math.log(minimum) / logGamma);
+        this.cases = new long[(int) Math.ceil(Math.log(maximum) / logGamma) - decalage + 1];
+    }
+
+    public double getErreurRelative() {
+        return erreurRelative;
+    }
+
+    public long getNombre() {
+        return nombre;
+    }
+
+    private int indexCase(double valeur) {
+        int index = (int) Math.ceil(Math.log(valeur) / logGamma) - decalage;
+        return Math.max(0, Math.min(cases.length - 1, index));
+    }
+
+    public void ajouter(double valeur) {
+        compter(valeur, 1);
+    }
+
+    // La valeur doit avoir été ajoutée auparavant
+    public void retirer(double valeur) {
+        compter(valeur, -1);
+    }
+
+    private void compter(double valeur, int increment) {
+        if (valeur > 0) {
+            cases[indexCase(valeur)] += increment;
+        } else {
+            zeros += increment;
+        }
+        nombre += increment;
+    }
+
+    // Quantile q (0 pour le minimum, 0.5 pour la médiane, 1 pour le maximum) ; NaN si vide
+    public double quantile(double q) {
+        if (nombre <= 0) {
+            return Double.NaN;
+        }
+        long rang = (long) Math.floor(Math.max(0, Math.min(1, q)) * (nombre - 1));
+        long cumul = zeros;
+        if (rang < cumul) {
+            return 0;
+        }
+        for (int i = 0; i < cases.length; i++) {
+            cumul += cases[i];
+            if (rang < cumul) {
+                return 2 * Math.pow(gamma, i + decalage) / (gamma + 1);
+            }
+        }
+        return 2 * Math.pow(gamma, cases.length - 1 + decalage) / (gamma + 1);
+    }
+}
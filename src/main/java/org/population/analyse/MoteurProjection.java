@@ -0,0 +1,213 @@
+package org.population.analyse;
+
+import org.population.modele.Localite.TypePopulation;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Projections de population de toutes les localités sous plusieurs scénarios à la fois. Un seul
+// passage fork-join découpe l'instantané en plages d'indices ; chaque plage applique tous les
+// scénarios à ses tableaux primitifs et renvoie ses totaux par scénario, horizon et type,
+// additionnés ensuite deux à deux. Les résultats sont gardés par (scénario, version des données).
+public class MoteurProjection {
+    public static final int[] HORIZONS = {5, 10, 20};
+    // Plage en dessous de laquelle une tâche n'est plus découpée
+    private static final int SEUIL_DECOUPAGE = 16_384;
+    private static final int CAPACITE_CACHE = 32;
+    private static final int NOMBRE_TYPES = TypePopulation.values().length;
+
+    private final ForkJoinPool pool;
+    private final Map<CleCache, Projection> cache = new LinkedHashMap<>(CAPACITE_CACHE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<CleCache, Projection> eldest) {
+            return size() > CAPACITE_CACHE;
+        }
+    };
+
+    private static final class CleCache {
+        final ScenarioCroissance scenario;
+        final long version;
+
+        CleCache(ScenarioCroissance scenario, long version) {
+            this.scenario = scenario;
+            this.version = version;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof CleCache && ((CleCache) o).version == version
+                    && ((CleCache) o).scenario.equals(scenario);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * scenario.hashCode() + Long.hashCode(version);
+        }
+    }
+
+    public MoteurProjection() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public MoteurProjection(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    // Projection de chaque scénario, dans l'ordre de la liste ; seuls les scénarios absents du
+    // cache pour cette version des données sont calculés
+    public Map<ScenarioCroissance, Projection> projeter(ColonnesLocalites colonnes,
+                                                         List<ScenarioCroissance> scenarios) {
+        Map<ScenarioCroissance, Projection> resultats = new LinkedHashMap<>();
+        List<ScenarioCroissance> aCalculer = new ArrayList<>();
+        synchronized (cache) {
+            for (ScenarioCroissance scenario : scenarios) {
+                Projection enCache = cache.get(new CleCache(scenario, colonnes.getVersion()));
+                resultats.put(scenario, enCache);
+                if (enCache == null) {
+                    aCalculer.add(scenario);
+                }
+            }
+        }
+        if (!aCalculer.isEmpty()) {
+            for (Projection projection : calculer(colonnes, aCalculer)) {
+                resultats.put(projection.getScenario(), projection);
+                synchronized (cache) {
+                    cache.put(new CleCache(projection.getScenario(), colonnes.getVersion()), projection);
+                }
+            }
+        }
+        return resultats;
+    }
+
+    private List<Projection> calculer(ColonnesLocalites colonnes, List<ScenarioCroissance> scenarios) {
+        int nombreScenarios = scenarios.size();
+        double[][] croissanceParType = new double[nombreScenarios][NOMBRE_TYPES];
+        double[][] croissanceParLocalite = new double[nombreScenarios][];
+        double[] densitesMaximales = new double[nombreScenarios];
+        for (int s = 0; s < nombreScenarios; s++) {
+            ScenarioCroissance scenario = scenarios.get(s);
+            for (TypePopulation type : TypePopulation.values()) {
+                croissanceParType[s][type.ordinal()] = Math.log1p(scenario.getTaux(type));
+            }
+            if (scenario.hasTauxParLocalite()) {
+                croissanceParLocalite[s] = croissanceParLocalite(colonnes, scenario, croissanceParType[s]);
+            }
+            densitesMaximales[s] = scenario.getDensiteMaximale() == null ? Double.NaN : scenario.getDensiteMaximale();
+        }
+
+        Plage racine = new Plage(colonnes, 0, colonnes.taille(), croissanceParType, croissanceParLocalite,
+                densitesMaximales);
+        Totaux totaux = pool.invoke(racine);
+
+        NoyauxAgregation noyaux = NoyauxAgregation.instance();
+        long[] actuelles = noyaux.sommesParGroupe(colonnes.populations, colonnes.types, NOMBRE_TYPES, colonnes.taille());
+        NoyauxAgregation.StatistiquesGroupes parType = noyaux.statistiquesParGroupe(colonnes.superficies,
+                colonnes.types, NOMBRE_TYPES, colonnes.taille());
+        List<Projection> projections = new ArrayList<>(nombreScenarios);
+        for (int s = 0; s < nombreScenarios; s++) {
+            projections.add(new Projection(scenarios.get(s), colonnes, HORIZONS.clone(), croissanceParType[s],
+                    croissanceParLocalite[s], totaux.populations[s], totaux.sommesDensites[s], parType.nombres, actuelles,
+                    parType.sommes));
+        }
+        return projections;
+    }
+
+    // Croissance propre à chaque localité, celle de son type à défaut
+    private static double[] croissanceParLocalite(ColonnesLocalites colonnes, ScenarioCroissance scenario,
+                                                  double[] parType) {
+        double[] croissance = new double[colonnes.taille()];
+        for (int i = 0; i < croissance.length; i++) {
+            Double taux = scenario.getTauxLocalite(colonnes.getLocalite(i).getNom());
+            croissance[i] = taux == null ? parType[colonnes.types[i]] : Math.log1p(taux);
+        }
+        return croissance;
+    }
+
+    // Population après "annees" ans pour une croissance continue "croissance" (log du facteur
+    // annuel) : exponentielle, ou logistique vers densiteMaximale × superficie si elle est définie
+    static int projeter(int population, double superficie, double croissance, double densiteMaximale, int annees) {
+        double facteur = Math.exp(croissance * annees);
+        if (Double.isNaN(densiteMaximale) || population == 0) {
+            return (int) Math.rint(population * facteur);
+        }
+        double capacite = densiteMaximale * superficie;
+        return (int) Math.rint(capacite * population / (population + (capacite - population) / facteur));
+    }
+
+    // Sommes partielles d'une plage : [scénario][horizon][type]
+    private static final class Totaux {
+        final long[][][] populations;
+        final double[][][] sommesDensites;
+
+        Totaux(int scenarios) {
+            populations = new long[scenarios][HORIZONS.length][NOMBRE_TYPES];
+            sommesDensites = new double[scenarios][HORIZONS.length][NOMBRE_TYPES];
+        }
+
+        Totaux ajouter(Totaux autre) {
+            for (int s = 0; s < populations.length; s++) {
+                for (int h = 0; h < HORIZONS.length; h++) {
+                    for (int t = 0; t < NOMBRE_TYPES; t++) {
+                        populations[s][h][t] += autre.populations[s][h][t];
+                        sommesDensites[s][h][t] += autre.sommesDensites[s][h][t];
+                    }
+                }
+            }
+            return this;
+        }
+    }
+
+    private static final class Plage extends RecursiveTask<Totaux> {
+        private final ColonnesLocalites colonnes;
+        private final int debut;
+        private final int fin;
+        private final double[][] croissanceParType;
+        private final double[][] croissanceParLocalite;
+        private final double[] densitesMaximales;
+
+        Plage(ColonnesLocalites colonnes, int debut, int fin, double[][] croissanceParType,
+              double[][] croissanceParLocalite, double[] densitesMaximales) {
+            this.colonnes = colonnes;
+            this.debut = debut;
+            this.fin = fin;
+            this.croissanceParType = croissanceParType;
+            this.croissanceParLocalite = croissanceParLocalite;
+            this.densitesMaximales = densitesMaximales;
+        }
+
+        @Override
+        protected Totaux compute() {
+            if (fin - debut > SEUIL_DECOUPAGE) {
+                int milieu = (debut + fin) >>> 1;
+                Plage gauche = new Plage(colonnes, debut, milieu, croissanceParType, croissanceParLocalite,
+                        densitesMaximales);
+                gauche.fork();
+                Totaux droite = new Plage(colonnes, milieu, fin, croissanceParType, croissanceParLocalite,
+                        densitesMaximales).compute();
+                return droite.ajouter(gauche.join());
+            }
+            Totaux totaux = new Totaux(croissanceParType.length);
+            int[] populations = colonnes.populations;
+            double[] superficies = colonnes.superficies;
+            byte[] types = colonnes.types;
+            for (int s = 0; s < croissanceParType.length; s++) {
+                double[] parType = croissanceParType[s];
+                double[] parLocalite = croissanceParLocalite[s];
+                double densiteMaximale = densitesMaximales[s];
+                long[][] sommes = totaux.populations[s];
+                double[][] densites = totaux.sommesDensites[s];
+                for (int i = debut; i < fin; i++) {
+                    int type = types[i];
+                    double croissance = parLocalite != null ? parLocalite[i] : parType[type];
+                    for (int h = 0; h < HORIZONS.length; h++) {
+                        int projetee = projeter(populations[i], superficies[i], croissance, densiteMaximale, HORIZONS[h]);
+                        sommes[h][type] += projetee;
+                        densites[h][type] += projetee / superficies[i];
+                    }
+                }
+            }
+            return totaux;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package org.population.analyse;
+
+import java.util.Arrays;
+import java.util.DoubleSummaryStatistics;
+
+// Calculs d'agrégats sur tableaux primitifs (populations, superficies, densités, groupes), sans
+// objet ni boxing : densités, sommes, minimum et maximum, statistiques par groupe. Deux mises
+// en œuvre aux résultats identiques à l'arrondi des sommes près : NoyauxVectoriels, sur l'API
+// Vector incubée du JDK, et NoyauxScalaires, en boucles simples que le compilateur à la volée
+// vectorise lui-même quand il le peut.
+public interface NoyauxAgregation {
+    // densites[i] = populations[i] / superficies[i] pour i < taille
+    void densites(int[] populations, double[] superficies, double[] densites, int taille);
+
+    long somme(int[] valeurs, int taille);
+
+    double somme(double[] valeurs, int taille);
+
+    // +Infini et -Infini sans valeur, comme DoubleSummaryStatistics
+    double minimum(double[] valeurs, int taille);
+
+    double maximum(double[] valeurs, int taille);
+
+    // Population totale de chaque groupe ; groupes[i] est compris entre 0 et nombreGroupes - 1
+    long[] sommesParGroupe(int[] valeurs, byte[] groupes, int nombreGroupes, int taille);
+
+    // Nombre, somme, minimum et maximum des valeurs de chaque groupe, en un seul passage
+    StatistiquesGroupes statistiquesParGroupe(double[] valeurs, byte[] groupes, int nombreGroupes, int taille);
+
+    String getNom();
+
+    // Résultat de statistiquesParGroupe, indexé par groupe
+    final class StatistiquesGroupes {
+        final long[] nombres;
+        final double[] sommes;
+        final double[] minimums;
+        final double[] maximums;
+
+        StatistiquesGroupes(int nombreGroupes) {
+            nombres = new long[nombreGroupes];
+            sommes = new double[nombreGroupes];
+            minimums = new double[nombreGroupes];
+            maximums = new double[nombreGroupes];
+            Arrays.fill(minimums, Double.POSITIVE_INFINITY);
+            Arrays.fill(maximums, Double.NEGATIVE_INFINITY);
+        }
+
+        public long getNombre(int groupe) {
+            return nombres[groupe];
+        }
+
+        // Les mêmes valeurs sous la forme attendue par analyserParType et les rapports
+        public DoubleSummaryStatistics versStatistiques(int groupe) {
+            return new DoubleSummaryStatistics(nombres[groupe], minimums[groupe], maximums[groupe], sommes[groupe]);
+        }
+    }
+
+    // Noyaux vectoriels si le module jdk.incubator.vector est chargé (java --add-modules
+    // jdk.incubator.vector) et qu'ils ont été compilés (JDK 16 ou plus), scalaires sinon ;
+    // -Dpopulation.noyaux=scalaire force les seconds
+    static NoyauxAgregation instance() {
+        return ChoixNoyaux.INSTANCE;
+    }
+
+    static NoyauxAgregation scalaires() {
+        return NoyauxScalaires.INSTANCE;
+    }
+}
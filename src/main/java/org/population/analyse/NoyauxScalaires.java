@@ -0,0 +1,87 @@
+package org.population.analyse;
+
+// Noyaux en boucles simples sur les tableaux : densités, sommes et extrêmes sont des boucles
+// sans dépendance entre itérations que C2 déroule et vectorise ; les statistiques par groupe
+// accumulent dans de petits tableaux indexés par le groupe.
+final class NoyauxScalaires implements NoyauxAgregation {
+    static final NoyauxScalaires INSTANCE = new NoyauxScalaires();
+
+    private NoyauxScalaires() {
+    }
+
+    @Override
+    public void densites(int[] populations, double[] superficies, double[] densites, int taille) {
+        for (int i = 0; i < taille; i++) {
+            densites[i] = populations[i] / superficies[i];
+        }
+    }
+
+    @Override
+    public long somme(int[] valeurs, int taille) {
+        long somme = 0;
+        for (int i = 0; i < taille; i++) {
+            somme += valeurs[i];
+        }
+        return somme;
+    }
+
+    @Override
+    public double somme(double[] valeurs, int taille) {
+        double somme = 0;
+        for (int i = 0; i < taille; i++) {
+            somme += valeurs[i];
+        }
+        return somme;
+    }
+
+    @Override
+    public double minimum(double[] valeurs, int taille) {
+        double minimum = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < taille; i++) {
+            minimum = Math.min(minimum, valeurs[i]);
+        }
+        return minimum;
+    }
+
+    @Override
+    public double maximum(double[] valeurs, int taille) {
+        double maximum = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < taille; i++) {
+            maximum = Math.max(maximum, valeurs[i]);
+        }
+        return maximum;
+    }
+
+    @Override
+    public long[] sommesParGroupe(int[] valeurs, byte[] groupes, int nombreGroupes, int taille) {
+        long[] sommes = new long[nombreGroupes];
+        for (int i = 0; i < taille; i++) {
+            sommes[groupes[i]] += valeurs[i];
+        }
+        return sommes;
+    }
+
+    @Override
+    public StatistiquesGroupes statistiquesParGroupe(double[] valeurs, byte[] groupes, int nombreGroupes,
+                                                     int taille) {
+        StatistiquesGroupes statistiques = new StatistiquesGroupes(nombreGroupes);
+        long[] nombres = statistiques.nombres;
+        double[] sommes = statistiques.sommes;
+        double[] minimums = statistiques.minimums;
+        double[] maximums = statistiques.maximums;
+        for (int i = 0; i < taille; i++) {
+            int groupe = groupes[i];
+            double valeur = valeurs[i];
+            nombres[groupe]++;
+            sommes[groupe] += valeur;
+            minimums[groupe] = Math.min(minimums[groupe], valeur);
+            maximums[groupe] = Math.max(maximums[groupe], valeur);
+        }
+        return statistiques;
+    }
+
+    @Override
+    public String getNom() {
+        return "scalaires";
+    }
+}
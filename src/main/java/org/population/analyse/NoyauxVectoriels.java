@@ -0,0 +1,167 @@
+package org.population.analyse;
+
+import jdk.incubator.vector.*;
+
+// Noyaux sur l'API Vector incubée du JDK (16 ou plus), à la largeur de vecteur préférée de la
+// machine. Compilée seulement par le profil Maven "noyaux-vectoriels" et chargée par ChoixNoyaux
+// quand le module est présent à l'exécution. Les accumulateurs restent dans des variables
+// locales pour que C2 les garde en registres : les statistiques par groupe font donc un passage
+// par groupe, chacun masquant les localités des autres groupes.
+final class NoyauxVectoriels implements NoyauxAgregation {
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    // Autant de voies que DOUBLES, sur des entiers de 32 et de 64 bits
+    private static final VectorSpecies<Integer> ENTIERS =
+            VectorSpecies.of(int.class, VectorShape.forBitSize(DOUBLES.vectorBitSize() / 2));
+    private static final VectorSpecies<Long> LONGS = VectorSpecies.of(long.class, DOUBLES.vectorShape());
+    // Les groupes sont lus par vecteurs d'octets d'au moins DOUBLES.length() voies (huit au
+    // minimum, forme de 64 bits) puis convertis en PARTIES vecteurs de DOUBLES.length() voies
+    private static final VectorSpecies<Byte> OCTETS =
+            VectorSpecies.of(byte.class, VectorShape.forBitSize(Math.max(64, DOUBLES.length() * Byte.SIZE)));
+    private static final int PARTIES = OCTETS.length() / DOUBLES.length();
+
+    NoyauxVectoriels() {
+    }
+
+    @Override
+    public void densites(int[] populations, double[] superficies, double[] densites, int taille) {
+        int i = 0;
+        for (int limite = DOUBLES.loopBound(taille); i < limite; i += DOUBLES.length()) {
+            DoubleVector population = (DoubleVector) IntVector.fromArray(ENTIERS, populations, i)
+                    .convertShape(VectorOperators.I2D, DOUBLES, 0);
+            population.div(DoubleVector.fromArray(DOUBLES, superficies, i)).intoArray(densites, i);
+        }
+        for (; i < taille; i++) {
+            densites[i] = populations[i] / superficies[i];
+        }
+    }
+
+    @Override
+    public long somme(int[] valeurs, int taille) {
+        LongVector sommes = LongVector.zero(LONGS);
+        int i = 0;
+        for (int limite = LONGS.loopBound(taille); i < limite; i += LONGS.length()) {
+            sommes = sommes.add((LongVector) IntVector.fromArray(ENTIERS, valeurs, i)
+                    .convertShape(VectorOperators.I2L, LONGS, 0));
+        }
+        long somme = sommes.reduceLanes(VectorOperators.ADD);
+        for (; i < taille; i++) {
+            somme += valeurs[i];
+        }
+        return somme;
+    }
+
+    @Override
+    public double somme(double[] valeurs, int taille) {
+        DoubleVector sommes = DoubleVector.zero(DOUBLES);
+        int i = 0;
+        for (int limite = DOUBLES.loopBound(taille); i < limite; i += DOUBLES.length()) {
+            sommes = sommes.add(DoubleVector.fromArray(DOUBLES, valeurs, i));
+        }
+        double somme = sommes.reduceLanes(VectorOperators.ADD);
+        for (; i < taille; i++) {
+            somme += valeurs[i];
+        }
+        return somme;
+    }
+
+    @Override
+    public double minimum(double[] valeurs, int taille) {
+        DoubleVector minimums = DoubleVector.broadcast(DOUBLES, Double.POSITIVE_INFINITY);
+        int i = 0;
+        for (int limite = DOUBLES.loopBound(taille); i < limite; i += DOUBLES.length()) {
+            minimums = minimums.min(DoubleVector.fromArray(DOUBLES, valeurs, i));
+        }
+        double minimum = minimums.reduceLanes(VectorOperators.MIN);
+        for (; i < taille; i++) {
+            minimum = Math.min(minimum, valeurs[i]);
+        }
+        return minimum;
+    }
+
+    @Override
+    public double maximum(double[] valeurs, int taille) {
+        DoubleVector maximums = DoubleVector.broadcast(DOUBLES, Double.NEGATIVE_INFINITY);
+        int i = 0;
+        for (int limite = DOUBLES.loopBound(taille); i < limite; i += DOUBLES.length()) {
+            maximums = maximums.max(DoubleVector.fromArray(DOUBLES, valeurs, i));
+        }
+        double maximum = maximums.reduceLanes(VectorOperators.MAX);
+        for (; i < taille; i++) {
+            maximum = Math.max(maximum, valeurs[i]);
+        }
+        return maximum;
+    }
+
+    @Override
+    public long[] sommesParGroupe(int[] valeurs, byte[] groupes, int nombreGroupes, int taille) {
+        long[] resultat = new long[nombreGroupes];
+        int limite = OCTETS.loopBound(taille);
+        for (int groupe = 0; groupe < nombreGroupes; groupe++) {
+            LongVector sommes = LongVector.zero(LONGS);
+            for (int i = 0; i < limite; i += OCTETS.length()) {
+                ByteVector parLocalite = ByteVector.fromArray(OCTETS, groupes, i);
+                for (int partie = 0; partie < PARTIES; partie++) {
+                    VectorMask<Long> masque = ((LongVector) parLocalite.convertShape(VectorOperators.B2L, LONGS, partie))
+                            .eq(groupe);
+                    LongVector valeur = (LongVector) IntVector.fromArray(ENTIERS, valeurs, i + partie * LONGS.length())
+                            .convertShape(VectorOperators.I2L, LONGS, 0);
+                    sommes = sommes.add(valeur, masque);
+                }
+            }
+            long somme = sommes.reduceLanes(VectorOperators.ADD);
+            for (int i = limite; i < taille; i++) {
+                if (groupes[i] == groupe) {
+                    somme += valeurs[i];
+                }
+            }
+            resultat[groupe] = somme;
+        }
+        return resultat;
+    }
+
+    @Override
+    public StatistiquesGroupes statistiquesParGroupe(double[] valeurs, byte[] groupes, int nombreGroupes,
+                                                     int taille) {
+        StatistiquesGroupes statistiques = new StatistiquesGroupes(nombreGroupes);
+        int limite = OCTETS.loopBound(taille);
+        for (int groupe = 0; groupe < nombreGroupes; groupe++) {
+            DoubleVector sommes = DoubleVector.zero(DOUBLES);
+            DoubleVector minimums = DoubleVector.broadcast(DOUBLES, Double.POSITIVE_INFINITY);
+            DoubleVector maximums = DoubleVector.broadcast(DOUBLES, Double.NEGATIVE_INFINITY);
+            long nombre = 0;
+            for (int i = 0; i < limite; i += OCTETS.length()) {
+                ByteVector parLocalite = ByteVector.fromArray(OCTETS, groupes, i);
+                for (int partie = 0; partie < PARTIES; partie++) {
+                    VectorMask<Double> masque = ((DoubleVector) parLocalite.convertShape(VectorOperators.B2D, DOUBLES, partie))
+                            .eq(groupe);
+                    DoubleVector valeur = DoubleVector.fromArray(DOUBLES, valeurs, i + partie * DOUBLES.length());
+                    sommes = sommes.add(valeur, masque);
+                    minimums = minimums.lanewise(VectorOperators.MIN, valeur, masque);
+                    maximums = maximums.lanewise(VectorOperators.MAX, valeur, masque);
+                    nombre += masque.trueCount();
+                }
+            }
+            double somme = sommes.reduceLanes(VectorOperators.ADD);
+            double minimum = minimums.reduceLanes(VectorOperators.MIN);
+            double maximum = maximums.reduceLanes(VectorOperators.MAX);
+            for (int i = limite; i < taille; i++) {
+                if (groupes[i] == groupe) {
+                    nombre++;
+                    somme += valeurs[i];
+                    minimum = Math.min(minimum, valeurs[i]);
+                    maximum = Math.max(maximum, valeurs[i]);
+                }
+            }
+            statistiques.nombres[groupe] = nombre;
+            statistiques.sommes[groupe] = somme;
+            statistiques.minimums[groupe] = minimum;
+            statistiques.maximums[groupe] = maximum;
+        }
+        return statistiques;
+    }
+
+    @Override
+    public String getNom() {
+        return "vectoriels (" + DOUBLES.vectorBitSize() + " bits, " + DOUBLES.length() + " doubles)";
+    }
+}
@@ -0,0 +1,108 @@
+package org.population.analyse;
+
+import org.population.modele.Localite.TypePopulation;
+
+// Résultat d'un scénario sur un instantané : totaux par type et par horizon, calculés par
+// MoteurProjection. La population projetée d'une localité n'est pas conservée mais recalculée
+// à la demande par la même formule, ce qui évite un tableau par horizon et par scénario.
+public final class Projection {
+    private final ScenarioCroissance scenario;
+    private final ColonnesLocalites colonnes;
+    private final int[] horizons;
+    // Logarithme du facteur de croissance annuel : par type, et par localité si le scénario
+    // en définit (null sinon)
+    private final double[] croissanceParType;
+    private final double[] croissanceParLocalite;
+    // [horizon][type]
+    private final long[][] populations;
+    private final double[][] sommesDensites;
+    // [type]
+    private final long[] nombres;
+    private final long[] actuelles;
+    private final double[] superficies;
+
+    Projection(ScenarioCroissance scenario, ColonnesLocalites colonnes, int[] horizons,
+               double[] croissanceParType, double[] croissanceParLocalite,
+               long[][] populations, double[][] sommesDensites, long[] nombres,
+               long[] actuelles, double[] superficies) {
+        this.scenario = scenario;
+        this.colonnes = colonnes;
+        this.horizons = horizons;
+        this.croissanceParType = croissanceParType;
+        this.croissanceParLocalite = croissanceParLocalite;
+        this.populations = populations;
+        this.sommesDensites = sommesDensites;
+        this.nombres = nombres;
+        this.actuelles = actuelles;
+        this.superficies = superficies;
+    }
+
+    public ScenarioCroissance getScenario() { return scenario; }
+    public long getVersion() { return colonnes.getVersion(); }
+
+    // Horizons en années, dans l'ordre croissant
+    public int[] getHorizons() {
+        return horizons.clone();
+    }
+
+    public long getPopulation(int indexHorizon, TypePopulation type) {
+        return populations[indexHorizon][type.ordinal()];
+    }
+
+    public long getPopulation(int indexHorizon) {
+        long total = 0;
+        for (long population : populations[indexHorizon]) {
+            total += population;
+        }
+        return total;
+    }
+
+    // Population de départ, celle de l'instantané
+    public long getPopulationActuelle(TypePopulation type) {
+        return actuelles[type.ordinal()];
+    }
+
+    public long getPopulationActuelle() {
+        long total = 0;
+        for (long population : actuelles) {
+            total += population;
+        }
+        return total;
+    }
+
+    public long getNombre(TypePopulation type) {
+        return nombres[type.ordinal()];
+    }
+
+    // Moyenne des densités projetées des localités du type, comme dans analyserParType
+    public double getDensiteMoyenne(int indexHorizon, TypePopulation type) {
+        long nombre = nombres[type.ordinal()];
+        return nombre == 0 ? 0 : sommesDensites[indexHorizon][type.ordinal()] / nombre;
+    }
+
+    // Densité d'ensemble projetée : population totale sur superficie totale
+    public double getDensiteGlobale(int indexHorizon) {
+        double superficie = 0;
+        for (double s : superficies) {
+            superficie += s;
+        }
+        return superficie > 0 ? getPopulation(indexHorizon) / superficie : 0;
+    }
+
+    // Population projetée d'une localité, -1 si elle ne fait pas partie de l'instantané
+    public int getPopulation(String nom, int indexHorizon) {
+        int index = colonnes.indexDe(nom);
+        if (index < 0) {
+            return -1;
+        }
+        double croissance = croissanceParLocalite != null
+                ? croissanceParLocalite[index] : croissanceParType[colonnes.types[index]];
+        return MoteurProjection.projeter(colonnes.populations[index], colonnes.superficies[index],
+                croissance, densiteMaximale(), horizons[indexHorizon]);
+    }
+
+    private double densiteMaximale() {
+        Double densite = scenario.getDensiteMaximale();
+        return densite == null ? Double.NaN : densite;
+    }
+}
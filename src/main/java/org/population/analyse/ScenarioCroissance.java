@@ -0,0 +1,206 @@
+package org.population.analyse;
+
+import org.population.modele.Localite.TypePopulation;
+import org.population.recensement.Recensements;
+
+import java.util.*;
+
+// Hypothèse de croissance pour les projections : un taux annuel par type de localité (ou un
+// taux par défaut), éventuellement remplacé localité par localité, et une densité maximale
+// facultative. Sans densité maximale la croissance est exponentielle ; avec, elle est
+// logistique et plafonne à densiteMaximale × superficie. Immuable ; deux scénarios aux mêmes
+// paramètres sont égaux, ce qui sert de clé au cache des projections.
+public class ScenarioCroissance {
+    private final String nom;
+    private final double tauxParDefaut;
+    private final Map<TypePopulation, Double> tauxParType;
+    private final Double densiteMaximale;
+    // Nom en minuscules -> taux annuel
+    private final Map<String, Double> tauxParLocalite;
+    // Calculée une fois : le scénario sert de clé de cache à chaque projection. Les types y
+    // entrent par leur nom, dont le hashCode est le même d'un démarrage à l'autre (contrairement
+    // à celui d'une constante d'énumération) : elle entre dans la version des données.
+    private final int empreinte;
+
+    public ScenarioCroissance(Builder builder) {
+        nom = builder.nom;
+        tauxParDefaut = builder.tauxParDefaut;
+        tauxParType = Collections.unmodifiableMap(new EnumMap<>(builder.tauxParType));
+        densiteMaximale = builder.densiteMaximale;
+        tauxParLocalite = Map.copyOf(builder.tauxParLocalite);
+        int parType = 0;
+        for (Map.Entry<TypePopulation, Double> taux : tauxParType.entrySet()) {
+            parType += taux.getKey().name().hashCode() ^ taux.getValue().hashCode();
+        }
+        empreinte = Objects.hash(nom, tauxParDefaut, parType, densiteMaximale, tauxParLocalite);
+    }
+
+    public String getNom() { return nom; }
+    public Double getDensiteMaximale() { return densiteMaximale; }
+    public boolean hasTauxParLocalite() { return !tauxParLocalite.isEmpty(); }
+
+    public double getTaux(TypePopulation type) {
+        return tauxParType.getOrDefault(type, tauxParDefaut);
+    }
+
+    Double getTauxLocalite(String nom) {
+        return tauxParLocalite.get(ColonnesLocalites.cle(nom));
+    }
+
+    public static class Builder {
+        private final String nom;
+        private double tauxParDefaut;
+        private final Map<TypePopulation, Double> tauxParType = new EnumMap<>(TypePopulation.class);
+        private Double densiteMaximale;
+        private final Map<String, Double> tauxParLocalite = new HashMap<>();
+
+        public Builder(String nom) {
+            this.nom = nom;
+        }
+
+        // Reprend les paramètres d'un autre scénario
+        public Builder(String nom, ScenarioCroissance modele) {
+            this.nom = nom;
+            tauxParDefaut = modele.tauxParDefaut;
+            tauxParType.putAll(modele.tauxParType);
+            densiteMaximale = modele.densiteMaximale;
+            tauxParLocalite.putAll(modele.tauxParLocalite);
+        }
+
+        // Taux annuels en fraction : 0.03 pour 3 % par an
+        public Builder taux(double taux) {
+            this.tauxParDefaut = taux;
+            return this;
+        }
+
+        public Builder taux(TypePopulation type, double taux) {
+            tauxParType.put(type, taux);
+            return this;
+        }
+
+        public Builder tauxLocalite(String nom, double taux) {
+            tauxParLocalite.put(ColonnesLocalites.cle(nom), taux);
+            return this;
+        }
+
+        // null pour une croissance sans plafond
+        public Builder densiteMaximale(Double densite) {
+            this.densiteMaximale = densite;
+            return this;
+        }
+
+        public ScenarioCroissance build() {
+            if (nom == null || nom.isBlank()) {
+                throw new IllegalArgumentException("Le nom du scénario ne peut pas être vide");
+            }
+            if (densiteMaximale != null && !(densiteMaximale > 0)) {
+                throw new IllegalArgumentException("Densité maximale invalide: " + densiteMaximale);
+            }
+            List<Double> tous = new ArrayList<>(tauxParType.values());
+            tous.addAll(tauxParLocalite.values());
+            tous.add(tauxParDefaut);
+            for (double taux : tous) {
+                if (!(taux > -1) || Double.isInfinite(taux)) {
+                    throw new IllegalArgumentException("Taux de croissance invalide: " + taux);
+                }
+            }
+            return new ScenarioCroissance(this);
+        }
+    }
+
+    // Hypothèses basse, centrale et haute, d'après les écarts habituels entre croissance
+    // urbaine et rurale, et une variante centrale plafonnée à 20 000 hab/km²
+    public static List<ScenarioCroissance> scenariosParDefaut() {
+        ScenarioCroissance central = new Builder("Central")
+                .taux(0.026)
+                .taux(TypePopulation.URBAINE, 0.036)
+                .taux(TypePopulation.RURALE, 0.012)
+                .build();
+        return List.of(
+                new Builder("Bas").taux(0.015)
+                        .taux(TypePopulation.URBAINE, 0.024)
+                        .taux(TypePopulation.RURALE, 0.005)
+                        .build(),
+                central,
+                new Builder("Haut").taux(0.034)
+                        .taux(TypePopulation.URBAINE, 0.048)
+                        .taux(TypePopulation.RURALE, 0.018)
+                        .build(),
+                new Builder("Central plafonné", central).densiteMaximale(20_000.0).build());
+    }
+
+    // Scénarios décrits dans un fichier de propriétés :
+    //   scenarios=Bas,Central
+    //   scenario.Bas.taux=0.015
+    //   scenario.Bas.taux.URBAINE=0.024
+    //   scenario.Bas.densiteMax=20000
+    public static List<ScenarioCroissance> charger(Properties proprietes) {
+        List<ScenarioCroissance> scenarios = new ArrayList<>();
+        for (String nom : proprietes.getProperty("scenarios", "").split(",")) {
+            nom = nom.trim();
+            if (nom.isEmpty()) {
+                continue;
+            }
+            String prefixe = "scenario." + nom + ".";
+            Builder builder = new Builder(nom)
+                    .taux(Double.parseDouble(proprietes.getProperty(prefixe + "taux", "0").trim()));
+            for (TypePopulation type : TypePopulation.values()) {
+                String taux = proprietes.getProperty(prefixe + "taux." + type);
+                if (taux != null) {
+                    builder.taux(type, Double.parseDouble(taux.trim()));
+                }
+            }
+            String densite = proprietes.getProperty(prefixe + "densiteMax");
+            if (densite != null) {
+                builder.densiteMaximale(Double.valueOf(densite.trim()));
+            }
+            scenarios.add(builder.build());
+        }
+        return scenarios;
+    }
+
+    // Variante d'un scénario où chaque localité recensée au moins deux fois suit son propre taux
+    // annuel moyen entre le premier et le dernier recensement ; null sans deux recensements
+    public static ScenarioCroissance depuisRecensements(String nom, ScenarioCroissance modele,
+                                                        Recensements recensements) {
+        List<Integer> annees = recensements.getAnnees();
+        if (annees.size() < 2) {
+            return null;
+        }
+        Builder builder = new Builder(nom, modele);
+        recensements.tauxAnnuels(annees.get(0), annees.get(annees.size() - 1)).forEach((localite, taux) -> {
+            // Une localité partie de presque rien donne un taux sans signification
+            if (taux > -1 && taux < 1) {
+                builder.tauxLocalite(localite, taux);
+            }
+        });
+        return builder.build();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ScenarioCroissance)) {
+            return false;
+        }
+        ScenarioCroissance autre = (ScenarioCroissance) o;
+        return empreinte == autre.empreinte
+                && nom.equals(autre.nom)
+                && Double.compare(tauxParDefaut, autre.tauxParDefaut) == 0
+                && tauxParType.equals(autre.tauxParType)
+                && Objects.equals(densiteMaximale, autre.densiteMaximale)
+                && tauxParLocalite.equals(autre.tauxParLocalite);
+    }
+
+    @Override
+    public int hashCode() {
+        return empreinte;
+    }
+
+    @Override
+    public String toString() {
+        return nom;
+    }
+}
@@ -0,0 +1,181 @@
+package org.population.analyse;
+
+import org.population.modele.Localite;
+import org.population.modele.Localite.TypePopulation;
+
+import java.util.*;
+
+// Statistiques de densité par type tenues à jour à chaque écriture, pour afficher tout de suite
+// des valeurs approchées sur les gros volumes : nombre exact de localités, échantillon
+// uniforme (réservoir) pour la densité moyenne et sa marge d'erreur, et esquisse de quantiles
+// pour la médiane, le 90e centile et les extrêmes. Un retrait sort la localité de l'échantillon,
+// qui rétrécit : l'ensemble est reconstruit (construire) quand aReconstituer() le demande.
+public final class StatistiquesApprochees {
+    public static final int TAILLE_ECHANTILLON = 1024;
+    // Erreur relative des quantiles, et bornes des densités suivies (comme les agrégats par tranches)
+    private static final double ERREUR_QUANTILES = 0.01;
+    private static final double DENSITE_MIN = 0.01;
+    private static final double DENSITE_MAX = 1e6;
+    // Quantile de la loi normale pour un intervalle de confiance à 95 %
+    private static final double Z_95 = 1.96;
+
+    private final Reservoir[] reservoirs = new Reservoir[TypePopulation.values().length];
+    private final EsquisseQuantiles[] esquisses = new EsquisseQuantiles[TypePopulation.values().length];
+    private final Random aleatoire = new Random();
+
+    public StatistiquesApprochees() {
+        for (int i = 0; i < reservoirs.length; i++) {
+            reservoirs[i] = new Reservoir();
+            esquisses[i] = new EsquisseQuantiles(ERREUR_QUANTILES, DENSITE_MIN, DENSITE_MAX);
+        }
+    }
+
+    public static StatistiquesApprochees construire(Collection<Localite> localites) {
+        StatistiquesApprochees statistiques = new StatistiquesApprochees();
+        for (Localite localite : localites) {
+            statistiques.ajouter(localite);
+        }
+        return statistiques;
+    }
+
+    public synchronized void ajouter(Localite localite) {
+        int type = localite.getType().ordinal();
+        esquisses[type].ajouter(localite.calculerDensite());
+        reservoirs[type].proposer(localite, esquisses[type].getNombre(), aleatoire);
+    }
+
+    public synchronized void retirer(Localite localite) {
+        int type = localite.getType().ordinal();
+        esquisses[type].retirer(localite.calculerDensite());
+        reservoirs[type].retirer(localite);
+    }
+
+    // Vrai quand un échantillon a perdu plus d'un dixième de sa taille par des retraits : les
+    // ajouts suivants y entreraient trop facilement et le biaiseraient vers les plus récents
+    public synchronized boolean aReconstituer() {
+        for (int i = 0; i < reservoirs.length; i++) {
+            long attendu = Math.min(TAILLE_ECHANTILLON, esquisses[i].getNombre());
+            if (reservoirs[i].taille < attendu - TAILLE_ECHANTILLON / 10) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Estimations des types présents
+    public synchronized Map<TypePopulation, EstimationDensite> estimer() {
+        Map<TypePopulation, EstimationDensite> estimations = new EnumMap<>(TypePopulation.class);
+        for (TypePopulation type : TypePopulation.values()) {
+            EsquisseQuantiles esquisse = esquisses[type.ordinal()];
+            if (esquisse.getNombre() > 0) {
+                estimations.put(type, reservoirs[type.ordinal()].estimer(esquisse));
+            }
+        }
+        return estimations;
+    }
+
+    // Échantillon uniforme (algorithme R) ; une localité retirée est remplacée par la dernière
+    private static final class Reservoir {
+        private final Localite[] elements = new Localite[TAILLE_ECHANTILLON];
+        private final double[] densites = new double[TAILLE_ECHANTILLON];
+        private final Map<Localite, Integer> positions = new IdentityHashMap<>();
+        private int taille;
+
+        // nombre : localités du type, celle-ci comprise ; chacune reste avec une probabilité
+        // TAILLE_ECHANTILLON / nombre
+        void proposer(Localite localite, long nombre, Random aleatoire) {
+            // Tant que l'échantillon contient toutes les localités du type, chacune y entre
+            long tirage = taille < TAILLE_ECHANTILLON && taille >= nombre - 1
+                    ? taille : (long) (aleatoire.nextDouble() * nombre);
+            if (tirage >= TAILLE_ECHANTILLON) {
+                return;
+            }
+            int position = (int) Math.min(tirage, taille);
+            if (position == taille) {
+                taille++;
+            } else {
+                positions.remove(elements[position]);
+            }
+            elements[position] = localite;
+            densites[position] = localite.calculerDensite();
+            positions.put(localite, position);
+        }
+
+        void retirer(Localite localite) {
+            Integer position = positions.remove(localite);
+            if (position == null) {
+                return;
+            }
+            taille--;
+            if (position != taille) {
+                elements[position] = elements[taille];
+                densites[position] = densites[taille];
+                positions.put(elements[position], position);
+            }
+            elements[taille] = null;
+        }
+
+        EstimationDensite estimer(EsquisseQuantiles esquisse) {
+            long nombre = esquisse.getNombre();
+            double somme = 0;
+            for (int i = 0; i < taille; i++) {
+                somme += densites[i];
+            }
+            double moyenne = taille == 0 ? Double.NaN : somme / taille;
+            double ecarts = 0;
+            for (int i = 0; i < taille; i++) {
+                ecarts += (densites[i] - moyenne) * (densites[i] - moyenne);
+            }
+            // Erreur type de la moyenne d'un échantillon sans remise, avec correction de population finie
+            double marge = 0;
+            if (taille > 1 && taille < nombre) {
+                double variance = ecarts / (taille - 1);
+                marge = Z_95 * Math.sqrt(variance / taille * (1 - (double) taille / nombre));
+            }
+            return new EstimationDensite(nombre, taille, moyenne, marge, esquisse.quantile(0.5),
+                    esquisse.quantile(0.9), esquisse.quantile(0), esquisse.quantile(1), esquisse.getErreurRelative());
+        }
+    }
+
+    // Estimation des densités d'un type : moyenne à ± marge près (95 %), quantiles à
+    // erreurQuantiles près en relatif ; le nombre de localités est exact
+    public static final class EstimationDensite {
+        private final long nombre;
+        private final int tailleEchantillon;
+        private final double moyenne;
+        private final double marge;
+        private final double mediane;
+        private final double centile90;
+        private final double minimum;
+        private final double maximum;
+        private final double erreurQuantiles;
+
+        EstimationDensite(long nombre, int tailleEchantillon, double moyenne, double marge, double mediane,
+                          double centile90, double minimum, double maximum, double erreurQuantiles) {
+            this.nombre = nombre;
+            this.tailleEchantillon = tailleEchantillon;
+            this.moyenne = moyenne;
+            this.marge = marge;
+            this.mediane = mediane;
+            this.centile90 = centile90;
+            this.minimum = minimum;
+            this.maximum = maximum;
+            this.erreurQuantiles = erreurQuantiles;
+        }
+
+        public long getNombre() { return nombre; }
+        public int getTailleEchantillon() { return tailleEchantillon; }
+        public double getMoyenne() { return moyenne; }
+        public double getMarge() { return marge; }
+        public double getMediane() { return mediane; }
+        public double getCentile90() { return centile90; }
+        public double getMinimum() { return minimum; }
+        public double getMaximum() { return maximum; }
+        public double getErreurQuantiles() { return erreurQuantiles; }
+
+        // L'échantillon couvre toutes les localités du type : la moyenne est exacte
+        public boolean isMoyenneExacte() {
+            return tailleEchantillon == nombre;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package org.population.cli;
+
+import org.population.gestion.GestionPopulation;
+import org.population.gestion.GestionPopulation.ConfigurationRapport;
+import org.population.gestion.GestionPopulation.FormatRapport;
+import org.population.gestion.ResultatExport;
+
+import java.util.Locale;
+
+// Point d'entrée sans interface graphique pour la génération des rapports en traitement par lots.
+// Aucune classe AWT, Swing ou JFreeChart n'est référencée ici ni par GestionPopulation.
+public final class RapportCli {
+    private static final String USAGE = """
+            Usage: java -cp Population.jar org.population.cli.RapportCli --sortie=<fichier> [options]
+
+            Options:
+              --sortie=<fichier>     Fichier du rapport (obligatoire)
+              --format=<format>      TXT, CSV, HTML, CSV_GZ, JSONL, JSONL_GZ
+                                     ou XLSX (défaut: TXT)
+              --limite=<n>           Nombre maximal de localités (défaut: toutes)
+              --grouper              Grouper les localités par type de population
+              --sans-statistiques    Ne pas inclure les statistiques générales
+              --aide                 Afficher cette aide
+            """;
+
+    private RapportCli() {
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        System.exit(executer(args));
+    }
+
+    // Retourne le code de sortie : 0 succès, 1 erreur d'exécution, 2 arguments invalides
+    static int executer(String[] args) {
+        ConfigurationRapport config;
+        try {
+            config = analyserArguments(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Erreur: " + e.getMessage());
+            System.err.print(USAGE);
+            return 2;
+        }
+        if (config == null) {
+            System.out.print(USAGE);
+            return 0;
+        }
+
+        long debut = System.nanoTime();
+        ResultatExport resultat;
+        try (GestionPopulation gestion = new GestionPopulation()) {
+            resultat = gestion.genererRapportDensite(config);
+        } catch (Exception e) {
+            System.err.println("Erreur lors de la génération du rapport: " + e.getMessage());
+            return 1;
+        }
+        System.out.printf("Rapport généré dans %s : %s (%d ms)%n",
+                config.getFichierSortie(), resultat, (System.nanoTime() - debut) / 1_000_000);
+        return 0;
+    }
+
+    private static ConfigurationRapport analyserArguments(String[] args) {
+        String sortie = null;
+        FormatRapport format = FormatRapport.TXT;
+        int limite = Integer.MAX_VALUE;
+        boolean grouper = false;
+        boolean statistiques = true;
+
+        for (String arg : args) {
+            String nom = arg;
+            String valeur = null;
+            int egal = arg.indexOf('=');
+            if (egal > 0) {
+                nom = arg.substring(0, egal);
+                valeur = arg.substring(egal + 1);
+            }
+
+            switch (nom) {
+                case "--aide", "-h", "--help" -> {
+                    return null;
+                }
+                case "--sortie" -> sortie = exiger(nom, valeur);
+                case "--format" -> {
+                    try {
+                        format = FormatRapport.valueOf(exiger(nom, valeur).toUpperCase(Locale.ROOT));
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException("Format inconnu: " + valeur);
+                    }
+                }
+                case "--limite" -> {
+                    try {
+                        limite = Integer.parseInt(exiger(nom, valeur));
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("Limite invalide: " + valeur);
+                    }
+                    if (limite <= 0) {
+                        throw new IllegalArgumentException("La limite doit être positive");
+                    }
+                }
+                case "--grouper" -> grouper = true;
+                case "--sans-statistiques" -> statistiques = false;
+                default -> throw new IllegalArgumentException("Option inconnue: " + arg);
+            }
+        }
+
+        if (sortie == null) {
+            throw new IllegalArgumentException("L'option --sortie est obligatoire");
+        }
+
+        return new ConfigurationRapport.Builder(sortie)
+                .format(format)
+                .limiteResultats(limite)
+                .grouperParType(grouper)
+                .inclureStatistiques(statistiques)
+                .build();
+    }
+
+    private static String exiger(String option, String valeur) {
+        if (valeur == null || valeur.isEmpty()) {
+            throw new IllegalArgumentException("Valeur manquante pour " + option);
+        }
+        return valeur;
+    }
+}
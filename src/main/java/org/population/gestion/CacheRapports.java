@@ -0,0 +1,258 @@
+package org.population.gestion;
+
+import org.population.gestion.GestionPopulation.ConfigurationRapport;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+// Cache disque des rapports générés, indexé par (version des données, options du rapport).
+// La taille totale est bornée avec éviction LRU ; une copie servie depuis le cache passe par
+// FileChannel.transferTo, sans transiter par la mémoire de la JVM. Les copies se font hors du
+// moniteur, que invalider() prend sous le verrou d'écriture des données : une entrée en cours de
+// lecture n'est supprimée du disque qu'à la fin de sa dernière lecture. Les rapports TXT et HTML
+// conservent la date de leur première génération.
+public class CacheRapports {
+    private static final Logger logger = Logger.getLogger(CacheRapports.class.getName());
+    private static final String SUFFIXE = ".rapport";
+    private static final String SUFFIXE_TEMPORAIRE = ".tmp";
+
+    private final Path repertoire;
+    private final long tailleMax;
+    private final LinkedHashMap<String, Entree> entrees = new LinkedHashMap<>(16, 0.75f, true);
+    private long tailleTotale;
+    // Dernière version passée à invalider() : un rapport d'une autre version terminé après coup
+    // n'est pas publié
+    private boolean invalide;
+    private long versionCourante;
+
+    private static class Entree {
+        final Path fichier;
+        final long version;
+        final long octetsNonCompresses;
+        final long taille;
+        // Copies en cours depuis ce fichier, et suppression différée jusqu'à leur fin
+        int lecteurs;
+        boolean retiree;
+
+        Entree(Path fichier, long version, long octetsNonCompresses, long taille) {
+            this.fichier = fichier;
+            this.version = version;
+            this.octetsNonCompresses = octetsNonCompresses;
+            this.taille = taille;
+        }
+    }
+
+    public CacheRapports(Path repertoire, long tailleMax) throws IOException {
+        this.repertoire = Files.createDirectories(repertoire);
+        this.tailleMax = tailleMax;
+        chargerExistants();
+    }
+
+    // Cache par défaut dans le répertoire temporaire, limité à 256 Mo
+    public static CacheRapports parDefaut() throws IOException {
+        return new CacheRapports(Path.of(System.getProperty("java.io.tmpdir"), "population-rapports"),
+                256L * 1024 * 1024);
+    }
+
+    // Reprise des rapports d'une exécution précédente, du plus ancien au plus récent usage.
+    // Nom de fichier : <version>-<options>-<octets non compressés>-<unique>.rapport ; les copies
+    // temporaires laissées par un arrêt brutal et les fichiers d'un autre format sont supprimés.
+    // Ceux des autres versions le sont au premier appel d'invalider(), dès que la version des
+    // données chargées est connue
+    private void chargerExistants() throws IOException {
+        List<Path> fichiers = new ArrayList<>();
+        List<Path> temporaires = new ArrayList<>();
+        try (Stream<Path> flux = Files.list(repertoire)) {
+            flux.forEach(f -> {
+                String nom = f.getFileName().toString();
+                if (nom.endsWith(SUFFIXE)) {
+                    fichiers.add(f);
+                } else if (nom.endsWith(SUFFIXE_TEMPORAIRE)) {
+                    temporaires.add(f);
+                }
+            });
+        }
+        for (Path temporaire : temporaires) {
+            Files.deleteIfExists(temporaire);
+        }
+        fichiers.sort(Comparator.comparing(f -> {
+            try {
+                return Files.getLastModifiedTime(f);
+            } catch (IOException e) {
+                return FileTime.fromMillis(0);
+            }
+        }));
+
+        for (Path fichier : fichiers) {
+            String nom = fichier.getFileName().toString();
+            String[] parties = nom.substring(0, nom.length() - SUFFIXE.length()).split("-");
+            if (parties.length != 4) {
+                Files.deleteIfExists(fichier);
+                continue;
+            }
+            try {
+                long version = Long.parseUnsignedLong(parties[0], 16);
+                long nonCompresses = Long.parseLong(parties[2]);
+                Entree entree = new Entree(fichier, version, nonCompresses, Files.size(fichier));
+                entrees.put(parties[0] + "-" + parties[1], entree);
+                tailleTotale += entree.taille;
+            } catch (RuntimeException e) {
+                Files.deleteIfExists(fichier);
+            }
+        }
+        evincer();
+    }
+
+    // Les options figurent en clair dans la clé ; tout caractère hors [A-Za-z0-9] est écrit
+    // _xx (code hexadécimal), ce qui garde la clé injective et sans '-' dans le nom de fichier
+    private static String cle(long version, ConfigurationRapport config) {
+        String options = config.getFormat() + "|" + config.getLimiteResultats() + "|"
+                + config.isInclureStatistiques() + "|" + config.isGrouperParType();
+        StringBuilder cle = new StringBuilder(32 + options.length()).append(String.format("%016x-", version));
+        for (int i = 0; i < options.length(); i++) {
+            char c = options.charAt(i);
+            if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')) {
+                cle.append(c);
+            } else {
+                cle.append('_').append(String.format("%02x", (int) c));
+            }
+        }
+        return cle.toString();
+    }
+
+    private static long copier(Path source, Path destination, OpenOption... options) throws IOException {
+        try (FileChannel entree = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel sortie = FileChannel.open(destination, options)) {
+            long position = 0;
+            long taille = entree.size();
+            while (position < taille) {
+                position += entree.transferTo(position, taille - position, sortie);
+            }
+            return taille;
+        }
+    }
+
+    // Copie le rapport mis en cache vers le fichier de sortie ; null si absent
+    public ResultatExport servir(long version, ConfigurationRapport config) {
+        String cle = cle(version, config);
+        Entree entree;
+        synchronized (this) {
+            entree = entrees.get(cle);
+            if (entree == null) {
+                return null;
+            }
+            entree.lecteurs++;
+        }
+        try {
+            long taille = copier(entree.fichier, Path.of(config.getFichierSortie()), StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            Files.setLastModifiedTime(entree.fichier, FileTime.fromMillis(System.currentTimeMillis()));
+            return new ResultatExport(config.getFichierSortie(), entree.octetsNonCompresses, taille);
+        } catch (IOException e) {
+            logger.warning("Rapport en cache illisible, régénération: " + e.getMessage());
+            synchronized (this) {
+                if (entrees.get(cle) == entree) {
+                    retirer(cle);
+                }
+            }
+            return null;
+        } finally {
+            synchronized (this) {
+                entree.lecteurs--;
+                if (entree.retiree && entree.lecteurs == 0) {
+                    effacer(entree.fichier);
+                }
+            }
+        }
+    }
+
+    // Conserve une copie du rapport qui vient d'être généré : la copie se fait dans un fichier
+    // temporaire, publié ensuite par un simple renommage
+    public void stocker(long version, ConfigurationRapport config, ResultatExport resultat) {
+        if (resultat.getOctetsEcrits() > tailleMax) {
+            return;
+        }
+        String cle = cle(version, config);
+        synchronized (this) {
+            if (entrees.containsKey(cle) || (invalide && version != versionCourante)) {
+                return;
+            }
+        }
+        String prefixe = cle + "-" + resultat.getOctetsNonCompresses() + "-";
+        Path temporaire = null;
+        try {
+            temporaire = Files.createTempFile(repertoire, prefixe, SUFFIXE_TEMPORAIRE);
+            long taille = copier(Path.of(resultat.getFichier()), temporaire, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            String nom = temporaire.getFileName().toString();
+            Path fichier = repertoire.resolve(nom.substring(0, nom.length() - SUFFIXE_TEMPORAIRE.length()) + SUFFIXE);
+            synchronized (this) {
+                if (entrees.containsKey(cle) || (invalide && version != versionCourante)) {
+                    return;
+                }
+                Files.move(temporaire, fichier, StandardCopyOption.ATOMIC_MOVE);
+                temporaire = null;
+                entrees.put(cle, new Entree(fichier, version, resultat.getOctetsNonCompresses(), taille));
+                tailleTotale += taille;
+                evincer();
+            }
+        } catch (IOException e) {
+            logger.warning("Impossible de mettre le rapport en cache: " + e.getMessage());
+        } finally {
+            if (temporaire != null) {
+                effacer(temporaire);
+            }
+        }
+    }
+
+    // Appelé à chaque changement de données : les rapports des autres versions sont supprimés
+    public synchronized void invalider(long versionCourante) {
+        this.invalide = true;
+        this.versionCourante = versionCourante;
+        List<String> perimees = new ArrayList<>();
+        entrees.forEach((cle, entree) -> {
+            if (entree.version != versionCourante) {
+                perimees.add(cle);
+            }
+        });
+        perimees.forEach(this::retirer);
+    }
+
+    private void evincer() {
+        Iterator<Map.Entry<String, Entree>> it = entrees.entrySet().iterator();
+        while (tailleTotale > tailleMax && it.hasNext()) {
+            Entree entree = it.next().getValue();
+            it.remove();
+            supprimer(entree);
+        }
+    }
+
+    private void retirer(String cle) {
+        Entree entree = entrees.remove(cle);
+        if (entree != null) {
+            supprimer(entree);
+        }
+    }
+
+    private void supprimer(Entree entree) {
+        tailleTotale -= entree.taille;
+        if (entree.lecteurs > 0) {
+            entree.retiree = true;
+        } else {
+            effacer(entree.fichier);
+        }
+    }
+
+    private static void effacer(Path fichier) {
+        try {
+            Files.deleteIfExists(fichier);
+        } catch (IOException e) {
+            logger.warning("Impossible de supprimer un rapport en cache: " + e.getMessage());
+        }
+    }
+}
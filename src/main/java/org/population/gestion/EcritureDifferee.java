@@ -0,0 +1,209 @@
+package org.population.gestion;
+
+import org.population.modele.Localite;
+import org.population.stockage.LocaliteRepository;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.logging.Logger;
+
+// Écriture différée des insertions : les localités sont mises en file et un thread dédié les
+// regroupe en lots, chacun inséré en une seule écriture groupée du stockage. Une erreur passagère (connexion,
+// verrou, délai) provoque une nouvelle tentative avec attente croissante ; une insertion
+// définitivement refusée est signalée au rappel d'échec, qui retire la localité de la mémoire.
+public class EcritureDifferee implements AutoCloseable {
+    private static final Logger logger = Logger.getLogger(EcritureDifferee.class.getName());
+    private static final int TAILLE_LOT = 500;
+    private static final long ATTENTE_REGROUPEMENT_MS = 20;
+    private static final int TENTATIVES_MAX = 4;
+    private static final long ATTENTE_INITIALE_MS = 200;
+
+    private final LocaliteRepository depot;
+    private final BiConsumer<Localite, Throwable> rappelEchec;
+    private final BlockingQueue<Demande> file = new LinkedBlockingQueue<>();
+    private final Thread ecrivain;
+    private final AtomicLong latenceDernierLotMs = new AtomicLong();
+    private final AtomicLong tailleDernierLot = new AtomicLong();
+    private final AtomicLong echecs = new AtomicLong();
+    private volatile boolean actif = true;
+    // Mise en file et mise à jour de derniere se font ensemble : sinon, entre deux soumissions
+    // concurrentes, derniere pourrait désigner la plus ancienne et vider() rendre la main trop tôt
+    private final Object verrouFile = new Object();
+    private volatile CompletableFuture<Localite> derniere = CompletableFuture.completedFuture(null);
+
+    private static class Demande {
+        final Localite localite;
+        final CompletableFuture<Localite> resultat = new CompletableFuture<>();
+        final long misEnFile = System.nanoTime();
+
+        Demande(Localite localite) {
+            this.localite = localite;
+        }
+    }
+
+    EcritureDifferee(LocaliteRepository depot, BiConsumer<Localite, Throwable> rappelEchec) {
+        this.depot = depot;
+        this.rappelEchec = rappelEchec;
+        this.ecrivain = new Thread(this::boucler, "ecriture-differee-localites");
+        this.ecrivain.setDaemon(true);
+        this.ecrivain.start();
+    }
+
+    CompletableFuture<Localite> soumettre(Localite localite) {
+        Demande demande = new Demande(localite);
+        if (!actif) {
+            demande.resultat.completeExceptionally(new IllegalStateException("Écriture différée arrêtée"));
+            return demande.resultat;
+        }
+        synchronized (verrouFile) {
+            file.add(demande);
+            derniere = demande.resultat;
+        }
+        return demande.resultat;
+    }
+
+    // Attend que tout ce qui a été soumis jusqu'ici soit écrit (ou abandonné) : la file est
+    // traitée dans l'ordre, il suffit d'attendre la dernière demande
+    public void vider() {
+        derniere.handle((localite, erreur) -> null).join();
+    }
+
+    // Nombre d'insertions en attente d'écriture
+    public int getTailleFile() {
+        return file.size();
+    }
+
+    // Vrai tant qu'une insertion soumise n'est pas écrite ou abandonnée, lot en cours compris
+    public boolean aDesEcrituresEnCours() {
+        return !derniere.isDone();
+    }
+
+    // Délai entre la mise en file de la plus ancienne demande du dernier lot et sa validation
+    public long getLatenceDernierLotMs() {
+        return latenceDernierLotMs.get();
+    }
+
+    public long getTailleDernierLot() {
+        return tailleDernierLot.get();
+    }
+
+    public long getNombreEchecs() {
+        return echecs.get();
+    }
+
+    private void boucler() {
+        List<Demande> lot = new ArrayList<>(TAILLE_LOT);
+        while (actif || !file.isEmpty()) {
+            try {
+                Demande premiere = file.poll(100, TimeUnit.MILLISECONDS);
+                if (premiere == null) {
+                    continue;
+                }
+                lot.add(premiere);
+                // Laisser aux saisies rapprochées le temps de rejoindre le même lot
+                if (file.size() < TAILLE_LOT) {
+                    Thread.sleep(ATTENTE_REGROUPEMENT_MS);
+                }
+                file.drainTo(lot, TAILLE_LOT - 1);
+                ecrireLot(lot);
+            } catch (InterruptedException e) {
+                // Les demandes du lot sont déjà sorties de la file : sans échec explicite, leur
+                // localité resterait en mémoire sans jamais atteindre le stockage
+                for (Demande demande : lot) {
+                    if (!demande.resultat.isDone()) {
+                        echouer(demande, new IllegalStateException("Écriture différée interrompue avant l'écriture"));
+                    }
+                }
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                lot.clear();
+            }
+        }
+    }
+
+    private void ecrireLot(List<Demande> lot) throws InterruptedException {
+        long attente = ATTENTE_INITIALE_MS;
+        for (int tentative = 1; ; tentative++) {
+            try {
+                depot.inserer(localitesDe(lot));
+                long latence = (System.nanoTime() - lot.get(0).misEnFile) / 1_000_000;
+                latenceDernierLotMs.set(latence);
+                tailleDernierLot.set(lot.size());
+                lot.forEach(d -> d.resultat.complete(d.localite));
+                return;
+            } catch (SQLException e) {
+                if (!LocaliteRepository.estErreurConnexion(e)) {
+                    // Une ligne refusée fait échouer tout le lot : on isole les fautives
+                    insererUneParUne(lot);
+                    return;
+                }
+                if (tentative >= TENTATIVES_MAX) {
+                    lot.forEach(d -> echouer(d, e));
+                    return;
+                }
+                logger.warning("Écriture du lot échouée (tentative " + tentative + "), nouvel essai: " + e.getMessage());
+                Thread.sleep(attente);
+                attente *= 2;
+            }
+        }
+    }
+
+    private static List<Localite> localitesDe(List<Demande> lot) {
+        List<Localite> localites = new ArrayList<>(lot.size());
+        lot.forEach(d -> localites.add(d.localite));
+        return localites;
+    }
+
+    private void insererUneParUne(List<Demande> lot) {
+        for (Demande demande : lot) {
+            try {
+                depot.inserer(List.of(demande.localite));
+                demande.resultat.complete(demande.localite);
+            } catch (SQLException e) {
+                echouer(demande, e);
+            }
+        }
+    }
+
+    private void echouer(Demande demande, Throwable cause) {
+        echecs.incrementAndGet();
+        logger.warning("Insertion de " + demande.localite.getNom() + " abandonnée: " + cause.getMessage());
+        try {
+            rappelEchec.accept(demande.localite, cause);
+        } finally {
+            demande.resultat.completeExceptionally(cause);
+        }
+    }
+
+    // Arrête l'écrivain après avoir écrit tout ce qui est en file
+    @Override
+    public void close() {
+        actif = false;
+        try {
+            ecrivain.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (ecrivain.isAlive()) {
+            ecrivain.interrupt();
+            // Le stockage est fermé juste après : l'écrivain ne doit plus s'en servir
+            try {
+                ecrivain.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (ecrivain.isAlive()) {
+                logger.warning("L'écrivain différé ne s'est pas arrêté");
+            }
+        }
+        Demande restante;
+        while ((restante = file.poll()) != null) {
+            echouer(restante, new IllegalStateException("Écriture différée arrêtée avant l'écriture"));
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package org.population.gestion;
+
+import org.population.modele.Localite;
+import org.population.modele.Localite.TypePopulation;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+// Classeur XLSX écrit en flux : chaque feuille est une entrée zip dont le XML est produit ligne à
+// ligne (chaînes en ligne, sans table de chaînes partagées), si bien que la mémoire utilisée ne
+// dépend pas du nombre de localités exportées. Au-delà de la limite d'Excel, les localités
+// continuent sur des feuilles « (2) », « (3) »...
+final class ExportXlsx implements Closeable {
+    private static final String NS_MAIN = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+    private static final String NS_REL = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+    private static final String ENTETE_XML = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n";
+    private static final String[] COLONNES = {"Type", "Nom", "Population", "Superficie (km²)",
+            "Densité (hab/km²)", "Date d'enregistrement"};
+    private static final int[] LARGEURS = {12, 30, 14, 18, 18, 22};
+    private static final LocalDateTime ORIGINE_EXCEL = LocalDateTime.of(1899, 12, 30, 0, 0);
+    // Limite d'Excel, ligne d'en-tête comprise
+    private static final int LIGNES_MAX_FEUILLE = 1_048_576;
+
+    // Indices des styles de cellule définis dans styles.xml
+    private static final int STYLE_ENTIER = 1;
+    private static final int STYLE_DECIMAL = 2;
+    private static final int STYLE_DATE = 3;
+    private static final int STYLE_ENTETE = 4;
+
+    private final ZipOutputStream zip;
+    private final Writer writer;
+    private ZipEntry entreeCourante;
+    private long octetsNonCompresses;
+
+    private ExportXlsx(OutputStream out) {
+        zip = new ZipOutputStream(out, StandardCharsets.UTF_8);
+        writer = new BufferedWriter(new OutputStreamWriter(zip, StandardCharsets.UTF_8), 64 * 1024);
+    }
+
+    static ResultatExport generer(String fichier, boolean inclureStatistiques, boolean grouperParType,
+                                  Map<TypePopulation, List<Localite>> localitesParType) throws IOException {
+        // Feuilles de localités dans l'ordre du classeur, avec leur contenu
+        List<String> feuilles = new ArrayList<>();
+        List<List<Localite>> contenus = new ArrayList<>();
+        if (grouperParType) {
+            for (TypePopulation type : TypePopulation.values()) {
+                decouper(type.toString(), localitesParType.getOrDefault(type, List.of()), feuilles, contenus);
+            }
+        } else {
+            List<Localite> toutes = new ArrayList<>();
+            localitesParType.values().forEach(toutes::addAll);
+            toutes.sort((l1, l2) -> Double.compare(l2.calculerDensite(), l1.calculerDensite()));
+            decouper("Localités", toutes, feuilles, contenus);
+        }
+        if (inclureStatistiques) {
+            feuilles.add(0, "Statistiques");
+        }
+
+        Path chemin = Path.of(fichier);
+        long octetsNonCompresses;
+        try (ExportXlsx export = new ExportXlsx(new BufferedOutputStream(new FileOutputStream(fichier), 64 * 1024))) {
+            export.ecrireStructure(feuilles);
+
+            int numero = 1;
+            if (inclureStatistiques) {
+                export.ecrireFeuilleStatistiques(numero++, localitesParType);
+            }
+            for (List<Localite> contenu : contenus) {
+                export.ecrireFeuilleLocalites(numero++, contenu);
+            }
+            export.zip.finish();
+            octetsNonCompresses = export.octetsNonCompresses;
+        } catch (IOException | RuntimeException e) {
+            // Un classeur interrompu serait illisible : on ne laisse pas de fichier partiel
+            try {
+                Files.deleteIfExists(chemin);
+            } catch (IOException suppression) {
+                e.addSuppressed(suppression);
+            }
+            throw e;
+        }
+        return new ResultatExport(fichier, octetsNonCompresses, Files.size(chemin));
+    }
+
+    // Répartit les localités en feuilles d'au plus LIGNES_MAX_FEUILLE - 1 lignes ; une liste vide
+    // donne quand même une feuille, avec son seul en-tête
+    private static void decouper(String nom, List<Localite> localites, List<String> feuilles,
+                                 List<List<Localite>> contenus) {
+        int parFeuille = LIGNES_MAX_FEUILLE - 1;
+        int partie = 1;
+        int debut = 0;
+        do {
+            int fin = Math.min(localites.size(), debut + parFeuille);
+            feuilles.add(partie == 1 ? nom : nom + " (" + partie + ")");
+            contenus.add(localites.subList(debut, fin));
+            partie++;
+            debut = fin;
+        } while (debut < localites.size());
+    }
+
+    // Parties fixes du paquet : types de contenu, relations, classeur et styles
+    private void ecrireStructure(List<String> feuilles) throws IOException {
+        debutEntree("[Content_Types].xml");
+        writer.write(ENTETE_XML);
+        writer.write("<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">");
+        writer.write("<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>");
+        writer.write("<Default Extension=\"xml\" ContentType=\"application/xml\"/>");
+        writer.write("<Override PartName=\"/xl/workbook.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml\"/>");
+        writer.write("<Override PartName=\"/xl/styles.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.styles+xml\"/>");
+        for (int i = 1; i <= feuilles.size(); i++) {
+            writer.write("<Override PartName=\"/xl/worksheets/sheet" + i
+                    + ".xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml\"/>");
+        }
+        writer.write("</Types>");
+        finEntree();
+
+        debutEntree("_rels/.rels");
+        writer.write(ENTETE_XML);
+        writer.write("<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">");
+        writer.write("<Relationship Id=\"rId1\" Type=\"" + NS_REL + "/officeDocument\" Target=\"xl/workbook.xml\"/>");
+        writer.write("</Relationships>");
+        finEntree();
+
+        debutEntree("xl/workbook.xml");
+        writer.write(ENTETE_XML);
+        writer.write("<workbook xmlns=\"" + NS_MAIN + "\" xmlns:r=\"" + NS_REL + "\"><sheets>");
+        for (int i = 1; i <= feuilles.size(); i++) {
+            writer.write("<sheet name=\"");
+            echapper(nomFeuille(feuilles.get(i - 1)));
+            writer.write("\" sheetId=\"" + i + "\" r:id=\"rId" + i + "\"/>");
+        }
+        writer.write("</sheets></workbook>");
+        finEntree();
+
+        debutEntree("xl/_rels/workbook.xml.rels");
+        writer.write(ENTETE_XML);
+        writer.write("<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">");
+        for (int i = 1; i <= feuilles.size(); i++) {
+            writer.write("<Relationship Id=\"rId" + i + "\" Type=\"" + NS_REL
+                    + "/worksheet\" Target=\"worksheets/sheet" + i + ".xml\"/>");
+        }
+        writer.write("<Relationship Id=\"rId" + (feuilles.size() + 1) + "\" Type=\"" + NS_REL
+                + "/styles\" Target=\"styles.xml\"/>");
+        writer.write("</Relationships>");
+        finEntree();
+
+        debutEntree("xl/styles.xml");
+        writer.write(ENTETE_XML);
+        writer.write("""
+                <styleSheet xmlns="http://schemas.openxmlformats.org/spreadsheetml/2006/main">\
+                <numFmts count="1"><numFmt numFmtId="164" formatCode="dd/mm/yyyy hh:mm"/></numFmts>\
+                <fonts count="2"><font><sz val="11"/><name val="Calibri"/></font>\
+                <font><b/><sz val="11"/><name val="Calibri"/></font></fonts>\
+                <fills count="2"><fill><patternFill patternType="none"/></fill>\
+                <fill><patternFill patternType="gray125"/></fill></fills>\
+                <borders count="1"><border><left/><right/><top/><bottom/><diagonal/></border></borders>\
+                <cellStyleXfs count="1"><xf numFmtId="0" fontId="0" fillId="0" borderId="0"/></cellStyleXfs>\
+                <cellXfs count="5">\
+                <xf numFmtId="0" fontId="0" fillId="0" borderId="0" xfId="0"/>\
+                <xf numFmtId="3" fontId="0" fillId="0" borderId="0" xfId="0" applyNumberFormat="1"/>\
+                <xf numFmtId="4" fontId="0" fillId="0" borderId="0" xfId="0" applyNumberFormat="1"/>\
+                <xf numFmtId="164" fontId="0" fillId="0" borderId="0" xfId="0" applyNumberFormat="1"/>\
+                <xf numFmtId="0" fontId="1" fillId="0" borderId="0" xfId="0" applyFont="1"/>\
+                </cellXfs>\
+                <cellStyles count="1"><cellStyle name="Normal" xfId="0" builtinId="0"/></cellStyles>\
+                </styleSheet>""");
+        finEntree();
+    }
+
+    private void ecrireFeuilleStatistiques(int numero, Map<TypePopulation, List<Localite>> localitesParType)
+            throws IOException {
+        DoubleSummaryStatistics stats = GestionPopulation.statistiquesDensites(localitesParType);
+
+        debutFeuille(numero, new int[]{34, 18});
+        int ligne = 1;
+        debutLigne(ligne++);
+        celluleTexte("Statistiques générales", STYLE_ENTETE);
+        finLigne();
+        debutLigne(ligne++);
+        celluleTexte("Nombre total de localités", 0);
+        celluleNombre(stats.getCount(), STYLE_ENTIER);
+        finLigne();
+        debutLigne(ligne++);
+        celluleTexte("Densité moyenne (hab/km²)", 0);
+        celluleNombre(stats.getAverage(), STYLE_DECIMAL);
+        finLigne();
+        debutLigne(ligne++);
+        celluleTexte("Densité maximale (hab/km²)", 0);
+        celluleNombre(stats.getMax(), STYLE_DECIMAL);
+        finLigne();
+        debutLigne(ligne);
+        celluleTexte("Densité minimale (hab/km²)", 0);
+        celluleNombre(stats.getMin(), STYLE_DECIMAL);
+        finLigne();
+        finFeuille();
+    }
+
+    private void ecrireFeuilleLocalites(int numero, List<Localite> localites) throws IOException {
+        debutFeuille(numero, LARGEURS);
+        int ligne = 1;
+        debutLigne(ligne++);
+        for (String colonne : COLONNES) {
+            celluleTexte(colonne, STYLE_ENTETE);
+        }
+        finLigne();
+
+        for (Localite localite : localites) {
+            debutLigne(ligne++);
+            celluleTexte(localite.getType().toString(), 0);
+            celluleTexte(localite.getNom(), 0);
+            celluleNombre(localite.getPopulation(), STYLE_ENTIER);
+            celluleNombre(localite.getSuperficie(), STYLE_DECIMAL);
+            celluleNombre(localite.calculerDensite(), STYLE_DECIMAL);
+            celluleNombre(dateExcel(localite.getDateEnregistrement()), STYLE_DATE);
+            finLigne();
+        }
+        finFeuille();
+    }
+
+    private void debutFeuille(int numero, int[] largeurs) throws IOException {
+        debutEntree("xl/worksheets/sheet" + numero + ".xml");
+        writer.write(ENTETE_XML);
+        writer.write("<worksheet xmlns=\"" + NS_MAIN + "\">");
+        // Ligne d'en-tête figée
+        writer.write("<sheetViews><sheetView workbookViewId=\"0\">"
+                + "<pane ySplit=\"1\" topLeftCell=\"A2\" activePane=\"bottomLeft\" state=\"frozen\"/>"
+                + "</sheetView></sheetViews>");
+        writer.write("<cols>");
+        for (int i = 0; i < largeurs.length; i++) {
+            writer.write("<col min=\"" + (i + 1) + "\" max=\"" + (i + 1) + "\" width=\"" + largeurs[i]
+                    + "\" customWidth=\"1\"/>");
+        }
+        writer.write("</cols><sheetData>");
+    }
+
+    private void finFeuille() throws IOException {
+        writer.write("</sheetData></worksheet>");
+        finEntree();
+    }
+
+    private void debutLigne(int numero) throws IOException {
+        writer.write("<row r=\"");
+        writer.write(Integer.toString(numero));
+        writer.write("\">");
+    }
+
+    private void finLigne() throws IOException {
+        writer.write("</row>");
+    }
+
+    private void celluleTexte(String texte, int style) throws IOException {
+        writer.write(style == 0 ? "<c t=\"inlineStr\"><is><t>" : "<c t=\"inlineStr\" s=\"" + style + "\"><is><t>");
+        echapper(texte);
+        writer.write("</t></is></c>");
+    }
+
+    private void celluleNombre(double valeur, int style) throws IOException {
+        if (!Double.isFinite(valeur)) {
+            writer.write("<c/>");
+            return;
+        }
+        writer.write("<c s=\"");
+        writer.write(Integer.toString(style));
+        writer.write("\"><v>");
+        if (valeur == Math.rint(valeur) && Math.abs(valeur) < 1e15) {
+            writer.write(Long.toString((long) valeur));
+        } else {
+            writer.write(Double.toString(valeur));
+        }
+        writer.write("</v></c>");
+    }
+
+    // Numéro de série Excel : jours depuis le 30/12/1899, la fraction donnant l'heure
+    private static double dateExcel(LocalDateTime date) {
+        return ChronoUnit.SECONDS.between(ORIGINE_EXCEL, date) / 86_400.0;
+    }
+
+    private void echapper(String texte) throws IOException {
+        for (int i = 0; i < texte.length(); i++) {
+            char c = texte.charAt(i);
+            switch (c) {
+                case '&' -> writer.write("&amp;");
+                case '<' -> writer.write("&lt;");
+                case '>' -> writer.write("&gt;");
+                case '"' -> writer.write("&quot;");
+                default -> {
+                    // Caractères de contrôle interdits en XML 1.0
+                    if (c >= 0x20 || c == '\t' || c == '\n' || c == '\r') {
+                        writer.write(c);
+                    }
+                }
+            }
+        }
+    }
+
+    // Noms de feuille : 31 caractères au plus, sans []:*?/\
+    private static String nomFeuille(String nom) {
+        String propre = nom.replaceAll("[\\[\\]:*?/\\\\]", "_");
+        return propre.length() > 31 ? propre.substring(0, 31) : propre;
+    }
+
+    private void debutEntree(String nom) throws IOException {
+        entreeCourante = new ZipEntry(nom);
+        zip.putNextEntry(entreeCourante);
+    }
+
+    // Ferme le flux zip et libère son Deflater, y compris après une erreur
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    private void finEntree() throws IOException {
+        writer.flush();
+        zip.closeEntry();
+        // Après closeEntry, la taille non compressée de l'entrée est connue
+        octetsNonCompresses += entreeCourante.getSize();
+    }
+}
@@ -0,0 +1,245 @@
+package org.population.gestion;
+
+import org.population.utils.Formatage;
+import org.population.utils.Formatage.FormatNombre;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.Locale;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+// Écrivain d'export en flux : les caractères sont encodés en UTF-8 directement dans un grand
+// tampon direct, puis écrits sur le canal du fichier, éventuellement au travers d'un Deflater
+// (format gzip). Nombres et dates passent par Formatage dans un tampon réutilisé.
+final class FluxExport implements Closeable {
+    private static final int TAILLE_TAMPON = 1 << 20;
+    private static final byte[] ENTETE_GZIP = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+    private static final FormatNombre ENTIER = Formatage.pour(Locale.ROOT, 0, false, Formatage.Arrondi.DEMI_PAIR);
+    private static final char[] HEXA = "0123456789abcdef".toCharArray();
+    private static final ByteBuffer AUCUNE_ENTREE = ByteBuffer.allocate(0);
+
+    private final FileChannel canal;
+    private final ByteBuffer tampon = ByteBuffer.allocateDirect(TAILLE_TAMPON);
+    private final Deflater compresseur;
+    private final ByteBuffer sortieCompressee;
+    private final CRC32 crc;
+    // Tampon réutilisé pour formater nombres et dates avant encodage
+    private final StringBuilder chiffres = new StringBuilder(32);
+    private long octetsNonCompresses;
+    private long octetsEcrits;
+
+    private FluxExport(FileChannel canal, boolean gzip) throws IOException {
+        this.canal = canal;
+        if (gzip) {
+            compresseur = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            sortieCompressee = ByteBuffer.allocateDirect(TAILLE_TAMPON);
+            crc = new CRC32();
+            ecrireCanal(ByteBuffer.wrap(ENTETE_GZIP));
+        } else {
+            compresseur = null;
+            sortieCompressee = null;
+            crc = null;
+        }
+    }
+
+    static FluxExport ouvrir(String fichier, boolean gzip) throws IOException {
+        FileChannel canal = FileChannel.open(Path.of(fichier),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        try {
+            return new FluxExport(canal, gzip);
+        } catch (IOException e) {
+            canal.close();
+            throw e;
+        }
+    }
+
+    FluxExport ecrire(char c) throws IOException {
+        if (tampon.remaining() < 4) {
+            vider();
+        }
+        if (c < 0x80) {
+            tampon.put((byte) c);
+        } else if (c < 0x800) {
+            tampon.put((byte) (0xc0 | (c >> 6)));
+            tampon.put((byte) (0x80 | (c & 0x3f)));
+        } else if (Character.isSurrogate(c)) {
+            // Un demi-caractère isolé n'est pas encodable : remplacé comme le ferait un Writer
+            tampon.put((byte) '?');
+        } else {
+            tampon.put((byte) (0xe0 | (c >> 12)));
+            tampon.put((byte) (0x80 | ((c >> 6) & 0x3f)));
+            tampon.put((byte) (0x80 | (c & 0x3f)));
+        }
+        return this;
+    }
+
+    FluxExport ecrire(CharSequence s) throws IOException {
+        for (int i = 0, n = s.length(); i < n; i++) {
+            char c = s.charAt(i);
+            if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                ecrirePointDeCode(Character.toCodePoint(c, s.charAt(++i)));
+            } else {
+                ecrire(c);
+            }
+        }
+        return this;
+    }
+
+    private void ecrirePointDeCode(int cp) throws IOException {
+        if (tampon.remaining() < 4) {
+            vider();
+        }
+        tampon.put((byte) (0xf0 | (cp >> 18)));
+        tampon.put((byte) (0x80 | ((cp >> 12) & 0x3f)));
+        tampon.put((byte) (0x80 | ((cp >> 6) & 0x3f)));
+        tampon.put((byte) (0x80 | (cp & 0x3f)));
+    }
+
+    FluxExport finLigne() throws IOException {
+        return ecrire(System.lineSeparator());
+    }
+
+    FluxExport ecrireEntier(long valeur) throws IOException {
+        return ecrire(ENTIER, valeur);
+    }
+
+    FluxExport ecrire(FormatNombre format, long valeur) throws IOException {
+        chiffres.setLength(0);
+        return ecrire(format.ajouter(chiffres, valeur));
+    }
+
+    FluxExport ecrire(FormatNombre format, double valeur) throws IOException {
+        chiffres.setLength(0);
+        return ecrire(format.ajouter(chiffres, valeur));
+    }
+
+    // dd/MM/yyyy HH:mm
+    FluxExport ecrireDate(LocalDateTime date) throws IOException {
+        chiffres.setLength(0);
+        return ecrire(Formatage.ajouterDate(chiffres, date));
+    }
+
+    // yyyy-MM-ddTHH:mm:ss
+    FluxExport ecrireDateIso(LocalDateTime date) throws IOException {
+        chiffres.setLength(0);
+        return ecrire(Formatage.ajouterDateIso(chiffres, date));
+    }
+
+    // Champ CSV entouré de guillemets s'il contient le séparateur, un guillemet ou un saut de ligne
+    FluxExport ecrireChampCsv(String champ, char separateur) throws IOException {
+        if (champ == null) {
+            return this;
+        }
+        boolean proteger = false;
+        for (int i = 0; i < champ.length() && !proteger; i++) {
+            char c = champ.charAt(i);
+            proteger = c == separateur || c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!proteger) {
+            return ecrire(champ);
+        }
+        ecrire('"');
+        for (int i = 0; i < champ.length(); i++) {
+            char c = champ.charAt(i);
+            if (c == '"') {
+                ecrire('"');
+            }
+            ecrire(c);
+        }
+        return ecrire('"');
+    }
+
+    FluxExport ecrireChaineJson(String valeur) throws IOException {
+        ecrire('"');
+        for (int i = 0; i < valeur.length(); i++) {
+            char c = valeur.charAt(i);
+            switch (c) {
+                case '"' -> ecrire('\\').ecrire('"');
+                case '\\' -> ecrire('\\').ecrire('\\');
+                case '\n' -> ecrire('\\').ecrire('n');
+                case '\r' -> ecrire('\\').ecrire('r');
+                case '\t' -> ecrire('\\').ecrire('t');
+                default -> {
+                    if (c < 0x20) {
+                        ecrire("\\u00").ecrire(HEXA[c >> 4]).ecrire(HEXA[c & 0xf]);
+                    } else if (Character.isHighSurrogate(c) && i + 1 < valeur.length()
+                            && Character.isLowSurrogate(valeur.charAt(i + 1))) {
+                        ecrirePointDeCode(Character.toCodePoint(c, valeur.charAt(++i)));
+                    } else {
+                        ecrire(c);
+                    }
+                }
+            }
+        }
+        return ecrire('"');
+    }
+
+    long getOctetsNonCompresses() {
+        return octetsNonCompresses + tampon.position();
+    }
+
+    long getOctetsEcrits() {
+        return octetsEcrits;
+    }
+
+    private void vider() throws IOException {
+        tampon.flip();
+        octetsNonCompresses += tampon.remaining();
+        if (compresseur == null) {
+            ecrireCanal(tampon);
+        } else {
+            crc.update(tampon.duplicate());
+            compresseur.setInput(tampon);
+            while (!compresseur.needsInput()) {
+                deflater();
+            }
+            // Le Deflater garde une référence au tampon : la détacher avant de le réutiliser
+            compresseur.setInput(AUCUNE_ENTREE);
+        }
+        tampon.clear();
+    }
+
+    private void deflater() throws IOException {
+        compresseur.deflate(sortieCompressee);
+        sortieCompressee.flip();
+        ecrireCanal(sortieCompressee);
+        sortieCompressee.clear();
+    }
+
+    private void ecrireCanal(ByteBuffer source) throws IOException {
+        while (source.hasRemaining()) {
+            octetsEcrits += canal.write(source);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            vider();
+            if (compresseur != null) {
+                compresseur.finish();
+                while (!compresseur.finished()) {
+                    deflater();
+                }
+                // Pied gzip : CRC32 puis taille non compressée modulo 2^32, en petit-boutiste
+                ByteBuffer pied = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+                pied.putInt((int) crc.getValue());
+                pied.putInt((int) octetsNonCompresses);
+                pied.flip();
+                ecrireCanal(pied);
+            }
+        } finally {
+            if (compresseur != null) {
+                compresseur.end();
+            }
+            canal.close();
+        }
+    }
+}
@@ -1,135 +1,1383 @@
 package org.population.gestion;
 
 import java.sql.*;
-import java.text.DecimalFormat;
-import java.text.DecimalFormatSymbols;
 import java.time.LocalDateTime;
-import java.time.format.*;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
 import java.util.function.Function;
 import java.util.stream.*;
 
+import org.population.analyse.ColonnesLocalites;
+import org.population.analyse.MoteurProjection;
+import org.population.analyse.Projection;
+import org.population.analyse.ScenarioCroissance;
+import org.population.analyse.StatistiquesApprochees;
+import org.population.analyse.StatistiquesApprochees.EstimationDensite;
+import org.population.index.AgregatsParTranches;
+import org.population.index.AgregatsParTranches.Agregat;
+import org.population.index.ArbreBK;
+import org.population.index.ArbreQuaternaire;
+import org.population.index.TriePrefixes;
 import org.population.modele.Localite;
 import org.population.modele.Localite.TypePopulation;
 import org.population.modele.LocaliteException;
+import org.population.modele.Pyramide;
+import org.population.recensement.Recensements;
+import org.population.stockage.FichierLocaliteRepository;
+import org.population.stockage.JournalLocal;
+import org.population.stockage.LocaliteRepository;
+import org.population.stockage.MysqlLocaliteRepository;
+import org.population.utils.Formatage;
 
 import java.io.*;
-import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.logging.*;
 
 public class GestionPopulation implements AutoCloseable {
-    private List<Localite> localites;
-    private Connection connexionDB;
+    // Localités réparties par région, chacune sous son propre verrou ; la table (triée par
+    // région) est remplacée, jamais modifiée, quand une nouvelle région apparaît
+    private volatile Map<String, PartitionRegion> partitions = Map.of();
+    // Région de chaque nom (en minuscules) : un nom reste unique toutes régions confondues
+    private volatile Map<String, String> regionParNom = new ConcurrentHashMap<>();
+    // Noms à distance d'édition, pour signaler les quasi-doublons et tolérer les fautes de frappe
+    private volatile ArbreBK nomsApproches = new ArbreBK();
+    // Préfixes des noms, avec les plus peuplés en tête, pour l'autocomplétion
+    private volatile TriePrefixes prefixes = new TriePrefixes(TAILLE_SUGGESTIONS);
+    // Localités géolocalisées, pour les recherches par zone et par proximité
+    private volatile ArbreQuaternaire<Localite> positions = new ArbreQuaternaire<>();
+    // Agrégats par tranches de densité et de population, pour les requêtes par intervalle
+    private volatile AgregatsParTranches parDensite = nouveauxAgregatsDensite();
+    private volatile AgregatsParTranches parPopulation = nouveauxAgregatsPopulation();
+    // Échantillons et esquisses par type, pour les statistiques approchées des gros volumes
+    private volatile StatistiquesApprochees statistiquesApprochees = new StatistiquesApprochees();
+    private final AtomicBoolean reconstitutionEnCours = new AtomicBoolean();
+    // Populations par année de recensement ; instance immuable remplacée à chaque import
+    private volatile Recensements recensements = Recensements.VIDE;
+    // Scénarios de projection configurés, et la variante suivant les tendances des recensements
+    // (null sans deux recensements)
+    private volatile List<ScenarioCroissance> scenarios;
+    private volatile ScenarioCroissance scenarioRecensements;
+    private final MoteurProjection moteurProjection = new MoteurProjection();
+    // Instantané en tableaux primitifs de la dernière version lue par les calculs globaux
+    private volatile ColonnesLocalites colonnes;
+    public static final String FICHIER_SCENARIOS = "resources/scenarios.properties";
+    private static final int TAILLE_SUGGESTIONS = 10;
+    private final LocaliteRepository depot;
+    // Sérialise les écrivains ; les lecteurs (poller, serveur HTTP, interface) ne prennent que
+    // le verrou des régions qu'ils lisent, et ne sont jamais bloqués par une autre région
+    private final ReentrantLock verrouEcritures = new ReentrantLock();
+    // Empreinte du jeu de données : calculée au chargement, puis combinée à chaque modification
+    private volatile long versionDonnees;
+    private CacheRapports cacheRapports;
+    private EcritureDifferee ecritureDifferee;
+    private final List<BiConsumer<Localite, Throwable>> echecsEcriture = new CopyOnWriteArrayList<>();
+    // Journal local des modifications (mode hors ligne), null s'il n'est pas activé
+    private JournalLocal journal;
+    private ScheduledExecutorService synchronisation;
     private static final Logger logger = Logger.getLogger(GestionPopulation.class.getName());
+    private static final int TAILLE_LOT_REJEU = 500;
 
     public GestionPopulation() throws SQLException {
-        localites = new ArrayList<>();
-        initializeDatabase();
-        chargerDonnees();
+        this(null);
     }
 
-    // Initialisation de la base de données sql
-    private void initializeDatabase() throws SQLException {
+    // Avec un répertoire de journal, les modifications sont d'abord écrites localement puis
+    // rejouées en base ; si la base est injoignable, le démarrage se fait depuis le journal
+    public GestionPopulation(Path repertoireJournal) throws SQLException {
+        this(depotParDefaut(), repertoireJournal);
+    }
+
+    public GestionPopulation(LocaliteRepository depot, Path repertoireJournal) throws SQLException {
+        this.depot = depot;
+        if (repertoireJournal != null) {
+            try {
+                journal = new JournalLocal(repertoireJournal);
+            } catch (IOException e) {
+                depot.close();
+                throw new SQLException("Impossible d'ouvrir le journal local", e);
+            }
+        }
+        // Scénarios et recensements entrent dans la version calculée au chargement des localités
+        scenarios = chargerScenarios();
+        chargerRecensements();
+        try {
+            chargerDonnees();
+        } catch (SQLException e) {
+            if (journal == null) {
+                depot.close();
+                throw e;
+            }
+            logger.warning("Base de données injoignable, démarrage hors ligne: " + e.getMessage());
+            chargerDepuisJournal();
+        }
         try {
-            Properties props = new Properties();
-            // Chargement du fichier depuis le chemin absolu
-            String path = "resources/database.properties";
-            FileInputStream fis = new FileInputStream(path);
-            props.load(fis);
-
-            connexionDB = DriverManager.getConnection(
-                    props.getProperty("db.url"),
-                    props.getProperty("db.user"),
-                    props.getProperty("db.password")
-            );
-            createTable();
+            cacheRapports = CacheRapports.parDefaut();
+            // Les rapports des exécutions précédentes ne servent plus que pour la version chargée
+            cacheRapports.invalider(versionDonnees);
         } catch (IOException e) {
-            logger.severe("Erreur lors du chargement des propriétés de la base de données: " + e.getMessage());
-            throw new SQLException("Impossible de se connecter à la base de données", e);
+            logger.warning("Cache des rapports désactivé: " + e.getMessage());
+        }
+        if (journal != null) {
+            demarrerSynchronisation();
         }
     }
 
-    // Création de la table des localités si elle n'existe pas encore
-    private void createTable() throws SQLException {
-        try (Statement stmt = connexionDB.createStatement()) {
-            String sql = """
-                CREATE TABLE IF NOT EXISTS localites (
-                    id INT PRIMARY KEY AUTO_INCREMENT,
-                    nom VARCHAR(100) NOT NULL UNIQUE,
-                    population INT NOT NULL,
-                    superficie DOUBLE NOT NULL,
-                    type VARCHAR(20) NOT NULL,
-                    date_enregistrement TIMESTAMP DEFAULT CURRENT_TIMESTAMP
-                )
-            """;
-            stmt.execute(sql);
+    // null pour désactiver le cache des rapports
+    public void setCacheRapports(CacheRapports cacheRapports) {
+        if (cacheRapports != null) {
+            cacheRapports.invalider(versionDonnees);
         }
+        this.cacheRapports = cacheRapports;
+    }
+
+    // Moteur embarqué si -Dpopulation.stockage.fichier=<répertoire> est défini, MySQL sinon
+    public static LocaliteRepository depotParDefaut() throws SQLException {
+        String repertoire = System.getProperty("population.stockage.fichier");
+        return repertoire == null ? new MysqlLocaliteRepository() : new FichierLocaliteRepository(Path.of(repertoire));
     }
 
     // Chargement des données des localités
     private void chargerDonnees() throws SQLException {
-        String sql = "SELECT * FROM localites";
-        try (PreparedStatement pstmt = connexionDB.prepareStatement(sql);
-             ResultSet rs = pstmt.executeQuery()) {
-
-            while (rs.next()) {
-                try {
-                    Localite localite = new Localite(
-                            rs.getString("nom"),
-                            rs.getInt("population"),
-                            rs.getDouble("superficie"),
-                            TypePopulation.valueOf(rs.getString("type"))
-                    );
-                    localites.add(localite);
-                } catch (LocaliteException e) {
-                    logger.warning("Erreur lors du chargement de la localité: " + e.getMessage());
+        remplacerDonnees(depot.charger());
+        if (journal != null) {
+            // Les modifications pas encore rejouées restent visibles
+            appliquerEnAttente();
+            ecrireInstantane();
+        }
+    }
+
+    // Les recensements sont secondaires : sans eux, l'application démarre avec des séries vides
+    private void chargerRecensements() {
+        try {
+            recensements = depot.chargerRecensements();
+        } catch (SQLException e) {
+            logger.warning("Recensements indisponibles: " + e.getMessage());
+        }
+        majScenarioRecensements();
+    }
+
+    // Scénarios de resources/scenarios.properties s'il existe, scénarios par défaut sinon
+    private static List<ScenarioCroissance> chargerScenarios() {
+        Path fichier = Path.of(FICHIER_SCENARIOS);
+        if (!Files.exists(fichier)) {
+            return ScenarioCroissance.scenariosParDefaut();
+        }
+        try (InputStream in = Files.newInputStream(fichier)) {
+            Properties proprietes = new Properties();
+            proprietes.load(in);
+            List<ScenarioCroissance> lus = ScenarioCroissance.charger(proprietes);
+            if (!lus.isEmpty()) {
+                return lus;
+            }
+            logger.warning("Aucun scénario dans " + fichier + ", scénarios par défaut utilisés");
+        } catch (IOException | IllegalArgumentException e) {
+            logger.warning("Scénarios de " + fichier + " ignorés: " + e.getMessage());
+        }
+        return ScenarioCroissance.scenariosParDefaut();
+    }
+
+    private void remplacerDonnees(List<Localite> nouvelles) {
+        long empreinte = 0;
+        for (Localite localite : nouvelles) {
+            // Somme indépendante de l'ordre de lecture des lignes
+            empreinte += melanger(empreinte(localite));
+        }
+        Map<String, List<Localite>> parRegion = new TreeMap<>();
+        Map<String, String> regions = new ConcurrentHashMap<>(nouvelles.size() * 2);
+        for (Localite localite : nouvelles) {
+            parRegion.computeIfAbsent(localite.getRegion(), r -> new ArrayList<>()).add(localite);
+            regions.put(cleNom(localite.getNom()), localite.getRegion());
+        }
+        Map<String, PartitionRegion> nouvellesPartitions = new TreeMap<>();
+        parRegion.forEach((region, liste) -> nouvellesPartitions.put(region, new PartitionRegion(region, liste)));
+        ArbreBK arbre = new ArbreBK(nouvelles.stream().map(Localite::getNom).collect(Collectors.toList()));
+        TriePrefixes trie = new TriePrefixes(TAILLE_SUGGESTIONS);
+        nouvelles.forEach(l -> trie.ajouter(l.getNom(), l.getPopulation()));
+        ArbreQuaternaire<Localite> quadtree = new ArbreQuaternaire<>();
+        for (Localite localite : nouvelles) {
+            if (localite.estGeolocalisee()) {
+                quadtree.ajouter(localite.getLatitude(), localite.getLongitude(), localite);
+            }
+        }
+        AgregatsParTranches densites = nouveauxAgregatsDensite();
+        AgregatsParTranches populations = nouveauxAgregatsPopulation();
+        for (Localite localite : nouvelles) {
+            densites.ajouter(localite.calculerDensite(), localite.getPopulation(), localite.getSuperficie());
+            populations.ajouter(localite.getPopulation(), localite.getPopulation(), localite.getSuperficie());
+        }
+        StatistiquesApprochees approchees = StatistiquesApprochees.construire(nouvelles);
+        verrouEcritures.lock();
+        try {
+            partitions = Collections.unmodifiableMap(nouvellesPartitions);
+            regionParNom = regions;
+            nomsApproches = arbre;
+            prefixes = trie;
+            positions = quadtree;
+            parDensite = densites;
+            parPopulation = populations;
+            statistiquesApprochees = approchees;
+            long ancienne = versionDonnees;
+            // Les recensements et les scénarios aussi : la version sert d'ETag à l'API et de clé
+            // au cache des rapports (qui contiennent les projections), et tous deux survivent au
+            // redémarrage
+            versionDonnees = melanger(empreinte ^ nouvelles.size() ^ melanger(recensements.empreinte())
+                    ^ melanger(melanger(scenarios.hashCode())));
+            if (ancienne != 0 && ancienne != versionDonnees && cacheRapports != null) {
+                cacheRapports.invalider(versionDonnees);
+            }
+        } finally {
+            verrouEcritures.unlock();
+        }
+    }
+
+    // Démarrage hors ligne : dernier instantané local et modifications journalisées depuis
+    private void chargerDepuisJournal() {
+        remplacerDonnees(journal.lireEtatLocal());
+        logger.info(getNombreLocalites() + " localités chargées depuis le journal local, "
+                + journal.getNombreEnAttente() + " modifications à rejouer");
+    }
+
+    private void appliquerEnAttente() {
+        verrouEcritures.lock();
+        try {
+            for (JournalLocal.Entree entree : journal.getEnAttente()) {
+                Localite localite = entree.getLocalite();
+                switch (entree.getOperation()) {
+                    case AJOUT -> {
+                        if (!regionParNom.containsKey(cleNom(localite.getNom()))) {
+                            indexer(localite);
+                        }
+                    }
+                    case MODIFICATION -> appliquerModifications(Map.of(entree.getNomCible(), localite));
+                    case SUPPRESSION -> appliquerSuppressions(List.of(entree.getNomCible()));
+                    default -> {
+                    }
                 }
             }
+        } finally {
+            verrouEcritures.unlock();
         }
     }
 
+    // L'instantané reflète le journal jusqu'à la séquence lue sous le même verrou
+    private void ecrireInstantane() {
+        List<Localite> etat;
+        long sequence;
+        verrouEcritures.lock();
+        try {
+            etat = concatener(surChaqueRegion(null, ArrayList::new));
+            sequence = journal.getDerniereSequence();
+        } finally {
+            verrouEcritures.unlock();
+        }
+        try {
+            journal.compacter(etat, sequence);
+        } catch (IOException e) {
+            logger.warning("Impossible d'écrire l'instantané local: " + e.getMessage());
+        }
+    }
+
+    private void demarrerSynchronisation() {
+        synchronisation = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "synchronisation-journal");
+            thread.setDaemon(true);
+            return thread;
+        });
+        synchronisation.scheduleWithFixedDelay(this::synchroniserJournal, 0, 10, TimeUnit.SECONDS);
+    }
+
+    // Reconnexion si nécessaire puis rejeu, dans l'ordre, des modifications en attente
+    private void synchroniserJournal() {
+        try {
+            boolean reconnecte = depot.reconnecterSiNecessaire();
+            rejouerJournal();
+            if (reconnecte) {
+                // Prendre en compte les modifications faites par les autres postes entre-temps
+                chargerDonnees();
+            } else if (journal.doitCompacter()) {
+                ecrireInstantane();
+            }
+        } catch (SQLException e) {
+            logger.fine("Synchronisation du journal reportée: " + e.getMessage());
+        } catch (RuntimeException e) {
+            logger.warning("Erreur lors de la synchronisation du journal: " + e.getMessage());
+        }
+    }
+
+    private void rejouerJournal() throws SQLException {
+        List<JournalLocal.Entree> enAttente = journal.getEnAttente();
+        if (enAttente.isEmpty()) {
+            return;
+        }
+        int debut = 0;
+        while (debut < enAttente.size()) {
+            // Suite d'entrées de même nature (une seule fois chaque nom modifié), en un seul lot
+            JournalLocal.Operation operation = enAttente.get(debut).getOperation();
+            Set<String> cibles = new HashSet<>();
+            int fin = debut;
+            while (fin < enAttente.size() && fin - debut < TAILLE_LOT_REJEU
+                    && enAttente.get(fin).getOperation() == operation
+                    && cibles.add(cleNom(enAttente.get(fin).getNomCible()))) {
+                fin++;
+            }
+            List<JournalLocal.Entree> lot = enAttente.subList(debut, fin);
+            try {
+                executerEntrees(lot);
+            } catch (SQLException e) {
+                if (LocaliteRepository.estErreurConnexion(e)) {
+                    throw e;
+                }
+                // Un lot refusé est rejoué entrée par entrée pour isoler les refus
+                rejouerUneParUne(lot);
+            }
+            try {
+                journal.marquerAppliquee(lot.get(lot.size() - 1).getSequence());
+            } catch (IOException e) {
+                logger.warning("Impossible de marquer le journal local: " + e.getMessage());
+            }
+            debut = fin;
+        }
+        logger.info(enAttente.size() + " modifications locales rejouées en base");
+    }
+
+    private void rejouerUneParUne(List<JournalLocal.Entree> lot) throws SQLException {
+        for (JournalLocal.Entree entree : lot) {
+            try {
+                executerEntrees(List.of(entree));
+            } catch (SQLException e) {
+                if (LocaliteRepository.estErreurConnexion(e)) {
+                    throw e;
+                }
+                // Conflit avec une saisie faite ailleurs pendant la coupure : la base fait foi
+                logger.warning("Modification locale refusée par la base (" + entree.getNomCible()
+                        + "): " + e.getMessage());
+                if (entree.getOperation() == JournalLocal.Operation.AJOUT) {
+                    annulerAjout(entree.getLocalite(), e);
+                }
+            }
+        }
+    }
+
+    // Entrées toutes de même nature
+    private void executerEntrees(List<JournalLocal.Entree> entrees) throws SQLException {
+        switch (entrees.get(0).getOperation()) {
+            case AJOUT -> {
+                List<Localite> ajouts = new ArrayList<>(entrees.size());
+                entrees.forEach(e -> ajouts.add(e.getLocalite()));
+                depot.inserer(ajouts);
+            }
+            case MODIFICATION -> {
+                Map<String, Localite> modifications = new LinkedHashMap<>();
+                entrees.forEach(e -> modifications.put(e.getNomCible(), e.getLocalite()));
+                depot.modifier(modifications);
+            }
+            default -> {
+                List<String> noms = new ArrayList<>(entrees.size());
+                entrees.forEach(e -> noms.add(e.getNomCible()));
+                depot.supprimer(noms);
+            }
+        }
+    }
+
+    // Nombre de modifications locales pas encore rejouées en base (0 sans journal)
+    public int getModificationsEnAttente() {
+        return journal == null ? 0 : journal.getNombreEnAttente();
+    }
+
+    public boolean isHorsLigne() {
+        return !depot.isDisponible();
+    }
+
+    // Connexion pour les requêtes paginées en SQL, sur la réplique si elle est configurée et a
+    // rejoué nos écritures ; null si les requêtes doivent être évaluées sur les données en mémoire
+    private Connection connexionSql() throws SQLException {
+        return requetesEnBase() ? ((MysqlLocaliteRepository) depot).getConnexion() : null;
+    }
+
+    // La base ne fait foi que si elle est joignable et a reçu toutes les écritures : hors ligne,
+    // ou tant que le journal local ou l'écriture différée en retiennent, la mémoire est plus à jour
+    private boolean requetesEnBase() {
+        EcritureDifferee ecriture = ecritureDifferee;
+        return depot instanceof MysqlLocaliteRepository && !isHorsLigne() && getModificationsEnAttente() == 0
+                && (ecriture == null || !ecriture.aDesEcrituresEnCours());
+    }
+
+    private static long empreinte(Localite localite) {
+        long h = localite.getNom().hashCode();
+        h = 31 * h + localite.getPopulation();
+        h = 31 * h + Double.hashCode(localite.getSuperficie());
+        h = 31 * h + localite.getRegion().hashCode();
+        h = 31 * h + Objects.hashCode(localite.getLatitude());
+        h = 31 * h + Objects.hashCode(localite.getLongitude());
+        h = 31 * h + (localite.hasRepartition() ? Arrays.hashCode(localite.getRepartition()) : 0);
+        return 31 * h + localite.getType().ordinal();
+    }
+
+    // Fonction de mélange de SplitMix64
+    private static long melanger(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    // À appeler sous verrou d'écriture après chaque modification des données en mémoire
+    private void changerVersion(long empreinteModification) {
+        versionDonnees = melanger(versionDonnees + empreinteModification);
+        CacheRapports cache = cacheRapports;
+        if (cache != null) {
+            cache.invalider(versionDonnees);
+        }
+    }
+
+    // Change dès que les données en mémoire changent ; sert d'ETag et de clé de cache
+    public long getVersionDonnees() {
+        return versionDonnees;
+    }
+
     // Ajouter une localité
     public void ajouterLocalite(Localite localite) throws SQLException {
+        signalerNomsProches(localite);
+        if (journal != null) {
+            ajouterJournalise(localite);
+            return;
+        }
         // Vérification des doublons
-        if (localites.stream().anyMatch(l -> l.getNom().equalsIgnoreCase(localite.getNom()))) {
+        verrouEcritures.lock();
+        try {
+            verifierDoublon(localite);
+        } finally {
+            verrouEcritures.unlock();
+        }
+
+        depot.inserer(List.of(localite));
+        verrouEcritures.lock();
+        try {
+            indexer(localite);
+        } finally {
+            verrouEcritures.unlock();
+        }
+    }
+
+    // Écrit d'abord dans le journal local (fsync partagé) ; le rejeu en base se fait en arrière-plan
+    private void ajouterJournalise(Localite localite) throws SQLException {
+        long sequence;
+        verrouEcritures.lock();
+        try {
+            verifierDoublon(localite);
+            sequence = journal.ajouter(JournalLocal.Operation.AJOUT, localite.getNom(), localite);
+            indexer(localite);
+        } catch (IOException e) {
+            throw new SQLException("Impossible d'écrire dans le journal local", e);
+        } finally {
+            verrouEcritures.unlock();
+        }
+        rendreDurable(sequence);
+    }
+
+    // Attend le fsync du journal puis réveille le rejeu en base
+    private void rendreDurable(long sequence) throws SQLException {
+        try {
+            journal.rendreDurable(sequence);
+        } catch (IOException e) {
+            throw new SQLException("Impossible d'écrire dans le journal local", e);
+        }
+        synchronisation.execute(this::synchroniserJournal);
+    }
+
+    private static String cleNom(String nom) {
+        return PartitionRegion.cle(nom);
+    }
+
+    // À appeler sous verrou d'écriture
+    private void indexer(Localite localite) {
+        partition(localite.getRegion()).ajouter(localite);
+        regionParNom.put(cleNom(localite.getNom()), localite.getRegion());
+        indexerSecondaire(localite);
+        changerVersion(empreinte(localite));
+    }
+
+    // À appeler sous verrou d'écriture : crée au besoin la partition d'une nouvelle région
+    private PartitionRegion partition(String region) {
+        PartitionRegion partition = partitions.get(region);
+        if (partition == null) {
+            Map<String, PartitionRegion> copie = new TreeMap<>(partitions);
+            partition = new PartitionRegion(region, new ArrayList<>());
+            copie.put(region, partition);
+            partitions = Collections.unmodifiableMap(copie);
+        }
+        return partition;
+    }
+
+    private void verifierDoublon(Localite localite) throws SQLException {
+        if (regionParNom.containsKey(cleNom(localite.getNom()))) {
             throw new SQLException("Une localité avec ce nom existe déjà");
         }
+    }
+
+    // Localité portant exactement ce nom (sans tenir compte de la casse), ou null
+    public Localite trouverParNom(String nom) {
+        String cle = cleNom(nom);
+        String region = regionParNom.get(cle);
+        PartitionRegion partition = region == null ? null : partitions.get(region);
+        return partition == null ? null : partition.trouver(cle);
+    }
+
+    // Densités de 0,01 à 1 000 000 hab/km² et populations de 1 à 100 millions, 50 tranches par
+    // puissance de dix : une tranche couvre moins de 5 % de valeurs
+    private static AgregatsParTranches nouveauxAgregatsDensite() {
+        return new AgregatsParTranches(0.01, 1e6, 50);
+    }
+
+    private static AgregatsParTranches nouveauxAgregatsPopulation() {
+        return new AgregatsParTranches(1, 1e8, 50);
+    }
+
+    // Index hors des partitions : noms (distance d'édition et préfixes), positions et agrégats
+    private void indexerSecondaire(Localite localite) {
+        parDensite.ajouter(localite.calculerDensite(), localite.getPopulation(), localite.getSuperficie());
+        parPopulation.ajouter(localite.getPopulation(), localite.getPopulation(), localite.getSuperficie());
+        nomsApproches.ajouter(localite.getNom());
+        prefixes.ajouter(localite.getNom(), localite.getPopulation());
+        statistiquesApprochees.ajouter(localite);
+        if (localite.estGeolocalisee()) {
+            positions.ajouter(localite.getLatitude(), localite.getLongitude(), localite);
+        }
+    }
+
+    private void desindexerSecondaire(Localite localite) {
+        parDensite.retirer(localite.calculerDensite(), localite.getPopulation(), localite.getSuperficie());
+        parPopulation.retirer(localite.getPopulation(), localite.getPopulation(), localite.getSuperficie());
+        nomsApproches.retirer(localite.getNom());
+        prefixes.retirer(localite.getNom());
+        statistiquesApprochees.retirer(localite);
+        if (localite.estGeolocalisee()) {
+            positions.retirer(localite.getLatitude(), localite.getLongitude(), localite);
+        }
+    }
+
+    // Localités dont le nom commence par le préfixe (accents et casse ignorés), les plus
+    // peuplées d'abord ; répond sans parcourir les localités
+    public List<Localite> suggerer(String prefixe, int limite) {
+        List<Localite> suggestions = new ArrayList<>();
+        for (String nom : prefixes.suggerer(prefixe, Math.min(limite, TAILLE_SUGGESTIONS))) {
+            Localite localite = trouverParNom(nom);
+            if (localite != null) {
+                suggestions.add(localite);
+            }
+        }
+        return suggestions;
+    }
+
+    // Autres localités dont le nom ne diffère que par quelques lettres, les accents ou la
+    // ponctuation ("Marwa" pour "Maroua"), ou dont un mot est ce nom ("Mokolo-Centre" pour
+    // "Mokolo") ; les plus proches d'abord
+    public List<Localite> trouverNomsProches(String nom) {
+        List<Localite> proches = new ArrayList<>();
+        for (ArbreBK.Resultat resultat : nomsApproches.rechercher(nom, ArbreBK.distanceTolereePour(nom))) {
+            Localite localite = trouverParNom(resultat.getNom());
+            if (localite != null && !localite.getNom().equalsIgnoreCase(nom)) {
+                proches.add(localite);
+            }
+        }
+        return proches;
+    }
+
+    private void signalerNomsProches(Localite localite) {
+        List<Localite> proches = trouverNomsProches(localite.getNom());
+        if (!proches.isEmpty()) {
+            logger.warning("Ajout de " + localite.getNom() + " : nom proche de "
+                    + proches.stream().limit(5).map(Localite::getNom).collect(Collectors.joining(", ")));
+        }
+    }
+
+    // Nombre, population et superficie des localités dont la densité (hab/km²) est comprise
+    // entre min et max, bornes incluses ; null pour une borne ouverte
+    public Agregat agregerParDensite(Double min, Double max) {
+        return parDensite.interroger(min, max);
+    }
+
+    // Idem pour une population comprise entre min et max
+    public Agregat agregerParPopulation(Integer min, Integer max) {
+        return parPopulation.interroger(min == null ? null : min.doubleValue(), max == null ? null : max.doubleValue());
+    }
+
+    // Agrégat d'une requête qui ne filtre que sur un intervalle (densité ou population) ; null
+    // si la requête a d'autres critères et doit être évaluée localité par localité
+    private Agregat agregatDirect(RequeteLocalites requete) {
+        if (requete.getNomContient() != null || requete.getType() != null || requete.getRegion() != null) {
+            return null;
+        }
+        boolean surDensite = requete.getDensiteMin() != null || requete.getDensiteMax() != null;
+        boolean surPopulation = requete.getPopulationMin() != null || requete.getPopulationMax() != null;
+        if (surDensite && surPopulation) {
+            return null;
+        }
+        return surDensite ? agregerParDensite(requete.getDensiteMin(), requete.getDensiteMax())
+                : agregerParPopulation(requete.getPopulationMin(), requete.getPopulationMax());
+    }
+
+    // Localités géolocalisées dans le rectangle (bornes incluses, en degrés)
+    public List<Localite> rechercherDansRectangle(double latMin, double lonMin, double latMax, double lonMax) {
+        return positions.rechercherRectangle(latMin, lonMin, latMax, lonMax);
+    }
+
+    // Localités géolocalisées à au plus rayonKm du point, les plus proches d'abord
+    public List<Localite> rechercherDansRayon(double latitude, double longitude, double rayonKm) {
+        return positions.rechercherRayon(latitude, longitude, rayonKm);
+    }
+
+    // Les k localités géolocalisées les plus proches du point
+    public List<Localite> plusProches(double latitude, double longitude, int k) {
+        return positions.plusProches(latitude, longitude, k);
+    }
+
+    // Localités situées dans le polygone (sommets {latitude, longitude}, par exemple les limites
+    // d'un arrondissement) : le rectangle englobant passe par l'index, puis chaque candidate est
+    // testée par lancer de rayon
+    public List<Localite> rechercherDansPolygone(List<double[]> sommets) {
+        if (sommets.size() < 3) {
+            return List.of();
+        }
+        double latMin = Double.POSITIVE_INFINITY, lonMin = Double.POSITIVE_INFINITY;
+        double latMax = Double.NEGATIVE_INFINITY, lonMax = Double.NEGATIVE_INFINITY;
+        for (double[] sommet : sommets) {
+            latMin = Math.min(latMin, sommet[0]);
+            latMax = Math.max(latMax, sommet[0]);
+            lonMin = Math.min(lonMin, sommet[1]);
+            lonMax = Math.max(lonMax, sommet[1]);
+        }
+        List<Localite> dedans = new ArrayList<>();
+        for (Localite candidate : positions.rechercherRectangle(latMin, lonMin, latMax, lonMax)) {
+            if (contient(sommets, candidate.getLatitude(), candidate.getLongitude())) {
+                dedans.add(candidate);
+            }
+        }
+        return dedans;
+    }
+
+    private static boolean contient(List<double[]> sommets, double latitude, double longitude) {
+        boolean dedans = false;
+        for (int i = 0, j = sommets.size() - 1; i < sommets.size(); j = i++) {
+            double[] a = sommets.get(i);
+            double[] b = sommets.get(j);
+            if ((a[0] > latitude) != (b[0] > latitude)
+                    && longitude < (b[1] - a[1]) * (latitude - a[0]) / (b[0] - a[0]) + a[1]) {
+                dedans = !dedans;
+            }
+        }
+        return dedans;
+    }
+
+    // Régions présentes en mémoire, dans l'ordre alphabétique
+    public List<String> getRegions() {
+        return new ArrayList<>(partitions.keySet());
+    }
+
+    // Corriger une localité désignée par son nom actuel ; le nom lui-même peut changer
+    public void modifierLocalite(String nomActuel, Localite modifiee) throws SQLException {
+        modifierLocalites(Map.of(nomActuel, modifiee));
+    }
+
+    // Modifications groupées (nom actuel -> nouvelle valeur) : un seul lot dans une seule
+    // transaction, appliqué en entier ou pas du tout
+    public void modifierLocalites(Map<String, Localite> modifications) throws SQLException {
+        if (modifications.isEmpty()) {
+            return;
+        }
+        attendreEcrituresDifferees();
+        if (journal != null) {
+            long sequence = 0;
+            verrouEcritures.lock();
+            try {
+                validerModifications(modifications);
+                for (Map.Entry<String, Localite> modification : modifications.entrySet()) {
+                    sequence = journal.ajouter(JournalLocal.Operation.MODIFICATION,
+                            modification.getKey(), modification.getValue());
+                }
+                appliquerModifications(modifications);
+            } catch (IOException e) {
+                throw new SQLException("Impossible d'écrire dans le journal local", e);
+            } finally {
+                verrouEcritures.unlock();
+            }
+            rendreDurable(sequence);
+            suivreRenommages(modifications);
+            return;
+        }
+
+        verrouEcritures.lock();
+        try {
+            validerModifications(modifications);
+        } finally {
+            verrouEcritures.unlock();
+        }
+        depot.modifier(modifications);
+        verrouEcritures.lock();
+        try {
+            appliquerModifications(modifications);
+        } finally {
+            verrouEcritures.unlock();
+        }
+        suivreRenommages(modifications);
+    }
+
+    // Une localité renommée garde sa série de recensement. La modification elle-même est déjà
+    // validée : un échec ici est seulement signalé
+    private void suivreRenommages(Map<String, Localite> modifications) {
+        verrouEcritures.lock();
+        try {
+            Recensements renommes = recensements;
+            for (Map.Entry<String, Localite> modification : modifications.entrySet()) {
+                renommes = renommes.avecNomChange(modification.getKey(), modification.getValue().getNom());
+            }
+            if (renommes == recensements) {
+                return;
+            }
+            recensements = renommes;
+            majScenarioRecensements();
+            depot.enregistrerRecensements(renommes, List.of());
+        } catch (SQLException e) {
+            logger.warning("Renommage non reporté dans les recensements: " + e.getMessage());
+        } finally {
+            verrouEcritures.unlock();
+        }
+    }
+
+    // Enregistre les populations d'une année de recensement (nom -> population) ; chaque nom doit
+    // désigner une localité connue. Un nouvel import pour la même année complète ou corrige le
+    // précédent.
+    public void enregistrerRecensement(int annee, Map<String, Integer> populations) throws SQLException {
+        if (annee < 1000 || annee > 9999) {
+            throw new SQLException("Année de recensement invalide: " + annee);
+        }
+        if (populations.isEmpty()) {
+            return;
+        }
+        Map<String, Integer> parNom = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> population : populations.entrySet()) {
+            Localite localite = trouverParNom(population.getKey());
+            if (localite == null) {
+                throw new SQLException("Localité introuvable: " + population.getKey());
+            }
+            if (population.getValue() == null || population.getValue() < 0) {
+                throw new SQLException("Population invalide pour " + localite.getNom() + ": " + population.getValue());
+            }
+            parNom.put(localite.getNom(), population.getValue());
+        }
+        verrouEcritures.lock();
+        try {
+            Recensements.Modification modification = recensements.avecRecensement(annee, parNom);
+            depot.enregistrerRecensements(modification.getRecensements(), modification.getAnneesModifiees());
+            recensements = modification.getRecensements();
+            majScenarioRecensements();
+            // Les réponses de l'API sur les recensements portent aussi la version en ETag
+            changerVersion(31L * annee + parNom.hashCode());
+        } finally {
+            verrouEcritures.unlock();
+        }
+        logger.info("Recensement " + annee + " enregistré pour " + parNom.size() + " localités");
+    }
+
+    // Enregistre la répartition par âge et sexe de localités connues (nom -> Pyramide.TAILLE
+    // effectifs) ; passe par modifierLocalites, donc par le journal et les sommes par région
+    public void enregistrerRepartitions(Map<String, int[]> repartitions) throws SQLException {
+        Map<String, Localite> modifications = new LinkedHashMap<>();
+        for (Map.Entry<String, int[]> repartition : repartitions.entrySet()) {
+            Localite localite = trouverParNom(repartition.getKey());
+            if (localite == null) {
+                throw new SQLException("Localité introuvable: " + repartition.getKey());
+            }
+            try {
+                modifications.put(localite.getNom(), localite.avecRepartition(repartition.getValue()));
+            } catch (LocaliteException e) {
+                throw new SQLException(localite.getNom() + ": " + e.getMessage(), e);
+            }
+        }
+        modifierLocalites(modifications);
+    }
+
+    // Le scénario central (ou le premier) où chaque localité recensée suit sa propre tendance
+    private void majScenarioRecensements() {
+        ScenarioCroissance modele = scenarios.stream()
+                .filter(s -> s.getNom().equals("Central"))
+                .findFirst()
+                .orElse(scenarios.get(0));
+        scenarioRecensements = ScenarioCroissance.depuisRecensements("Tendance des recensements", modele, recensements);
+    }
+
+    // Scénarios configurés, suivis de la variante des recensements si elle existe
+    public List<ScenarioCroissance> getScenarios() {
+        List<ScenarioCroissance> tous = new ArrayList<>(scenarios);
+        ScenarioCroissance tendance = scenarioRecensements;
+        if (tendance != null) {
+            tous.add(tendance);
+        }
+        return tous;
+    }
+
+    public void setScenarios(List<ScenarioCroissance> nouveaux) {
+        if (nouveaux.isEmpty()) {
+            throw new IllegalArgumentException("Au moins un scénario est nécessaire");
+        }
+        verrouEcritures.lock();
+        try {
+            scenarios = List.copyOf(nouveaux);
+            majScenarioRecensements();
+            // Les rapports en cache contiennent les projections des anciens scénarios
+            changerVersion(scenarios.hashCode());
+        } finally {
+            verrouEcritures.unlock();
+        }
+    }
+
+    // Instantané en tableaux primitifs de toutes les localités, extrait une fois par version
+    public ColonnesLocalites getColonnes() {
+        long version = versionDonnees;
+        ColonnesLocalites actuelles = colonnes;
+        if (actuelles != null && actuelles.getVersion() == version) {
+            return actuelles;
+        }
+        actuelles = ColonnesLocalites.extraire(version, concatener(surChaqueRegion(null, ArrayList::new)));
+        colonnes = actuelles;
+        return actuelles;
+    }
+
+    // Projections de toutes les localités sous chaque scénario, aux horizons de
+    // MoteurProjection.HORIZONS ; recalculées seulement quand les données ou les scénarios changent
+    public Map<ScenarioCroissance, Projection> projeter() {
+        return moteurProjection.projeter(getColonnes(), getScenarios());
+    }
+
+    // Instantané cohérent des séries : les requêtes de croissance et de tendance s'y font sans verrou
+    public Recensements getRecensements() {
+        return recensements;
+    }
+
+    public void supprimerLocalite(String nom) throws SQLException {
+        supprimerLocalites(List.of(nom));
+    }
+
+    // Suppressions groupées en un seul lot transactionnel
+    public void supprimerLocalites(Collection<String> noms) throws SQLException {
+        if (noms.isEmpty()) {
+            return;
+        }
+        attendreEcrituresDifferees();
+        if (journal != null) {
+            long sequence = 0;
+            verrouEcritures.lock();
+            try {
+                validerSuppressions(noms);
+                for (String nom : noms) {
+                    sequence = journal.ajouter(JournalLocal.Operation.SUPPRESSION, nom, null);
+                }
+                appliquerSuppressions(noms);
+            } catch (IOException e) {
+                throw new SQLException("Impossible d'écrire dans le journal local", e);
+            } finally {
+                verrouEcritures.unlock();
+            }
+            rendreDurable(sequence);
+            return;
+        }
+
+        verrouEcritures.lock();
+        try {
+            validerSuppressions(noms);
+        } finally {
+            verrouEcritures.unlock();
+        }
+        depot.supprimer(noms);
+        verrouEcritures.lock();
+        try {
+            appliquerSuppressions(noms);
+        } finally {
+            verrouEcritures.unlock();
+        }
+    }
 
-        String sql = """
-            INSERT INTO localites (nom, population, superficie, type, date_enregistrement)
-            VALUES (?, ?, ?, ?, ?)
-            """;
+    // Un nouveau nom ne doit appartenir à aucune autre localité, ni être demandé deux fois
+    private void validerModifications(Map<String, Localite> modifications) throws SQLException {
+        Set<String> nouveauxNoms = new HashSet<>();
+        for (Map.Entry<String, Localite> modification : modifications.entrySet()) {
+            Localite actuelle = trouverParNom(modification.getKey());
+            if (actuelle == null) {
+                throw new SQLException("Localité introuvable: " + modification.getKey());
+            }
+            String nouveauNom = cleNom(modification.getValue().getNom());
+            Localite porteur = trouverParNom(nouveauNom);
+            if ((porteur != null && porteur != actuelle) || !nouveauxNoms.add(nouveauNom)) {
+                throw new SQLException("Une localité avec ce nom existe déjà: " + modification.getValue().getNom());
+            }
+        }
+    }
 
-        try (PreparedStatement pstmt = connexionDB.prepareStatement(sql)) {
-            pstmt.setString(1, localite.getNom());
-            pstmt.setInt(2, localite.getPopulation());
-            pstmt.setDouble(3, localite.getSuperficie());
-            pstmt.setString(4, localite.getType().toString());
-            pstmt.setTimestamp(5, Timestamp.valueOf(localite.getDateEnregistrement()));
+    private void validerSuppressions(Collection<String> noms) throws SQLException {
+        for (String nom : noms) {
+            if (!regionParNom.containsKey(cleNom(nom))) {
+                throw new SQLException("Localité introuvable: " + nom);
+            }
+        }
+    }
 
-            pstmt.executeUpdate();
-            localites.add(localite);
+    // À appeler sous verrou d'écriture : un seul parcours par région touchée pour tout le lot ;
+    // une localité qui change de région passe d'une partition à l'autre
+    private void appliquerModifications(Map<String, Localite> modifications) {
+        Map<PartitionRegion, Map<Localite, Localite>> remplacements = new HashMap<>();
+        Map<PartitionRegion, Set<Localite>> departs = new HashMap<>();
+        List<Localite> arrivees = new ArrayList<>();
+        List<Localite> appliquees = new ArrayList<>(modifications.size());
+        long empreinteModifications = 0;
+        for (Map.Entry<String, Localite> modification : modifications.entrySet()) {
+            String cle = cleNom(modification.getKey());
+            String region = regionParNom.get(cle);
+            PartitionRegion partition = region == null ? null : partitions.get(region);
+            Localite actuelle = partition == null ? null : partition.trouver(cle);
+            if (actuelle == null) {
+                continue;
+            }
+            Localite nouvelle = modification.getValue();
+            regionParNom.remove(cle);
+            desindexerSecondaire(actuelle);
+            appliquees.add(nouvelle);
+            empreinteModifications += melanger(empreinte(actuelle) ^ melanger(empreinte(nouvelle)));
+            if (nouvelle.getRegion().equals(region)) {
+                remplacements.computeIfAbsent(partition, p -> new IdentityHashMap<>()).put(actuelle, nouvelle);
+            } else {
+                departs.computeIfAbsent(partition, p -> Collections.newSetFromMap(new IdentityHashMap<>()))
+                        .add(actuelle);
+                arrivees.add(nouvelle);
+            }
+        }
+        if (appliquees.isEmpty()) {
+            return;
+        }
+        remplacements.forEach(PartitionRegion::remplacer);
+        departs.forEach(PartitionRegion::retirer);
+        for (Localite nouvelle : arrivees) {
+            partition(nouvelle.getRegion()).ajouter(nouvelle);
+        }
+        for (Localite nouvelle : appliquees) {
+            regionParNom.put(cleNom(nouvelle.getNom()), nouvelle.getRegion());
+            indexerSecondaire(nouvelle);
+        }
+        changerVersion(empreinteModifications);
+    }
+
+    // À appeler sous verrou d'écriture
+    private void appliquerSuppressions(Collection<String> noms) {
+        Map<PartitionRegion, Set<Localite>> parPartition = new HashMap<>();
+        for (String nom : noms) {
+            String cle = cleNom(nom);
+            String region = regionParNom.remove(cle);
+            PartitionRegion partition = region == null ? null : partitions.get(region);
+            Localite localite = partition == null ? null : partition.trouver(cle);
+            if (localite != null) {
+                parPartition.computeIfAbsent(partition, p -> Collections.newSetFromMap(new IdentityHashMap<>()))
+                        .add(localite);
+            }
+        }
+        long empreinteSuppressions = 0;
+        boolean supprimees = false;
+        for (Map.Entry<PartitionRegion, Set<Localite>> entree : parPartition.entrySet()) {
+            for (Localite localite : entree.getKey().retirer(entree.getValue())) {
+                desindexerSecondaire(localite);
+                empreinteSuppressions += melanger(empreinte(localite));
+                supprimees = true;
+            }
+        }
+        if (supprimees) {
+            changerVersion(~empreinteSuppressions);
+        }
+    }
+
+    // Une modification ne doit pas passer avant l'insertion encore en file de la même localité
+    private void attendreEcrituresDifferees() {
+        EcritureDifferee ecriture = ecritureDifferee;
+        if (ecriture != null) {
+            ecriture.vider();
+        }
+    }
+
+    // Active l'écriture différée : ajouterLocaliteAsync ne bloque plus sur la base
+    public synchronized void activerEcritureDifferee() {
+        if (ecritureDifferee == null) {
+            ecritureDifferee = new EcritureDifferee(depot, this::annulerAjout);
+        }
+    }
+
+    // null si l'écriture différée n'est pas activée
+    public EcritureDifferee getEcritureDifferee() {
+        return ecritureDifferee;
+    }
+
+    // Appelé pour chaque localité dont l'écriture différée a définitivement échoué
+    public void ajouterEcouteurEchecEcriture(BiConsumer<Localite, Throwable> ecouteur) {
+        echecsEcriture.add(ecouteur);
+    }
+
+    // Ajout visible immédiatement en mémoire ; le résultat se termine une fois la ligne validée
+    // en base, ou en échec (la localité est alors retirée de la mémoire). Sans écriture différée,
+    // l'ajout est synchrone.
+    public CompletableFuture<Localite> ajouterLocaliteAsync(Localite localite) throws SQLException {
+        EcritureDifferee ecriture = ecritureDifferee;
+        // Avec le journal local, l'ajout est déjà rapide et durable sur le poste
+        if (ecriture == null || journal != null) {
+            ajouterLocalite(localite);
+            return CompletableFuture.completedFuture(localite);
+        }
+        signalerNomsProches(localite);
+
+        verrouEcritures.lock();
+        try {
+            verifierDoublon(localite);
+            indexer(localite);
+        } finally {
+            verrouEcritures.unlock();
+        }
+        return ecriture.soumettre(localite);
+    }
+
+    private void annulerAjout(Localite localite, Throwable cause) {
+        verrouEcritures.lock();
+        try {
+            PartitionRegion partition = partitions.get(localite.getRegion());
+            if (partition != null && !partition.retirer(Set.of(localite)).isEmpty()) {
+                regionParNom.remove(cleNom(localite.getNom()), localite.getRegion());
+                desindexerSecondaire(localite);
+                changerVersion(empreinte(localite));
+            }
+        } finally {
+            verrouEcritures.unlock();
+        }
+        for (BiConsumer<Localite, Throwable> ecouteur : echecsEcriture) {
+            ecouteur.accept(localite, cause);
         }
     }
 
     // Réchercher les localités par leurs noms
+    // Sans résultat exact, les noms proches sont proposés (faute de frappe, accent oublié)
     public List<Localite> rechercherParNom(String nom) {
         if (nom == null || nom.trim().isEmpty()) {
-            return new ArrayList<>(localites); // Retourne toutes les localités si aucun nom n'est spécifié
+            return concatener(surChaqueRegion(null, ArrayList::new)); // Retourne toutes les localités si aucun nom n'est spécifié
+        }
+        String recherche = nom.toLowerCase().trim();
+        List<Localite> resultats = concatener(surChaqueRegion(null, liste -> liste.stream()
+                .filter(l -> l.getNom().toLowerCase().contains(recherche))
+                .collect(Collectors.toList())));
+        if (resultats.isEmpty() && recherche.length() >= 3) {
+            return trouverNomsProches(recherche);
         }
+        return resultats;
+    }
 
-        return localites.stream()
-                .filter(l -> l.getNom().toLowerCase().contains(nom.toLowerCase().trim()))
-                .collect(Collectors.toList());
+    public int getNombreLocalites() {
+        int nombre = 0;
+        for (PartitionRegion partition : partitions.values()) {
+            nombre += partition.taille();
+        }
+        return nombre;
+    }
+
+    // Même lecture sur chaque région (ou sur la seule région demandée), en parallèle quand il y
+    // en a plusieurs ; les résultats sont rendus dans l'ordre des régions
+    private <T> List<T> surChaqueRegion(String region, Function<List<Localite>, T> lecture) {
+        Collection<PartitionRegion> cibles;
+        if (region == null) {
+            cibles = partitions.values();
+        } else {
+            PartitionRegion partition = partitions.get(region);
+            cibles = partition == null ? List.of() : List.of(partition);
+        }
+        Stream<PartitionRegion> flux = cibles.size() > 1 ? cibles.parallelStream() : cibles.stream();
+        return flux.map(partition -> partition.lire(lecture)).collect(Collectors.toList());
+    }
+
+    private static List<Localite> concatener(List<? extends List<Localite>> parties) {
+        int taille = 0;
+        for (List<Localite> partie : parties) {
+            taille += partie.size();
+        }
+        List<Localite> resultat = new ArrayList<>(taille);
+        parties.forEach(resultat::addAll);
+        return resultat;
+    }
+
+    // Lire une page de résultats directement en base, à partir du curseur de la page précédente
+    public PageLocalites chargerPage(RequeteLocalites requete, PageLocalites precedente) throws SQLException {
+        int dejaLus = precedente == null ? 0 : precedente.getLus();
+        int taille = Math.min(requete.getTaillePage(), requete.getLimite() - dejaLus);
+        if (taille <= 0 || (precedente != null && !precedente.aSuivante())) {
+            return new PageLocalites(new ArrayList<>(), null, dejaLus);
+        }
+        Connection conn = connexionSql();
+        if (conn == null) {
+            return chargerPageEnMemoire(requete, dejaLus, taille);
+        }
+
+        List<Object> parametres = new ArrayList<>();
+        String sql = requete.construireSql(precedente == null ? null : precedente.getCurseurSuivant(),
+                taille, parametres);
+        List<Localite> page = new ArrayList<>(taille);
+        RequeteLocalites.Curseur dernier = null;
+        // Lignes lues, invalides comprises : c'est ce nombre qui dit si la base en a d'autres
+        int lignes = 0;
+
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            RequeteLocalites.lierParametres(pstmt, parametres);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    lignes++;
+                    // Le curseur avance même sur une ligne invalide pour ne pas la relire
+                    dernier = new RequeteLocalites.Curseur(
+                            requete.getTri() == RequeteLocalites.Tri.NOM ? null : rs.getObject(requete.getTri().getColonne()),
+                            rs.getString("nom"));
+                    try {
+                        page.add(MysqlLocaliteRepository.lireLocalite(rs));
+                    } catch (LocaliteException e) {
+                        logger.warning("Erreur lors du chargement de la localité: " + e.getMessage());
+                    }
+                }
+            }
+        }
+
+        int lus = dejaLus + lignes;
+        boolean complete = dernier != null && lignes == taille && lus < requete.getLimite();
+        return new PageLocalites(page, complete ? dernier : null, lus);
+    }
+
+    // Sans base SQL, la requête est évaluée sur les données en mémoire ; le curseur ne sert
+    // qu'à signaler qu'une page suit, la position étant le nombre de localités déjà lues
+    private PageLocalites chargerPageEnMemoire(RequeteLocalites requete, int dejaLus, int taille) {
+        List<Localite> selection = selectionner(requete);
+        int fin = Math.min(selection.size(), dejaLus + taille);
+        List<Localite> page = dejaLus < fin ? new ArrayList<>(selection.subList(dejaLus, fin)) : new ArrayList<>();
+        boolean complete = !page.isEmpty() && page.size() == taille && fin < selection.size();
+        RequeteLocalites.Curseur dernier = complete
+                ? new RequeteLocalites.Curseur(null, page.get(page.size() - 1).getNom()) : null;
+        return new PageLocalites(page, dernier, fin);
+    }
+
+    // Localités filtrées et triées selon la requête, dans la limite demandée
+    // (chaque région fournit ses meilleurs candidats, fusionnés ensuite)
+    private List<Localite> selectionner(RequeteLocalites requete) {
+        Comparator<Localite> ordre = requete.comparateur();
+        List<Localite> selection = concatener(surChaqueRegion(requete.getRegion(), liste -> liste.stream()
+                .filter(requete::accepte)
+                .sorted(ordre)
+                .limit(requete.getLimite())
+                .collect(Collectors.toList())));
+        selection.sort(ordre);
+        return selection.size() > requete.getLimite()
+                ? new ArrayList<>(selection.subList(0, requete.getLimite())) : selection;
+    }
+
+    // Parcours paresseux : chaque page n'est lue qu'au moment où l'itérateur la demande
+    public Iterator<List<Localite>> parcourir(RequeteLocalites requete) {
+        return new Iterator<>() {
+            private PageLocalites courante;
+            private PageLocalites suivante;
+
+            @Override
+            public boolean hasNext() {
+                if (suivante == null && (courante == null || courante.aSuivante())) {
+                    try {
+                        suivante = chargerPage(requete, courante);
+                        // Une page dont toutes les lignes sont invalides n'arrête pas le parcours
+                        while (suivante.getLocalites().isEmpty() && suivante.aSuivante()) {
+                            suivante = chargerPage(requete, suivante);
+                        }
+                    } catch (SQLException e) {
+                        throw new IllegalStateException("Erreur lors de la lecture d'une page de localités", e);
+                    }
+                }
+                return suivante != null && !suivante.getLocalites().isEmpty();
+            }
+
+            @Override
+            public List<Localite> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                courante = suivante;
+                suivante = null;
+                return courante.getLocalites();
+            }
+        };
+    }
+
+    // Nombre de localités correspondant aux filtres de la requête
+    public int compter(RequeteLocalites requete) throws SQLException {
+        Connection conn = connexionSql();
+        if (conn == null) {
+            Agregat agregat = agregatDirect(requete);
+            if (agregat != null) {
+                return (int) agregat.getNombre();
+            }
+            return surChaqueRegion(requete.getRegion(), liste -> liste.stream().filter(requete::accepte).count())
+                    .stream().mapToInt(Long::intValue).sum();
+        }
+        List<Object> parametres = new ArrayList<>();
+        String sql = "SELECT COUNT(*) FROM localites" + requete.clauseFiltres(parametres);
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            RequeteLocalites.lierParametres(pstmt, parametres);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    public long sommePopulation(RequeteLocalites requete) throws SQLException {
+        Connection conn = connexionSql();
+        if (conn == null) {
+            Agregat agregat = agregatDirect(requete);
+            if (agregat != null) {
+                return agregat.getPopulation();
+            }
+            return surChaqueRegion(requete.getRegion(), liste -> liste.stream()
+                    .filter(requete::accepte).mapToLong(Localite::getPopulation).sum())
+                    .stream().mapToLong(Long::longValue).sum();
+        }
+        List<Object> parametres = new ArrayList<>();
+        String sql = "SELECT COALESCE(SUM(population), 0) FROM localites" + requete.clauseFiltres(parametres);
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            RequeteLocalites.lierParametres(pstmt, parametres);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    // Source de pages à accès direct : le curseur de fin de chaque page lue est retenu, de sorte
+    // qu'un défilement séquentiel reste en keyset et que seul un saut lointain utilise OFFSET
+    public SourcePagesLocalites sourcePaginee(RequeteLocalites requete) {
+        if (!requetesEnBase()) {
+            return sourceEnMemoire(requete);
+        }
+        return new SourcePagesLocalites() {
+            private final Map<Integer, RequeteLocalites.Curseur> finsDePage = new ConcurrentHashMap<>();
+
+            @Override
+            public int compter() throws SQLException {
+                return GestionPopulation.this.compter(requete);
+            }
+
+            @Override
+            public long sommePopulation() throws SQLException {
+                return GestionPopulation.this.sommePopulation(requete);
+            }
+
+            @Override
+            public List<Localite> chargerPage(int indexPage, int taillePage) throws SQLException {
+                RequeteLocalites.Curseur precedent = indexPage == 0 ? null : finsDePage.get(indexPage - 1);
+                int decalage = (indexPage == 0 || precedent != null) ? 0 : indexPage * taillePage;
+
+                // Passée hors ligne depuis sa création, la source ne mélange pas pages en base et
+                // pages en mémoire : l'erreur s'affiche jusqu'au prochain rafraîchissement de la vue
+                Connection conn = connexionSql();
+                if (conn == null) {
+                    throw new SQLException("Base de données indisponible ou écritures en attente");
+                }
+                List<Object> parametres = new ArrayList<>();
+                String sql = requete.construireSql(precedent, taillePage, decalage, parametres);
+                List<Localite> page = new ArrayList<>(taillePage);
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    RequeteLocalites.lierParametres(pstmt, parametres);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        RequeteLocalites.Curseur dernier = null;
+                        while (rs.next()) {
+                            dernier = new RequeteLocalites.Curseur(
+                                    requete.getTri() == RequeteLocalites.Tri.NOM ? null : rs.getObject(requete.getTri().getColonne()),
+                                    rs.getString("nom"));
+                            try {
+                                page.add(MysqlLocaliteRepository.lireLocalite(rs));
+                            } catch (LocaliteException e) {
+                                logger.warning("Erreur lors du chargement de la localité: " + e.getMessage());
+                            }
+                        }
+                        if (dernier != null) {
+                            finsDePage.put(indexPage, dernier);
+                        }
+                    }
+                }
+                return page;
+            }
+        };
+    }
+
+    // Source figée au premier accès, pour que les pages restent cohérentes entre elles
+    private SourcePagesLocalites sourceEnMemoire(RequeteLocalites requete) {
+        return new SourcePagesLocalites() {
+            private volatile List<Localite> selection;
+
+            private List<Localite> selection() {
+                List<Localite> courante = selection;
+                if (courante == null) {
+                    courante = selectionner(requete);
+                    selection = courante;
+                }
+                return courante;
+            }
+
+            @Override
+            public int compter() {
+                return selection().size();
+            }
+
+            @Override
+            public long sommePopulation() {
+                return selection().stream().mapToLong(Localite::getPopulation).sum();
+            }
+
+            @Override
+            public List<Localite> chargerPage(int indexPage, int taillePage) {
+                List<Localite> toutes = selection();
+                int debut = Math.min(toutes.size(), indexPage * taillePage);
+                int fin = Math.min(toutes.size(), debut + taillePage);
+                return new ArrayList<>(toutes.subList(debut, fin));
+            }
+        };
     }
 
-    public Connection getConnection() {
-        return connexionDB;
+    // Nombre de localités enregistrées ou modifiées dans le stockage depuis l'instant donné
+    public int compterChangementsDepuis(LocalDateTime depuis) throws SQLException {
+        return depot.compterChangementsDepuis(depuis);
     }
 
     // Format de sortie pour le rapport de densité
     public enum FormatRapport {
-        TXT, CSV, HTML
+        TXT("txt", false),
+        CSV("csv", false),
+        HTML("html", false),
+        CSV_GZ("csv.gz", true),
+        JSONL("jsonl", false),
+        JSONL_GZ("jsonl.gz", true),
+        XLSX("xlsx", true);
+
+        private final String extension;
+        private final boolean compresse;
+
+        FormatRapport(String extension, boolean compresse) {
+            this.extension = extension;
+            this.compresse = compresse;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        public boolean isCompresse() {
+            return compresse;
+        }
     }
 
     // Configuration pour la génération du rapport
@@ -148,6 +1396,12 @@ public class GestionPopulation implements AutoCloseable {
             fichierSortie = builder.fichierSortie;
         }
 
+        public int getLimiteResultats() { return limiteResultats; }
+        public FormatRapport getFormat() { return format; }
+        public boolean isInclureStatistiques() { return inclureStatistiques; }
+        public boolean isGrouperParType() { return grouperParType; }
+        public String getFichierSortie() { return fichierSortie; }
+
         public static class Builder {
             private int limiteResultats = Integer.MAX_VALUE;
             private FormatRapport format = FormatRapport.TXT;
@@ -186,10 +1440,35 @@ public class GestionPopulation implements AutoCloseable {
     }
 
     // Génerer un rapport détaillé des localités selon leur densité de population et selon format de sorti.
-    public void genererRapportDensite(ConfigurationRapport config) throws IOException {
+    // Un rapport déjà produit pour la même version des données et les mêmes options est recopié
+    // depuis le cache au lieu d'être reconstruit
+    public ResultatExport genererRapportDensite(ConfigurationRapport config) throws IOException {
+        CacheRapports cache = cacheRapports;
+        long version = versionDonnees;
+        if (cache != null) {
+            ResultatExport enCache = cache.servir(version, config);
+            if (enCache != null) {
+                return enCache;
+            }
+        }
+
+        ResultatExport resultat = produireRapport(config);
+        if (cache != null) {
+            cache.stocker(version, config, resultat);
+        }
+        return resultat;
+    }
+
+    private ResultatExport produireRapport(ConfigurationRapport config) throws IOException {
         // Préparer les données
-        Map<TypePopulation, List<Localite>> localitesParType = localites.stream()
-                .sorted((l1, l2) -> Double.compare(l2.calculerDensite(), l1.calculerDensite()))
+        // Chaque région fournit ses localités les plus denses, fusionnées ensuite
+        Comparator<Localite> parDensite = (l1, l2) -> Double.compare(l2.calculerDensite(), l1.calculerDensite());
+        Map<TypePopulation, List<Localite>> localitesParType = concatener(surChaqueRegion(null, liste -> liste.stream()
+                .sorted(parDensite)
+                .limit(config.limiteResultats)
+                .collect(Collectors.toList())))
+                .stream()
+                .sorted(parDensite)
                 .limit(config.limiteResultats)
                 .collect(Collectors.groupingBy(
                         Localite::getType,
@@ -198,9 +1477,20 @@ public class GestionPopulation implements AutoCloseable {
 
         switch (config.format) {
             case TXT -> genererRapportTXT(config, localitesParType);
-            case CSV -> genererRapportCSV(config, localitesParType);
             case HTML -> genererRapportHTML(config, localitesParType);
+            case CSV, CSV_GZ -> {
+                return genererRapportCSV(config, localitesParType);
+            }
+            case JSONL, JSONL_GZ -> {
+                return genererRapportJSONL(config, localitesParType);
+            }
+            case XLSX -> {
+                return ExportXlsx.generer(config.fichierSortie, config.inclureStatistiques,
+                        config.grouperParType, localitesParType);
+            }
         }
+        long taille = Files.size(Path.of(config.fichierSortie));
+        return new ResultatExport(config.fichierSortie, taille, taille);
     }
 
     // Génerer un rapport txt
@@ -210,11 +1500,13 @@ public class GestionPopulation implements AutoCloseable {
             // En-tête
             writer.println("RAPPORT DES DENSITÉS DE POPULATION");
             writer.println("=================================");
-            writer.printf("Date du rapport: %s%n%n",
-                    LocalDateTime.now().format(DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm")));
+            writer.print("Date du rapport: ");
+            writer.println(Formatage.formaterDate(LocalDateTime.now()));
+            writer.println();
 
             if (config.inclureStatistiques) {
                 ajouterStatistiquesTXT(writer, localitesParType);
+                ajouterProjectionsTXT(writer);
             }
 
             // Détails des localités
@@ -235,59 +1527,55 @@ public class GestionPopulation implements AutoCloseable {
         }
     }
 
-    private void genererRapportCSV(ConfigurationRapport config, Map<TypePopulation, List<Localite>> localitesParType)
+    private ResultatExport genererRapportCSV(ConfigurationRapport config,
+                                             Map<TypePopulation, List<Localite>> localitesParType)
             throws IOException {
-        // Utiliser un BufferedWriter avec l'encodage UTF-8 et BOM pour Excel
-        try (BufferedWriter writer = new BufferedWriter(
-                new OutputStreamWriter(
-                        new FileOutputStream(config.fichierSortie),
-                        StandardCharsets.UTF_8))) {
-
+        // Écriture en flux UTF-8 avec BOM pour Excel, compressée en gzip pour CSV_GZ
+        FluxExport flux = FluxExport.ouvrir(config.fichierSortie, config.format.isCompresse());
+        try (flux) {
             // Ajouter le BOM pour Excel
-            writer.write('\ufeff');
-
-            // Fonction pour échapper les champs CSV
-            Function<String, String> escapeCSV = (String field) -> {
-                if (field == null) {
-                    return "";
-                }
-                // Échapper les guillemets et entourer de guillemets si nécessaire
-                if (field.contains("\"") || field.contains(",") || field.contains("\n")) {
-                    return "\"" + field.replace("\"", "\"\"") + "\"";
-                }
-                return field;
-            };
+            flux.ecrire('\ufeff');
 
             // En-tête CSV
-            String[] headers = {"Type", "Nom", "Population", "Superficie (km²)", "Densité (hab/km²)", "Date d'enregistrement"};
-            writer.write(String.join(";", headers));
-            writer.newLine();
-
-            // Fonction pour formater les nombres
-            DecimalFormat df = new DecimalFormat("#,##0.00");
-            df.setDecimalFormatSymbols(new DecimalFormatSymbols(Locale.FRANCE));
+            flux.ecrire("Type;Nom;Population;Superficie (km²);Densité (hab/km²);Date d'enregistrement").finLigne();
 
             // Trier et écrire les données
-            localitesParType.values().stream()
-                    .flatMap(List::stream)
-                    .sorted((l1, l2) -> Double.compare(l2.calculerDensite(), l1.calculerDensite()))
-                    .forEach(l -> {
-                        try {
-                            String[] fields = {
-                                    escapeCSV.apply(l.getType().toString()),
-                                    escapeCSV.apply(l.getNom()),
-                                    String.valueOf(l.getPopulation()),
-                                    df.format(l.getSuperficie()),
-                                    df.format(l.calculerDensite()),
-                                    l.getDateEnregistrement().format(DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm"))
-                            };
-                            writer.write(String.join(";", fields));
-                            writer.newLine();
-                        } catch (IOException e) {
-                            throw new UncheckedIOException(e);
-                        }
-                    });
+            for (Localite l : trierParDensite(localitesParType)) {
+                flux.ecrireChampCsv(l.getType().toString(), ';').ecrire(';');
+                flux.ecrireChampCsv(l.getNom(), ';').ecrire(';');
+                flux.ecrireEntier(l.getPopulation()).ecrire(';');
+                flux.ecrire(Formatage.DECIMAL_2_FRANCAIS, l.getSuperficie()).ecrire(';');
+                flux.ecrire(Formatage.DECIMAL_2_FRANCAIS, l.calculerDensite()).ecrire(';');
+                flux.ecrireDate(l.getDateEnregistrement()).finLigne();
+            }
         }
+        return new ResultatExport(config.fichierSortie, flux.getOctetsNonCompresses(), flux.getOctetsEcrits());
+    }
+
+    // Un objet JSON par ligne ; les options de statistiques et de groupement ne s'appliquent pas
+    private ResultatExport genererRapportJSONL(ConfigurationRapport config,
+                                               Map<TypePopulation, List<Localite>> localitesParType)
+            throws IOException {
+        FluxExport flux = FluxExport.ouvrir(config.fichierSortie, config.format.isCompresse());
+        try (flux) {
+            for (Localite l : trierParDensite(localitesParType)) {
+                flux.ecrire("{\"type\":").ecrireChaineJson(l.getType().toString());
+                flux.ecrire(",\"nom\":").ecrireChaineJson(l.getNom());
+                flux.ecrire(",\"population\":").ecrireEntier(l.getPopulation());
+                flux.ecrire(",\"superficie\":").ecrire(Formatage.DECIMAL_2_POINT, l.getSuperficie());
+                flux.ecrire(",\"densite\":").ecrire(Formatage.DECIMAL_2_POINT, l.calculerDensite());
+                flux.ecrire(",\"dateEnregistrement\":\"").ecrireDateIso(l.getDateEnregistrement());
+                flux.ecrire("\"}\n");
+            }
+        }
+        return new ResultatExport(config.fichierSortie, flux.getOctetsNonCompresses(), flux.getOctetsEcrits());
+    }
+
+    private static List<Localite> trierParDensite(Map<TypePopulation, List<Localite>> localitesParType) {
+        return localitesParType.values().stream()
+                .flatMap(List::stream)
+                .sorted((l1, l2) -> Double.compare(l2.calculerDensite(), l1.calculerDensite()))
+                .collect(Collectors.toList());
     }
 
     private void genererRapportHTML(ConfigurationRapport config, Map<TypePopulation, List<Localite>> localitesParType)
@@ -421,11 +1709,13 @@ public class GestionPopulation implements AutoCloseable {
                 """);
 
             writer.println("<h1>Rapport des densités de population</h1>");
-            writer.printf("<p>Généré le %s</p>%n",
-                    LocalDateTime.now().format(DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm")));
+            writer.print("<p>Généré le ");
+            writer.print(Formatage.formaterDate(LocalDateTime.now()));
+            writer.println("</p>");
 
             if (config.inclureStatistiques) {
                 ajouterStatistiquesHTML(writer, localitesParType);
+                ajouterProjectionsHTML(writer);
             }
 
             if (config.grouperParType) {
@@ -449,51 +1739,157 @@ public class GestionPopulation implements AutoCloseable {
         }
     }
 
+    // Statistiques des densités des localités du rapport, sur leurs colonnes primitives ; partagé
+    // par tous les formats, XLSX compris
+    static DoubleSummaryStatistics statistiquesDensites(Map<TypePopulation, List<Localite>> localitesParType) {
+        return ColonnesLocalites.extraire(0, concatener(new ArrayList<>(localitesParType.values())))
+                .statistiquesDensites();
+    }
+
     private void ajouterStatistiquesTXT(PrintWriter writer, Map<TypePopulation, List<Localite>> localitesParType) {
-        DoubleSummaryStatistics stats = localitesParType.values().stream()
-                .flatMap(List::stream)
-                .mapToDouble(Localite::calculerDensite)
-                .summaryStatistics();
+        DoubleSummaryStatistics stats = statistiquesDensites(localitesParType);
 
         writer.println("STATISTIQUES GÉNÉRALES");
         writer.println("-----------------------");
-        writer.printf("Nombre total de localités: %d%n", stats.getCount());
-        writer.printf("Densité moyenne: %.2f hab/km²%n", stats.getAverage());
-        writer.printf("Densité maximale: %.2f hab/km²%n", stats.getMax());
-        writer.printf("Densité minimale: %.2f hab/km²%n", stats.getMin());
-        writer.println();
+        StringBuilder sb = Formatage.tampon();
+        sb.append("Nombre total de localités: ").append(stats.getCount()).append(System.lineSeparator());
+        ajouterLigneDensite(sb.append("Densité moyenne: "), stats.getAverage(), " hab/km²");
+        ajouterLigneDensite(sb.append("Densité maximale: "), stats.getMax(), " hab/km²");
+        ajouterLigneDensite(sb.append("Densité minimale: "), stats.getMin(), " hab/km²");
+        sb.append(System.lineSeparator());
+        ecrire(writer, sb);
     }
 
     private void ajouterStatistiquesHTML(PrintWriter writer, Map<TypePopulation, List<Localite>> localitesParType) {
-        DoubleSummaryStatistics stats = localitesParType.values().stream()
-                .flatMap(List::stream)
-                .mapToDouble(Localite::calculerDensite)
-                .summaryStatistics();
+        DoubleSummaryStatistics stats = statistiquesDensites(localitesParType);
 
         writer.println("<div class=\"stats\">");
         writer.println("<h2>Statistiques générales</h2>");
         writer.println("<ul>");
-        writer.printf("<li>Nombre total de localités: %d</li>%n", stats.getCount());
-        writer.printf("<li>Densité moyenne: %.2f hab/km²</li>%n", stats.getAverage());
-        writer.printf("<li>Densité maximale: %.2f hab/km²</li>%n", stats.getMax());
-        writer.printf("<li>Densité minimale: %.2f hab/km²</li>%n", stats.getMin());
+        StringBuilder sb = Formatage.tampon();
+        sb.append("<li>Nombre total de localités: ").append(stats.getCount()).append("</li>").append(System.lineSeparator());
+        ajouterLigneDensite(sb.append("<li>Densité moyenne: "), stats.getAverage(), " hab/km²</li>");
+        ajouterLigneDensite(sb.append("<li>Densité maximale: "), stats.getMax(), " hab/km²</li>");
+        ajouterLigneDensite(sb.append("<li>Densité minimale: "), stats.getMin(), " hab/km²</li>");
+        ecrire(writer, sb);
         writer.println("</ul>");
         writer.println("</div>");
     }
 
+    // Population projetée de toutes les localités (et non des seules localités du rapport),
+    // par scénario et par type, à chaque horizon
+    private void ajouterProjectionsTXT(PrintWriter writer) {
+        int[] horizons = MoteurProjection.HORIZONS;
+        writer.println("PROJECTIONS DE POPULATION (ensemble des localités)");
+        writer.println("--------------------------------------------------");
+        StringBuilder sb = Formatage.tampon();
+        String finLigne = System.lineSeparator();
+        Formatage.completer(sb.append("Scénario"), 0, 26).append(' ');
+        int debut = sb.length();
+        Formatage.completer(sb.append("Type"), debut, 10).append(' ');
+        debut = sb.length();
+        Formatage.completer(sb.append("Actuelle"), debut, 15).append(' ');
+        for (int horizon : horizons) {
+            debut = sb.length();
+            Formatage.completer(sb.append('+').append(horizon).append(" ans"), debut, 15).append(' ');
+        }
+        sb.append(finLigne);
+        for (Projection projection : projeter().values()) {
+            for (TypePopulation type : TypePopulation.values()) {
+                debut = sb.length();
+                Formatage.completer(sb.append(projection.getScenario().getNom()), debut, 26).append(' ');
+                debut = sb.length();
+                Formatage.completer(sb.append(type), debut, 10).append(' ');
+                debut = sb.length();
+                Formatage.completer(Formatage.ENTIER_GROUPE.ajouter(sb, projection.getPopulationActuelle(type)),
+                        debut, 15).append(' ');
+                for (int h = 0; h < horizons.length; h++) {
+                    debut = sb.length();
+                    Formatage.completer(Formatage.ENTIER_GROUPE.ajouter(sb, projection.getPopulation(h, type)),
+                            debut, 15).append(' ');
+                }
+                sb.append(finLigne);
+            }
+            debut = sb.length();
+            Formatage.completer(sb.append(projection.getScenario().getNom()), debut, 26).append(' ');
+            debut = sb.length();
+            Formatage.completer(sb.append("Densité"), debut, 26).append(' ');
+            for (int h = 0; h < horizons.length; h++) {
+                debut = sb.length();
+                Formatage.completer(Formatage.DECIMAL_2.ajouter(sb, projection.getDensiteGlobale(h)), debut, 15)
+                        .append(' ');
+            }
+            sb.append(finLigne);
+        }
+        sb.append(finLigne);
+        ecrire(writer, sb);
+    }
+
+    private void ajouterProjectionsHTML(PrintWriter writer) {
+        int[] horizons = MoteurProjection.HORIZONS;
+        writer.println("<h2 class=\"type-header\">Projections de population (ensemble des localités)</h2>");
+        writer.println("<table>");
+        StringBuilder sb = Formatage.tampon();
+        String finLigne = System.lineSeparator();
+        sb.append("<tr><th>Scénario</th><th>Type</th><th>Actuelle</th>");
+        for (int horizon : horizons) {
+            sb.append("<th>+").append(horizon).append(" ans</th>");
+        }
+        sb.append("</tr>").append(finLigne);
+        for (Projection projection : projeter().values()) {
+            for (TypePopulation type : TypePopulation.values()) {
+                Formatage.ajouterHtml(sb.append("<tr><td>"), projection.getScenario().getNom()).append("</td>");
+                sb.append("<td>").append(type).append("</td>");
+                Formatage.ENTIER_GROUPE.ajouter(sb.append("<td>"), projection.getPopulationActuelle(type)).append("</td>");
+                for (int h = 0; h < horizons.length; h++) {
+                    Formatage.ENTIER_GROUPE.ajouter(sb.append("<td>"), projection.getPopulation(h, type)).append("</td>");
+                }
+                sb.append("</tr>").append(finLigne);
+            }
+            Formatage.ajouterHtml(sb.append("<tr><td>"), projection.getScenario().getNom()).append("</td>");
+            sb.append("<td>Densité (hab/km²)</td><td></td>");
+            for (int h = 0; h < horizons.length; h++) {
+                Formatage.DECIMAL_2.ajouter(sb.append("<td>"), projection.getDensiteGlobale(h)).append("</td>");
+            }
+            sb.append("</tr>").append(finLigne);
+        }
+        ecrire(writer, sb);
+        writer.println("</table>");
+    }
+
+    private static void ajouterLigneDensite(StringBuilder sb, double valeur, String suffixe) {
+        Formatage.DECIMAL_2.ajouter(sb, valeur).append(suffixe).append(System.lineSeparator());
+    }
+
+    // Écrit le tampon sans le convertir en String ; PrintWriter masque les IOException
+    private static void ecrire(PrintWriter writer, StringBuilder sb) {
+        try {
+            Formatage.ecrire(writer, sb);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     private void afficherLocalitesTXT(PrintWriter writer, List<Localite> localites) {
         writer.printf("%-30s %-15s %-15s %-15s %-15s%n",
                 "Nom", "Population", "Superficie", "Densité", "Type");
         writer.println("-".repeat(90));
 
+        // Même mise en page que "%-30s %-15d %-15.2f %-15.2f %-15s%n", sans analyse de motif par ligne
+        StringBuilder sb = Formatage.tampon();
+        String finLigne = System.lineSeparator();
         for (Localite localite : localites) {
-            writer.printf("%-30s %-15d %-15.2f %-15.2f %-15s%n",
-                    localite.getNom(),
-                    localite.getPopulation(),
-                    localite.getSuperficie(),
-                    localite.calculerDensite(),
-                    localite.getType()
-            );
+            sb.setLength(0);
+            Formatage.completer(sb.append(localite.getNom()), 0, 30).append(' ');
+            int debut = sb.length();
+            Formatage.completer(sb.append(localite.getPopulation()), debut, 15).append(' ');
+            debut = sb.length();
+            Formatage.completer(Formatage.DECIMAL_2.ajouter(sb, localite.getSuperficie()), debut, 15).append(' ');
+            debut = sb.length();
+            Formatage.completer(Formatage.DECIMAL_2.ajouter(sb, localite.calculerDensite()), debut, 15).append(' ');
+            debut = sb.length();
+            Formatage.completer(sb.append(localite.getType()), debut, 15).append(finLigne);
+            ecrire(writer, sb);
         }
     }
 
@@ -507,36 +1903,132 @@ public class GestionPopulation implements AutoCloseable {
         writer.println("<th>Type</th>");
         writer.println("</tr>");
 
+        StringBuilder sb = Formatage.tampon();
+        String finLigne = System.lineSeparator();
         for (Localite localite : localites) {
-            writer.println("<tr>");
-            writer.printf("<td>%s</td>%n", localite.getNom());
-            writer.printf("<td>%d</td>%n", localite.getPopulation());
-            writer.printf("<td>%.2f</td>%n", localite.getSuperficie());
-            writer.printf("<td>%.2f</td>%n", localite.calculerDensite());
-            writer.printf("<td>%s</td>%n", localite.getType());
-            writer.println("</tr>");
+            sb.setLength(0);
+            sb.append("<tr>").append(finLigne);
+            Formatage.ajouterHtml(sb.append("<td>"), localite.getNom()).append("</td>").append(finLigne);
+            sb.append("<td>").append(localite.getPopulation()).append("</td>").append(finLigne);
+            Formatage.DECIMAL_2.ajouter(sb.append("<td>"), localite.getSuperficie()).append("</td>").append(finLigne);
+            Formatage.DECIMAL_2.ajouter(sb.append("<td>"), localite.calculerDensite()).append("</td>").append(finLigne);
+            sb.append("<td>").append(localite.getType()).append("</td>").append(finLigne);
+            sb.append("</tr>").append(finLigne);
+            ecrire(writer, sb);
         }
 
         writer.println("</table>");
     }
 
+    // Statistiques de densité par type, combinées à partir de celles tenues par chaque région
     public Map<TypePopulation, DoubleSummaryStatistics> analyserParType() {
-        return localites.stream()
-                .collect(Collectors.groupingBy(
-                        Localite::getType,
-                        Collectors.summarizingDouble(Localite::calculerDensite)
-                ));
+        return analyserParType(null);
+    }
+
+    // Limitées à une région si elle est indiquée
+    public Map<TypePopulation, DoubleSummaryStatistics> analyserParType(String region) {
+        Map<TypePopulation, DoubleSummaryStatistics> resultat = new EnumMap<>(TypePopulation.class);
+        for (PartitionRegion partition : partitions.values()) {
+            if (region != null && !region.equals(partition.getRegion())) {
+                continue;
+            }
+            partition.statistiquesParType().forEach((type, stat) ->
+                    resultat.computeIfAbsent(type, t -> new DoubleSummaryStatistics()).combine(stat));
+        }
+        return resultat;
+    }
+
+    // Pyramide des âges des localités qui ont une répartition, limitée à une région et/ou à un
+    // type si indiqués : somme des pyramides tenues par chaque région, sans parcourir les localités
+    public Pyramide pyramide(String region, TypePopulation type) {
+        long[] somme = new long[Pyramide.TAILLE];
+        long nombre = 0;
+        for (PartitionRegion partition : partitions.values()) {
+            if (region == null || region.equals(partition.getRegion())) {
+                nombre += partition.cumulerPyramide(type, somme);
+            }
+        }
+        return new Pyramide(somme, nombre);
+    }
+
+    // Statistiques de densité par type approchées, sans parcourir les localités : nombre exact,
+    // moyenne estimée sur un échantillon avec sa marge à 95 %, quantiles à 1 % près. Appelée
+    // depuis l'EDT : des échantillons trop entamés par des suppressions servent encore cette
+    // fois, et sont reformés en arrière-plan.
+    public Map<TypePopulation, EstimationDensite> estimerParType() {
+        StatistiquesApprochees actuelles = statistiquesApprochees;
+        if (actuelles.aReconstituer() && reconstitutionEnCours.compareAndSet(false, true)) {
+            CompletableFuture.runAsync(this::reconstituerStatistiquesApprochees)
+                    .exceptionally(e -> {
+                        logger.warning("Statistiques approchées non reformées: " + e.getMessage());
+                        return null;
+                    });
+        }
+        return actuelles.estimer();
+    }
+
+    // Parcours de toutes les localités hors de verrouEcritures ; le résultat n'est installé que
+    // si aucune écriture n'a eu lieu entre-temps (sinon l'appel suivant recommence)
+    private void reconstituerStatistiquesApprochees() {
+        try {
+            long version;
+            verrouEcritures.lock();
+            try {
+                version = versionDonnees;
+            } finally {
+                verrouEcritures.unlock();
+            }
+            StatistiquesApprochees reconstituees = StatistiquesApprochees.construire(
+                    concatener(surChaqueRegion(null, ArrayList::new)));
+            verrouEcritures.lock();
+            try {
+                if (versionDonnees == version) {
+                    statistiquesApprochees = reconstituees;
+                }
+            } finally {
+                verrouEcritures.unlock();
+            }
+        } finally {
+            reconstitutionEnCours.set(false);
+        }
+    }
+
+    // Population totale de chaque région, dans l'ordre alphabétique des régions
+    public Map<String, Long> populationParRegion() {
+        Map<String, Long> resultat = new LinkedHashMap<>();
+        for (PartitionRegion partition : partitions.values()) {
+            resultat.put(partition.getRegion(), partition.getPopulation());
+        }
+        return resultat;
     }
 
     @Override
     public void close() {
-        try {
-            if (connexionDB != null && !connexionDB.isClosed()) {
-                connexionDB.close();
+        // Les insertions encore en file sont écrites avant de fermer
+        if (ecritureDifferee != null) {
+            ecritureDifferee.close();
+        }
+        if (synchronisation != null) {
+            // Un rejeu en cours se termine avant la fermeture du journal et du stockage : une
+            // interruption pendant l'écriture de la marque APPLIQUE fermerait le canal du journal
+            // (ClosedByInterruptException) et la marque serait perdue
+            synchronisation.shutdown();
+            try {
+                if (!synchronisation.awaitTermination(30, TimeUnit.SECONDS)) {
+                    logger.warning("Synchronisation du journal toujours en cours, interrompue");
+                    synchronisation.shutdownNow();
+                    synchronisation.awaitTermination(5, TimeUnit.SECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            try {
+                journal.close();
+            } catch (IOException e) {
+                logger.warning("Erreur lors de la fermeture du journal local: " + e.getMessage());
             }
-        } catch (SQLException e) {
-            logger.warning("Erreur lors de la fermeture de la connexion: " + e.getMessage());
         }
+        depot.close();
     }
 
 }
\ No newline at end of file
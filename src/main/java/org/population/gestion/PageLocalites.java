@@ -0,0 +1,32 @@
+package org.population.gestion;
+
+import org.population.gestion.RequeteLocalites.Curseur;
+import org.population.modele.Localite;
+
+import java.util.Collections;
+import java.util.List;
+
+// Page de résultats d'une RequeteLocalites, avec le curseur permettant de lire la suivante
+public class PageLocalites {
+    private final List<Localite> localites;
+    private final Curseur curseurSuivant;
+    private final int lus;
+
+    PageLocalites(List<Localite> localites, Curseur curseurSuivant, int lus) {
+        this.localites = Collections.unmodifiableList(localites);
+        this.curseurSuivant = curseurSuivant;
+        this.lus = lus;
+    }
+
+    public List<Localite> getLocalites() { return localites; }
+
+    // null lorsque la dernière page a été atteinte
+    public Curseur getCurseurSuivant() { return curseurSuivant; }
+
+    // Nombre total de lignes lues depuis le début du parcours, lignes invalides écartées comprises
+    public int getLus() { return lus; }
+
+    public boolean aSuivante() {
+        return curseurSuivant != null;
+    }
+}
@@ -0,0 +1,184 @@
+package org.population.gestion;
+
+import org.population.analyse.ColonnesLocalites;
+import org.population.modele.Localite;
+import org.population.modele.Localite.TypePopulation;
+import org.population.modele.Pyramide;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+// Localités d'une région : liste, index par nom et statistiques propres, sous un verrou qui
+// ne bloque que les lecteurs de cette région. Les écrivains sont sérialisés par GestionPopulation.
+final class PartitionRegion {
+    private final String region;
+    private final ReentrantReadWriteLock verrou = new ReentrantReadWriteLock();
+    private final List<Localite> localites;
+    // Index par nom (en minuscules), tenu à jour avec la liste sous le même verrou
+    private final Map<String, Localite> parNom;
+    private long population;
+    // Densités par type, recalculées à la première lecture qui suit une écriture
+    private Map<TypePopulation, DoubleSummaryStatistics> statistiques;
+    // Pyramides par type : somme des répartitions par âge et sexe [type][case], et nombre de
+    // localités qui en ont une, tenues à jour à chaque écriture
+    private final long[][] pyramides = new long[TypePopulation.values().length][Pyramide.TAILLE];
+    private final long[] repartitions = new long[TypePopulation.values().length];
+
+    PartitionRegion(String region, List<Localite> localites) {
+        this.region = region;
+        this.localites = localites;
+        this.parNom = new HashMap<>(Math.max(16, localites.size() * 2));
+        for (Localite localite : localites) {
+            parNom.put(cle(localite.getNom()), localite);
+            population += localite.getPopulation();
+            cumulerRepartition(localite, 1);
+        }
+    }
+
+    private void cumulerRepartition(Localite localite, int signe) {
+        if (localite.hasRepartition()) {
+            int type = localite.getType().ordinal();
+            localite.cumulerRepartition(pyramides[type], signe);
+            repartitions[type] += signe;
+        }
+    }
+
+    static String cle(String nom) {
+        return nom.toLowerCase(Locale.ROOT);
+    }
+
+    String getRegion() {
+        return region;
+    }
+
+    // Lecture sous le verrou de la région ; la liste ne doit pas sortir de la fonction
+    <T> T lire(Function<List<Localite>, T> lecture) {
+        verrou.readLock().lock();
+        try {
+            return lecture.apply(localites);
+        } finally {
+            verrou.readLock().unlock();
+        }
+    }
+
+    Localite trouver(String cleNom) {
+        verrou.readLock().lock();
+        try {
+            return parNom.get(cleNom);
+        } finally {
+            verrou.readLock().unlock();
+        }
+    }
+
+    int taille() {
+        verrou.readLock().lock();
+        try {
+            return localites.size();
+        } finally {
+            verrou.readLock().unlock();
+        }
+    }
+
+    long getPopulation() {
+        verrou.readLock().lock();
+        try {
+            return population;
+        } finally {
+            verrou.readLock().unlock();
+        }
+    }
+
+    // Ajoute à somme la pyramide du type (de tous les types si null) ; renvoie le nombre de
+    // localités dont la répartition est comptée
+    long cumulerPyramide(TypePopulation type, long[] somme) {
+        verrou.readLock().lock();
+        try {
+            long nombre = 0;
+            for (TypePopulation t : TypePopulation.values()) {
+                if (type == null || type == t) {
+                    long[] pyramide = pyramides[t.ordinal()];
+                    for (int i = 0; i < Pyramide.TAILLE; i++) {
+                        somme[i] += pyramide[i];
+                    }
+                    nombre += repartitions[t.ordinal()];
+                }
+            }
+            return nombre;
+        } finally {
+            verrou.readLock().unlock();
+        }
+    }
+
+    Map<TypePopulation, DoubleSummaryStatistics> statistiquesParType() {
+        verrou.readLock().lock();
+        try {
+            Map<TypePopulation, DoubleSummaryStatistics> calculees = statistiques;
+            if (calculees != null) {
+                return calculees;
+            }
+            // Instantané en tableaux de la région (sans version : il ne sert qu'ici), parcouru
+            // par les noyaux d'agrégation
+            calculees = ColonnesLocalites.extraire(0, localites).statistiquesParType();
+            // Plusieurs lecteurs peuvent calculer en même temps : le résultat est identique
+            statistiques = Collections.unmodifiableMap(calculees);
+            return statistiques;
+        } finally {
+            verrou.readLock().unlock();
+        }
+    }
+
+    void ajouter(Localite localite) {
+        verrou.writeLock().lock();
+        try {
+            localites.add(localite);
+            parNom.put(cle(localite.getNom()), localite);
+            population += localite.getPopulation();
+            cumulerRepartition(localite, 1);
+            statistiques = null;
+        } finally {
+            verrou.writeLock().unlock();
+        }
+    }
+
+    // Retire exactement ces instances (comparaison par identité) ; renvoie celles trouvées
+    Set<Localite> retirer(Set<Localite> aRetirer) {
+        Set<Localite> retirees = Collections.newSetFromMap(new IdentityHashMap<>());
+        verrou.writeLock().lock();
+        try {
+            localites.removeIf(l -> aRetirer.contains(l) && retirees.add(l));
+            for (Localite localite : retirees) {
+                parNom.remove(cle(localite.getNom()), localite);
+                population -= localite.getPopulation();
+                cumulerRepartition(localite, -1);
+            }
+            if (!retirees.isEmpty()) {
+                statistiques = null;
+            }
+        } finally {
+            verrou.writeLock().unlock();
+        }
+        return retirees;
+    }
+
+    // Remplacements au sein de la région (ancienne instance -> nouvelle), en un seul parcours
+    void remplacer(Map<Localite, Localite> remplacements) {
+        verrou.writeLock().lock();
+        try {
+            for (Map.Entry<Localite, Localite> remplacement : remplacements.entrySet()) {
+                parNom.remove(cle(remplacement.getKey().getNom()), remplacement.getKey());
+                population -= remplacement.getKey().getPopulation();
+                cumulerRepartition(remplacement.getKey(), -1);
+            }
+            for (Localite nouvelle : remplacements.values()) {
+                parNom.put(cle(nouvelle.getNom()), nouvelle);
+                population += nouvelle.getPopulation();
+                cumulerRepartition(nouvelle, 1);
+            }
+            localites.replaceAll(l -> remplacements.getOrDefault(l, l));
+            statistiques = null;
+        } finally {
+            verrou.writeLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package org.population.gestion;
+
+import org.population.modele.Localite;
+import org.population.modele.Localite.TypePopulation;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+// Requête sur les localités, traduite en SQL avec pagination par curseur (keyset), ou évaluée
+// en mémoire quand le stockage n'est pas une base SQL
+public class RequeteLocalites {
+    private final String nomContient;
+    private final TypePopulation type;
+    private final String region;
+    private final Integer populationMin;
+    private final Integer populationMax;
+    private final Double densiteMin;
+    private final Double densiteMax;
+    private final Tri tri;
+    private final boolean croissant;
+    private final int limite;
+    private final int taillePage;
+
+    // Colonnes de tri, toutes indexées avec le nom (unique) comme départage
+    public enum Tri {
+        NOM("nom"),
+        POPULATION("population"),
+        DENSITE("densite");
+
+        private final String colonne;
+
+        Tri(String colonne) {
+            this.colonne = colonne;
+        }
+
+        public String getColonne() {
+            return colonne;
+        }
+    }
+
+    public RequeteLocalites(Builder builder) {
+        nomContient = builder.nomContient;
+        type = builder.type;
+        region = builder.region;
+        populationMin = builder.populationMin;
+        populationMax = builder.populationMax;
+        densiteMin = builder.densiteMin;
+        densiteMax = builder.densiteMax;
+        tri = builder.tri;
+        croissant = builder.croissant;
+        limite = builder.limite;
+        taillePage = builder.taillePage;
+    }
+
+    public static class Builder {
+        private String nomContient;
+        private TypePopulation type;
+        private String region;
+        private Integer populationMin;
+        private Integer populationMax;
+        private Double densiteMin;
+        private Double densiteMax;
+        private Tri tri = Tri.NOM;
+        private boolean croissant = true;
+        private int limite = Integer.MAX_VALUE;
+        private int taillePage = 500;
+
+        public Builder nomContient(String nom) {
+            this.nomContient = (nom == null || nom.trim().isEmpty()) ? null : nom.trim();
+            return this;
+        }
+
+        public Builder type(TypePopulation type) {
+            this.type = type;
+            return this;
+        }
+
+        // null pour toutes les régions
+        public Builder region(String region) {
+            this.region = (region == null || region.trim().isEmpty()) ? null : region.trim();
+            return this;
+        }
+
+        public Builder population(Integer min, Integer max) {
+            this.populationMin = min;
+            this.populationMax = max;
+            return this;
+        }
+
+        public Builder densite(Double min, Double max) {
+            this.densiteMin = min;
+            this.densiteMax = max;
+            return this;
+        }
+
+        public Builder tri(Tri tri, boolean croissant) {
+            this.tri = tri;
+            this.croissant = croissant;
+            return this;
+        }
+
+        public Builder limite(int limite) {
+            this.limite = limite;
+            return this;
+        }
+
+        public Builder taillePage(int taillePage) {
+            if (taillePage <= 0) {
+                throw new IllegalArgumentException("La taille de page doit être positive");
+            }
+            this.taillePage = taillePage;
+            return this;
+        }
+
+        public RequeteLocalites build() {
+            return new RequeteLocalites(this);
+        }
+    }
+
+    public String getNomContient() { return nomContient; }
+    public TypePopulation getType() { return type; }
+    public String getRegion() { return region; }
+    public Integer getPopulationMin() { return populationMin; }
+    public Integer getPopulationMax() { return populationMax; }
+    public Double getDensiteMin() { return densiteMin; }
+    public Double getDensiteMax() { return densiteMax; }
+    public Tri getTri() { return tri; }
+    public boolean isCroissant() { return croissant; }
+    public int getLimite() { return limite; }
+    public int getTaillePage() { return taillePage; }
+
+    // Position dans le parcours : dernière valeur de tri et dernier nom lus
+    public static class Curseur {
+        private final Object valeurTri;
+        private final String nom;
+
+        public Curseur(Object valeurTri, String nom) {
+            this.valeurTri = valeurTri;
+            this.nom = nom;
+        }
+
+        public Object getValeurTri() { return valeurTri; }
+        public String getNom() { return nom; }
+    }
+
+    // Clause WHERE des filtres, sans le curseur
+    String clauseFiltres(List<Object> parametres) {
+        List<String> conditions = new ArrayList<>();
+        if (nomContient != null) {
+            conditions.add("nom LIKE ? ESCAPE '\\\\'");
+            parametres.add("%" + echapperLike(nomContient) + "%");
+        }
+        if (type != null) {
+            conditions.add("type = ?");
+            parametres.add(type.toString());
+        }
+        if (region != null) {
+            conditions.add("region = ?");
+            parametres.add(region);
+        }
+        if (populationMin != null) {
+            conditions.add("population >= ?");
+            parametres.add(populationMin);
+        }
+        if (populationMax != null) {
+            conditions.add("population <= ?");
+            parametres.add(populationMax);
+        }
+        if (densiteMin != null) {
+            conditions.add("densite >= ?");
+            parametres.add(densiteMin);
+        }
+        if (densiteMax != null) {
+            conditions.add("densite <= ?");
+            parametres.add(densiteMax);
+        }
+        return conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions);
+    }
+
+    // SELECT d'une page : filtres, condition de curseur puis ORDER BY sur l'index (colonne, nom)
+    String construireSql(Curseur curseur, int taille, List<Object> parametres) {
+        return construireSql(curseur, taille, 0, parametres);
+    }
+
+    // Variante avec décalage, utilisée quand aucun curseur n'est connu pour la position demandée
+    String construireSql(Curseur curseur, int taille, int decalage, List<Object> parametres) {
+        StringBuilder sql = new StringBuilder("SELECT * FROM localites");
+        String filtres = clauseFiltres(parametres);
+        sql.append(filtres);
+
+        if (curseur != null) {
+            String comparaison = croissant ? ">" : "<";
+            sql.append(filtres.isEmpty() ? " WHERE " : " AND ");
+            if (tri == Tri.NOM) {
+                sql.append("nom ").append(comparaison).append(" ?");
+                parametres.add(curseur.getNom());
+            } else {
+                String colonne = tri.getColonne();
+                sql.append("(").append(colonne).append(' ').append(comparaison).append(" ? OR (")
+                        .append(colonne).append(" = ? AND nom ").append(comparaison).append(" ?))");
+                parametres.add(curseur.getValeurTri());
+                parametres.add(curseur.getValeurTri());
+                parametres.add(curseur.getNom());
+            }
+        }
+
+        String sens = croissant ? " ASC" : " DESC";
+        sql.append(" ORDER BY ");
+        if (tri != Tri.NOM) {
+            sql.append(tri.getColonne()).append(sens).append(", ");
+        }
+        sql.append("nom").append(sens);
+        sql.append(" LIMIT ?");
+        parametres.add(taille);
+        if (decalage > 0) {
+            sql.append(" OFFSET ?");
+            parametres.add(decalage);
+        }
+        return sql.toString();
+    }
+
+    // Mêmes filtres que clauseFiltres, évalués sur une localité en mémoire
+    boolean accepte(Localite localite) {
+        if (nomContient != null && !localite.getNom().toLowerCase(Locale.ROOT)
+                .contains(nomContient.toLowerCase(Locale.ROOT))) {
+            return false;
+        }
+        if (type != null && localite.getType() != type) {
+            return false;
+        }
+        if (region != null && !region.equals(localite.getRegion())) {
+            return false;
+        }
+        int population = localite.getPopulation();
+        if ((populationMin != null && population < populationMin)
+                || (populationMax != null && population > populationMax)) {
+            return false;
+        }
+        double densite = localite.calculerDensite();
+        return (densiteMin == null || densite >= densiteMin) && (densiteMax == null || densite <= densiteMax);
+    }
+
+    // Même ordre que construireSql : colonne de tri puis nom
+    Comparator<Localite> comparateur() {
+        Comparator<Localite> parNom = Comparator.comparing(Localite::getNom, String.CASE_INSENSITIVE_ORDER);
+        Comparator<Localite> ordre = switch (tri) {
+            case NOM -> parNom;
+            case POPULATION -> Comparator.comparingInt(Localite::getPopulation).thenComparing(parNom);
+            case DENSITE -> Comparator.comparingDouble(Localite::calculerDensite).thenComparing(parNom);
+        };
+        return croissant ? ordre : ordre.reversed();
+    }
+
+    static void lierParametres(PreparedStatement pstmt, List<Object> parametres) throws SQLException {
+        for (int i = 0; i < parametres.size(); i++) {
+            pstmt.setObject(i + 1, parametres.get(i));
+        }
+    }
+
+    private static String echapperLike(String valeur) {
+        return valeur.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
@@ -0,0 +1,29 @@
+package org.population.gestion;
+
+// Bilan d'un export : volume produit avant et après compression
+public class ResultatExport {
+    private final String fichier;
+    private final long octetsNonCompresses;
+    private final long octetsEcrits;
+
+    public ResultatExport(String fichier, long octetsNonCompresses, long octetsEcrits) {
+        this.fichier = fichier;
+        this.octetsNonCompresses = octetsNonCompresses;
+        this.octetsEcrits = octetsEcrits;
+    }
+
+    public String getFichier() { return fichier; }
+    public long getOctetsNonCompresses() { return octetsNonCompresses; }
+    public long getOctetsEcrits() { return octetsEcrits; }
+
+    // Taille écrite rapportée à la taille non compressée (1.0 pour un export non compressé)
+    public double getTauxCompression() {
+        return octetsNonCompresses == 0 ? 1.0 : (double) octetsEcrits / octetsNonCompresses;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%,d octets écrits (%,d non compressés, taux %.1f %%)",
+                octetsEcrits, octetsNonCompresses, getTauxCompression() * 100);
+    }
+}
@@ -0,0 +1,15 @@
+package org.population.gestion;
+
+import org.population.modele.Localite;
+
+import java.sql.SQLException;
+import java.util.List;
+
+// Accès par pages de taille fixe, pour les vues qui ne conservent pas toute la liste en mémoire
+public interface SourcePagesLocalites {
+    int compter() throws SQLException;
+
+    long sommePopulation() throws SQLException;
+
+    List<Localite> chargerPage(int indexPage, int taillePage) throws SQLException;
+}
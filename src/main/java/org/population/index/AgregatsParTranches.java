@@ -0,0 +1,158 @@
+package org.population.index;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Agrégats (nombre, population, superficie) par intervalle d'une valeur positive, sur des
+// tranches logarithmiques tenues dans des arbres de Fenwick : les tranches entièrement comprises
+// dans l'intervalle sont sommées en O(log tranches), et seules les deux tranches aux bornes sont
+// parcourues élément par élément pour que le résultat reste exact.
+public class AgregatsParTranches {
+    private final double minimum;
+    private final int tranchesParDecade;
+    private final int nombreTranches;
+    // Arbres de Fenwick indexés à partir de 1
+    private final long[] nombres;
+    private final long[] populations;
+    private final double[] superficies;
+    // Éléments de chaque tranche, pour les bornes : {valeur, population, superficie}
+    private final List<List<double[]>> elements;
+    private final ReentrantReadWriteLock verrou = new ReentrantReadWriteLock();
+
+    // Résultat d'une requête par intervalle
+    public static class Agregat {
+        private final long nombre;
+        private final long population;
+        private final double superficie;
+
+        Agregat(long nombre, long population, double superficie) {
+            this.nombre = nombre;
+            this.population = population;
+            this.superficie = superficie;
+        }
+
+        public long getNombre() { return nombre; }
+        public long getPopulation() { return population; }
+        public double getSuperficie() { return superficie; }
+
+        // Densité d'ensemble (population totale sur superficie totale), 0 sans localité
+        public double getDensite() {
+            return superficie > 0 ? population / superficie : 0;
+        }
+    }
+
+    // Valeurs de minimum à maximum découpées en tranchesParDecade tranches par puissance de dix,
+    // plus une tranche pour ce qui est en dessous du minimum et une pour le reste
+    public AgregatsParTranches(double minimum, double maximum, int tranchesParDecade) {
+        this.minimum = minimum;
+        this.tranchesParDecade = tranchesParDecade;
+        this.nombreTranches = (int) Math.ceil(Math.log10(maximum / minimum) * tranchesParDecade) + 2;
+        nombres = new long[nombreTranches + 1];
+        populations = new long[nombreTranches + 1];
+        superficies = new double[nombreTranches + 1];
+        elements = new ArrayList<>(nombreTranches);
+        for (int i = 0; i < nombreTranches; i++) {
+            elements.add(new ArrayList<>());
+        }
+    }
+
+    private int tranche(double valeur) {
+        if (!(valeur >= minimum)) {
+            return 0;
+        }
+        double tranche = 1 + Math.floor(Math.log10(valeur / minimum) * tranchesParDecade);
+        return (int) Math.min(nombreTranches - 1, tranche);
+    }
+
+    public void ajouter(double valeur, int population, double superficie) {
+        verrou.writeLock().lock();
+        try {
+            int tranche = tranche(valeur);
+            elements.get(tranche).add(new double[]{valeur, population, superficie});
+            cumuler(tranche, 1, population, superficie);
+        } finally {
+            verrou.writeLock().unlock();
+        }
+    }
+
+    public void retirer(double valeur, int population, double superficie) {
+        verrou.writeLock().lock();
+        try {
+            int tranche = tranche(valeur);
+            List<double[]> liste = elements.get(tranche);
+            for (int i = liste.size() - 1; i >= 0; i--) {
+                double[] element = liste.get(i);
+                if (element[0] == valeur && element[1] == population && element[2] == superficie) {
+                    // L'ordre dans une tranche est sans importance : le dernier prend la place
+                    liste.set(i, liste.get(liste.size() - 1));
+                    liste.remove(liste.size() - 1);
+                    cumuler(tranche, -1, -population, -superficie);
+                    return;
+                }
+            }
+        } finally {
+            verrou.writeLock().unlock();
+        }
+    }
+
+    private void cumuler(int tranche, long nombre, long population, double superficie) {
+        for (int i = tranche + 1; i <= nombreTranches; i += i & -i) {
+            nombres[i] += nombre;
+            populations[i] += population;
+            superficies[i] += superficie;
+        }
+    }
+
+    // Agrégat des valeurs comprises entre min et max (bornes incluses) ; null pour une borne ouverte
+    public Agregat interroger(Double min, Double max) {
+        double bas = min == null ? Double.NEGATIVE_INFINITY : min;
+        double haut = max == null ? Double.POSITIVE_INFINITY : max;
+        if (bas > haut) {
+            return new Agregat(0, 0, 0);
+        }
+        verrou.readLock().lock();
+        try {
+            int premiere = tranche(bas);
+            int derniere = tranche(haut);
+            long nombre = 0;
+            long population = 0;
+            double superficie = 0;
+            // Tranches pleines, strictement entre les deux tranches des bornes
+            if (derniere - premiere > 1) {
+                nombre = prefixe(nombres, derniere) - prefixe(nombres, premiere + 1);
+                population = prefixe(populations, derniere) - prefixe(populations, premiere + 1);
+                superficie = prefixe(superficies, derniere) - prefixe(superficies, premiere + 1);
+            }
+            for (int tranche : premiere == derniere ? new int[]{premiere} : new int[]{premiere, derniere}) {
+                for (double[] element : elements.get(tranche)) {
+                    if (element[0] >= bas && element[0] <= haut) {
+                        nombre++;
+                        population += (long) element[1];
+                        superficie += element[2];
+                    }
+                }
+            }
+            return new Agregat(nombre, population, superficie);
+        } finally {
+            verrou.readLock().unlock();
+        }
+    }
+
+    // Somme des "fin" premières tranches
+    private static long prefixe(long[] arbre, int fin) {
+        long somme = 0;
+        for (int i = fin; i > 0; i -= i & -i) {
+            somme += arbre[i];
+        }
+        return somme;
+    }
+
+    private static double prefixe(double[] arbre, int fin) {
+        double somme = 0;
+        for (int i = fin; i > 0; i -= i & -i) {
+            somme += arbre[i];
+        }
+        return somme;
+    }
+}
@@ -0,0 +1,273 @@
+package org.population.index;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+// Arbre BK sur les noms normalisés (sans accents, casse ni ponctuation) pour la distance de
+// Levenshtein : les enfants d'un nœud sont rangés par leur distance à sa clé, et l'inégalité
+// triangulaire permet d'écarter les sous-arbres trop éloignés de la recherche. Un nom composé
+// est aussi indexé par chacun de ses mots significatifs ("Mokolo-Centre" sous "mokolo").
+// Un retrait vide le nœud sans le détacher ; l'arbre est reconstruit quand ils sont trop nombreux.
+public class ArbreBK {
+    private static final Pattern DIACRITIQUES = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATEURS = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final int LONGUEUR_MIN_MOT = 4;
+
+    private static final class Noeud {
+        final String cle;
+        // Noms d'origine rangés sous cette clé (plusieurs graphies peuvent se normaliser pareil)
+        final Set<String> noms = new LinkedHashSet<>(2);
+        Noeud[] enfants = new Noeud[0];
+
+        Noeud(String cle) {
+            this.cle = cle;
+        }
+
+        Noeud enfant(int distance) {
+            return distance < enfants.length ? enfants[distance] : null;
+        }
+
+        void ajouterEnfant(int distance, Noeud enfant) {
+            if (distance >= enfants.length) {
+                enfants = Arrays.copyOf(enfants, distance + 1);
+            }
+            enfants[distance] = enfant;
+        }
+    }
+
+    // Nom trouvé et sa distance à la recherche
+    public static class Resultat {
+        private final String nom;
+        private final int distance;
+
+        Resultat(String nom, int distance) {
+            this.nom = nom;
+            this.distance = distance;
+        }
+
+        public String getNom() { return nom; }
+        public int getDistance() { return distance; }
+    }
+
+    private final ReentrantReadWriteLock verrou = new ReentrantReadWriteLock();
+    private Noeud racine;
+    private int noeuds;
+    private int noeudsVides;
+
+    public ArbreBK() {
+    }
+
+    public ArbreBK(Collection<String> noms) {
+        for (String nom : noms) {
+            ajouter(nom);
+        }
+    }
+
+    public static String normaliser(String nom) {
+        String sansAccents = DIACRITIQUES.matcher(Normalizer.normalize(nom, Normalizer.Form.NFD)).replaceAll("");
+        return SEPARATEURS.matcher(sansAccents.toLowerCase(Locale.ROOT)).replaceAll(" ").trim();
+    }
+
+    // Distance tolérée pour un nom de cette longueur : une faute sur un nom court, deux sinon
+    public static int distanceTolereePour(String nom) {
+        return normaliser(nom).length() <= 4 ? 1 : 2;
+    }
+
+    private static Set<String> cles(String nom) {
+        String normalise = normaliser(nom);
+        Set<String> cles = new LinkedHashSet<>(4);
+        if (normalise.isEmpty()) {
+            return cles;
+        }
+        cles.add(normalise);
+        String[] mots = normalise.split(" ");
+        if (mots.length > 1) {
+            for (String mot : mots) {
+                if (mot.length() >= LONGUEUR_MIN_MOT) {
+                    cles.add(mot);
+                }
+            }
+        }
+        return cles;
+    }
+
+    public void ajouter(String nom) {
+        verrou.writeLock().lock();
+        try {
+            for (String cle : cles(nom)) {
+                inserer(cle, nom);
+            }
+        } finally {
+            verrou.writeLock().unlock();
+        }
+    }
+
+    private void inserer(String cle, String nom) {
+        if (racine == null) {
+            racine = new Noeud(cle);
+            racine.noms.add(nom);
+            noeuds++;
+            return;
+        }
+        Noeud courant = racine;
+        while (true) {
+            int distance = distance(cle, courant.cle);
+            if (distance == 0) {
+                if (courant.noms.isEmpty()) {
+                    noeudsVides--;
+                }
+                courant.noms.add(nom);
+                return;
+            }
+            Noeud suivant = courant.enfant(distance);
+            if (suivant == null) {
+                Noeud nouveau = new Noeud(cle);
+                nouveau.noms.add(nom);
+                courant.ajouterEnfant(distance, nouveau);
+                noeuds++;
+                return;
+            }
+            courant = suivant;
+        }
+    }
+
+    public void retirer(String nom) {
+        verrou.writeLock().lock();
+        try {
+            for (String cle : cles(nom)) {
+                Noeud noeud = trouverNoeud(cle);
+                if (noeud != null && noeud.noms.remove(nom) && noeud.noms.isEmpty()) {
+                    noeudsVides++;
+                }
+            }
+            if (noeudsVides > 64 && noeudsVides * 2 > noeuds) {
+                reconstruire();
+            }
+        } finally {
+            verrou.writeLock().unlock();
+        }
+    }
+
+    private Noeud trouverNoeud(String cle) {
+        Noeud courant = racine;
+        while (courant != null) {
+            int distance = distance(cle, courant.cle);
+            if (distance == 0) {
+                return courant;
+            }
+            courant = courant.enfant(distance);
+        }
+        return null;
+    }
+
+    private void reconstruire() {
+        List<Noeud> pleins = new ArrayList<>(noeuds - noeudsVides);
+        Deque<Noeud> aVisiter = new ArrayDeque<>();
+        aVisiter.push(racine);
+        while (!aVisiter.isEmpty()) {
+            Noeud noeud = aVisiter.pop();
+            if (!noeud.noms.isEmpty()) {
+                pleins.add(noeud);
+            }
+            for (Noeud enfant : noeud.enfants) {
+                if (enfant != null) {
+                    aVisiter.push(enfant);
+                }
+            }
+        }
+        racine = null;
+        noeuds = 0;
+        noeudsVides = 0;
+        for (Noeud plein : pleins) {
+            for (String nom : plein.noms) {
+                inserer(plein.cle, nom);
+            }
+        }
+    }
+
+    // Noms à au plus distanceMax de la recherche (sur les noms normalisés), les plus proches
+    // d'abord ; un nom indexé sous plusieurs clés n'apparaît qu'une fois, à sa meilleure distance
+    public List<Resultat> rechercher(String nom, int distanceMax) {
+        Map<String, Integer> trouves = new HashMap<>();
+        verrou.readLock().lock();
+        try {
+            for (String cle : cles(nom)) {
+                if (racine == null) {
+                    break;
+                }
+                Deque<Noeud> aVisiter = new ArrayDeque<>();
+                aVisiter.push(racine);
+                while (!aVisiter.isEmpty()) {
+                    Noeud noeud = aVisiter.pop();
+                    // Au-delà de ce plafond, ni le nœud ni aucun de ses enfants ne peut convenir :
+                    // la distance exacte est inutile (c'est le cas de la plupart des feuilles)
+                    int plafond = Math.max(distanceMax, noeud.enfants.length - 1 + distanceMax);
+                    int distance = distance(cle, noeud.cle, plafond);
+                    if (distance > plafond) {
+                        continue;
+                    }
+                    if (distance <= distanceMax) {
+                        for (String trouve : noeud.noms) {
+                            trouves.merge(trouve, distance, Math::min);
+                        }
+                    }
+                    // Inégalité triangulaire : seuls les enfants à |d - k| .. d + k peuvent convenir
+                    int max = Math.min(noeud.enfants.length - 1, distance + distanceMax);
+                    for (int d = Math.max(1, distance - distanceMax); d <= max; d++) {
+                        if (noeud.enfants[d] != null) {
+                            aVisiter.push(noeud.enfants[d]);
+                        }
+                    }
+                }
+            }
+        } finally {
+            verrou.readLock().unlock();
+        }
+        List<Resultat> resultats = new ArrayList<>(trouves.size());
+        trouves.forEach((trouve, distance) -> resultats.add(new Resultat(trouve, distance)));
+        resultats.sort(Comparator.comparingInt(Resultat::getDistance).thenComparing(Resultat::getNom));
+        return resultats;
+    }
+
+    static int distance(String a, String b) {
+        return distance(a, b, Integer.MAX_VALUE - 1);
+    }
+
+    // Levenshtein sur deux lignes de la matrice ; renvoie plafond + 1 dès que la distance le
+    // dépasse forcément (écart de longueur, ou toute une ligne au-dessus du plafond)
+    static int distance(String a, String b, int plafond) {
+        if (a.equals(b)) {
+            return 0;
+        }
+        int n = a.length();
+        int m = b.length();
+        if (Math.abs(n - m) > plafond) {
+            return plafond + 1;
+        }
+        int[] precedente = new int[m + 1];
+        int[] courante = new int[m + 1];
+        for (int j = 0; j <= m; j++) {
+            precedente[j] = j;
+        }
+        for (int i = 1; i <= n; i++) {
+            courante[0] = i;
+            int minimumLigne = i;
+            char c = a.charAt(i - 1);
+            for (int j = 1; j <= m; j++) {
+                int cout = c == b.charAt(j - 1) ? 0 : 1;
+                int valeur = Math.min(Math.min(courante[j - 1] + 1, precedente[j] + 1), precedente[j - 1] + cout);
+                courante[j] = valeur;
+                minimumLigne = Math.min(minimumLigne, valeur);
+            }
+            if (minimumLigne > plafond) {
+                return plafond + 1;
+            }
+            int[] echange = precedente;
+            precedente = courante;
+            courante = echange;
+        }
+        return precedente[m];
+    }
+}
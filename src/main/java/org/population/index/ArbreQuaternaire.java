@@ -0,0 +1,255 @@
+package org.population.index;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Quadtree à seaux sur (latitude, longitude) : une feuille se divise en quatre quand elle
+// dépasse sa capacité, de sorte qu'une recherche par zone ne visite que les cellules qui la
+// recoupent. Les plus proches voisins sont cherchés par ordre de distance minimale aux cellules.
+// Les distances sont celles du grand cercle (haversine), en kilomètres.
+public class ArbreQuaternaire<T> {
+    private static final int CAPACITE_FEUILLE = 16;
+    private static final int PROFONDEUR_MAX = 24;
+    private static final double RAYON_TERRE_KM = 6371.0;
+
+    private static final class Point<T> {
+        final double latitude;
+        final double longitude;
+        final T valeur;
+
+        Point(double latitude, double longitude, T valeur) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.valeur = valeur;
+        }
+    }
+
+    private static final class Cellule<T> {
+        final double latMin, lonMin, latMax, lonMax;
+        final int profondeur;
+        List<Point<T>> points = new ArrayList<>(4);
+        // null tant que la cellule est une feuille ; sinon SO, SE, NO, NE
+        Cellule<T>[] enfants;
+        int taille;
+
+        Cellule(double latMin, double lonMin, double latMax, double lonMax, int profondeur) {
+            this.latMin = latMin;
+            this.lonMin = lonMin;
+            this.latMax = latMax;
+            this.lonMax = lonMax;
+            this.profondeur = profondeur;
+        }
+
+        boolean recoupe(double aLatMin, double aLonMin, double aLatMax, double aLonMax) {
+            return aLatMin <= latMax && aLatMax >= latMin && aLonMin <= lonMax && aLonMax >= lonMin;
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        void diviser() {
+            double latMilieu = (latMin + latMax) / 2;
+            double lonMilieu = (lonMin + lonMax) / 2;
+            enfants = new Cellule[]{
+                    new Cellule<>(latMin, lonMin, latMilieu, lonMilieu, profondeur + 1),
+                    new Cellule<>(latMin, lonMilieu, latMilieu, lonMax, profondeur + 1),
+                    new Cellule<>(latMilieu, lonMin, latMax, lonMilieu, profondeur + 1),
+                    new Cellule<>(latMilieu, lonMilieu, latMax, lonMax, profondeur + 1)
+            };
+            for (Point<T> point : points) {
+                enfantPour(point.latitude, point.longitude).ajouter(point);
+            }
+            points = null;
+        }
+
+        Cellule<T> enfantPour(double latitude, double longitude) {
+            int index = (latitude >= (latMin + latMax) / 2 ? 2 : 0) + (longitude >= (lonMin + lonMax) / 2 ? 1 : 0);
+            return enfants[index];
+        }
+
+        void ajouter(Point<T> point) {
+            Cellule<T> cellule = this;
+            while (true) {
+                cellule.taille++;
+                if (cellule.enfants == null) {
+                    cellule.points.add(point);
+                    if (cellule.points.size() > CAPACITE_FEUILLE && cellule.profondeur < PROFONDEUR_MAX) {
+                        cellule.diviser();
+                    }
+                    return;
+                }
+                cellule = cellule.enfantPour(point.latitude, point.longitude);
+            }
+        }
+    }
+
+    private final ReentrantReadWriteLock verrou = new ReentrantReadWriteLock();
+    private final Cellule<T> racine = new Cellule<>(-90, -180, 90, 180, 0);
+
+    public void ajouter(double latitude, double longitude, T valeur) {
+        verrou.writeLock().lock();
+        try {
+            racine.ajouter(new Point<>(latitude, longitude, valeur));
+        } finally {
+            verrou.writeLock().unlock();
+        }
+    }
+
+    // Retire cette valeur précise (comparaison par identité) placée à ces coordonnées
+    public boolean retirer(double latitude, double longitude, T valeur) {
+        verrou.writeLock().lock();
+        try {
+            List<Cellule<T>> chemin = new ArrayList<>();
+            Cellule<T> cellule = racine;
+            while (cellule.enfants != null) {
+                chemin.add(cellule);
+                cellule = cellule.enfantPour(latitude, longitude);
+            }
+            if (!cellule.points.removeIf(p -> p.valeur == valeur)) {
+                return false;
+            }
+            cellule.taille--;
+            for (Cellule<T> parcourue : chemin) {
+                parcourue.taille--;
+            }
+            // Une cellule redevenue petite regroupe ses points en une seule feuille
+            for (Cellule<T> parcourue : chemin) {
+                if (parcourue.taille <= CAPACITE_FEUILLE / 2) {
+                    List<Point<T>> regroupes = new ArrayList<>(parcourue.taille);
+                    collecter(parcourue, regroupes);
+                    parcourue.enfants = null;
+                    parcourue.points = regroupes;
+                    break;
+                }
+            }
+            return true;
+        } finally {
+            verrou.writeLock().unlock();
+        }
+    }
+
+    private static <T> void collecter(Cellule<T> cellule, List<Point<T>> cible) {
+        if (cellule.enfants == null) {
+            cible.addAll(cellule.points);
+            return;
+        }
+        for (Cellule<T> enfant : cellule.enfants) {
+            collecter(enfant, cible);
+        }
+    }
+
+    public List<T> rechercherRectangle(double latMin, double lonMin, double latMax, double lonMax) {
+        List<T> resultats = new ArrayList<>();
+        verrou.readLock().lock();
+        try {
+            Deque<Cellule<T>> aVisiter = new ArrayDeque<>();
+            aVisiter.push(racine);
+            while (!aVisiter.isEmpty()) {
+                Cellule<T> cellule = aVisiter.pop();
+                if (cellule.taille == 0 || !cellule.recoupe(latMin, lonMin, latMax, lonMax)) {
+                    continue;
+                }
+                if (cellule.enfants != null) {
+                    for (Cellule<T> enfant : cellule.enfants) {
+                        aVisiter.push(enfant);
+                    }
+                    continue;
+                }
+                for (Point<T> point : cellule.points) {
+                    if (point.latitude >= latMin && point.latitude <= latMax
+                            && point.longitude >= lonMin && point.longitude <= lonMax) {
+                        resultats.add(point.valeur);
+                    }
+                }
+            }
+        } finally {
+            verrou.readLock().unlock();
+        }
+        return resultats;
+    }
+
+    // Valeurs à au plus rayonKm du centre, les plus proches d'abord
+    public List<T> rechercherRayon(double latitude, double longitude, double rayonKm) {
+        List<T> resultats = new ArrayList<>();
+        for (Map.Entry<T, Double> trouve : voisins(latitude, longitude, Integer.MAX_VALUE, rayonKm)) {
+            resultats.add(trouve.getKey());
+        }
+        return resultats;
+    }
+
+    // Les k valeurs les plus proches du point, de la plus proche à la plus lointaine
+    public List<T> plusProches(double latitude, double longitude, int k) {
+        List<T> resultats = new ArrayList<>();
+        for (Map.Entry<T, Double> trouve : voisins(latitude, longitude, k, Double.POSITIVE_INFINITY)) {
+            resultats.add(trouve.getKey());
+        }
+        return resultats;
+    }
+
+    // Parcours par distance minimale croissante : cellules et points partagent la même file, si
+    // bien qu'un point sort de la file avant toute cellule qui pourrait en contenir un plus proche
+    private List<Map.Entry<T, Double>> voisins(double latitude, double longitude, int k, double rayonKm) {
+        List<Map.Entry<T, Double>> resultats = new ArrayList<>();
+        PriorityQueue<Object[]> file = new PriorityQueue<>(Comparator.comparingDouble(e -> (Double) e[0]));
+        verrou.readLock().lock();
+        try {
+            file.add(new Object[]{0.0, racine});
+            while (!file.isEmpty() && resultats.size() < k) {
+                Object[] tete = file.poll();
+                double distance = (Double) tete[0];
+                if (distance > rayonKm) {
+                    break;
+                }
+                if (tete[1] instanceof Point) {
+                    @SuppressWarnings("unchecked")
+                    Point<T> point = (Point<T>) tete[1];
+                    resultats.add(new AbstractMap.SimpleImmutableEntry<>(point.valeur, distance));
+                    continue;
+                }
+                @SuppressWarnings("unchecked")
+                Cellule<T> cellule = (Cellule<T>) tete[1];
+                if (cellule.taille == 0) {
+                    continue;
+                }
+                if (cellule.enfants != null) {
+                    for (Cellule<T> enfant : cellule.enfants) {
+                        if (enfant.taille > 0) {
+                            file.add(new Object[]{distanceMinimale(latitude, longitude, enfant), enfant});
+                        }
+                    }
+                } else {
+                    for (Point<T> point : cellule.points) {
+                        file.add(new Object[]{distanceKm(latitude, longitude, point.latitude, point.longitude), point});
+                    }
+                }
+            }
+        } finally {
+            verrou.readLock().unlock();
+        }
+        return resultats;
+    }
+
+    // Distance au point le plus proche de la cellule, obtenu en ramenant le point dans ses
+    // bornes ; minorant suffisant aux échelles d'une région ou d'un pays
+    private static double distanceMinimale(double latitude, double longitude, Cellule<?> cellule) {
+        double lat = Math.max(cellule.latMin, Math.min(cellule.latMax, latitude));
+        double lon = Math.max(cellule.lonMin, Math.min(cellule.lonMax, longitude));
+        return distanceKm(latitude, longitude, lat, lon);
+    }
+
+    public static double distanceKm(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * RAYON_TERRE_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    // Rectangle englobant le cercle de ce rayon, pour préfiltrer une recherche par zone
+    public static double[] rectangleEnglobant(double latitude, double longitude, double rayonKm) {
+        double dLat = Math.toDegrees(rayonKm / RAYON_TERRE_KM);
+        double cosinus = Math.cos(Math.toRadians(latitude));
+        double dLon = cosinus < 1e-9 ? 180 : Math.min(180, dLat / cosinus);
+        return new double[]{Math.max(-90, latitude - dLat), Math.max(-180, longitude - dLon),
+                Math.min(90, latitude + dLat), Math.min(180, longitude + dLon)};
+    }
+}
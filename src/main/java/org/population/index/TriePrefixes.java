@@ -0,0 +1,202 @@
+package org.population.index;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Trie compressé (arêtes étiquetées par des chaînes) sur les noms normalisés comme pour ArbreBK.
+// Chaque nœud garde les noms les plus peuplés de son sous-arbre : une suggestion ne coûte que la
+// descente le long du préfixe, sans parcourir les noms qui le partagent. Les classements sont
+// mis à jour le long du chemin à chaque ajout ou retrait.
+public class TriePrefixes {
+    private final int capacite;
+
+    private static final class Entree {
+        final String nom;
+        final int population;
+
+        Entree(String nom, int population) {
+            this.nom = nom;
+            this.population = population;
+        }
+    }
+
+    private static final Comparator<Entree> PAR_POPULATION =
+            Comparator.comparingInt((Entree e) -> e.population).reversed().thenComparing(e -> e.nom);
+
+    private static final class Noeud {
+        String etiquette;
+        final Map<Character, Noeud> enfants = new HashMap<>(4);
+        // Noms dont la forme normalisée se termine sur ce nœud
+        final List<Entree> terminaux = new ArrayList<>(1);
+        // Meilleures entrées du sous-arbre, par population décroissante
+        List<Entree> meilleures = new ArrayList<>(0);
+        int taille;
+
+        Noeud(String etiquette) {
+            this.etiquette = etiquette;
+        }
+    }
+
+    private final ReentrantReadWriteLock verrou = new ReentrantReadWriteLock();
+    private final Noeud racine = new Noeud("");
+
+    public TriePrefixes(int capacite) {
+        this.capacite = capacite;
+    }
+
+    public void ajouter(String nom, int population) {
+        String cle = ArbreBK.normaliser(nom);
+        Entree entree = new Entree(nom, population);
+        verrou.writeLock().lock();
+        try {
+            Noeud noeud = racine;
+            int position = 0;
+            List<Noeud> chemin = new ArrayList<>();
+            chemin.add(noeud);
+            while (position < cle.length()) {
+                Noeud enfant = noeud.enfants.get(cle.charAt(position));
+                if (enfant == null) {
+                    enfant = new Noeud(cle.substring(position));
+                    noeud.enfants.put(cle.charAt(position), enfant);
+                    noeud = enfant;
+                    chemin.add(noeud);
+                    break;
+                }
+                int commun = prefixeCommun(enfant.etiquette, cle, position);
+                if (commun < enfant.etiquette.length()) {
+                    enfant = scinder(noeud, enfant, commun);
+                }
+                noeud = enfant;
+                chemin.add(noeud);
+                position += commun;
+            }
+            noeud.terminaux.add(entree);
+            for (Noeud parcouru : chemin) {
+                parcouru.taille++;
+                classer(parcouru, entree);
+            }
+        } finally {
+            verrou.writeLock().unlock();
+        }
+    }
+
+    private static int prefixeCommun(String etiquette, String cle, int debut) {
+        int n = Math.min(etiquette.length(), cle.length() - debut);
+        int i = 0;
+        while (i < n && etiquette.charAt(i) == cle.charAt(debut + i)) {
+            i++;
+        }
+        return i;
+    }
+
+    // Coupe l'arête de l'enfant après "longueur" caractères ; renvoie le nœud intermédiaire
+    private static Noeud scinder(Noeud parent, Noeud enfant, int longueur) {
+        Noeud milieu = new Noeud(enfant.etiquette.substring(0, longueur));
+        enfant.etiquette = enfant.etiquette.substring(longueur);
+        milieu.enfants.put(enfant.etiquette.charAt(0), enfant);
+        milieu.meilleures = new ArrayList<>(enfant.meilleures);
+        milieu.taille = enfant.taille;
+        parent.enfants.put(milieu.etiquette.charAt(0), milieu);
+        return milieu;
+    }
+
+    private void classer(Noeud noeud, Entree entree) {
+        List<Entree> meilleures = noeud.meilleures;
+        if (meilleures.size() >= capacite
+                && PAR_POPULATION.compare(entree, meilleures.get(meilleures.size() - 1)) >= 0) {
+            return;
+        }
+        int position = Collections.binarySearch(meilleures, entree, PAR_POPULATION);
+        meilleures.add(position < 0 ? -position - 1 : position, entree);
+        if (meilleures.size() > capacite) {
+            meilleures.remove(meilleures.size() - 1);
+        }
+    }
+
+    public void retirer(String nom) {
+        String cle = ArbreBK.normaliser(nom);
+        verrou.writeLock().lock();
+        try {
+            List<Noeud> chemin = cheminVers(cle, true);
+            if (chemin == null) {
+                return;
+            }
+            Noeud terminal = chemin.get(chemin.size() - 1);
+            if (!terminal.terminaux.removeIf(e -> e.nom.equals(nom))) {
+                return;
+            }
+            // Du bas vers le haut : un nœud dont le classement a perdu ce nom le reconstitue à
+            // partir de ses terminaux et des classements (déjà à jour) de ses enfants
+            for (int i = chemin.size() - 1; i >= 0; i--) {
+                Noeud noeud = chemin.get(i);
+                noeud.taille--;
+                if (i > 0 && noeud.taille == 0) {
+                    chemin.get(i - 1).enfants.remove(noeud.etiquette.charAt(0));
+                    continue;
+                }
+                if (noeud.meilleures.removeIf(e -> e.nom.equals(nom)) && noeud.taille >= noeud.meilleures.size() + 1) {
+                    reclasser(noeud);
+                }
+            }
+        } finally {
+            verrou.writeLock().unlock();
+        }
+    }
+
+    private void reclasser(Noeud noeud) {
+        List<Entree> candidates = new ArrayList<>(noeud.terminaux);
+        for (Noeud enfant : noeud.enfants.values()) {
+            candidates.addAll(enfant.meilleures);
+        }
+        candidates.sort(PAR_POPULATION);
+        noeud.meilleures = new ArrayList<>(candidates.subList(0, Math.min(capacite, candidates.size())));
+    }
+
+    // Nœuds traversés jusqu'à la clé ; si exact est faux, le dernier nœud est celui dont le
+    // sous-arbre contient tous les noms commençant par la clé. null si aucun ne correspond.
+    private List<Noeud> cheminVers(String cle, boolean exact) {
+        List<Noeud> chemin = new ArrayList<>();
+        Noeud noeud = racine;
+        chemin.add(noeud);
+        int position = 0;
+        while (position < cle.length()) {
+            Noeud enfant = noeud.enfants.get(cle.charAt(position));
+            if (enfant == null) {
+                return null;
+            }
+            int commun = prefixeCommun(enfant.etiquette, cle, position);
+            if (commun < enfant.etiquette.length()) {
+                // La clé s'arrête au milieu de l'arête (préfixe) ou en diverge
+                if (!exact && position + commun == cle.length()) {
+                    chemin.add(enfant);
+                    return chemin;
+                }
+                return null;
+            }
+            noeud = enfant;
+            chemin.add(noeud);
+            position += commun;
+        }
+        return chemin;
+    }
+
+    // Noms commençant par le préfixe (normalisé), les plus peuplés d'abord, au plus "capacite"
+    public List<String> suggerer(String prefixe, int limite) {
+        String cle = ArbreBK.normaliser(prefixe);
+        verrou.readLock().lock();
+        try {
+            List<Noeud> chemin = cheminVers(cle, false);
+            if (chemin == null) {
+                return List.of();
+            }
+            List<Entree> meilleures = chemin.get(chemin.size() - 1).meilleures;
+            List<String> noms = new ArrayList<>(Math.min(limite, meilleures.size()));
+            for (int i = 0; i < meilleures.size() && i < limite; i++) {
+                noms.add(meilleures.get(i).nom);
+            }
+            return noms;
+        } finally {
+            verrou.readLock().unlock();
+        }
+    }
+}
@@ -1,14 +1,28 @@
 package org.population.modele;
 
+import org.population.utils.Formatage;
+
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.util.List;
 
 public class Localite {
     private String nom;
     private int population;
     private double superficie;
     private TypePopulation type;
+    private String region;
+    // Coordonnées en degrés décimaux (WGS 84), absentes pour les localités non géolocalisées
+    private Double latitude;
+    private Double longitude;
     private LocalDateTime dateEnregistrement;
+    // Effectifs par tranche d'âge et par sexe (voir Pyramide), absents le plus souvent
+    private int[] repartition;
+
+    // Région des localités saisies sans précision, périmètre d'origine de l'application
+    public static final String REGION_PAR_DEFAUT = "Extrême-Nord";
+    public static final List<String> REGIONS = List.of(
+            "Adamaoua", "Centre", "Est", "Extrême-Nord", "Littoral",
+            "Nord", "Nord-Ouest", "Ouest", "Sud", "Sud-Ouest");
 
     public enum TypePopulation {
         URBAINE,
@@ -21,9 +35,60 @@ public class Localite {
         this.population = population;
         this.superficie = superficie;
         this.type = type;
+        this.region = REGION_PAR_DEFAUT;
         this.dateEnregistrement = LocalDateTime.now();
     }
 
+    // Reconstruction d'une localité déjà enregistrée, en conservant sa date d'enregistrement
+    public Localite(String nom, int population, double superficie, TypePopulation type,
+                    LocalDateTime dateEnregistrement) throws LocaliteException {
+        this(nom, population, superficie, type, null, dateEnregistrement);
+    }
+
+    // Région vide ou absente : région par défaut
+    public Localite(String nom, int population, double superficie, TypePopulation type, String region,
+                    LocalDateTime dateEnregistrement) throws LocaliteException {
+        this(nom, population, superficie, type, region, null, null, dateEnregistrement);
+    }
+
+    // Latitude et longitude vont ensemble : toutes deux renseignées ou toutes deux nulles
+    public Localite(String nom, int population, double superficie, TypePopulation type, String region,
+                    Double latitude, Double longitude, LocalDateTime dateEnregistrement) throws LocaliteException {
+        this(nom, population, superficie, type);
+        validerCoordonnees(latitude, longitude);
+        if (region != null && !region.trim().isEmpty()) {
+            this.region = region.trim();
+        }
+        this.latitude = latitude;
+        this.longitude = longitude;
+        if (dateEnregistrement != null) {
+            this.dateEnregistrement = dateEnregistrement;
+        }
+    }
+
+    // Copie d'une localité déjà validée, pour avecRepartition
+    private Localite(Localite source) {
+        this.nom = source.nom;
+        this.population = source.population;
+        this.superficie = source.superficie;
+        this.type = source.type;
+        this.region = source.region;
+        this.latitude = source.latitude;
+        this.longitude = source.longitude;
+        this.dateEnregistrement = source.dateEnregistrement;
+        this.repartition = source.repartition;
+    }
+
+    // Même localité avec une répartition par âge et sexe (null pour la retirer) ; le tableau est copié
+    public Localite avecRepartition(int[] repartition) throws LocaliteException {
+        if (repartition != null) {
+            Pyramide.valider(repartition);
+        }
+        Localite copie = new Localite(this);
+        copie.repartition = repartition == null ? null : repartition.clone();
+        return copie;
+    }
+
     // Vérirication des données
     private void validerDonnees(String nom, int population, double superficie) throws LocaliteException {
         if (nom == null || nom.trim().isEmpty()) {
@@ -37,12 +102,41 @@ public class Localite {
         }
     }
 
+    private void validerCoordonnees(Double latitude, Double longitude) throws LocaliteException {
+        if ((latitude == null) != (longitude == null)) {
+            throw new LocaliteException("La latitude et la longitude doivent être renseignées ensemble");
+        }
+        if (latitude != null && (latitude.isNaN() || latitude < -90 || latitude > 90)) {
+            throw new LocaliteException("La latitude doit être comprise entre -90 et 90");
+        }
+        if (longitude != null && (longitude.isNaN() || longitude < -180 || longitude > 180)) {
+            throw new LocaliteException("La longitude doit être comprise entre -180 et 180");
+        }
+    }
+
     // Getters
     public String getNom() { return nom; }
     public int getPopulation() { return population; }
     public double getSuperficie() { return superficie; }
     public TypePopulation getType() { return type; }
+    public String getRegion() { return region; }
+    public Double getLatitude() { return latitude; }
+    public Double getLongitude() { return longitude; }
+    public boolean estGeolocalisee() { return latitude != null; }
     public LocalDateTime getDateEnregistrement() { return dateEnregistrement; }
+    public boolean hasRepartition() { return repartition != null; }
+
+    // Copie de la répartition par âge et sexe, null si elle n'est pas renseignée
+    public int[] getRepartition() {
+        return repartition == null ? null : repartition.clone();
+    }
+
+    // Ajoute (signe 1) ou retire (signe -1) la répartition à une somme, sans copie
+    public void cumulerRepartition(long[] somme, int signe) {
+        if (repartition != null) {
+            Pyramide.cumuler(somme, repartition, signe);
+        }
+    }
 
     public double calculerDensite() {
         return population / superficie;
@@ -50,20 +144,17 @@ public class Localite {
 
     @Override
     public String toString() {
-        return String.format("""
-            Localité: %s
-            Population: %d habitants
-            Superficie: %.2f km²
-            Type: %s
-            Densité: %.2f hab/km²
-            Date d'enregistrement: %s
-            """,
-                nom,
-                population,
-                superficie,
-                type,
-                calculerDensite(),
-                dateEnregistrement.format(DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm"))
-        );
+        StringBuilder sb = new StringBuilder(192);
+        sb.append("Localité: ").append(nom).append('\n');
+        sb.append("Population: ").append(population).append(" habitants\n");
+        Formatage.DECIMAL_2.ajouter(sb.append("Superficie: "), superficie).append(" km²\n");
+        sb.append("Type: ").append(type).append('\n');
+        sb.append("Région: ").append(region).append('\n');
+        if (estGeolocalisee()) {
+            sb.append("Coordonnées: ").append(latitude).append(", ").append(longitude).append('\n');
+        }
+        Formatage.DECIMAL_2.ajouter(sb.append("Densité: "), calculerDensite()).append(" hab/km²\n");
+        Formatage.ajouterDate(sb.append("Date d'enregistrement: "), dateEnregistrement).append('\n');
+        return sb.toString();
     }
 }
\ No newline at end of file
@@ -0,0 +1,125 @@
+package org.population.modele;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// Pyramide des âges : effectifs par tranche de cinq ans (0-4 à 80+) et par sexe, rangés dans un
+// tableau de taille fixe, hommes puis femmes. Une localité peut porter sa répartition (int[]) ;
+// les agrégats par type ou par région s'obtiennent en additionnant ces tableaux case à case
+// dans un long[] de même taille, qu'enveloppe une instance de cette classe.
+public final class Pyramide {
+    public static final int LARGEUR_TRANCHE = 5;
+    public static final int NOMBRE_TRANCHES = 17;
+    // Hommes de 0 à NOMBRE_TRANCHES - 1, femmes de NOMBRE_TRANCHES à TAILLE - 1
+    public static final int TAILLE = 2 * NOMBRE_TRANCHES;
+
+    private final long[] effectifs;
+    private final long localites;
+
+    // effectifs : tableau de TAILLE cases, repris tel quel ; localites : nombre de répartitions sommées
+    public Pyramide(long[] effectifs, long localites) {
+        if (effectifs.length != TAILLE) {
+            throw new IllegalArgumentException("Une pyramide compte " + TAILLE + " effectifs");
+        }
+        this.effectifs = effectifs;
+        this.localites = localites;
+    }
+
+    // Libellé d'une tranche : "0-4", "5-9", ..., "80+"
+    public static String libelleTranche(int tranche) {
+        int debut = tranche * LARGEUR_TRANCHE;
+        return tranche == NOMBRE_TRANCHES - 1 ? debut + "+" : debut + "-" + (debut + LARGEUR_TRANCHE - 1);
+    }
+
+    public long getHommes(int tranche) {
+        return effectifs[tranche];
+    }
+
+    public long getFemmes(int tranche) {
+        return effectifs[NOMBRE_TRANCHES + tranche];
+    }
+
+    public long getNombreLocalites() {
+        return localites;
+    }
+
+    public long getTotal() {
+        long total = 0;
+        for (long effectif : effectifs) {
+            total += effectif;
+        }
+        return total;
+    }
+
+    public long getTotalHommes() {
+        long total = 0;
+        for (int i = 0; i < NOMBRE_TRANCHES; i++) {
+            total += effectifs[i];
+        }
+        return total;
+    }
+
+    public long getTotalFemmes() {
+        return getTotal() - getTotalHommes();
+    }
+
+    // Vérifie une répartition saisie ou lue : TAILLE effectifs positifs ou nuls. Leur somme
+    // n'est pas comparée à la population, les deux sources n'étant pas toujours de la même année.
+    public static void valider(int[] repartition) throws LocaliteException {
+        if (repartition.length != TAILLE) {
+            throw new LocaliteException("La répartition par âge et sexe doit compter " + TAILLE + " effectifs");
+        }
+        for (int effectif : repartition) {
+            if (effectif < 0) {
+                throw new LocaliteException("Les effectifs par âge et sexe ne peuvent pas être négatifs");
+            }
+        }
+    }
+
+    // Ajoute (signe 1) ou retire (signe -1) une répartition d'une somme ; boucle sur deux tableaux
+    // de taille fixe, que le compilateur à la volée vectorise
+    public static void cumuler(long[] somme, int[] repartition, int signe) {
+        for (int i = 0; i < TAILLE; i++) {
+            somme[i] += (long) signe * repartition[i];
+        }
+    }
+
+    // Forme compacte pour le stockage : un octet de largeur (2 ou 4) puis les effectifs sur
+    // cette largeur ; 69 octets pour une localité dont aucune tranche ne dépasse 65 535
+    public static byte[] emballer(int[] repartition) {
+        int maximum = 0;
+        for (int effectif : repartition) {
+            maximum = Math.max(maximum, effectif);
+        }
+        int largeur = maximum <= 0xFFFF ? 2 : 4;
+        ByteBuffer tampon = ByteBuffer.allocate(1 + largeur * TAILLE);
+        tampon.put((byte) largeur);
+        for (int effectif : repartition) {
+            if (largeur == 2) {
+                tampon.putShort((short) effectif);
+            } else {
+                tampon.putInt(effectif);
+            }
+        }
+        return tampon.array();
+    }
+
+    public static int[] deballer(byte[] octets) throws LocaliteException {
+        ByteBuffer tampon = ByteBuffer.wrap(octets);
+        int largeur = octets.length > 0 ? tampon.get() : 0;
+        if ((largeur != 2 && largeur != 4) || octets.length != 1 + largeur * TAILLE) {
+            throw new LocaliteException("Répartition par âge et sexe illisible (" + octets.length + " octets)");
+        }
+        int[] repartition = new int[TAILLE];
+        for (int i = 0; i < TAILLE; i++) {
+            repartition[i] = largeur == 2 ? Short.toUnsignedInt(tampon.getShort()) : tampon.getInt();
+        }
+        valider(repartition);
+        return repartition;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(effectifs);
+    }
+}
@@ -0,0 +1,137 @@
+package org.population.recensement;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// Une année de recensement : pour chaque emplacement, l'écart avec la population retenue à
+// l'année précédente, stocké sur la plus petite largeur (1, 2 ou 4 octets) qui contient tous
+// les écarts de la colonne. Un emplacement absent du recensement a un écart nul (la valeur
+// précédente est reportée) et son bit de présence à zéro. Immuable.
+final class ColonneRecensement {
+    final int annee;
+    // Emplacements couverts ; ceux au-delà sont absents
+    final int taille;
+    final long[] presents;
+    private final int largeur;
+    private final byte[] octets;
+    private final short[] courts;
+    private final int[] entiers;
+
+    private ColonneRecensement(int annee, int taille, long[] presents, int largeur,
+                               byte[] octets, short[] courts, int[] entiers) {
+        this.annee = annee;
+        this.taille = taille;
+        this.presents = presents;
+        this.largeur = largeur;
+        this.octets = octets;
+        this.courts = courts;
+        this.entiers = entiers;
+    }
+
+    // valeurs et precedentes sont les populations absolues de cette année et de la précédente
+    static ColonneRecensement encoder(int annee, int[] valeurs, int[] precedentes, long[] presents, int taille) {
+        long min = 0;
+        long max = 0;
+        int[] ecarts = new int[taille];
+        for (int i = 0; i < taille; i++) {
+            ecarts[i] = valeurs[i] - precedentes[i];
+            min = Math.min(min, ecarts[i]);
+            max = Math.max(max, ecarts[i]);
+        }
+        long[] bits = Arrays.copyOf(presents, (taille + 63) >>> 6);
+        if (min >= Byte.MIN_VALUE && max <= Byte.MAX_VALUE) {
+            byte[] octets = new byte[taille];
+            for (int i = 0; i < taille; i++) {
+                octets[i] = (byte) ecarts[i];
+            }
+            return new ColonneRecensement(annee, taille, bits, 1, octets, null, null);
+        }
+        if (min >= Short.MIN_VALUE && max <= Short.MAX_VALUE) {
+            short[] courts = new short[taille];
+            for (int i = 0; i < taille; i++) {
+                courts[i] = (short) ecarts[i];
+            }
+            return new ColonneRecensement(annee, taille, bits, 2, null, courts, null);
+        }
+        return new ColonneRecensement(annee, taille, bits, 4, null, null, ecarts);
+    }
+
+    boolean estPresent(int emplacement) {
+        return emplacement < taille && (presents[emplacement >>> 6] >>> emplacement & 1L) != 0;
+    }
+
+    int ecart(int emplacement) {
+        if (emplacement >= taille) {
+            return 0;
+        }
+        return switch (largeur) {
+            case 1 -> octets[emplacement];
+            case 2 -> courts[emplacement];
+            default -> entiers[emplacement];
+        };
+    }
+
+    // Ajoute les écarts de l'année aux valeurs de l'année précédente : boucles simples sur des
+    // tableaux primitifs, que le compilateur JIT vectorise
+    void cumuler(int[] valeurs) {
+        switch (largeur) {
+            case 1 -> {
+                for (int i = 0; i < taille; i++) {
+                    valeurs[i] += octets[i];
+                }
+            }
+            case 2 -> {
+                for (int i = 0; i < taille; i++) {
+                    valeurs[i] += courts[i];
+                }
+            }
+            default -> {
+                for (int i = 0; i < taille; i++) {
+                    valeurs[i] += entiers[i];
+                }
+            }
+        }
+    }
+
+    // Format : année, taille, largeur, bits de présence, écarts sur "largeur" octets
+    byte[] serialiser() {
+        ByteBuffer tampon = ByteBuffer.allocate(12 + presents.length * 8 + taille * largeur);
+        tampon.putInt(annee).putInt(taille).putInt(largeur);
+        tampon.asLongBuffer().put(presents);
+        tampon.position(tampon.position() + presents.length * 8);
+        switch (largeur) {
+            case 1 -> tampon.put(octets);
+            case 2 -> tampon.asShortBuffer().put(courts);
+            default -> tampon.asIntBuffer().put(entiers);
+        }
+        return tampon.array();
+    }
+
+    static ColonneRecensement deserialiser(byte[] donnees) {
+        ByteBuffer tampon = ByteBuffer.wrap(donnees);
+        int annee = tampon.getInt();
+        int taille = tampon.getInt();
+        int largeur = tampon.getInt();
+        long[] presents = new long[(taille + 63) >>> 6];
+        tampon.asLongBuffer().get(presents);
+        tampon.position(tampon.position() + presents.length * 8);
+        return switch (largeur) {
+            case 1 -> {
+                byte[] octets = new byte[taille];
+                tampon.get(octets);
+                yield new ColonneRecensement(annee, taille, presents, 1, octets, null, null);
+            }
+            case 2 -> {
+                short[] courts = new short[taille];
+                tampon.asShortBuffer().get(courts);
+                yield new ColonneRecensement(annee, taille, presents, 2, null, courts, null);
+            }
+            case 4 -> {
+                int[] entiers = new int[taille];
+                tampon.asIntBuffer().get(entiers);
+                yield new ColonneRecensement(annee, taille, presents, 4, null, null, entiers);
+            }
+            default -> throw new IllegalArgumentException("Largeur de colonne inconnue: " + largeur);
+        };
+    }
+}
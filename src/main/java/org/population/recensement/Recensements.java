@@ -0,0 +1,246 @@
+package org.population.recensement;
+
+import java.util.*;
+
+// Populations recensées par localité et par année, rangées en colonnes : un emplacement par
+// localité, une colonne par année de recensement, chaque colonne codée en écarts avec la
+// précédente (voir ColonneRecensement). Les requêtes sur toutes les localités parcourent les
+// colonnes dans l'ordre des années en cumulant les écarts dans un seul tableau d'entiers.
+// Immuable : une modification renvoie une nouvelle instance qui partage les colonnes inchangées.
+public final class Recensements {
+    // Nom de chaque emplacement ; un emplacement n'est jamais réattribué
+    private final List<String> noms;
+    private final Map<String, Integer> emplacements;
+    private final NavigableMap<Integer, ColonneRecensement> colonnes;
+
+    public static final Recensements VIDE = new Recensements(List.of(), new TreeMap<>());
+
+    private Recensements(List<String> noms, NavigableMap<Integer, ColonneRecensement> colonnes) {
+        this.noms = noms;
+        this.colonnes = colonnes;
+        this.emplacements = new HashMap<>(Math.max(16, noms.size() * 2));
+        for (int i = 0; i < noms.size(); i++) {
+            emplacements.put(cle(noms.get(i)), i);
+        }
+    }
+
+    // Reconstruction depuis le stockage : noms des emplacements et colonnes sérialisées
+    public static Recensements charger(List<String> noms, Collection<byte[]> colonnesSerialisees) {
+        NavigableMap<Integer, ColonneRecensement> colonnes = new TreeMap<>();
+        for (byte[] donnees : colonnesSerialisees) {
+            ColonneRecensement colonne = ColonneRecensement.deserialiser(donnees);
+            colonnes.put(colonne.annee, colonne);
+        }
+        return new Recensements(List.copyOf(noms), colonnes);
+    }
+
+    private static String cle(String nom) {
+        return nom.toLowerCase(Locale.ROOT);
+    }
+
+    public List<String> getNoms() {
+        return noms;
+    }
+
+    public List<Integer> getAnnees() {
+        return new ArrayList<>(colonnes.keySet());
+    }
+
+    public boolean estVide() {
+        return colonnes.isEmpty();
+    }
+
+    // Empreinte du contenu (noms et colonnes), identique d'un démarrage à l'autre
+    public long empreinte() {
+        long h = noms.hashCode();
+        for (ColonneRecensement colonne : colonnes.values()) {
+            h = 31 * h + Arrays.hashCode(colonne.serialiser());
+        }
+        return h;
+    }
+
+    public byte[] serialiserColonne(int annee) {
+        ColonneRecensement colonne = colonnes.get(annee);
+        if (colonne == null) {
+            throw new IllegalArgumentException("Aucun recensement en " + annee);
+        }
+        return colonne.serialiser();
+    }
+
+    // Résultat d'une modification : le nouvel état et les années dont la colonne a changé
+    public static class Modification {
+        private final Recensements recensements;
+        private final SortedSet<Integer> anneesModifiees;
+
+        Modification(Recensements recensements, SortedSet<Integer> anneesModifiees) {
+            this.recensements = recensements;
+            this.anneesModifiees = anneesModifiees;
+        }
+
+        public Recensements getRecensements() { return recensements; }
+        public SortedSet<Integer> getAnneesModifiees() { return anneesModifiees; }
+    }
+
+    // Enregistre (ou corrige) les populations d'une année ; les localités non citées gardent
+    // leur valeur éventuelle pour cette année. Les colonnes des années suivantes sont recodées :
+    // leurs écarts, et les valeurs reportées des localités absentes, dépendent de celle-ci.
+    public Modification avecRecensement(int annee, Map<String, Integer> populations) {
+        List<String> nouveauxNoms = new ArrayList<>(noms);
+        Map<String, Integer> nouveauxEmplacements = new HashMap<>(emplacements);
+        for (String nom : populations.keySet()) {
+            if (nouveauxEmplacements.putIfAbsent(cle(nom), nouveauxNoms.size()) == null) {
+                nouveauxNoms.add(nom);
+            }
+        }
+        int taille = nouveauxNoms.size();
+        // anciennes : valeurs absolues avant modification ; precedentes : après modification
+        int[] anciennes = new int[taille];
+        for (ColonneRecensement colonne : colonnes.headMap(annee, false).values()) {
+            colonne.cumuler(anciennes);
+        }
+        int[] precedentes = anciennes.clone();
+
+        int[] valeurs = anciennes.clone();
+        long[] presents = new long[(taille + 63) >>> 6];
+        ColonneRecensement existante = colonnes.get(annee);
+        if (existante != null) {
+            existante.cumuler(anciennes);
+            existante.cumuler(valeurs);
+            System.arraycopy(existante.presents, 0, presents, 0, existante.presents.length);
+        }
+        for (Map.Entry<String, Integer> population : populations.entrySet()) {
+            int emplacement = nouveauxEmplacements.get(cle(population.getKey()));
+            valeurs[emplacement] = population.getValue();
+            presents[emplacement >>> 6] |= 1L << emplacement;
+        }
+
+        NavigableMap<Integer, ColonneRecensement> nouvelles = new TreeMap<>(colonnes);
+        SortedSet<Integer> modifiees = new TreeSet<>();
+        nouvelles.put(annee, ColonneRecensement.encoder(annee, valeurs, precedentes, presents, taille));
+        modifiees.add(annee);
+        precedentes = valeurs;
+        for (ColonneRecensement suivante : colonnes.tailMap(annee, false).values()) {
+            suivante.cumuler(anciennes);
+            // Valeur recensée si la localité est présente, sinon report de la nouvelle valeur
+            int[] absolues = new int[taille];
+            for (int i = 0; i < taille; i++) {
+                absolues[i] = suivante.estPresent(i) ? anciennes[i] : precedentes[i];
+            }
+            nouvelles.put(suivante.annee, ColonneRecensement.encoder(suivante.annee, absolues, precedentes,
+                    Arrays.copyOf(suivante.presents, (taille + 63) >>> 6), taille));
+            modifiees.add(suivante.annee);
+            precedentes = absolues;
+        }
+        return new Modification(new Recensements(List.copyOf(nouveauxNoms), nouvelles), modifiees);
+    }
+
+    // Suit le changement de nom d'une localité ; sans série à ce nom, renvoie cette instance
+    public Recensements avecNomChange(String ancien, String nouveau) {
+        Integer emplacement = emplacements.get(cle(ancien));
+        if (emplacement == null || emplacements.containsKey(cle(nouveau))) {
+            return this;
+        }
+        List<String> nouveauxNoms = new ArrayList<>(noms);
+        nouveauxNoms.set(emplacement, nouveau);
+        return new Recensements(List.copyOf(nouveauxNoms), colonnes);
+    }
+
+    // Série d'une localité : année -> population, pour les seules années où elle a été recensée
+    public SortedMap<Integer, Integer> serie(String nom) {
+        SortedMap<Integer, Integer> serie = new TreeMap<>();
+        Integer emplacement = emplacements.get(cle(nom));
+        if (emplacement == null) {
+            return serie;
+        }
+        // Cumul sur la seule case de la localité : aucune colonne n'est décodée en entier
+        int valeur = 0;
+        for (ColonneRecensement colonne : colonnes.values()) {
+            valeur += colonne.ecart(emplacement);
+            if (colonne.estPresent(emplacement)) {
+                serie.put(colonne.annee, valeur);
+            }
+        }
+        return serie;
+    }
+
+    // Population totale recensée par année (localités présentes cette année-là)
+    public SortedMap<Integer, Long> totauxParAnnee() {
+        SortedMap<Integer, Long> totaux = new TreeMap<>();
+        int[] valeurs = new int[noms.size()];
+        for (ColonneRecensement colonne : colonnes.values()) {
+            colonne.cumuler(valeurs);
+            long total = 0;
+            for (int i = 0; i < colonne.taille; i++) {
+                total += (colonne.presents[i >>> 6] >>> i & 1L) * valeurs[i];
+            }
+            totaux.put(colonne.annee, total);
+        }
+        return totaux;
+    }
+
+    // Taux de croissance annuel moyen entre deux recensements, pour chaque localité recensée
+    // les deux années avec une population non nulle au départ : (fin / debut)^(1 / années) - 1
+    public Map<String, Double> tauxAnnuels(int debut, int fin) {
+        ColonneRecensement colonneDebut = colonnes.get(debut);
+        ColonneRecensement colonneFin = colonnes.get(fin);
+        if (colonneDebut == null || colonneFin == null || fin <= debut) {
+            return Map.of();
+        }
+        int[] valeurs = new int[noms.size()];
+        int[] depart = null;
+        // Un seul passage sur les colonnes jusqu'à l'année de fin
+        for (ColonneRecensement colonne : colonnes.headMap(fin, true).values()) {
+            colonne.cumuler(valeurs);
+            if (colonne.annee == debut) {
+                depart = valeurs.clone();
+            }
+        }
+        double[] rapports = new double[noms.size()];
+        for (int i = 0; i < rapports.length; i++) {
+            rapports[i] = depart[i] > 0 ? (double) valeurs[i] / depart[i] : Double.NaN;
+        }
+        double exposant = 1.0 / (fin - debut);
+        Map<String, Double> taux = new HashMap<>();
+        for (int i = 0; i < rapports.length; i++) {
+            if (colonneDebut.estPresent(i) && colonneFin.estPresent(i) && !Double.isNaN(rapports[i])) {
+                taux.put(noms.get(i), Math.pow(rapports[i], exposant) - 1);
+            }
+        }
+        return taux;
+    }
+
+    // Tendance de chaque localité recensée au moins deux fois : pente de la droite des moindres
+    // carrés population = f(année), en habitants par an. Les sommes de la régression sont
+    // cumulées colonne par colonne dans des tableaux, sans branchement sur la présence.
+    public Map<String, Double> tendances() {
+        int taille = noms.size();
+        int[] valeurs = new int[taille];
+        double[] n = new double[taille];
+        double[] sx = new double[taille];
+        double[] sxx = new double[taille];
+        double[] sy = new double[taille];
+        double[] sxy = new double[taille];
+        double origine = colonnes.isEmpty() ? 0 : colonnes.firstKey();
+        for (ColonneRecensement colonne : colonnes.values()) {
+            colonne.cumuler(valeurs);
+            double x = colonne.annee - origine;
+            for (int i = 0; i < colonne.taille; i++) {
+                double present = colonne.presents[i >>> 6] >>> i & 1L;
+                double y = present * valeurs[i];
+                n[i] += present;
+                sx[i] += present * x;
+                sxx[i] += present * x * x;
+                sy[i] += y;
+                sxy[i] += y * x;
+            }
+        }
+        Map<String, Double> pentes = new HashMap<>();
+        for (int i = 0; i < taille; i++) {
+            double denominateur = n[i] * sxx[i] - sx[i] * sx[i];
+            if (n[i] >= 2 && denominateur > 0) {
+                pentes.put(noms.get(i), (n[i] * sxy[i] - sx[i] * sy[i]) / denominateur);
+            }
+        }
+        return pentes;
+    }
+}
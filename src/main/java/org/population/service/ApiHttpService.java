@@ -0,0 +1,586 @@
+package org.population.service;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.population.analyse.Projection;
+import org.population.gestion.GestionPopulation;
+import org.population.gestion.GestionPopulation.ConfigurationRapport;
+import org.population.gestion.GestionPopulation.FormatRapport;
+import org.population.index.AgregatsParTranches.Agregat;
+import org.population.modele.Localite;
+import org.population.modele.Localite.TypePopulation;
+import org.population.modele.Pyramide;
+import org.population.recensement.Recensements;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+// API HTTP en lecture seule sur les localités, embarquée via com.sun.net.httpserver.
+// Les réponses portent un ETag dérivé de la version du jeu de données : un client qui
+// renvoie If-None-Match reçoit un 304 sans corps tant que les données n'ont pas changé.
+// La version est lue une seule fois, avant tout calcul ; si une écriture la change pendant
+// que la réponse est construite, la réponse part sans ETag.
+public class ApiHttpService {
+    private static final Logger logger = Logger.getLogger(ApiHttpService.class.getName());
+    private static final int TAILLE_TAMPON = 64 * 1024;
+    // Attributs de l'échange posés par conditionnel() pour les traitements
+    private static final String ATTRIBUT_VERSION = "population.version";
+    private static final String ATTRIBUT_PARAMETRES = "population.parametres";
+
+    private final GestionPopulation gestion;
+    private final HttpServer serveur;
+    private final ExecutorService executeur;
+
+    @FunctionalInterface
+    private interface Corps {
+        void ecrire(OutputStream out) throws IOException;
+    }
+
+    public ApiHttpService(GestionPopulation gestion, int port) throws IOException {
+        this.gestion = gestion;
+        this.serveur = HttpServer.create(new InetSocketAddress(port), 0);
+        this.executeur = Executors.newFixedThreadPool(4, r -> {
+            Thread thread = new Thread(r, "api-http");
+            thread.setDaemon(true);
+            return thread;
+        });
+        serveur.setExecutor(executeur);
+        serveur.createContext("/api/localites", conditionnel(
+                chemins("/api/localites", "recherche", "proches", "zone"), this::traiterLocalites));
+        serveur.createContext("/api/statistiques", conditionnel(chemins("/api/statistiques"), this::traiterStatistiques));
+        serveur.createContext("/api/agregats", conditionnel(chemins("/api/agregats"), this::traiterAgregats));
+        serveur.createContext("/api/rapports", conditionnel(chemins("/api/rapports"), this::traiterRapport));
+        serveur.createContext("/api/recensements", conditionnel(
+                chemins("/api/recensements", "croissance", "tendances"), this::traiterRecensements));
+        serveur.createContext("/api/projections", conditionnel(chemins("/api/projections"), this::traiterProjections));
+        serveur.createContext("/api/pyramides", conditionnel(chemins("/api/pyramides"), this::traiterPyramides));
+    }
+
+    // Chemins servis par un contexte : sa racine (avec ou sans / final) et ses sous-ressources.
+    // Un contexte reçoit tout chemin qui commence par sa racine, les autres sont refusés en 404
+    private static Set<String> chemins(String racine, String... sousRessources) {
+        Set<String> chemins = new HashSet<>();
+        chemins.add(racine);
+        chemins.add(racine + "/");
+        for (String sousRessource : sousRessources) {
+            chemins.add(racine + "/" + sousRessource);
+        }
+        return chemins;
+    }
+
+    // Avant le traitement : méthode, chemin, paramètres, puis version lue une fois. Un client qui
+    // a déjà cette version (sous l'une ou l'autre de ses ETag) reçoit 304 sans qu'aucune donnée
+    // ne soit lue ; sinon la version est transmise à repondre() par un attribut de l'échange.
+    // Une erreur imprévue du traitement donne un 500 plutôt qu'un échange laissé sans réponse.
+    private HttpHandler conditionnel(Set<String> chemins, HttpHandler traitement) {
+        return echange -> {
+            try {
+                traiterConditionnel(echange, chemins, traitement);
+            } catch (RuntimeException e) {
+                logger.log(Level.SEVERE, "Erreur lors du traitement de " + echange.getRequestURI(), e);
+                if (echange.getResponseCode() == -1) {
+                    envoyerErreur(echange, 500, "Erreur interne");
+                } else {
+                    echange.close();
+                }
+            }
+        };
+    }
+
+    private void traiterConditionnel(HttpExchange echange, Set<String> chemins, HttpHandler traitement)
+            throws IOException {
+        String methode = echange.getRequestMethod();
+        if (!methode.equals("GET") && !methode.equals("HEAD")) {
+            try (echange) {
+                echange.getResponseHeaders().set("Allow", "GET, HEAD");
+                echange.sendResponseHeaders(405, -1);
+            }
+            return;
+        }
+        if (!chemins.contains(echange.getRequestURI().getPath())) {
+            envoyerErreur(echange, 404, "Ressource inconnue");
+            return;
+        }
+        try {
+            echange.setAttribute(ATTRIBUT_PARAMETRES, decoderParametres(echange));
+        } catch (IllegalArgumentException e) {
+            envoyerErreur(echange, 400, "Paramètres mal encodés");
+            return;
+        }
+
+        long version = gestion.getVersionDonnees();
+        String ifNoneMatch = echange.getRequestHeaders().getFirst("If-None-Match");
+        String connue = correspond(ifNoneMatch, etag(version, false)) ? etag(version, false)
+                : correspond(ifNoneMatch, etag(version, true)) ? etag(version, true) : null;
+        if (connue != null) {
+            try (echange) {
+                Headers entetes = echange.getResponseHeaders();
+                entetes.set("ETag", connue);
+                entetes.set("Cache-Control", "no-cache");
+                entetes.set("Vary", "Accept-Encoding");
+                echange.sendResponseHeaders(304, -1);
+            }
+            return;
+        }
+        echange.setAttribute(ATTRIBUT_VERSION, version);
+        traitement.handle(echange);
+    }
+
+    // Corps gzip et corps non compressé sont deux représentations : ETag distinctes
+    private static String etag(long version, boolean gzip) {
+        return "\"" + Long.toHexString(version) + (gzip ? "-gz" : "") + "\"";
+    }
+
+    public void demarrer() {
+        serveur.start();
+        logger.info("API HTTP démarrée sur le port " + serveur.getAddress().getPort());
+    }
+
+    public void arreter() {
+        serveur.stop(1);
+        executeur.shutdownNow();
+    }
+
+    // GET /api/localites[?type=URBAINE][&region=Nord], GET /api/localites/recherche?nom=...,
+    // GET /api/localites/proches?lat=..&lon=..(&rayon=km | &k=n) et
+    // GET /api/localites/zone?latMin=..&lonMin=..&latMax=..&lonMax=..
+    private void traiterLocalites(HttpExchange echange) throws IOException {
+        Map<String, String> parametres = lireParametres(echange);
+        String chemin = echange.getRequestURI().getPath();
+        List<Localite> resultats;
+
+        if (chemin.equals("/api/localites/recherche")) {
+            resultats = gestion.rechercherParNom(parametres.getOrDefault("nom", ""));
+        } else if (chemin.equals("/api/localites/proches") || chemin.equals("/api/localites/zone")) {
+            try {
+                resultats = rechercherParPosition(chemin, parametres);
+            } catch (NumberFormatException | NullPointerException e) {
+                envoyerErreur(echange, 400, "Coordonnées absentes ou invalides");
+                return;
+            } catch (IllegalArgumentException e) {
+                envoyerErreur(echange, 400, e.getMessage());
+                return;
+            }
+        } else {
+            // Racine du contexte : les autres chemins ont été refusés par conditionnel()
+            resultats = gestion.rechercherParNom("");
+            String type = parametres.get("type");
+            if (type != null) {
+                TypePopulation filtre;
+                try {
+                    filtre = TypePopulation.valueOf(type.toUpperCase(Locale.ROOT));
+                } catch (IllegalArgumentException e) {
+                    envoyerErreur(echange, 400, "Type inconnu: " + type);
+                    return;
+                }
+                resultats.removeIf(l -> l.getType() != filtre);
+            }
+            String region = parametres.get("region");
+            if (region != null) {
+                resultats.removeIf(l -> !l.getRegion().equalsIgnoreCase(region));
+            }
+        }
+
+        List<Localite> liste = resultats;
+        repondre(echange, "application/json; charset=utf-8", out -> ecrireLocalites(out, liste));
+    }
+
+    // Recherche par zone ou par proximité ; sans rayon ni k, rayon de 10 km
+    private List<Localite> rechercherParPosition(String chemin, Map<String, String> parametres) {
+        if (chemin.endsWith("/zone")) {
+            return gestion.rechercherDansRectangle(
+                    Double.parseDouble(parametres.get("latMin")), Double.parseDouble(parametres.get("lonMin")),
+                    Double.parseDouble(parametres.get("latMax")), Double.parseDouble(parametres.get("lonMax")));
+        }
+        double latitude = Double.parseDouble(parametres.get("lat"));
+        double longitude = Double.parseDouble(parametres.get("lon"));
+        if (parametres.containsKey("k")) {
+            int k = Integer.parseInt(parametres.get("k"));
+            if (k <= 0) {
+                throw new IllegalArgumentException("k doit être positif");
+            }
+            // Au-delà du nombre de localités, k ne change plus rien
+            return gestion.plusProches(latitude, longitude, Math.min(k, gestion.getNombreLocalites()));
+        }
+        return gestion.rechercherDansRayon(latitude, longitude, Double.parseDouble(parametres.getOrDefault("rayon", "10")));
+    }
+
+    // GET /api/agregats?critere=densite|population[&min=..][&max=..] : nombre, population et
+    // superficie des localités dont le critère est dans l'intervalle (bornes incluses)
+    private void traiterAgregats(HttpExchange echange) throws IOException {
+        Map<String, String> parametres = lireParametres(echange);
+        String critere = parametres.getOrDefault("critere", "densite").toLowerCase(Locale.ROOT);
+        Agregat agregat;
+        try {
+            String min = parametres.get("min");
+            String max = parametres.get("max");
+            agregat = switch (critere) {
+                case "densite" -> gestion.agregerParDensite(
+                        min == null ? null : Double.valueOf(min), max == null ? null : Double.valueOf(max));
+                case "population" -> gestion.agregerParPopulation(
+                        min == null ? null : Integer.valueOf(min), max == null ? null : Integer.valueOf(max));
+                default -> null;
+            };
+        } catch (NumberFormatException e) {
+            envoyerErreur(echange, 400, "Bornes invalides");
+            return;
+        }
+        if (agregat == null) {
+            envoyerErreur(echange, 400, "Critère inconnu: " + critere);
+            return;
+        }
+        Agregat resultat = agregat;
+        repondre(echange, "application/json; charset=utf-8", out -> {
+            JsonWriter json = new JsonWriter(ecrivain(out));
+            json.debutObjet()
+                    .nom("nombre").valeur(resultat.getNombre())
+                    .nom("population").valeur(resultat.getPopulation())
+                    .nom("superficie").valeur(resultat.getSuperficie())
+                    .nom("densite").valeur(resultat.getDensite())
+                    .finObjet();
+            json.flush();
+        });
+    }
+
+    // GET /api/recensements : totaux par année ; GET /api/recensements?nom=.. : série d'une
+    // localité ; GET /api/recensements/croissance?debut=..&fin=.. : taux annuels moyens ;
+    // GET /api/recensements/tendances : pentes en habitants par an. Les deux derniers sont
+    // triés par valeur décroissante et acceptent &limite=n
+    private void traiterRecensements(HttpExchange echange) throws IOException {
+        Map<String, String> parametres = lireParametres(echange);
+        Recensements recensements = gestion.getRecensements();
+        String chemin = echange.getRequestURI().getPath();
+        if (chemin.endsWith("/croissance") || chemin.endsWith("/tendances")) {
+            boolean croissance = chemin.endsWith("/croissance");
+            List<Map.Entry<String, Double>> valeurs;
+            try {
+                valeurs = new ArrayList<>((croissance
+                        ? recensements.tauxAnnuels(Integer.parseInt(parametres.get("debut")), Integer.parseInt(parametres.get("fin")))
+                        : recensements.tendances()).entrySet());
+                valeurs.sort(Map.Entry.<String, Double>comparingByValue().reversed());
+                int limite = Integer.parseInt(parametres.getOrDefault("limite", String.valueOf(Integer.MAX_VALUE)));
+                valeurs = valeurs.subList(0, Math.min(Math.max(0, limite), valeurs.size()));
+            } catch (NumberFormatException e) {
+                envoyerErreur(echange, 400, "Paramètres invalides");
+                return;
+            }
+            List<Map.Entry<String, Double>> resultat = valeurs;
+            String champ = croissance ? "tauxAnnuel" : "habitantsParAn";
+            repondre(echange, "application/json; charset=utf-8", out -> {
+                JsonWriter json = new JsonWriter(ecrivain(out));
+                json.debutTableau();
+                for (Map.Entry<String, Double> entree : resultat) {
+                    json.debutObjet()
+                            .nom("nom").valeur(entree.getKey())
+                            .nom(champ).valeur(entree.getValue())
+                            .finObjet();
+                }
+                json.finTableau();
+                json.flush();
+            });
+            return;
+        }
+        String nom = parametres.get("nom");
+        SortedMap<Integer, ? extends Number> serie = nom == null ? recensements.totauxParAnnee() : recensements.serie(nom);
+        repondre(echange, "application/json; charset=utf-8", out -> {
+            JsonWriter json = new JsonWriter(ecrivain(out));
+            json.debutObjet();
+            for (Map.Entry<Integer, ? extends Number> entree : serie.entrySet()) {
+                json.nom(String.valueOf(entree.getKey())).valeur(entree.getValue().longValue());
+            }
+            json.finObjet();
+            json.flush();
+        });
+    }
+
+
+    // GET /api/projections[?type=URBAINE] : population projetée de chaque scénario à chaque
+    // horizon ; GET /api/projections?nom=... : projections d'une localité
+    private void traiterProjections(HttpExchange echange) throws IOException {
+        Map<String, String> parametres = lireParametres(echange);
+        TypePopulation type;
+        try {
+            type = parametres.containsKey("type")
+                    ? TypePopulation.valueOf(parametres.get("type").toUpperCase(Locale.ROOT)) : null;
+        } catch (IllegalArgumentException e) {
+            envoyerErreur(echange, 400, "Type inconnu: " + parametres.get("type"));
+            return;
+        }
+        String nom = parametres.get("nom");
+        if (nom != null && gestion.trouverParNom(nom) == null) {
+            envoyerErreur(echange, 404, "Localité introuvable: " + nom);
+            return;
+        }
+        Collection<Projection> projections = gestion.projeter().values();
+        repondre(echange, "application/json; charset=utf-8", out -> {
+            JsonWriter json = new JsonWriter(ecrivain(out));
+            json.debutTableau();
+            for (Projection projection : projections) {
+                json.debutObjet().nom("scenario").valeur(projection.getScenario().getNom());
+                if (nom == null) {
+                    json.nom("actuelle").valeur(type == null
+                            ? projection.getPopulationActuelle() : projection.getPopulationActuelle(type));
+                }
+                json.nom("horizons").debutTableau();
+                int[] horizons = projection.getHorizons();
+                for (int h = 0; h < horizons.length; h++) {
+                    json.debutObjet().nom("annees").valeur(horizons[h]);
+                    if (nom != null) {
+                        json.nom("population").valeur(projection.getPopulation(nom, h));
+                    } else if (type != null) {
+                        json.nom("population").valeur(projection.getPopulation(h, type))
+                                .nom("densiteMoyenne").valeur(projection.getDensiteMoyenne(h, type));
+                    } else {
+                        json.nom("population").valeur(projection.getPopulation(h))
+                                .nom("densite").valeur(projection.getDensiteGlobale(h));
+                    }
+                    json.finObjet();
+                }
+                json.finTableau().finObjet();
+            }
+            json.finTableau();
+            json.flush();
+        });
+    }
+
+    // GET /api/pyramides[?region=Nord][&type=URBAINE] : effectifs par tranche d'âge et par sexe,
+    // sommés sur les localités qui ont une répartition
+    private void traiterPyramides(HttpExchange echange) throws IOException {
+        Map<String, String> parametres = lireParametres(echange);
+        TypePopulation type;
+        try {
+            type = parametres.containsKey("type")
+                    ? TypePopulation.valueOf(parametres.get("type").toUpperCase(Locale.ROOT)) : null;
+        } catch (IllegalArgumentException e) {
+            envoyerErreur(echange, 400, "Type inconnu: " + parametres.get("type"));
+            return;
+        }
+        Pyramide pyramide = gestion.pyramide(parametres.get("region"), type);
+        repondre(echange, "application/json; charset=utf-8", out -> {
+            JsonWriter json = new JsonWriter(ecrivain(out));
+            json.debutObjet()
+                    .nom("localites").valeur(pyramide.getNombreLocalites())
+                    .nom("hommes").valeur(pyramide.getTotalHommes())
+                    .nom("femmes").valeur(pyramide.getTotalFemmes())
+                    .nom("tranches").debutTableau();
+            for (int tranche = 0; tranche < Pyramide.NOMBRE_TRANCHES; tranche++) {
+                json.debutObjet().nom("age").valeur(Pyramide.libelleTranche(tranche))
+                        .nom("hommes").valeur(pyramide.getHommes(tranche))
+                        .nom("femmes").valeur(pyramide.getFemmes(tranche))
+                        .finObjet();
+            }
+            json.finTableau().finObjet();
+            json.flush();
+        });
+    }
+
+    // GET /api/statistiques[?region=Nord] : résultat de analyserParType
+    private void traiterStatistiques(HttpExchange echange) throws IOException {
+        Map<TypePopulation, DoubleSummaryStatistics> stats = gestion.analyserParType(lireParametres(echange).get("region"));
+        repondre(echange, "application/json; charset=utf-8", out -> {
+            JsonWriter json = new JsonWriter(ecrivain(out));
+            json.debutObjet();
+            for (Map.Entry<TypePopulation, DoubleSummaryStatistics> entree : stats.entrySet()) {
+                DoubleSummaryStatistics stat = entree.getValue();
+                json.nom(entree.getKey().toString()).debutObjet()
+                        .nom("nombre").valeur(stat.getCount())
+                        .nom("densiteMoyenne").valeur(stat.getAverage())
+                        .nom("densiteMin").valeur(stat.getMin())
+                        .nom("densiteMax").valeur(stat.getMax())
+                        .finObjet();
+            }
+            json.finObjet();
+            json.flush();
+        });
+    }
+
+    // GET /api/rapports?format=CSV&limite=100&grouper=true&statistiques=false
+    private void traiterRapport(HttpExchange echange) throws IOException {
+        Map<String, String> parametres = lireParametres(echange);
+        FormatRapport format;
+        int limite;
+        try {
+            format = FormatRapport.valueOf(parametres.getOrDefault("format", "TXT").toUpperCase(Locale.ROOT));
+            limite = Integer.parseInt(parametres.getOrDefault("limite", String.valueOf(Integer.MAX_VALUE)));
+        } catch (IllegalArgumentException e) {
+            envoyerErreur(echange, 400, "Paramètres de rapport invalides");
+            return;
+        }
+
+        String typeContenu = switch (format) {
+            case TXT -> "text/plain; charset=utf-8";
+            case CSV -> "text/csv; charset=utf-8";
+            case HTML -> "text/html; charset=utf-8";
+            case JSONL -> "application/x-ndjson; charset=utf-8";
+            case CSV_GZ, JSONL_GZ -> "application/gzip";
+            case XLSX -> "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
+        };
+
+        // Rapport généré avant l'envoi des en-têtes, pour que l'ETag corresponde à son contenu ;
+        // les formats déjà compressés ne sont pas recompressés pour le transport
+        Path fichier = Files.createTempFile("rapport-", "." + format.getExtension());
+        try {
+            ConfigurationRapport config = new ConfigurationRapport.Builder(fichier.toString())
+                    .format(format)
+                    .limiteResultats(limite)
+                    .grouperParType(Boolean.parseBoolean(parametres.getOrDefault("grouper", "false")))
+                    .inclureStatistiques(Boolean.parseBoolean(parametres.getOrDefault("statistiques", "true")))
+                    .build();
+            try {
+                gestion.genererRapportDensite(config);
+            } catch (IOException e) {
+                logger.warning("Erreur lors de la génération du rapport: " + e.getMessage());
+                envoyerErreur(echange, 500, "Erreur lors de la génération du rapport");
+                return;
+            }
+            repondre(echange, typeContenu, !format.isCompresse(), out -> Files.copy(fichier, out));
+        } finally {
+            Files.deleteIfExists(fichier);
+        }
+    }
+
+    private void ecrireLocalites(OutputStream out, List<Localite> localites) throws IOException {
+        DateTimeFormatter iso = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
+        JsonWriter json = new JsonWriter(ecrivain(out));
+        json.debutTableau();
+        for (Localite localite : localites) {
+            json.debutObjet()
+                    .nom("nom").valeur(localite.getNom())
+                    .nom("population").valeur(localite.getPopulation())
+                    .nom("superficie").valeur(localite.getSuperficie())
+                    .nom("type").valeur(localite.getType().toString())
+                    .nom("region").valeur(localite.getRegion())
+                    // null pour une localité non géolocalisée
+                    .nom("latitude").valeur(localite.estGeolocalisee() ? localite.getLatitude() : Double.NaN)
+                    .nom("longitude").valeur(localite.estGeolocalisee() ? localite.getLongitude() : Double.NaN)
+                    .nom("densite").valeur(localite.calculerDensite())
+                    .nom("dateEnregistrement").valeur(localite.getDateEnregistrement().format(iso))
+                    .finObjet();
+        }
+        json.finTableau();
+        json.flush();
+    }
+
+    // Gestion commune : ETag, compression gzip et envoi en flux ; les données du corps doivent
+    // avoir été lues avant l'appel, pour que la vérification de la version les couvre
+    private void repondre(HttpExchange echange, String typeContenu, Corps corps) throws IOException {
+        repondre(echange, typeContenu, true, corps);
+    }
+
+    private void repondre(HttpExchange echange, String typeContenu, boolean compressible, Corps corps)
+            throws IOException {
+        try (echange) {
+            Headers entetes = echange.getResponseHeaders();
+            entetes.set("Cache-Control", "no-cache");
+            entetes.set("Vary", "Accept-Encoding");
+            entetes.set("Content-Type", typeContenu);
+            String encodages = echange.getRequestHeaders().getFirst("Accept-Encoding");
+            boolean gzip = compressible && encodages != null && encodages.toLowerCase(Locale.ROOT).contains("gzip");
+            if (gzip) {
+                entetes.set("Content-Encoding", "gzip");
+            }
+            // Version lue avant le calcul des données : sans changement depuis, elle les décrit
+            long version = (Long) echange.getAttribute(ATTRIBUT_VERSION);
+            if (gestion.getVersionDonnees() == version) {
+                entetes.set("ETag", etag(version, gzip));
+            }
+
+            String methode = echange.getRequestMethod();
+
+            if (methode.equals("HEAD")) {
+                echange.sendResponseHeaders(200, -1);
+                return;
+            }
+
+            // Longueur 0 : réponse transmise en chunked, sans connaître la taille à l'avance
+            echange.sendResponseHeaders(200, 0);
+            OutputStream out = new BufferedOutputStream(echange.getResponseBody(), TAILLE_TAMPON);
+            if (gzip) {
+                out = new GZIPOutputStream(out, TAILLE_TAMPON);
+            }
+            try (OutputStream flux = out) {
+                corps.ecrire(flux);
+            }
+        } catch (IOException e) {
+            logger.warning("Erreur lors de la réponse HTTP: " + e.getMessage());
+        }
+    }
+
+    private static boolean correspond(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidat : ifNoneMatch.split(",")) {
+            String valeur = candidat.trim();
+            if (valeur.startsWith("W/")) {
+                valeur = valeur.substring(2);
+            }
+            if (valeur.equals("*") || valeur.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Writer ecrivain(OutputStream out) {
+        return new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), TAILLE_TAMPON);
+    }
+
+    private static void envoyerErreur(HttpExchange echange, int code, String message) throws IOException {
+        try (echange) {
+            byte[] corps = message.getBytes(StandardCharsets.UTF_8);
+            echange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            echange.sendResponseHeaders(code, corps.length);
+            echange.getResponseBody().write(corps);
+        }
+    }
+
+    // Paramètres décodés par conditionnel()
+    @SuppressWarnings("unchecked")
+    private static Map<String, String> lireParametres(HttpExchange echange) {
+        return (Map<String, String>) echange.getAttribute(ATTRIBUT_PARAMETRES);
+    }
+
+    // IllegalArgumentException si un échappement % est mal formé
+    private static Map<String, String> decoderParametres(HttpExchange echange) {
+        Map<String, String> parametres = new HashMap<>();
+        String requete = echange.getRequestURI().getRawQuery();
+        if (requete == null || requete.isEmpty()) {
+            return parametres;
+        }
+        for (String paire : requete.split("&")) {
+            int egal = paire.indexOf('=');
+            String cle = egal < 0 ? paire : paire.substring(0, egal);
+            String valeur = egal < 0 ? "" : paire.substring(egal + 1);
+            parametres.put(URLDecoder.decode(cle, StandardCharsets.UTF_8),
+                    URLDecoder.decode(valeur, StandardCharsets.UTF_8));
+        }
+        return parametres;
+    }
+
+    // Lancement autonome, sans interface graphique : java -cp ... org.population.service.ApiHttpService [port]
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        GestionPopulation gestion = new GestionPopulation();
+        ApiHttpService api = new ApiHttpService(gestion, port);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            api.arreter();
+            gestion.close();
+        }));
+        api.demarrer();
+    }
+}
@@ -3,7 +3,7 @@ package org.population.service;
 import org.population.modele.Localite;
 import org.population.gestion.GestionPopulation;
 
-import java.sql.*;
+import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.util.concurrent.*;
 import java.util.List;
@@ -53,21 +53,9 @@ public class DatabaseUpdateService {
 
     public void checkForUpdates() {
         try {
-            Connection conn = gestion.getConnection();
-            String sql = """
-                SELECT COUNT(*) as changes
-                FROM localites
-                WHERE date_enregistrement > ?
-                """;
-
-            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-                pstmt.setTimestamp(1, Timestamp.valueOf(lastCheckTimestamp));
-
-                ResultSet rs = pstmt.executeQuery();
-                if (rs.next() && rs.getInt("changes") > 0) {
-                    List<Localite> updatedData = gestion.rechercherParNom("");
-                    notifyListeners(updatedData);
-                }
+            if (gestion.compterChangementsDepuis(lastCheckTimestamp) > 0) {
+                List<Localite> updatedData = gestion.rechercherParNom("");
+                notifyListeners(updatedData);
             }
 
             lastCheckTimestamp = LocalDateTime.now();
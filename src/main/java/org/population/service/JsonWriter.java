@@ -0,0 +1,131 @@
+package org.population.service;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+
+// Écriture JSON en flux, sans construire d'arbre intermédiaire : chaque valeur part directement
+// dans le Writer sous-jacent
+public class JsonWriter implements Flushable {
+    private final Writer out;
+    // Une entrée par niveau d'imbrication : vrai tant qu'aucun élément n'a été écrit
+    private boolean[] premier = new boolean[16];
+    private int profondeur;
+    private boolean apresNom;
+
+    public JsonWriter(Writer out) {
+        this.out = out;
+    }
+
+    public JsonWriter debutObjet() throws IOException {
+        return ouvrir('{');
+    }
+
+    public JsonWriter finObjet() throws IOException {
+        return fermer('}');
+    }
+
+    public JsonWriter debutTableau() throws IOException {
+        return ouvrir('[');
+    }
+
+    public JsonWriter finTableau() throws IOException {
+        return fermer(']');
+    }
+
+    public JsonWriter nom(String nom) throws IOException {
+        separer();
+        ecrireChaine(nom);
+        out.write(':');
+        apresNom = true;
+        return this;
+    }
+
+    public JsonWriter valeur(String valeur) throws IOException {
+        separer();
+        if (valeur == null) {
+            out.write("null");
+        } else {
+            ecrireChaine(valeur);
+        }
+        return this;
+    }
+
+    public JsonWriter valeur(long valeur) throws IOException {
+        separer();
+        out.write(Long.toString(valeur));
+        return this;
+    }
+
+    public JsonWriter valeur(double valeur) throws IOException {
+        separer();
+        // JSON ne représente ni NaN ni l'infini
+        out.write(Double.isFinite(valeur) ? Double.toString(valeur) : "null");
+        return this;
+    }
+
+    public JsonWriter valeur(boolean valeur) throws IOException {
+        separer();
+        out.write(valeur ? "true" : "false");
+        return this;
+    }
+
+    private JsonWriter ouvrir(char c) throws IOException {
+        separer();
+        out.write(c);
+        if (++profondeur == premier.length) {
+            boolean[] agrandi = new boolean[premier.length * 2];
+            System.arraycopy(premier, 0, agrandi, 0, premier.length);
+            premier = agrandi;
+        }
+        premier[profondeur] = true;
+        return this;
+    }
+
+    private JsonWriter fermer(char c) throws IOException {
+        profondeur--;
+        out.write(c);
+        return this;
+    }
+
+    private void separer() throws IOException {
+        if (apresNom) {
+            apresNom = false;
+            return;
+        }
+        if (profondeur > 0) {
+            if (!premier[profondeur]) {
+                out.write(',');
+            }
+            premier[profondeur] = false;
+        }
+    }
+
+    private void ecrireChaine(String s) throws IOException {
+        out.write('"');
+        int debut = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\') {
+                continue;
+            }
+            out.write(s, debut, i - debut);
+            switch (c) {
+                case '"' -> out.write("\\\"");
+                case '\\' -> out.write("\\\\");
+                case '\n' -> out.write("\\n");
+                case '\r' -> out.write("\\r");
+                case '\t' -> out.write("\\t");
+                default -> out.write(String.format("\\u%04x", (int) c));
+            }
+            debut = i + 1;
+        }
+        out.write(s, debut, s.length() - debut);
+        out.write('"');
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+}
@@ -0,0 +1,297 @@
+package org.population.stockage;
+
+import org.population.modele.Localite;
+import org.population.recensement.Recensements;
+import org.population.stockage.JournalLocal.Operation;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+// Moteur embarqué, sans serveur : un fichier journal en ajout seul (le format de JournalLocal)
+// et un index en mémoire par nom. Au démarrage, l'instantané est relu d'un bloc puis la fin du
+// journal rejouée ; le journal est compacté en instantané dès qu'il dépasse son seuil. Un verrou
+// de fichier réserve le répertoire à un seul processus. Les recensements, rarement écrits, sont
+// dans un fichier à part, réécrit en entier à chaque import.
+public class FichierLocaliteRepository implements LocaliteRepository {
+    private static final Logger logger = Logger.getLogger(FichierLocaliteRepository.class.getName());
+    private static final String RECENSEMENTS = "recensements.bin";
+    private static final int MAGIQUE_RECENSEMENTS = 0x504F5043; // "POPC"
+
+    private final Path repertoire;
+    private final JournalLocal journal;
+    private final FileChannel canalVerrou;
+    private final FileLock verrouFichier;
+    private final Map<String, Localite> parNom = new LinkedHashMap<>();
+
+    public FichierLocaliteRepository(Path repertoire) throws SQLException {
+        this.repertoire = repertoire;
+        try {
+            Files.createDirectories(repertoire);
+            canalVerrou = FileChannel.open(repertoire.resolve("verrou"), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE);
+            verrouFichier = canalVerrou.tryLock();
+            if (verrouFichier == null) {
+                canalVerrou.close();
+                throw new SQLException("Stockage déjà utilisé par un autre processus: " + repertoire);
+            }
+            journal = new JournalLocal(repertoire);
+        } catch (IOException e) {
+            throw new SQLException("Impossible d'ouvrir le stockage local " + repertoire, e);
+        }
+        for (Localite localite : journal.lireEtatApplique()) {
+            parNom.put(cle(localite.getNom()), localite);
+        }
+        if (journal.getNombreEnAttente() > 0) {
+            logger.warning(journal.getNombreEnAttente() + " écritures d'un lot interrompu ignorées");
+            journal.abandonnerEnAttente();
+            try {
+                journal.compacter(parNom.values(), journal.getDerniereSequence());
+            } catch (IOException e) {
+                throw new SQLException("Impossible de compacter le stockage local " + repertoire, e);
+            }
+        }
+        logger.info(parNom.size() + " localités lues depuis " + repertoire);
+    }
+
+    private static String cle(String nom) {
+        return nom.toLowerCase(Locale.ROOT);
+    }
+
+    @Override
+    public synchronized List<Localite> charger() {
+        return new ArrayList<>(parNom.values());
+    }
+
+    @Override
+    public synchronized void inserer(List<Localite> localites) throws SQLException {
+        Set<String> nouveaux = new HashSet<>();
+        for (Localite localite : localites) {
+            if (parNom.containsKey(cle(localite.getNom())) || !nouveaux.add(cle(localite.getNom()))) {
+                throw new SQLIntegrityConstraintViolationException(
+                        "Une localité avec ce nom existe déjà: " + localite.getNom(), "23000");
+            }
+        }
+        JournalLocal.Position debut = journal.getPosition();
+        try {
+            for (Localite localite : localites) {
+                ecrire(Operation.AJOUT, localite.getNom(), localite);
+            }
+            valider();
+        } catch (SQLException e) {
+            annuler(debut, e);
+            throw e;
+        }
+        for (Localite localite : localites) {
+            parNom.put(cle(localite.getNom()), localite);
+        }
+        compacterSiNecessaire();
+    }
+
+    @Override
+    public synchronized void modifier(Map<String, Localite> modifications) throws SQLException {
+        for (Map.Entry<String, Localite> modification : modifications.entrySet()) {
+            Localite actuelle = parNom.get(cle(modification.getKey()));
+            if (actuelle == null) {
+                throw new SQLException("Localité introuvable: " + modification.getKey());
+            }
+            Localite porteur = parNom.get(cle(modification.getValue().getNom()));
+            if (porteur != null && porteur != actuelle) {
+                throw new SQLIntegrityConstraintViolationException(
+                        "Une localité avec ce nom existe déjà: " + modification.getValue().getNom(), "23000");
+            }
+        }
+        JournalLocal.Position debut = journal.getPosition();
+        try {
+            for (Map.Entry<String, Localite> modification : modifications.entrySet()) {
+                ecrire(Operation.MODIFICATION, modification.getKey(), modification.getValue());
+            }
+            valider();
+        } catch (SQLException e) {
+            annuler(debut, e);
+            throw e;
+        }
+        for (Map.Entry<String, Localite> modification : modifications.entrySet()) {
+            parNom.remove(cle(modification.getKey()));
+        }
+        for (Localite modifiee : modifications.values()) {
+            parNom.put(cle(modifiee.getNom()), modifiee);
+        }
+        compacterSiNecessaire();
+    }
+
+    @Override
+    public synchronized void supprimer(Collection<String> noms) throws SQLException {
+        for (String nom : noms) {
+            if (!parNom.containsKey(cle(nom))) {
+                throw new SQLException("Localité introuvable: " + nom);
+            }
+        }
+        JournalLocal.Position debut = journal.getPosition();
+        try {
+            for (String nom : noms) {
+                ecrire(Operation.SUPPRESSION, nom, null);
+            }
+            valider();
+        } catch (SQLException e) {
+            annuler(debut, e);
+            throw e;
+        }
+        for (String nom : noms) {
+            parNom.remove(cle(nom));
+        }
+        compacterSiNecessaire();
+    }
+
+    @Override
+    public synchronized int compterChangementsDepuis(LocalDateTime depuis) {
+        int nombre = 0;
+        for (Localite localite : parNom.values()) {
+            if (localite.getDateEnregistrement().isAfter(depuis)) {
+                nombre++;
+            }
+        }
+        return nombre;
+    }
+
+    // Format : magique, nombre de noms, noms, nombre de colonnes, colonnes (taille puis octets), CRC32
+    @Override
+    public synchronized Recensements chargerRecensements() throws SQLException {
+        Path fichier = repertoire.resolve(RECENSEMENTS);
+        if (!Files.exists(fichier)) {
+            return Recensements.VIDE;
+        }
+        try {
+            byte[] contenu = Files.readAllBytes(fichier);
+            CRC32 crc = new CRC32();
+            crc.update(contenu, 0, Math.max(0, contenu.length - 4));
+            if (contenu.length < 16
+                    || ByteBuffer.wrap(contenu, contenu.length - 4, 4).getInt() != (int) crc.getValue()) {
+                throw new SQLException("Fichier des recensements corrompu: " + fichier);
+            }
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(contenu, 0, contenu.length - 4))) {
+                if (in.readInt() != MAGIQUE_RECENSEMENTS) {
+                    throw new SQLException("Fichier des recensements inconnu: " + fichier);
+                }
+                int nombreNoms = in.readInt();
+                List<String> noms = new ArrayList<>(nombreNoms);
+                for (int i = 0; i < nombreNoms; i++) {
+                    noms.add(in.readUTF());
+                }
+                int nombreColonnes = in.readInt();
+                List<byte[]> colonnes = new ArrayList<>(nombreColonnes);
+                for (int i = 0; i < nombreColonnes; i++) {
+                    byte[] colonne = new byte[in.readInt()];
+                    in.readFully(colonne);
+                    colonnes.add(colonne);
+                }
+                return Recensements.charger(noms, colonnes);
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            throw new SQLException("Impossible de lire les recensements " + fichier, e);
+        }
+    }
+
+    @Override
+    public synchronized void enregistrerRecensements(Recensements recensements, Collection<Integer> anneesModifiees)
+            throws SQLException {
+        Path temporaire = repertoire.resolve(RECENSEMENTS + ".tmp");
+        try {
+            try (FileOutputStream fichier = new FileOutputStream(temporaire.toFile())) {
+                CheckedOutputStream verifie = new CheckedOutputStream(
+                        new BufferedOutputStream(fichier, 1 << 16), new CRC32());
+                DataOutputStream out = new DataOutputStream(verifie);
+                out.writeInt(MAGIQUE_RECENSEMENTS);
+                out.writeInt(recensements.getNoms().size());
+                for (String nom : recensements.getNoms()) {
+                    out.writeUTF(nom);
+                }
+                List<Integer> annees = recensements.getAnnees();
+                out.writeInt(annees.size());
+                for (int annee : annees) {
+                    byte[] colonne = recensements.serialiserColonne(annee);
+                    out.writeInt(colonne.length);
+                    out.write(colonne);
+                }
+                out.writeInt((int) verifie.getChecksum().getValue());
+                out.flush();
+                fichier.getChannel().force(true);
+            }
+            Files.move(temporaire, repertoire.resolve(RECENSEMENTS), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new SQLException("Impossible d'écrire les recensements", e);
+        }
+    }
+
+    private void ecrire(Operation operation, String nomCible, Localite localite) throws SQLException {
+        try {
+            journal.ajouter(operation, nomCible, localite);
+        } catch (IOException e) {
+            throw new SQLException("Impossible d'écrire dans le stockage local", e);
+        }
+    }
+
+    // Un lot en échec est retiré du journal : sans cela, le marqueur du lot suivant couvrirait
+    // ses entrées, qui réapparaîtraient à la réouverture
+    private void annuler(JournalLocal.Position debut, SQLException erreur) {
+        try {
+            journal.revenirA(debut);
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Impossible d'annuler un lot interrompu dans le stockage local", e);
+            erreur.addSuppressed(e);
+        }
+    }
+
+    // Le marqueur « appliqué » sert de validation du lot : un seul fsync le rend durable, et
+    // un lot interrompu avant lui est ignoré à la réouverture
+    private void valider() throws SQLException {
+        try {
+            long sequence = journal.getDerniereSequence();
+            journal.marquerAppliquee(sequence);
+            journal.rendreDurable(sequence);
+        } catch (IOException e) {
+            throw new SQLException("Impossible d'écrire dans le stockage local", e);
+        }
+    }
+
+    private void compacterSiNecessaire() {
+        if (journal.doitCompacter()) {
+            try {
+                journal.compacter(parNom.values(), journal.getDerniereSequence());
+            } catch (IOException e) {
+                // Le journal reste valide, la compaction sera retentée au prochain lot
+                logger.warning("Compaction du stockage local impossible: " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            journal.compacter(parNom.values(), journal.getDerniereSequence());
+            journal.close();
+        } catch (IOException e) {
+            logger.warning("Erreur lors de la fermeture du stockage local: " + e.getMessage());
+        }
+        try {
+            verrouFichier.release();
+            canalVerrou.close();
+        } catch (IOException e) {
+            logger.warning("Erreur lors de la libération du verrou du stockage local: " + e.getMessage());
+        }
+    }
+}
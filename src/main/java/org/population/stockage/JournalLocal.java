@@ -0,0 +1,485 @@
+package org.population.stockage;
+
+import org.population.modele.Localite;
+import org.population.modele.Localite.TypePopulation;
+import org.population.modele.LocaliteException;
+import org.population.modele.Pyramide;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+// Journal local des modifications, en ajout seul, pour travailler sans la base MySQL.
+// Chaque enregistrement porte un numéro de séquence et une somme CRC32 : un enregistrement
+// tronqué par une coupure est détecté et écarté à l'ouverture. Les écritures concurrentes
+// partagent un même fsync. Un instantané de l'état complet permet de démarrer hors ligne et
+// de compacter le journal pour n'y garder que les modifications pas encore rejouées en base.
+public class JournalLocal implements AutoCloseable {
+    private static final Logger logger = Logger.getLogger(JournalLocal.class.getName());
+    private static final int MAGIQUE_JOURNAL = 0x504F504A; // "POPJ"
+    private static final int MAGIQUE_INSTANTANE = 0x504F5053; // "POPS", sans les régions
+    private static final int MAGIQUE_INSTANTANE_REGIONS = 0x504F5052; // "POPR", sans les coordonnées
+    private static final int MAGIQUE_INSTANTANE_COORDONNEES = 0x504F5047; // "POPG", sans les répartitions
+    private static final int MAGIQUE_INSTANTANE_REPARTITIONS = 0x504F5041; // "POPA"
+    // Versions du format d'une localité : 1 sans région, 2 avec région, 3 avec coordonnées,
+    // 4 avec la répartition par âge et sexe
+    private static final int FORMAT_COURANT = 4;
+    private static final int TAILLE_ENTETE = 4 + 4 + 8 + 1;
+    private static final int TAILLE_MAX_ENREGISTREMENT = 1 << 20;
+    private static final long SEUIL_COMPACTION = 8L * 1024 * 1024;
+    private static final String JOURNAL = "journal.log";
+    private static final String INSTANTANE = "instantane.bin";
+
+    public enum Operation {
+        AJOUT,
+        // Marque les enregistrements jusqu'à la séquence indiquée comme rejoués en base
+        APPLIQUE,
+        // Remplace la localité portant le nom ciblé
+        MODIFICATION,
+        SUPPRESSION
+    }
+
+    // Modification journalisée : nomCible désigne la localité existante (modification,
+    // suppression), localite la nouvelle valeur (absente pour une suppression)
+    public static class Entree {
+        private final long sequence;
+        private final Operation operation;
+        private final String nomCible;
+        private final Localite localite;
+
+        Entree(long sequence, Operation operation, String nomCible, Localite localite) {
+            this.sequence = sequence;
+            this.operation = operation;
+            this.nomCible = nomCible;
+            this.localite = localite;
+        }
+
+        public long getSequence() { return sequence; }
+        public Operation getOperation() { return operation; }
+        public String getNomCible() { return nomCible; }
+        public Localite getLocalite() { return localite; }
+    }
+
+    // Fin du journal avant un lot, pour pouvoir revenir en arrière si le lot échoue
+    public static final class Position {
+        private final long taille;
+        private final long sequence;
+        private final long appliquee;
+
+        private Position(long taille, long sequence, long appliquee) {
+            this.taille = taille;
+            this.sequence = sequence;
+            this.appliquee = appliquee;
+        }
+    }
+
+    private final Path repertoire;
+    private final Object verrouEcriture = new Object();
+    private final Object verrouSynchro = new Object();
+    private final ArrayDeque<Entree> enAttente = new ArrayDeque<>();
+    private FileChannel canal;
+    private long tailleJournal;
+    private long derniereSequence;
+    private long sequenceAppliquee;
+    private volatile long sequenceDurable;
+
+    // Lu à l'ouverture, libéré une fois l'état local reconstruit ou remplacé
+    private List<Localite> instantane = new ArrayList<>();
+    private long sequenceInstantane;
+    private List<Entree> depuisInstantane = new ArrayList<>();
+
+    public JournalLocal(Path repertoire) throws IOException {
+        this.repertoire = Files.createDirectories(repertoire);
+        lireInstantane();
+        ouvrirJournal();
+    }
+
+    private void lireInstantane() throws IOException {
+        Path fichier = repertoire.resolve(INSTANTANE);
+        if (!Files.exists(fichier)) {
+            return;
+        }
+        byte[] contenu = Files.readAllBytes(fichier);
+        CRC32 crc = new CRC32();
+        crc.update(contenu, 0, Math.max(0, contenu.length - 4));
+        if (contenu.length < 28
+                || ByteBuffer.wrap(contenu, contenu.length - 4, 4).getInt() != (int) crc.getValue()) {
+            logger.severe("Instantané local corrompu, ignoré: " + fichier);
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(contenu, 0, contenu.length - 4))) {
+            int magique = in.readInt();
+            int format = switch (magique) {
+                case MAGIQUE_INSTANTANE -> 1;
+                case MAGIQUE_INSTANTANE_REGIONS -> 2;
+                case MAGIQUE_INSTANTANE_COORDONNEES -> 3;
+                case MAGIQUE_INSTANTANE_REPARTITIONS -> 4;
+                default -> throw new IOException("Fichier d'instantané inconnu: " + fichier);
+            };
+            sequenceInstantane = in.readLong();
+            sequenceAppliquee = in.readLong();
+            derniereSequence = sequenceInstantane;
+            int nombre = in.readInt();
+            List<Localite> lues = new ArrayList<>(nombre);
+            for (int i = 0; i < nombre; i++) {
+                lues.add(lireLocalite(in, format));
+            }
+            instantane = lues;
+        }
+    }
+
+    // Relit le journal ; la fin est tronquée au premier enregistrement incomplet ou invalide
+    private void ouvrirJournal() throws IOException {
+        Path fichier = repertoire.resolve(JOURNAL);
+        canal = FileChannel.open(fichier, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        if (canal.size() == 0) {
+            ByteBuffer magique = ByteBuffer.allocate(4).putInt(MAGIQUE_JOURNAL).flip();
+            canal.write(magique, 0);
+            canal.force(true);
+        }
+
+        ByteBuffer entete = ByteBuffer.allocate(TAILLE_ENTETE);
+        ByteBuffer magique = ByteBuffer.allocate(4);
+        canal.read(magique, 0);
+        if (magique.flip().getInt() != MAGIQUE_JOURNAL) {
+            throw new IOException("Fichier de journal inconnu: " + fichier);
+        }
+        long position = 4;
+        long taille = canal.size();
+        while (position + TAILLE_ENTETE <= taille) {
+            entete.clear();
+            canal.read(entete, position);
+            entete.flip();
+            int longueur = entete.getInt();
+            int crcAttendu = entete.getInt();
+            long sequence = entete.getLong();
+            byte code = entete.get();
+            if (longueur < 0 || longueur > TAILLE_MAX_ENREGISTREMENT || code < 0
+                    || code >= Operation.values().length || position + TAILLE_ENTETE + longueur > taille) {
+                break;
+            }
+            ByteBuffer donnees = ByteBuffer.allocate(longueur);
+            canal.read(donnees, position + TAILLE_ENTETE);
+            if (crc(sequence, code, donnees.array()) != crcAttendu) {
+                break;
+            }
+            appliquerALaLecture(sequence, Operation.values()[code], donnees.array());
+            position += TAILLE_ENTETE + longueur;
+        }
+        if (position < taille) {
+            logger.warning("Fin du journal local incomplète ou corrompue, " + (taille - position)
+                    + " octets écartés");
+            canal.truncate(position);
+            canal.force(true);
+        }
+        tailleJournal = position;
+        sequenceDurable = derniereSequence;
+        enAttente.removeIf(e -> e.sequence <= sequenceAppliquee);
+    }
+
+    private void appliquerALaLecture(long sequence, Operation operation, byte[] donnees) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(donnees));
+        if (operation == Operation.APPLIQUE) {
+            sequenceAppliquee = Math.max(sequenceAppliquee, in.readLong());
+            return;
+        }
+        Entree entree = decoder(sequence, operation, in);
+        derniereSequence = Math.max(derniereSequence, sequence);
+        enAttente.add(entree);
+        if (sequence > sequenceInstantane) {
+            depuisInstantane.add(entree);
+        }
+    }
+
+    // Ajoute une modification au journal, sans attendre qu'elle soit sur disque
+    public long ajouter(Operation operation, String nomCible, Localite localite) throws IOException {
+        synchronized (verrouEcriture) {
+            long sequence = derniereSequence + 1;
+            Entree entree = new Entree(sequence, operation, nomCible, localite);
+            tailleJournal = ecrire(canal, tailleJournal, sequence, operation, encoder(entree));
+            derniereSequence = sequence;
+            enAttente.add(entree);
+            return sequence;
+        }
+    }
+
+    // Attend que la séquence soit sur disque ; un seul fsync couvre tous les appelants en attente
+    public void rendreDurable(long sequence) throws IOException {
+        if (sequenceDurable >= sequence) {
+            return;
+        }
+        synchronized (verrouSynchro) {
+            if (sequenceDurable >= sequence) {
+                return;
+            }
+            long cible;
+            synchronized (verrouEcriture) {
+                cible = derniereSequence;
+            }
+            canal.force(false);
+            sequenceDurable = cible;
+        }
+    }
+
+    // Modifications pas encore rejouées en base, dans l'ordre du journal
+    public List<Entree> getEnAttente() {
+        synchronized (verrouEcriture) {
+            return new ArrayList<>(enAttente);
+        }
+    }
+
+    public int getNombreEnAttente() {
+        synchronized (verrouEcriture) {
+            return enAttente.size();
+        }
+    }
+
+    public long getDerniereSequence() {
+        synchronized (verrouEcriture) {
+            return derniereSequence;
+        }
+    }
+
+    public Position getPosition() {
+        synchronized (verrouEcriture) {
+            return new Position(tailleJournal, derniereSequence, sequenceAppliquee);
+        }
+    }
+
+    // Tronque le journal à la position donnée : les enregistrements écrits depuis, marqueur
+    // « appliqué » compris, disparaissent et ne peuvent plus être couverts par un lot suivant
+    public void revenirA(Position position) throws IOException {
+        synchronized (verrouSynchro) {
+            synchronized (verrouEcriture) {
+                canal.truncate(position.taille);
+                tailleJournal = position.taille;
+                derniereSequence = position.sequence;
+                sequenceAppliquee = position.appliquee;
+                sequenceDurable = Math.min(sequenceDurable, position.sequence);
+                enAttente.removeIf(e -> e.sequence > position.sequence);
+            }
+        }
+    }
+
+    // Les modifications jusqu'à cette séquence sont en base
+    public void marquerAppliquee(long sequence) throws IOException {
+        ByteArrayOutputStream octets = new ByteArrayOutputStream(8);
+        new DataOutputStream(octets).writeLong(sequence);
+        synchronized (verrouEcriture) {
+            tailleJournal = ecrire(canal, tailleJournal, derniereSequence, Operation.APPLIQUE,
+                    octets.toByteArray());
+            sequenceAppliquee = Math.max(sequenceAppliquee, sequence);
+            while (!enAttente.isEmpty() && enAttente.peekFirst().sequence <= sequence) {
+                enAttente.pollFirst();
+            }
+        }
+    }
+
+    // État local au dernier démarrage : instantané suivi des modifications journalisées depuis
+    public List<Localite> lireEtatLocal() {
+        return lireEtat(Long.MAX_VALUE);
+    }
+
+    // Même chose en s'arrêtant à la dernière séquence marquée appliquée : les entrées d'un lot
+    // interrompu avant sa validation sont ignorées
+    public List<Localite> lireEtatApplique() {
+        return lireEtat(sequenceAppliquee);
+    }
+
+    // Oublie les entrées non appliquées ; la prochaine compaction les retire du fichier
+    public void abandonnerEnAttente() {
+        synchronized (verrouEcriture) {
+            enAttente.clear();
+        }
+    }
+
+    private List<Localite> lireEtat(long derniereSequenceLue) {
+        Map<String, Localite> etat = new LinkedHashMap<>();
+        for (Localite localite : instantane) {
+            etat.put(cle(localite.getNom()), localite);
+        }
+        for (Entree entree : depuisInstantane) {
+            if (entree.sequence > derniereSequenceLue) {
+                break;
+            }
+            switch (entree.operation) {
+                case AJOUT -> etat.putIfAbsent(cle(entree.localite.getNom()), entree.localite);
+                case MODIFICATION -> {
+                    if (etat.remove(cle(entree.nomCible)) != null) {
+                        etat.put(cle(entree.localite.getNom()), entree.localite);
+                    }
+                }
+                case SUPPRESSION -> etat.remove(cle(entree.nomCible));
+                default -> {
+                }
+            }
+        }
+        return new ArrayList<>(etat.values());
+    }
+
+    private static String cle(String nom) {
+        return nom.toLowerCase(Locale.ROOT);
+    }
+
+    public boolean doitCompacter() {
+        synchronized (verrouEcriture) {
+            return tailleJournal > SEUIL_COMPACTION;
+        }
+    }
+
+    // Écrit l'instantané de l'état (qui reflète le journal jusqu'à sequenceEtat) puis remplace
+    // le journal par les seules modifications encore en attente
+    public void compacter(Collection<Localite> etat, long sequenceEtat) throws IOException {
+        Path temporaire = repertoire.resolve(INSTANTANE + ".tmp");
+        try (FileOutputStream fichier = new FileOutputStream(temporaire.toFile())) {
+            CheckedOutputStream verifie = new CheckedOutputStream(
+                    new BufferedOutputStream(fichier, 1 << 16), new CRC32());
+            DataOutputStream out = new DataOutputStream(verifie);
+            long appliquee;
+            synchronized (verrouEcriture) {
+                appliquee = sequenceAppliquee;
+            }
+            out.writeInt(MAGIQUE_INSTANTANE_REPARTITIONS);
+            out.writeLong(sequenceEtat);
+            out.writeLong(appliquee);
+            out.writeInt(etat.size());
+            for (Localite localite : etat) {
+                ecrireLocalite(out, localite);
+            }
+            out.writeInt((int) verifie.getChecksum().getValue());
+            out.flush();
+            fichier.getChannel().force(true);
+        }
+        Files.move(temporaire, repertoire.resolve(INSTANTANE), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+
+        Path chemin = repertoire.resolve(JOURNAL);
+        Path nouveau = repertoire.resolve(JOURNAL + ".tmp");
+        synchronized (verrouSynchro) {
+            synchronized (verrouEcriture) {
+                try (FileChannel sortie = FileChannel.open(nouveau, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    long position = sortie.write(ByteBuffer.allocate(4).putInt(MAGIQUE_JOURNAL).flip());
+                    for (Entree entree : enAttente) {
+                        position = ecrire(sortie, position, entree.sequence, entree.operation, encoder(entree));
+                    }
+                    sortie.force(true);
+                }
+                canal.close();
+                Files.move(nouveau, chemin, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                canal = FileChannel.open(chemin, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                tailleJournal = canal.size();
+                sequenceDurable = derniereSequence;
+                instantane = List.of();
+                depuisInstantane = new ArrayList<>();
+            }
+        }
+    }
+
+    // Écrit un enregistrement à la position donnée et renvoie la position qui le suit
+    private static long ecrire(FileChannel cible, long position, long sequence, Operation operation,
+                               byte[] donnees) throws IOException {
+        ByteBuffer tampon = ByteBuffer.allocate(TAILLE_ENTETE + donnees.length);
+        tampon.putInt(donnees.length)
+                .putInt(crc(sequence, (byte) operation.ordinal(), donnees))
+                .putLong(sequence)
+                .put((byte) operation.ordinal())
+                .put(donnees)
+                .flip();
+        long fin = position;
+        while (tampon.hasRemaining()) {
+            fin += cible.write(tampon, fin);
+        }
+        return fin;
+    }
+
+    private static int crc(long sequence, byte code, byte[] donnees) {
+        CRC32 crc = new CRC32();
+        ByteBuffer entete = ByteBuffer.allocate(9).putLong(sequence).put(code).flip();
+        crc.update(entete);
+        crc.update(donnees);
+        return (int) crc.getValue();
+    }
+
+    private static byte[] encoder(Entree entree) throws IOException {
+        ByteArrayOutputStream octets = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(octets);
+        if (entree.operation != Operation.AJOUT) {
+            out.writeUTF(entree.nomCible);
+        }
+        if (entree.operation != Operation.SUPPRESSION) {
+            ecrireLocalite(out, entree.localite);
+        }
+        return octets.toByteArray();
+    }
+
+    private static Entree decoder(long sequence, Operation operation, DataInputStream in) throws IOException {
+        String nomCible = operation == Operation.AJOUT ? null : in.readUTF();
+        Localite localite = operation == Operation.SUPPRESSION ? null : lireLocalite(in, FORMAT_COURANT);
+        return new Entree(sequence, operation, nomCible == null ? localite.getNom() : nomCible, localite);
+    }
+
+    private static void ecrireLocalite(DataOutputStream out, Localite localite) throws IOException {
+        out.writeUTF(localite.getNom());
+        out.writeInt(localite.getPopulation());
+        out.writeDouble(localite.getSuperficie());
+        out.writeUTF(localite.getType().name());
+        LocalDateTime date = localite.getDateEnregistrement();
+        out.writeLong(date.toEpochSecond(ZoneOffset.UTC));
+        out.writeInt(date.getNano());
+        out.writeUTF(localite.getRegion());
+        out.writeBoolean(localite.estGeolocalisee());
+        if (localite.estGeolocalisee()) {
+            out.writeDouble(localite.getLatitude());
+            out.writeDouble(localite.getLongitude());
+        }
+        // Forme compacte de Pyramide, précédée de sa longueur (0 sans répartition)
+        byte[] repartition = localite.hasRepartition() ? Pyramide.emballer(localite.getRepartition()) : new byte[0];
+        out.writeByte(repartition.length);
+        out.write(repartition);
+    }
+
+    // Les enregistrements écrits avant l'ajout des régions s'arrêtent après la date (localité
+    // rattachée à la région par défaut), ceux d'avant les coordonnées après la région, ceux
+    // d'avant les répartitions après les coordonnées
+    private static Localite lireLocalite(DataInputStream in, int format) throws IOException {
+        String nom = in.readUTF();
+        int population = in.readInt();
+        double superficie = in.readDouble();
+        TypePopulation type = TypePopulation.valueOf(in.readUTF());
+        LocalDateTime date = LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC);
+        String region = format >= 2 && in.available() > 0 ? in.readUTF() : null;
+        Double latitude = null;
+        Double longitude = null;
+        if (format >= 3 && in.available() > 0 && in.readBoolean()) {
+            latitude = in.readDouble();
+            longitude = in.readDouble();
+        }
+        byte[] repartition = new byte[format >= 4 && in.available() > 0 ? in.readUnsignedByte() : 0];
+        in.readFully(repartition);
+        try {
+            Localite localite = new Localite(nom, population, superficie, type, region, latitude, longitude, date);
+            return repartition.length == 0 ? localite : localite.avecRepartition(Pyramide.deballer(repartition));
+        } catch (LocaliteException e) {
+            throw new IOException("Localité invalide dans le journal: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (verrouSynchro) {
+            synchronized (verrouEcriture) {
+                canal.force(true);
+                canal.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package org.population.stockage;
+
+import org.population.modele.Localite;
+import org.population.recensement.Recensements;
+
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+// Stockage persistant des localités. Les erreurs sont signalées par SQLException quel que soit
+// le moteur, pour que les appelants distinguent de la même façon une coupure (SQLState 08xxx,
+// erreur passagère) d'un refus définitif. Les écritures groupées sont atomiques.
+public interface LocaliteRepository extends AutoCloseable {
+
+    List<Localite> charger() throws SQLException;
+
+    void inserer(List<Localite> localites) throws SQLException;
+
+    // Nom actuel -> nouvelle valeur ; une localité absente fait échouer tout le lot
+    void modifier(Map<String, Localite> modifications) throws SQLException;
+
+    void supprimer(Collection<String> noms) throws SQLException;
+
+    // Nombre de localités enregistrées après cette date, pour détecter les saisies d'autres postes
+    int compterChangementsDepuis(LocalDateTime depuis) throws SQLException;
+
+    // Séries de recensement ; un moteur qui ne les conserve pas renvoie un ensemble vide
+    default Recensements chargerRecensements() throws SQLException {
+        return Recensements.VIDE;
+    }
+
+    // Enregistre les noms des emplacements et les colonnes des années indiquées, atomiquement
+    default void enregistrerRecensements(Recensements recensements, Collection<Integer> anneesModifiees)
+            throws SQLException {
+        throw new SQLFeatureNotSupportedException("Recensements non pris en charge par ce stockage");
+    }
+
+    // Faux tant que le stockage est injoignable
+    default boolean isDisponible() {
+        return true;
+    }
+
+    // Rétablit l'accès au stockage s'il a été perdu ; vrai si une reconnexion a eu lieu
+    default boolean reconnecterSiNecessaire() throws SQLException {
+        return false;
+    }
+
+    @Override
+    void close();
+
+    static boolean estErreurConnexion(SQLException e) {
+        return e instanceof SQLTransientException || e instanceof SQLRecoverableException
+                || (e.getSQLState() != null && e.getSQLState().startsWith("08"));
+    }
+}
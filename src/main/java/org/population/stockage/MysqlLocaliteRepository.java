@@ -0,0 +1,695 @@
+package org.population.stockage;
+
+import org.population.modele.Localite;
+import org.population.modele.Localite.TypePopulation;
+import org.population.modele.LocaliteException;
+import org.population.modele.Pyramide;
+import org.population.recensement.Recensements;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+
+// Stockage MySQL, paramétré par resources/database.properties (db.url, db.user, db.password,
+// et facultativement db.chargement.partitions).
+// La connexion de lecture est partagée ; les écritures passent par une seconde connexion,
+// en transaction, pour ne pas toucher à l'autocommit de la première. Le chargement complet
+// découpe la table en plages d'identifiants lues en parallèle, chacune sur sa propre connexion.
+// Avec db.replica.url (db.replica.user et db.replica.password valant par défaut ceux de la base
+// principale), les lectures vont à la réplique et seules les écritures et le schéma restent sur
+// la base principale. Pour qu'un poste relise ses propres écritures, chaque transaction relève
+// l'ensemble des GTID exécutés par la base principale ; la lecture suivante attend au plus
+// db.replica.attente secondes (1 par défaut) que la réplique les ait rejoués, sinon elle se
+// fait sur la base principale.
+public class MysqlLocaliteRepository implements LocaliteRepository {
+    private static final Logger logger = Logger.getLogger(MysqlLocaliteRepository.class.getName());
+    public static final String FICHIER_PROPRIETES = "resources/database.properties";
+    private static final String SQL_INSERTION = """
+            INSERT INTO localites (nom, population, superficie, type, date_enregistrement, region,
+                                   latitude, longitude, repartition)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)
+            """;
+    private static final String SQL_MODIFICATION = """
+            UPDATE localites SET nom = ?, population = ?, superficie = ?, type = ?, region = ?,
+                                 latitude = ?, longitude = ?, repartition = ?
+            WHERE nom = ?
+            """;
+    private static final String SQL_SUPPRESSION = "DELETE FROM localites WHERE nom = ?";
+    private static final String SQL_EMPLACEMENT_RECENSEMENT = """
+            INSERT INTO recensements_localites (emplacement, nom) VALUES (?, ?)
+            ON DUPLICATE KEY UPDATE nom = VALUES(nom)
+            """;
+    private static final String SQL_COLONNE_RECENSEMENT = "REPLACE INTO recensements (annee, colonne) VALUES (?, ?)";
+    private static final String SQL_PLAGE = "SELECT * FROM localites WHERE id BETWEEN ? AND ? ORDER BY id";
+    // En dessous, une seule lecture coûte moins que l'ouverture de connexions supplémentaires
+    private static final int SEUIL_CHARGEMENT_PARALLELE = 20_000;
+    private static final int PARTITIONS_MAX = 8;
+    // Forme compacte d'une répartition par âge et sexe sur quatre octets par effectif
+    private static final int TAILLE_REPARTITION = 1 + 4 * Pyramide.TAILLE;
+    private static final String PRINCIPALE = "db.";
+    private static final String REPLIQUE = "db.replica.";
+    private static final double ATTENTE_REPLIQUE = 1.0;
+    private static final String REPERE_INCONNU = "";
+
+    private final Properties proprietes;
+    // Préfixe des propriétés du serveur de lecture : REPLIQUE, ou PRINCIPALE sans réplique
+    // (ou si la base principale n'a pas les GTID activés)
+    private volatile String lecture;
+    private final double attenteReplique;
+    private volatile Connection connexion;
+    // Connexion de lecture sur la base principale, quand la réplique est en retard
+    private volatile Connection connexionSecours;
+    // GTID exécutés par la base principale après la dernière écriture, tant que la réplique ne
+    // les a pas tous rejoués ; null si elle est à jour, REPERE_INCONNU s'il n'a pas pu être relevé
+    private final AtomicReference<String> repereEcritures = new AtomicReference<>();
+    private final Object verrouEcritures = new Object();
+    private Connection connexionEcritures;
+
+    public MysqlLocaliteRepository() throws SQLException {
+        this(FICHIER_PROPRIETES);
+    }
+
+    public MysqlLocaliteRepository(String fichierProprietes) throws SQLException {
+        this(lireProprietes(fichierProprietes));
+    }
+
+    public MysqlLocaliteRepository(Properties proprietes) throws SQLException {
+        this.proprietes = proprietes;
+        this.lecture = proprietes.getProperty(REPLIQUE + "url") == null ? PRINCIPALE : REPLIQUE;
+        try {
+            this.attenteReplique = Double.parseDouble(
+                    proprietes.getProperty(REPLIQUE + "attente", String.valueOf(ATTENTE_REPLIQUE)).trim());
+        } catch (NumberFormatException e) {
+            throw new SQLException("db.replica.attente invalide: " + proprietes.getProperty(REPLIQUE + "attente"), e);
+        }
+    }
+
+    private static Properties lireProprietes(String fichierProprietes) throws SQLException {
+        try (FileInputStream fis = new FileInputStream(fichierProprietes)) {
+            Properties proprietes = new Properties();
+            proprietes.load(fis);
+            return proprietes;
+        } catch (IOException e) {
+            logger.severe("Erreur lors du chargement des propriétés de la base de données: " + e.getMessage());
+            throw new SQLException("Impossible de se connecter à la base de données", e);
+        }
+    }
+
+    // Nouvelle connexion au serveur désigné par le préfixe ; l'utilisateur et le mot de passe
+    // de la réplique valent par défaut ceux de la base principale
+    private Connection ouvrirConnexion(String prefixe) throws SQLException {
+        return DriverManager.getConnection(
+                proprietes.getProperty(prefixe + "url"),
+                proprietes.getProperty(prefixe + "user", proprietes.getProperty(PRINCIPALE + "user")),
+                proprietes.getProperty(prefixe + "password", proprietes.getProperty(PRINCIPALE + "password"))
+        );
+    }
+
+    // Connexion de lecture pour les requêtes SQL des appelants : la réplique si elle a rejoué
+    // les écritures de ce poste, la base principale sinon
+    public Connection getConnexion() throws SQLException {
+        Connection conn = connexionLecture();
+        return repliqueAJour(conn) ? conn : connexionSecours();
+    }
+
+    // Connexion au serveur de lecture, ouverte (et la table créée) à la première utilisation
+    private Connection connexionLecture() throws SQLException {
+        Connection conn = connexion;
+        if (conn == null) {
+            synchronized (this) {
+                if (connexion == null) {
+                    connexion = PRINCIPALE.equals(lecture) ? ouvrirPrincipale() : ouvrirReplique();
+                }
+                conn = connexion;
+            }
+        }
+        return conn;
+    }
+
+    private Connection ouvrirPrincipale() throws SQLException {
+        Connection nouvelle = ouvrirConnexion(PRINCIPALE);
+        try {
+            createTable(nouvelle);
+        } catch (SQLException e) {
+            fermer(nouvelle);
+            throw e;
+        }
+        return nouvelle;
+    }
+
+    // Le schéma se crée sur la base principale, sur la connexion des écritures, et la réplique
+    // ne sert qu'une fois qu'elle l'a rejoué ; sans GTID, toutes les lectures restent sur la
+    // base principale, faute de pouvoir garantir qu'un poste y relise ses écritures
+    private Connection ouvrirReplique() throws SQLException {
+        synchronized (verrouEcritures) {
+            Connection principale = connexionEcritures();
+            createTable(principale);
+            if (!gtidActives(principale)) {
+                logger.warning("GTID désactivés sur la base principale, la réplique n'est pas utilisée");
+                lecture = PRINCIPALE;
+                return ouvrirConnexion(PRINCIPALE);
+            }
+            noterRepere(principale);
+        }
+        Connection nouvelle = ouvrirConnexion(REPLIQUE);
+        logger.info("Lectures sur la réplique " + proprietes.getProperty(REPLIQUE + "url"));
+        return nouvelle;
+    }
+
+    // Connexion de lecture sur la base principale quand la réplique est en retard
+    private Connection connexionSecours() throws SQLException {
+        Connection conn = connexionSecours;
+        if (conn == null) {
+            synchronized (this) {
+                if (connexionSecours == null) {
+                    connexionSecours = ouvrirConnexion(PRINCIPALE);
+                }
+                conn = connexionSecours;
+            }
+        }
+        return conn;
+    }
+
+    // Vrai sans réplique, ou si la réplique a rejoué les GTID relevés à la dernière écriture de
+    // ce poste ; l'attente est bornée par db.replica.attente. Le repère n'est effacé que s'il n'a
+    // pas été remplacé entre-temps par une écriture plus récente.
+    private boolean repliqueAJour(Connection conn) throws SQLException {
+        String repere = repereEcritures.get();
+        if (PRINCIPALE.equals(lecture) || repere == null) {
+            return true;
+        }
+        if (repere.isEmpty()) {
+            // Aucun GTID sur la base principale : il n'y a rien à attendre
+            if (!noterRepere(connexionSecours())) {
+                repereEcritures.compareAndSet(REPERE_INCONNU, null);
+                return true;
+            }
+            repere = repereEcritures.get();
+            if (repere == null) {
+                return true;
+            }
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT WAIT_FOR_EXECUTED_GTID_SET(?, ?)")) {
+            pstmt.setString(1, repere);
+            pstmt.setDouble(2, attenteReplique);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next() && rs.getInt(1) == 0) {
+                    repereEcritures.compareAndSet(repere, null);
+                    return true;
+                }
+            }
+        }
+        logger.fine("Réplique en retard, lecture sur la base principale");
+        return false;
+    }
+
+    private static boolean gtidActives(Connection principale) throws SQLException {
+        try (Statement stmt = principale.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT @@GLOBAL.gtid_mode")) {
+            return rs.next() && "ON".equalsIgnoreCase(rs.getString(1));
+        }
+    }
+
+    // Relève les GTID exécutés par la base principale, qui couvrent la transaction qui vient
+    // d'y être validée ; faux si elle n'en a exécuté aucun
+    private boolean noterRepere(Connection principale) throws SQLException {
+        try (Statement stmt = principale.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT @@GLOBAL.gtid_executed")) {
+            String repere = rs.next() ? rs.getString(1) : null;
+            if (repere == null || repere.isBlank()) {
+                return false;
+            }
+            repereEcritures.set(repere.replace("\n", ""));
+            return true;
+        }
+    }
+
+    @Override
+    public boolean isDisponible() {
+        return connexion != null;
+    }
+
+    @Override
+    public synchronized boolean reconnecterSiNecessaire() throws SQLException {
+        Connection conn = connexion;
+        if (conn != null && conn.isValid(2)) {
+            return false;
+        }
+        fermer(conn);
+        fermer(connexionSecours);
+        connexion = null;
+        connexionSecours = null;
+        connexionLecture();
+        logger.info("Connexion à la base de données rétablie");
+        return true;
+    }
+
+    // Création des tables des localités et des recensements si elles n'existent pas encore
+    private static void createTable(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            String sql = """
+                CREATE TABLE IF NOT EXISTS localites (
+                    id INT PRIMARY KEY AUTO_INCREMENT,
+                    nom VARCHAR(100) NOT NULL UNIQUE,
+                    population INT NOT NULL,
+                    superficie DOUBLE NOT NULL,
+                    type VARCHAR(20) NOT NULL,
+                    region VARCHAR(50) NOT NULL DEFAULT '%s',
+                    latitude DOUBLE NULL,
+                    longitude DOUBLE NULL,
+                    repartition VARBINARY(%d) NULL,
+                    date_enregistrement TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                    densite DOUBLE AS (population / superficie) STORED
+                )
+            """.formatted(Localite.REGION_PAR_DEFAUT, TAILLE_REPARTITION);
+            stmt.execute(sql);
+            // Séries de recensement : une ligne par emplacement, une colonne codée par année
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS recensements_localites (
+                    emplacement INT PRIMARY KEY,
+                    nom VARCHAR(100) NOT NULL
+                )
+            """);
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS recensements (
+                    annee SMALLINT PRIMARY KEY,
+                    colonne MEDIUMBLOB NOT NULL
+                )
+            """);
+        }
+        migrerSchema(conn);
+    }
+
+    // Mise à niveau des tables créées par les versions précédentes (colonnes densité, région,
+    // coordonnées et répartition, index de tri) ; les lignes existantes sont rattachées à la région par défaut
+    private static void migrerSchema(Connection conn) throws SQLException {
+        ajouterColonneSiAbsente(conn, "densite", "DOUBLE AS (population / superficie) STORED");
+        ajouterColonneSiAbsente(conn, "region", "VARCHAR(50) NOT NULL DEFAULT '" + Localite.REGION_PAR_DEFAUT + "'");
+        ajouterColonneSiAbsente(conn, "latitude", "DOUBLE NULL");
+        ajouterColonneSiAbsente(conn, "longitude", "DOUBLE NULL");
+        ajouterColonneSiAbsente(conn, "repartition", "VARBINARY(" + TAILLE_REPARTITION + ") NULL");
+        creerIndexSiAbsent(conn, "idx_localites_region", "region, nom");
+        creerIndexSiAbsent(conn, "idx_localites_population", "population, nom");
+        creerIndexSiAbsent(conn, "idx_localites_densite", "densite, nom");
+        creerIndexSiAbsent(conn, "idx_localites_type", "type");
+    }
+
+    private static void ajouterColonneSiAbsente(Connection conn, String colonne, String definition)
+            throws SQLException {
+        DatabaseMetaData meta = conn.getMetaData();
+        try (ResultSet rs = meta.getColumns(conn.getCatalog(), null, "localites", colonne)) {
+            if (rs.next()) {
+                return;
+            }
+        }
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("ALTER TABLE localites ADD COLUMN " + colonne + " " + definition);
+        }
+    }
+
+    private static void creerIndexSiAbsent(Connection conn, String index, String colonnes) throws SQLException {
+        DatabaseMetaData meta = conn.getMetaData();
+        try (ResultSet rs = meta.getIndexInfo(conn.getCatalog(), null, "localites", false, false)) {
+            while (rs.next()) {
+                if (index.equalsIgnoreCase(rs.getString("INDEX_NAME"))) {
+                    return;
+                }
+            }
+        }
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE INDEX " + index + " ON localites (" + colonnes + ")");
+        }
+    }
+
+    @Override
+    public List<Localite> charger() throws SQLException {
+        Connection lue = connexionLecture();
+        boolean aJour = repliqueAJour(lue);
+        Connection conn = aJour ? lue : connexionSecours();
+        String serveur = aJour ? lecture : PRINCIPALE;
+        long idMin;
+        long idMax;
+        int nombre;
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT MIN(id), MAX(id), COUNT(*) FROM localites")) {
+            rs.next();
+            idMin = rs.getLong(1);
+            idMax = rs.getLong(2);
+            nombre = rs.getInt(3);
+        }
+        if (nombre == 0) {
+            return new ArrayList<>();
+        }
+        int partitions = nombre < SEUIL_CHARGEMENT_PARALLELE ? 1 : nombrePartitions();
+        if (partitions == 1) {
+            List<Localite> chargees = new ArrayList<>(nombre);
+            lirePlage(conn, idMin, idMax, false, chargees);
+            return chargees;
+        }
+        return chargerEnParallele(serveur, idMin, idMax, nombre, partitions);
+    }
+
+    private int nombrePartitions() {
+        int defaut = Math.min(PARTITIONS_MAX, Runtime.getRuntime().availableProcessors());
+        try {
+            return Math.max(1, Integer.parseInt(
+                    proprietes.getProperty("db.chargement.partitions", String.valueOf(defaut)).trim()));
+        } catch (NumberFormatException e) {
+            logger.warning("db.chargement.partitions invalide, " + defaut + " partitions utilisées");
+            return defaut;
+        }
+    }
+
+    // Plages d'identifiants de largeur égale, lues chacune par un thread sur sa propre connexion ;
+    // les résultats sont concaténés dans l'ordre des plages, donc dans l'ordre des identifiants
+    private List<Localite> chargerEnParallele(String serveur, long idMin, long idMax, int nombre, int partitions)
+            throws SQLException {
+        long largeur = (idMax - idMin) / partitions + 1;
+        AtomicInteger compteur = new AtomicInteger();
+        ExecutorService executeur = Executors.newFixedThreadPool(partitions, r -> {
+            Thread t = new Thread(r, "chargement-localites-" + compteur.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        long debut = System.nanoTime();
+        try {
+            List<Future<List<Localite>>> plages = new ArrayList<>(partitions);
+            for (int i = 0; i < partitions; i++) {
+                long de = idMin + i * largeur;
+                long a = i == partitions - 1 ? idMax : Math.min(idMax, de + largeur - 1);
+                plages.add(executeur.submit(() -> {
+                    List<Localite> lues = new ArrayList<>(nombre / partitions + 16);
+                    try (Connection conn = ouvrirConnexion(serveur)) {
+                        lirePlage(conn, de, a, true, lues);
+                    }
+                    return lues;
+                }));
+            }
+            List<Localite> chargees = new ArrayList<>(nombre);
+            for (Future<List<Localite>> plage : plages) {
+                chargees.addAll(plage.get());
+            }
+            logger.info(chargees.size() + " localités chargées en " + partitions + " plages ("
+                    + (System.nanoTime() - debut) / 1_000_000 + " ms)");
+            return chargees;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            }
+            throw new SQLException("Erreur lors du chargement parallèle des localités", cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Chargement des localités interrompu", e);
+        } finally {
+            executeur.shutdownNow();
+        }
+    }
+
+    // En flux (Integer.MIN_VALUE), le pilote MySQL transmet les lignes une à une au lieu de
+    // mettre tout le résultat en mémoire ; la connexion est alors occupée jusqu'à la dernière
+    // ligne, d'où son usage réservé aux connexions dédiées au chargement
+    private static void lirePlage(Connection conn, long de, long a, boolean enFlux, List<Localite> lues)
+            throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(SQL_PLAGE,
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            if (enFlux) {
+                pstmt.setFetchSize(Integer.MIN_VALUE);
+            }
+            pstmt.setLong(1, de);
+            pstmt.setLong(2, a);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    try {
+                        lues.add(lireLocalite(rs));
+                    } catch (LocaliteException e) {
+                        logger.warning("Erreur lors du chargement de la localité: " + e.getMessage());
+                    }
+                }
+            }
+        }
+    }
+
+    public static Localite lireLocalite(ResultSet rs) throws SQLException, LocaliteException {
+        Localite localite = new Localite(
+                rs.getString("nom"),
+                rs.getInt("population"),
+                rs.getDouble("superficie"),
+                TypePopulation.valueOf(rs.getString("type")),
+                rs.getString("region"),
+                lireDouble(rs, "latitude"),
+                lireDouble(rs, "longitude"),
+                lireDate(rs, "date_enregistrement")
+        );
+        byte[] repartition = rs.getBytes("repartition");
+        return repartition == null ? localite : localite.avecRepartition(Pyramide.deballer(repartition));
+    }
+
+    private static LocalDateTime lireDate(ResultSet rs, String colonne) throws SQLException {
+        Timestamp valeur = rs.getTimestamp(colonne);
+        return valeur == null ? null : valeur.toLocalDateTime();
+    }
+
+    private static Double lireDouble(ResultSet rs, String colonne) throws SQLException {
+        double valeur = rs.getDouble(colonne);
+        return rs.wasNull() ? null : valeur;
+    }
+
+    @Override
+    public void inserer(List<Localite> localites) throws SQLException {
+        executerEnTransaction(conn -> {
+            try (PreparedStatement pstmt = conn.prepareStatement(SQL_INSERTION)) {
+                for (Localite localite : localites) {
+                    lierInsertion(pstmt, localite);
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+            }
+        });
+    }
+
+    public static void lierInsertion(PreparedStatement pstmt, Localite localite) throws SQLException {
+        pstmt.setString(1, localite.getNom());
+        pstmt.setInt(2, localite.getPopulation());
+        pstmt.setDouble(3, localite.getSuperficie());
+        pstmt.setString(4, localite.getType().toString());
+        pstmt.setTimestamp(5, Timestamp.valueOf(localite.getDateEnregistrement()));
+        pstmt.setString(6, localite.getRegion());
+        lierCoordonnees(pstmt, 7, localite);
+        lierRepartition(pstmt, 9, localite);
+    }
+
+    private static void lierCoordonnees(PreparedStatement pstmt, int index, Localite localite) throws SQLException {
+        if (localite.estGeolocalisee()) {
+            pstmt.setDouble(index, localite.getLatitude());
+            pstmt.setDouble(index + 1, localite.getLongitude());
+        } else {
+            pstmt.setNull(index, Types.DOUBLE);
+            pstmt.setNull(index + 1, Types.DOUBLE);
+        }
+    }
+
+    private static void lierRepartition(PreparedStatement pstmt, int index, Localite localite) throws SQLException {
+        if (localite.hasRepartition()) {
+            pstmt.setBytes(index, Pyramide.emballer(localite.getRepartition()));
+        } else {
+            pstmt.setNull(index, Types.VARBINARY);
+        }
+    }
+
+    @Override
+    public void modifier(Map<String, Localite> modifications) throws SQLException {
+        executerEnTransaction(conn -> {
+            try (PreparedStatement pstmt = conn.prepareStatement(SQL_MODIFICATION)) {
+                for (Map.Entry<String, Localite> modification : modifications.entrySet()) {
+                    Localite modifiee = modification.getValue();
+                    pstmt.setString(1, modifiee.getNom());
+                    pstmt.setInt(2, modifiee.getPopulation());
+                    pstmt.setDouble(3, modifiee.getSuperficie());
+                    pstmt.setString(4, modifiee.getType().toString());
+                    pstmt.setString(5, modifiee.getRegion());
+                    lierCoordonnees(pstmt, 6, modifiee);
+                    lierRepartition(pstmt, 8, modifiee);
+                    pstmt.setString(9, modification.getKey());
+                    pstmt.addBatch();
+                }
+                verifierLignesTouchees(pstmt.executeBatch(), modifications.keySet());
+            }
+        });
+    }
+
+    @Override
+    public void supprimer(Collection<String> noms) throws SQLException {
+        executerEnTransaction(conn -> {
+            try (PreparedStatement pstmt = conn.prepareStatement(SQL_SUPPRESSION)) {
+                for (String nom : noms) {
+                    pstmt.setString(1, nom);
+                    pstmt.addBatch();
+                }
+                verifierLignesTouchees(pstmt.executeBatch(), noms);
+            }
+        });
+    }
+
+    // Une ligne absente en base annule tout le lot
+    private static void verifierLignesTouchees(int[] resultats, Collection<String> noms) throws SQLException {
+        Iterator<String> nom = noms.iterator();
+        for (int resultat : resultats) {
+            String courant = nom.next();
+            if (resultat == 0) {
+                throw new SQLException("Localité introuvable en base: " + courant);
+            }
+        }
+    }
+
+    @Override
+    public Recensements chargerRecensements() throws SQLException {
+        Connection conn = getConnexion();
+        List<String> noms = new ArrayList<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT emplacement, nom FROM recensements_localites ORDER BY emplacement")) {
+            while (rs.next()) {
+                if (rs.getInt("emplacement") != noms.size()) {
+                    throw new SQLException("Emplacements de recensement non contigus à " + noms.size());
+                }
+                noms.add(rs.getString("nom"));
+            }
+        }
+        List<byte[]> colonnes = new ArrayList<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT colonne FROM recensements ORDER BY annee")) {
+            while (rs.next()) {
+                colonnes.add(rs.getBytes("colonne"));
+            }
+        }
+        return Recensements.charger(noms, colonnes);
+    }
+
+    // Les noms sont réécrits en entier (un renommage touche un emplacement existant), les
+    // colonnes seulement pour les années modifiées
+    @Override
+    public void enregistrerRecensements(Recensements recensements, Collection<Integer> anneesModifiees)
+            throws SQLException {
+        executerEnTransaction(conn -> {
+            try (PreparedStatement pstmt = conn.prepareStatement(SQL_EMPLACEMENT_RECENSEMENT)) {
+                List<String> noms = recensements.getNoms();
+                for (int i = 0; i < noms.size(); i++) {
+                    pstmt.setInt(1, i);
+                    pstmt.setString(2, noms.get(i));
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement(SQL_COLONNE_RECENSEMENT)) {
+                for (int annee : anneesModifiees) {
+                    pstmt.setInt(1, annee);
+                    pstmt.setBytes(2, recensements.serialiserColonne(annee));
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+            }
+        });
+    }
+
+    @Override
+    public int compterChangementsDepuis(LocalDateTime depuis) throws SQLException {
+        String sql = """
+            SELECT COUNT(*) as changes
+            FROM localites
+            WHERE date_enregistrement > ?
+            """;
+        // Sondage des saisies des autres postes : la réplique suffit, sans attendre les écritures de celui-ci
+        try (PreparedStatement pstmt = connexionLecture().prepareStatement(sql)) {
+            pstmt.setTimestamp(1, Timestamp.valueOf(depuis));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt("changes") : 0;
+            }
+        }
+    }
+
+    private interface TravailTransactionnel {
+        void executer(Connection conn) throws SQLException;
+    }
+
+    // Connexion des écritures sur la base principale, rouverte si elle a été perdue ;
+    // à appeler sous verrouEcritures
+    private Connection connexionEcritures() throws SQLException {
+        if (connexionEcritures == null || connexionEcritures.isClosed()) {
+            connexionEcritures = ouvrirConnexion(PRINCIPALE);
+        }
+        return connexionEcritures;
+    }
+
+    private void executerEnTransaction(TravailTransactionnel travail) throws SQLException {
+        synchronized (verrouEcritures) {
+            Connection conn = connexionEcritures();
+            conn.setAutoCommit(false);
+            try {
+                travail.executer(conn);
+                conn.commit();
+                if (REPLIQUE.equals(lecture)) {
+                    try {
+                        noterRepere(conn);
+                    } catch (SQLException e) {
+                        // l'écriture est validée : le repère sera relevé à la prochaine lecture
+                        repereEcritures.set(REPERE_INCONNU);
+                    }
+                }
+            } catch (SQLException e) {
+                try {
+                    conn.rollback();
+                } catch (SQLException ignore) {
+                    // connexion perdue : elle est rouverte ci-dessous
+                }
+                if (LocaliteRepository.estErreurConnexion(e)) {
+                    fermer(conn);
+                    connexionEcritures = null;
+                }
+                throw e;
+            } finally {
+                try {
+                    if (!conn.isClosed()) {
+                        conn.setAutoCommit(true);
+                    }
+                } catch (SQLException ignore) {
+                    // idem
+                }
+            }
+        }
+    }
+
+    private static void fermer(Connection conn) {
+        if (conn != null) {
+            try {
+                conn.close();
+            } catch (SQLException ignore) {
+                // connexion déjà perdue
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (verrouEcritures) {
+            fermer(connexionEcritures);
+            connexionEcritures = null;
+        }
+        fermer(connexionSecours);
+        connexionSecours = null;
+        try {
+            Connection conn = connexion;
+            if (conn != null && !conn.isClosed()) {
+                conn.close();
+            }
+        } catch (SQLException e) {
+            logger.warning("Erreur lors de la fermeture de la connexion: " + e.getMessage());
+        }
+        connexion = null;
+    }
+}
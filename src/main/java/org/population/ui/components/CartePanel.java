@@ -0,0 +1,436 @@
+package org.population.ui.components;
+
+import org.population.modele.Localite;
+import org.population.utils.Formatage;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.geom.Ellipse2D;
+import java.awt.image.BufferedImage;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+// Carte des localités géolocalisées, colorées selon la densité et dimensionnées selon la
+// population. Le rendu se fait par tuiles de 256 px (projection de Mercator) : chaque tuile
+// est dessinée une fois sur un thread de fond puis gardée dans un cache LRU, si bien que
+// déplacer ou zoomer ne fait que recopier des images. Une mise à jour ne redessine que les
+// tuiles qui contiennent une localité modifiée.
+public class CartePanel extends JPanel {
+    private static final Logger logger = Logger.getLogger(CartePanel.class.getName());
+    private static final int TAILLE_TUILE = 256;
+    private static final int ZOOM_MIN = 3;
+    private static final int ZOOM_MAX = 16;
+    private static final int CAPACITE_CACHE = 256;
+    // Rayon maximal d'un point : marge de lecture autour d'une tuile et d'invalidation
+    private static final int RAYON_MAX = 24;
+    // Côté en pixels des cellules où les localités voisines sont regroupées en un seul disque
+    private static final int TAILLE_CELLULE = 4;
+    // Au-delà de ce nombre de positions touchées, tout le cache est vidé d'un coup
+    private static final int SEUIL_INVALIDATION_TOTALE = 2_000;
+    // Échelle des couleurs, logarithmique, de 1 à 10 000 hab/km²
+    private static final double DENSITE_MAX_LOG = 4;
+    private static final Color[] DEGRADE = {
+            new Color(43, 131, 186), new Color(171, 221, 164), new Color(255, 255, 191),
+            new Color(253, 174, 97), new Color(215, 25, 28)
+    };
+
+    // Localités géolocalisées d'un rectangle (latMin, lonMin, latMax, lonMax)
+    public interface SourceZone {
+        List<Localite> lire(double latMin, double lonMin, double latMax, double lonMax);
+    }
+
+    private SourceZone source;
+    // Position du centre de la vue en pixels du monde au zoom courant
+    private int zoom = 6;
+    private double centreX;
+    private double centreY;
+    private Point dernierGlissement;
+    // Tuiles prêtes, par ordre d'usage ; n'est manipulé que sur le thread de l'interface
+    private final LinkedHashMap<Long, BufferedImage> tuiles = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, BufferedImage> plusAncienne) {
+            return size() > CAPACITE_CACHE;
+        }
+    };
+    // Tuiles en cours de rendu et leur jeton : une tuile invalidée pendant son rendu change de
+    // jeton, et le résultat devenu périmé est jeté à son arrivée
+    private final Map<Long, Object> enCours = new HashMap<>();
+    private volatile int zoomAffiche = zoom;
+    private final ExecutorService rendus;
+    // État affiché de chaque localité, pour retrouver les tuiles touchées par une mise à jour
+    private Map<String, Localite> affichees = new HashMap<>();
+    private final Object verrouAffichees = new Object();
+
+    public CartePanel() {
+        AtomicInteger numero = new AtomicInteger();
+        rendus = Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1), r -> {
+            Thread thread = new Thread(r, "carte-tuiles-" + numero.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        });
+        setupUI();
+        centrerSur(7.4, 12.4);
+    }
+
+    private void setupUI() {
+        setLayout(new BorderLayout());
+        setBackground(new Color(235, 240, 245));
+        setToolTipText("");
+
+        MouseAdapter souris = new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                dernierGlissement = e.getPoint();
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                centreX -= e.getX() - dernierGlissement.x;
+                centreY -= e.getY() - dernierGlissement.y;
+                dernierGlissement = e.getPoint();
+                repaint();
+            }
+
+            @Override
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                zoomer(e.getWheelRotation() < 0 ? 1 : -1, e.getPoint());
+            }
+        };
+        addMouseListener(souris);
+        addMouseMotionListener(souris);
+        addMouseWheelListener(souris);
+    }
+
+    public void setSource(SourceZone source) {
+        this.source = source;
+        rafraichir();
+    }
+
+    public void centrerSur(double latitude, double longitude) {
+        centreX = versX(longitude, zoom);
+        centreY = versY(latitude, zoom);
+        repaint();
+    }
+
+    // Zoom d'un niveau autour du point de la vue désigné, qui reste sous le curseur
+    private void zoomer(int sens, Point ancre) {
+        int nouveau = Math.max(ZOOM_MIN, Math.min(ZOOM_MAX, zoom + sens));
+        if (nouveau == zoom) {
+            return;
+        }
+        double facteur = Math.pow(2, nouveau - zoom);
+        double ancreX = centreX - getWidth() / 2.0 + ancre.x;
+        double ancreY = centreY - getHeight() / 2.0 + ancre.y;
+        centreX = ancreX * facteur - ancre.x + getWidth() / 2.0;
+        centreY = ancreY * facteur - ancre.y + getHeight() / 2.0;
+        zoom = nouveau;
+        zoomAffiche = nouveau;
+        repaint();
+    }
+
+    // Relit les localités, compare avec l'état affiché et invalide les seules tuiles touchées.
+    // Peut être appelée depuis n'importe quel thread ; la lecture se fait en arrière-plan.
+    public void rafraichir() {
+        SourceZone lecture = source;
+        if (lecture == null) {
+            return;
+        }
+        rendus.execute(() -> {
+            List<double[]> touchees = new ArrayList<>();
+            synchronized (verrouAffichees) {
+                Map<String, Localite> nouvelles = new HashMap<>();
+                for (Localite localite : lecture.lire(-90, -180, 90, 180)) {
+                    nouvelles.put(localite.getNom(), localite);
+                    Localite ancienne = affichees.remove(localite.getNom());
+                    if (ancienne == null || !memeRendu(ancienne, localite)) {
+                        touchees.add(new double[]{localite.getLatitude(), localite.getLongitude()});
+                        if (ancienne != null) {
+                            touchees.add(new double[]{ancienne.getLatitude(), ancienne.getLongitude()});
+                        }
+                    }
+                }
+                // Ce qui reste a disparu ou n'est plus géolocalisé
+                for (Localite retiree : affichees.values()) {
+                    touchees.add(new double[]{retiree.getLatitude(), retiree.getLongitude()});
+                }
+                affichees = nouvelles;
+            }
+            if (!touchees.isEmpty()) {
+                SwingUtilities.invokeLater(() -> invalider(touchees));
+            }
+        });
+    }
+
+    private static boolean memeRendu(Localite a, Localite b) {
+        return a == b || (a.getLatitude().equals(b.getLatitude()) && a.getLongitude().equals(b.getLongitude())
+                && a.getPopulation() == b.getPopulation() && a.getSuperficie() == b.getSuperficie());
+    }
+
+    private void invalider(List<double[]> positions) {
+        if (positions.size() > SEUIL_INVALIDATION_TOTALE) {
+            tuiles.clear();
+            enCours.replaceAll((c, jeton) -> new Object());
+            repaint();
+            return;
+        }
+        Set<Long> cles = new HashSet<>(tuiles.keySet());
+        cles.addAll(enCours.keySet());
+        for (Long cle : cles) {
+            int z = zoomDe(cle);
+            double minX = xDe(cle) * (double) TAILLE_TUILE - RAYON_MAX;
+            double minY = yDe(cle) * (double) TAILLE_TUILE - RAYON_MAX;
+            for (double[] position : positions) {
+                double x = versX(position[1], z);
+                double y = versY(position[0], z);
+                if (x >= minX && x <= minX + TAILLE_TUILE + 2 * RAYON_MAX
+                        && y >= minY && y <= minY + TAILLE_TUILE + 2 * RAYON_MAX) {
+                    tuiles.remove(cle);
+                    enCours.computeIfPresent(cle, (c, jeton) -> new Object());
+                    break;
+                }
+            }
+        }
+        repaint();
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        Graphics2D g2 = (Graphics2D) g.create();
+        g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        double origineX = centreX - getWidth() / 2.0;
+        double origineY = centreY - getHeight() / 2.0;
+        int nombre = 1 << zoom;
+        int premierX = (int) Math.floor(origineX / TAILLE_TUILE);
+        int premierY = (int) Math.floor(origineY / TAILLE_TUILE);
+        int dernierX = (int) Math.floor((origineX + getWidth()) / TAILLE_TUILE);
+        int dernierY = (int) Math.floor((origineY + getHeight()) / TAILLE_TUILE);
+        for (int ty = Math.max(0, premierY); ty <= Math.min(nombre - 1, dernierY); ty++) {
+            for (int tx = Math.max(0, premierX); tx <= Math.min(nombre - 1, dernierX); tx++) {
+                int ecranX = (int) Math.round(tx * (double) TAILLE_TUILE - origineX);
+                int ecranY = (int) Math.round(ty * (double) TAILLE_TUILE - origineY);
+                long cle = cle(zoom, tx, ty);
+                BufferedImage tuile = tuiles.get(cle);
+                if (tuile == null) {
+                    demanderRendu(cle);
+                    dessinerApercu(g2, tx, ty, ecranX, ecranY);
+                } else {
+                    g2.drawImage(tuile, ecranX, ecranY, null);
+                }
+            }
+        }
+        dessinerLegende(g2);
+        g2.dispose();
+    }
+
+    // En attendant une tuile, agrandit la partie correspondante d'une tuile d'un zoom inférieur
+    private void dessinerApercu(Graphics2D g2, int tx, int ty, int ecranX, int ecranY) {
+        for (int ecart = 1; ecart <= 3 && zoom - ecart >= 0; ecart++) {
+            BufferedImage parente = tuiles.get(cle(zoom - ecart, tx >> ecart, ty >> ecart));
+            if (parente != null) {
+                int cote = TAILLE_TUILE >> ecart;
+                int sx = (tx & ((1 << ecart) - 1)) * cote;
+                int sy = (ty & ((1 << ecart) - 1)) * cote;
+                g2.drawImage(parente, ecranX, ecranY, ecranX + TAILLE_TUILE, ecranY + TAILLE_TUILE,
+                        sx, sy, sx + cote, sy + cote, null);
+                return;
+            }
+        }
+    }
+
+    private void demanderRendu(long cle) {
+        SourceZone lecture = source;
+        if (lecture == null || enCours.containsKey(cle)) {
+            return;
+        }
+        Object jeton = new Object();
+        enCours.put(cle, jeton);
+        rendus.execute(() -> {
+            // La vue a changé de zoom depuis la demande : inutile de dessiner
+            BufferedImage image = null;
+            try {
+                if (zoomDe(cle) == zoomAffiche) {
+                    image = dessinerTuile(lecture, cle);
+                }
+            } catch (RuntimeException e) {
+                logger.warning("Rendu de la tuile impossible: " + e.getMessage());
+            }
+            BufferedImage rendue = image;
+            SwingUtilities.invokeLater(() -> {
+                if (enCours.get(cle) == jeton) {
+                    enCours.remove(cle);
+                    if (rendue != null) {
+                        tuiles.put(cle, rendue);
+                        repaint();
+                    }
+                } else if (enCours.containsKey(cle)) {
+                    // Invalidée pendant le rendu : sera redemandée au prochain affichage
+                    enCours.remove(cle);
+                    repaint();
+                }
+            });
+        });
+    }
+
+    // Exécuté hors du thread de l'interface
+    private static BufferedImage dessinerTuile(SourceZone lecture, long cle) {
+        int z = zoomDe(cle);
+        double minX = xDe(cle) * (double) TAILLE_TUILE;
+        double minY = yDe(cle) * (double) TAILLE_TUILE;
+        List<Localite> localites = new ArrayList<>(lecture.lire(
+                versLatitude(minY + TAILLE_TUILE + RAYON_MAX, z), versLongitude(minX - RAYON_MAX, z),
+                versLatitude(minY - RAYON_MAX, z), versLongitude(minX + TAILLE_TUILE + RAYON_MAX, z)));
+        BufferedImage image = new BufferedImage(TAILLE_TUILE, TAILLE_TUILE, BufferedImage.TYPE_INT_ARGB);
+        if (localites.isEmpty()) {
+            return image;
+        }
+        // Regroupement par cellule de quelques pixels, alignée sur la grille du monde pour que
+        // deux tuiles voisines regroupent les mêmes points : aux petits zooms, des dizaines de
+        // milliers de localités se réduisent à quelques milliers de disques
+        Map<Long, double[]> cellules = new HashMap<>();
+        for (Localite localite : localites) {
+            double x = versX(localite.getLongitude(), z);
+            double y = versY(localite.getLatitude(), z);
+            long cellule = ((long) Math.floor(x / TAILLE_CELLULE) << 32) | ((long) Math.floor(y / TAILLE_CELLULE) & 0xFFFFFFFFL);
+            // population, superficie, sommes des x et des y pondérés par la population, nombre
+            double[] cumul = cellules.computeIfAbsent(cellule, c -> new double[5]);
+            double poids = Math.max(1, localite.getPopulation());
+            cumul[0] += localite.getPopulation();
+            cumul[1] += localite.getSuperficie();
+            cumul[2] += x * poids;
+            cumul[3] += y * poids;
+            cumul[4]++;
+        }
+        List<double[]> disques = new ArrayList<>(cellules.values());
+        // Les plus peuplés d'abord, pour que les petits disques restent visibles par-dessus
+        disques.sort(Comparator.comparingDouble((double[] d) -> d[0]).reversed());
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.75f));
+        Ellipse2D.Double disque = new Ellipse2D.Double();
+        for (double[] cumul : disques) {
+            double poids = Math.max(1, cumul[0]);
+            double x = cumul[2] / poids - minX;
+            double y = cumul[3] / poids - minY;
+            // Une cellule qui regroupe plusieurs localités reste à l'échelle de la cellule : la
+            // couleur (densité cumulée) porte l'information, et le rendu reste proportionnel au
+            // nombre de cellules plutôt qu'à leur surface
+            double rayon = cumul[4] > 1 ? Math.min(TAILLE_CELLULE, rayon(cumul[0], z)) : rayon(cumul[0], z);
+            g.setColor(couleur(cumul[0] / cumul[1]));
+            disque.setFrame(x - rayon, y - rayon, 2 * rayon, 2 * rayon);
+            g.fill(disque);
+        }
+        g.dispose();
+        return image;
+    }
+
+    // Surface du point proportionnelle à la population, grossie avec le zoom
+    private static double rayon(double population, int z) {
+        double rayon = Math.sqrt(population) / 60 * Math.pow(2, (z - 6) / 2.0);
+        return Math.max(1.5, Math.min(RAYON_MAX, rayon));
+    }
+
+    private static Color couleur(double densite) {
+        double t = Math.max(0, Math.min(1, Math.log10(Math.max(1, densite)) / DENSITE_MAX_LOG));
+        double position = t * (DEGRADE.length - 1);
+        int i = Math.min(DEGRADE.length - 2, (int) position);
+        double f = position - i;
+        Color a = DEGRADE[i];
+        Color b = DEGRADE[i + 1];
+        return new Color((int) (a.getRed() + f * (b.getRed() - a.getRed())),
+                (int) (a.getGreen() + f * (b.getGreen() - a.getGreen())),
+                (int) (a.getBlue() + f * (b.getBlue() - a.getBlue())));
+    }
+
+    private void dessinerLegende(Graphics2D g2) {
+        int largeur = 120;
+        int x = 10;
+        int y = getHeight() - 30;
+        for (int i = 0; i < largeur; i++) {
+            g2.setColor(couleur(Math.pow(10, DENSITE_MAX_LOG * i / (largeur - 1))));
+            g2.drawLine(x + i, y, x + i, y + 8);
+        }
+        g2.setColor(Color.DARK_GRAY);
+        g2.setFont(getFont().deriveFont(10f));
+        g2.drawString("1", x, y + 20);
+        g2.drawString("10 000 hab/km²", x + largeur - 70, y + 20);
+    }
+
+    // Localité la plus proche du curseur, à la distance de son point
+    @Override
+    public String getToolTipText(MouseEvent e) {
+        SourceZone lecture = source;
+        if (lecture == null) {
+            return null;
+        }
+        double x = centreX - getWidth() / 2.0 + e.getX();
+        double y = centreY - getHeight() / 2.0 + e.getY();
+        Localite trouvee = null;
+        double meilleure = Double.MAX_VALUE;
+        for (Localite localite : lecture.lire(versLatitude(y + RAYON_MAX, zoom), versLongitude(x - RAYON_MAX, zoom),
+                versLatitude(y - RAYON_MAX, zoom), versLongitude(x + RAYON_MAX, zoom))) {
+            double dx = versX(localite.getLongitude(), zoom) - x;
+            double dy = versY(localite.getLatitude(), zoom) - y;
+            double distance = Math.hypot(dx, dy);
+            if (distance <= Math.max(4, rayon(localite.getPopulation(), zoom)) && distance < meilleure) {
+                meilleure = distance;
+                trouvee = localite;
+            }
+        }
+        if (trouvee == null) {
+            return null;
+        }
+        StringBuilder texte = new StringBuilder("<html><b>").append(trouvee.getNom()).append("</b><br>");
+        texte.append(trouvee.getPopulation()).append(" habitants<br>");
+        Formatage.DECIMAL_2.ajouter(texte, trouvee.calculerDensite()).append(" hab/km²</html>");
+        return texte.toString();
+    }
+
+    public void arreter() {
+        rendus.shutdownNow();
+    }
+
+    // Mercator sphérique : coordonnées en pixels du monde au zoom donné
+    private static double versX(double longitude, int z) {
+        return (longitude + 180) / 360 * (TAILLE_TUILE << z);
+    }
+
+    private static double versY(double latitude, int z) {
+        double sinus = Math.sin(Math.toRadians(Math.max(-85, Math.min(85, latitude))));
+        return (0.5 - Math.log((1 + sinus) / (1 - sinus)) / (4 * Math.PI)) * (TAILLE_TUILE << z);
+    }
+
+    private static double versLongitude(double x, int z) {
+        return Math.max(-180, Math.min(180, x / (TAILLE_TUILE << z) * 360 - 180));
+    }
+
+    private static double versLatitude(double y, int z) {
+        double n = Math.PI * (1 - 2 * y / (TAILLE_TUILE << z));
+        return Math.max(-90, Math.min(90, Math.toDegrees(Math.atan(Math.sinh(n)))));
+    }
+
+    // Clé d'une tuile : zoom sur 8 bits, x et y sur 28 bits chacun
+    private static long cle(int z, int x, int y) {
+        return ((long) z << 56) | ((long) x << 28) | y;
+    }
+
+    private static int zoomDe(long cle) {
+        return (int) (cle >>> 56);
+    }
+
+    private static int xDe(long cle) {
+        return (int) ((cle >>> 28) & 0xFFFFFFF);
+    }
+
+    private static int yDe(long cle) {
+        return (int) (cle & 0xFFFFFFF);
+    }
+}
@@ -0,0 +1,125 @@
+package org.population.ui.components;
+
+import org.population.modele.Localite;
+import org.population.modele.Localite.TypePopulation;
+import org.population.modele.LocaliteException;
+import org.population.ui.utils.Styles;
+
+import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+// Édition de plusieurs localités à la fois : seules les lignes modifiées sont renvoyées,
+// indexées par leur nom actuel, pour être enregistrées en un seul lot
+public class EditionLocalitesDialog extends JDialog {
+    private final List<Localite> originales;
+    private final DefaultTableModel modele;
+    private final JTable table;
+    private Map<String, Localite> modifications;
+
+    private EditionLocalitesDialog(Window parent, List<Localite> originales) {
+        super(parent, "Modifier " + (originales.size() == 1 ? "la localité" : originales.size() + " localités"),
+                ModalityType.APPLICATION_MODAL);
+        this.originales = originales;
+
+        modele = new DefaultTableModel(new String[]{"Nom", "Population", "Superficie", "Type", "Région", "Latitude", "Longitude"}, 0);
+        for (Localite localite : originales) {
+            modele.addRow(new Object[]{localite.getNom(), String.valueOf(localite.getPopulation()),
+                    String.valueOf(localite.getSuperficie()), localite.getType(), localite.getRegion(),
+                    coordonnee(localite.getLatitude()), coordonnee(localite.getLongitude())});
+        }
+        table = new JTable(modele);
+        Styles.styleTable(table);
+        table.getColumnModel().getColumn(3).setCellEditor(
+                new DefaultCellEditor(new JComboBox<>(TypePopulation.values())));
+        JComboBox<String> regions = new JComboBox<>(Localite.REGIONS.toArray(new String[0]));
+        regions.setEditable(true);
+        table.getColumnModel().getColumn(4).setCellEditor(new DefaultCellEditor(regions));
+
+        JPanel contenu = new JPanel(new BorderLayout(10, 10));
+        Styles.styleDialogPanel(contenu);
+        JScrollPane defilement = new JScrollPane(table);
+        Styles.styleTableScrollPane(defilement);
+        contenu.add(defilement, BorderLayout.CENTER);
+
+        JButton enregistrer = new JButton("Enregistrer");
+        JButton annuler = new JButton("Annuler");
+        Styles.styleDialogButton(enregistrer, true);
+        Styles.styleDialogButton(annuler, false);
+        enregistrer.addActionListener(e -> enregistrer());
+        annuler.addActionListener(e -> dispose());
+
+        JPanel boutons = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        boutons.setOpaque(false);
+        boutons.add(annuler);
+        boutons.add(enregistrer);
+        contenu.add(boutons, BorderLayout.SOUTH);
+
+        setContentPane(contenu);
+        getRootPane().setDefaultButton(enregistrer);
+        setSize(860, Math.min(500, 160 + originales.size() * Styles.Dimensions.ROW_HEIGHT));
+        setLocationRelativeTo(parent);
+    }
+
+    // null si l'utilisateur annule
+    public static Map<String, Localite> afficher(Component parent, List<Localite> localites) {
+        EditionLocalitesDialog dialogue = new EditionLocalitesDialog(
+                SwingUtilities.getWindowAncestor(parent), localites);
+        dialogue.setVisible(true);
+        return dialogue.modifications;
+    }
+
+    private void enregistrer() {
+        if (table.isEditing()) {
+            table.getCellEditor().stopCellEditing();
+        }
+        Map<String, Localite> resultat = new LinkedHashMap<>();
+        for (int ligne = 0; ligne < originales.size(); ligne++) {
+            Localite originale = originales.get(ligne);
+            try {
+                Localite modifiee = new Localite(
+                        modele.getValueAt(ligne, 0).toString().trim(),
+                        Integer.parseInt(modele.getValueAt(ligne, 1).toString().trim()),
+                        Double.parseDouble(modele.getValueAt(ligne, 2).toString().trim().replace(',', '.')),
+                        (TypePopulation) modele.getValueAt(ligne, 3),
+                        String.valueOf(modele.getValueAt(ligne, 4)),
+                        lireCoordonnee(modele.getValueAt(ligne, 5)),
+                        lireCoordonnee(modele.getValueAt(ligne, 6)),
+                        originale.getDateEnregistrement())
+                        // La répartition par âge et sexe n'est pas éditée ici : elle est conservée
+                        .avecRepartition(originale.getRepartition());
+                if (!modifiee.getNom().equals(originale.getNom())
+                        || modifiee.getPopulation() != originale.getPopulation()
+                        || modifiee.getSuperficie() != originale.getSuperficie()
+                        || modifiee.getType() != originale.getType()
+                        || !modifiee.getRegion().equals(originale.getRegion())
+                        || !Objects.equals(modifiee.getLatitude(), originale.getLatitude())
+                        || !Objects.equals(modifiee.getLongitude(), originale.getLongitude())) {
+                    resultat.put(originale.getNom(), modifiee);
+                }
+            } catch (NumberFormatException | LocaliteException e) {
+                JOptionPane.showMessageDialog(this,
+                        "Ligne " + (ligne + 1) + " (" + originale.getNom() + "): " + e.getMessage(),
+                        "Erreur",
+                        JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+        }
+        modifications = resultat;
+        dispose();
+    }
+
+    private static String coordonnee(Double valeur) {
+        return valeur == null ? "" : String.valueOf(valeur);
+    }
+
+    // Cellule vide : localité non géolocalisée
+    private static Double lireCoordonnee(Object cellule) {
+        String valeur = cellule == null ? "" : cellule.toString().trim().replace(',', '.');
+        return valeur.isEmpty() ? null : Double.parseDouble(valeur);
+    }
+}
@@ -1,4 +1,5 @@
 package org.population.ui.components;
+import org.population.modele.Localite;
 import org.population.modele.Localite.TypePopulation;
 import org.population.ui.utils.Styles;
 
@@ -7,8 +8,9 @@ import java.awt.*;
 import java.awt.event.ActionListener;
 
 public class FormPanel extends JPanel {
-    private JTextField champNom, champPopulation, champSuperficie;
+    private JTextField champNom, champPopulation, champSuperficie, champLatitude, champLongitude;
     private JComboBox<TypePopulation> comboType;
+    private JComboBox<String> comboRegion;
     private JButton btnAjouter;
 
     public FormPanel() {
@@ -33,10 +35,19 @@ public class FormPanel extends JPanel {
         champNom = new JTextField(20);
         champPopulation = new JTextField(20);
         champSuperficie = new JTextField(20);
+        // Coordonnées facultatives, en degrés décimaux
+        champLatitude = new JTextField(20);
+        champLongitude = new JTextField(20);
         comboType = new JComboBox<>(TypePopulation.values());
+        // Liste des régions proposée, une autre valeur peut être saisie
+        comboRegion = new JComboBox<>(Localite.REGIONS.toArray(new String[0]));
+        comboRegion.setEditable(true);
+        comboRegion.setSelectedItem(Localite.REGION_PAR_DEFAUT);
         Styles.styleTextField(champNom);
         Styles.styleTextField(champPopulation);
         Styles.styleTextField(champSuperficie);
+        Styles.styleTextField(champLatitude);
+        Styles.styleTextField(champLongitude);
         btnAjouter = Styles.createStyledButton("Ajouter");
 
         // Ajout des composants
@@ -44,9 +55,12 @@ public class FormPanel extends JPanel {
         addFormField(form, "Population:", champPopulation, gbc, 1);
         addFormField(form, "Superficie (km²):", champSuperficie, gbc, 2);
         addFormField(form, "Type:", comboType, gbc, 3);
+        addFormField(form, "Région:", comboRegion, gbc, 4);
+        addFormField(form, "Latitude:", champLatitude, gbc, 5);
+        addFormField(form, "Longitude:", champLongitude, gbc, 6);
 
         gbc.gridx = 0;
-        gbc.gridy = 4;
+        gbc.gridy = 7;
         gbc.gridwidth = 8;
         gbc.insets = new Insets(15, 0, 8, 0);
         form.add(btnAjouter, gbc);
@@ -73,6 +87,13 @@ public class FormPanel extends JPanel {
     public String getPopulation() { return champPopulation.getText(); }
     public String getSuperficie() { return champSuperficie.getText(); }
     public TypePopulation getType() { return (TypePopulation) comboType.getSelectedItem(); }
+    public String getRegion() {
+        Object region = comboRegion.getSelectedItem();
+        return region == null ? null : region.toString();
+    }
+
+    public String getLatitude() { return champLatitude.getText(); }
+    public String getLongitude() { return champLongitude.getText(); }
 
     public void requestNewFocus() {
         champNom.requestFocusInWindow();
@@ -82,6 +103,8 @@ public class FormPanel extends JPanel {
         champNom.setText("");
         champPopulation.setText("");
         champSuperficie.setText("");
+        champLatitude.setText("");
+        champLongitude.setText("");
         comboType.setSelectedIndex(0);
     }
 }
\ No newline at end of file
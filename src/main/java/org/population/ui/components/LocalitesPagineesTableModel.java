@@ -0,0 +1,187 @@
+package org.population.ui.components;
+
+import org.population.gestion.SourcePagesLocalites;
+import org.population.modele.Localite;
+import org.population.utils.Formatage;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.LongConsumer;
+import java.util.logging.Logger;
+
+// Modèle de table à défilement virtuel : seul le nombre total de lignes est connu,
+// les pages visibles sont chargées en arrière-plan et gardées dans un cache LRU borné
+public class LocalitesPagineesTableModel extends AbstractTableModel {
+    private static final Logger logger = Logger.getLogger(LocalitesPagineesTableModel.class.getName());
+    private static final String[] COLONNES = {"Nom", "Population", "Superficie", "Type", "Région", "Densité", "Date"};
+    private static final String CHARGEMENT = "Chargement...";
+    private static final int TAILLE_PAGE = 200;
+    private static final int PAGES_EN_CACHE = 32;
+    // Une page en échec n'est redemandée qu'après ce délai, au prochain affichage
+    private static final long ATTENTE_APRES_ECHEC_MS = 5_000;
+
+    private final ExecutorService chargeur = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "chargeur-pages-localites");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Set<Integer> pagesEnCours = new HashSet<>();
+    // Pages dont le chargement a échoué : instant de l'échec et message affiché à la place
+    private final Map<Integer, Long> echecs = new HashMap<>();
+    private final Map<Integer, String> messagesEchec = new HashMap<>();
+    private final Map<Integer, List<Localite>> pages = new LinkedHashMap<>(PAGES_EN_CACHE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, List<Localite>> eldest) {
+            return size() > PAGES_EN_CACHE;
+        }
+    };
+
+    private SourcePagesLocalites source;
+    private int nombreLignes;
+    private int generation;
+    private int dernierePage;
+
+    @Override
+    public int getRowCount() {
+        return nombreLignes;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLONNES.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLONNES[column];
+    }
+
+    @Override
+    public boolean isCellEditable(int row, int column) {
+        return false;
+    }
+
+    // Changer de source : le total est recompté en arrière-plan puis la table est notifiée
+    public void setSource(SourcePagesLocalites nouvelleSource, LongConsumer populationTotale) {
+        int gen = ++generation;
+        source = nouvelleSource;
+        pages.clear();
+        pagesEnCours.clear();
+        echecs.clear();
+        messagesEchec.clear();
+        nombreLignes = 0;
+        fireTableDataChanged();
+
+        chargeur.submit(() -> {
+            try {
+                int total = nouvelleSource.compter();
+                long somme = nouvelleSource.sommePopulation();
+                SwingUtilities.invokeLater(() -> {
+                    if (gen != generation) {
+                        return;
+                    }
+                    nombreLignes = total;
+                    fireTableDataChanged();
+                    populationTotale.accept(somme);
+                });
+            } catch (Exception e) {
+                logger.warning("Erreur lors du comptage des localités: " + e.getMessage());
+            }
+        });
+    }
+
+    @Override
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        int indexPage = rowIndex / TAILLE_PAGE;
+        List<Localite> page = pages.get(indexPage);
+        if (page == null) {
+            demanderPage(indexPage);
+            // Précharger dans le sens du défilement
+            int sens = indexPage >= dernierePage ? 1 : -1;
+            demanderPage(indexPage + sens);
+            dernierePage = indexPage;
+            if (columnIndex != 0) {
+                return "";
+            }
+            String erreur = messagesEchec.get(indexPage);
+            return erreur == null || pagesEnCours.contains(indexPage) ? CHARGEMENT : "Erreur: " + erreur;
+        }
+        dernierePage = indexPage;
+
+        int position = rowIndex % TAILLE_PAGE;
+        if (position >= page.size()) {
+            return "";
+        }
+        Localite localite = page.get(position);
+        return switch (columnIndex) {
+            case 0 -> localite.getNom();
+            case 1 -> localite.getPopulation();
+            case 2 -> Formatage.DECIMAL_2.formater(localite.getSuperficie());
+            case 3 -> localite.getType();
+            case 4 -> localite.getRegion();
+            case 5 -> Formatage.DECIMAL_2.formater(localite.calculerDensite());
+            default -> Formatage.formaterDate(localite.getDateEnregistrement());
+        };
+    }
+
+    public Localite getLocaliteAt(int rowIndex) {
+        List<Localite> page = pages.get(rowIndex / TAILLE_PAGE);
+        int position = rowIndex % TAILLE_PAGE;
+        return page == null || position >= page.size() ? null : page.get(position);
+    }
+
+    private void demanderPage(int indexPage) {
+        if (source == null || indexPage < 0 || indexPage * TAILLE_PAGE >= nombreLignes
+                || pages.containsKey(indexPage) || pagesEnCours.contains(indexPage)) {
+            return;
+        }
+        Long echec = echecs.get(indexPage);
+        if (echec != null && System.currentTimeMillis() - echec < ATTENTE_APRES_ECHEC_MS) {
+            return;
+        }
+        pagesEnCours.add(indexPage);
+        int gen = generation;
+        SourcePagesLocalites sourceCourante = source;
+
+        chargeur.submit(() -> {
+            List<Localite> page;
+            String erreur = null;
+            try {
+                page = sourceCourante.chargerPage(indexPage, TAILLE_PAGE);
+            } catch (Exception e) {
+                logger.warning("Erreur lors du chargement de la page " + indexPage + ": " + e.getMessage());
+                page = null;
+                erreur = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            }
+            List<Localite> resultat = page;
+            String message = erreur;
+            SwingUtilities.invokeLater(() -> {
+                if (gen != generation) {
+                    return;
+                }
+                pagesEnCours.remove(indexPage);
+                if (resultat == null) {
+                    echecs.put(indexPage, System.currentTimeMillis());
+                    messagesEchec.put(indexPage, message);
+                } else {
+                    echecs.remove(indexPage);
+                    messagesEchec.remove(indexPage);
+                    pages.put(indexPage, resultat);
+                }
+                int premiere = indexPage * TAILLE_PAGE;
+                int derniere = Math.min(premiere + TAILLE_PAGE, nombreLignes) - 1;
+                if (premiere <= derniere) {
+                    fireTableRowsUpdated(premiere, derniere);
+                }
+            });
+        });
+    }
+
+    // Arrête le chargeur ; le modèle ne doit plus servir ensuite
+    public void fermer() {
+        chargeur.shutdownNow();
+    }
+}
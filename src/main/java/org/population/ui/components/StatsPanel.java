@@ -1,11 +1,22 @@
 package org.population.ui.components;
 
+import org.population.analyse.Projection;
+import org.population.analyse.ScenarioCroissance;
+import org.population.analyse.StatistiquesApprochees.EstimationDensite;
+import org.population.modele.Localite;
 import org.population.modele.Localite.TypePopulation;
+import org.population.modele.Pyramide;
+import org.population.utils.Formatage;
 import org.jfree.chart.*;
+import org.jfree.chart.axis.NumberAxis;
+import org.jfree.chart.plot.PlotOrientation;
+import org.jfree.chart.renderer.category.StatisticalBarRenderer;
 import org.jfree.data.category.DefaultCategoryDataset;
 import org.jfree.data.general.DefaultPieDataset;
+import org.jfree.data.statistics.DefaultStatisticalCategoryDataset;
 import javax.swing.*;
 import java.awt.*;
+import java.text.DecimalFormat;
 import java.util.DoubleSummaryStatistics;
 import java.util.Map;
 
@@ -13,6 +24,21 @@ public class StatsPanel extends JPanel {
     private JPanel chartsPanel;
     private JFreeChart densityChart;
     private JFreeChart proportionChart;
+    private JFreeChart projectionChart;
+    private JFreeChart pyramideChart;
+    // Affiché tant que les graphiques de densité reposent sur des estimations
+    private JLabel etatStatistiques;
+    // Toutes les localités, ou un seul type (projections et pyramide)
+    private JComboBox<Object> typeProjection;
+    // Toutes les régions, ou une seule (pyramide)
+    private JComboBox<String> regionPyramide;
+    private Map<ScenarioCroissance, Projection> projections = Map.of();
+    private SourcePyramide sourcePyramide;
+
+    // Pyramide des âges d'une région et d'un type, null pour tous
+    public interface SourcePyramide {
+        Pyramide lire(String region, TypePopulation type);
+    }
 
     public StatsPanel() {
         setupUI();
@@ -25,9 +51,33 @@ public class StatsPanel extends JPanel {
                 BorderFactory.createTitledBorder("Statistiques"),
                 BorderFactory.createEmptyBorder(5, 5, 5, 5)));
 
-        chartsPanel = new JPanel(new GridLayout(2, 1, 5, 5));
+        chartsPanel = new JPanel(new GridLayout(4, 1, 5, 5));
         add(chartsPanel, BorderLayout.CENTER);
 
+        etatStatistiques = new JLabel();
+        etatStatistiques.setVisible(false);
+        add(etatStatistiques, BorderLayout.NORTH);
+
+        typeProjection = new JComboBox<>();
+        typeProjection.addItem("Toutes les localités");
+        for (TypePopulation type : TypePopulation.values()) {
+            typeProjection.addItem(type);
+        }
+        typeProjection.addActionListener(e -> {
+            updateProjections(projections);
+            rafraichirPyramide();
+        });
+        regionPyramide = new JComboBox<>();
+        regionPyramide.addItem("Toutes les régions");
+        for (String region : Localite.REGIONS) {
+            regionPyramide.addItem(region);
+        }
+        regionPyramide.addActionListener(e -> rafraichirPyramide());
+        JPanel selection = new JPanel(new GridLayout(2, 1, 0, 5));
+        selection.add(ligneSelection("Type :", typeProjection));
+        selection.add(ligneSelection("Région :", regionPyramide));
+        add(selection, BorderLayout.SOUTH);
+
         createInitialCharts();
     }
 
@@ -47,13 +97,48 @@ public class StatsPanel extends JPanel {
                 true, true, false
         );
 
+        projectionChart = creerGraphiqueProjections(new DefaultCategoryDataset());
+        pyramideChart = creerGraphiquePyramide(new DefaultCategoryDataset(), 0);
+
         updateChartsPanel();
     }
 
+    private static JPanel ligneSelection(String libelle, JComboBox<?> choix) {
+        JPanel ligne = new JPanel(new BorderLayout(5, 0));
+        JLabel etiquette = new JLabel(libelle);
+        etiquette.setPreferredSize(new Dimension(55, etiquette.getPreferredSize().height));
+        ligne.add(etiquette, BorderLayout.WEST);
+        ligne.add(choix, BorderLayout.CENTER);
+        return ligne;
+    }
+
+    // Barres horizontales empilées : hommes à gauche (valeurs négatives), femmes à droite,
+    // tranches les plus jeunes en bas ; l'axe affiche les effectifs sans signe
+    private static JFreeChart creerGraphiquePyramide(DefaultCategoryDataset dataset, long localites) {
+        JFreeChart graphique = ChartFactory.createStackedBarChart(
+                "Pyramide des âges (" + localites + " localités)", "Âge", "Habitants",
+                dataset, PlotOrientation.HORIZONTAL,
+                true, true, false
+        );
+        NumberAxis axe = (NumberAxis) graphique.getCategoryPlot().getRangeAxis();
+        axe.setNumberFormatOverride(new DecimalFormat("#,##0;#,##0"));
+        return graphique;
+    }
+
+    private static JFreeChart creerGraphiqueProjections(DefaultCategoryDataset dataset) {
+        return ChartFactory.createLineChart(
+                "Population projetée", "Horizon", "Habitants",
+                dataset, PlotOrientation.VERTICAL,
+                true, true, false
+        );
+    }
+
     private void updateChartsPanel() {
         chartsPanel.removeAll();
         chartsPanel.add(new ChartPanel(densityChart));
         chartsPanel.add(new ChartPanel(proportionChart));
+        chartsPanel.add(new ChartPanel(projectionChart));
+        chartsPanel.add(new ChartPanel(pyramideChart));
         chartsPanel.revalidate();
         chartsPanel.repaint();
     }
@@ -80,6 +165,88 @@ public class StatsPanel extends JPanel {
                 true, true, false
         );
 
+        etatStatistiques.setVisible(false);
+        rafraichirPyramide();
+    }
+
+    // Affichage immédiat à partir des estimations, en attendant updateCharts avec les valeurs
+    // exactes : densité moyenne avec sa marge à 95 % en barre d'erreur (à la place de l'écart
+    // type que trace StatisticalBarRenderer), nombres exacts, médiane dans le bandeau
+    @SuppressWarnings("unchecked")
+    public void updateChartsApproches(Map<TypePopulation, EstimationDensite> estimations) {
+        DefaultStatisticalCategoryDataset densityDataset = new DefaultStatisticalCategoryDataset();
+        @SuppressWarnings("rawtypes")
+        DefaultPieDataset proportionDataset = new DefaultPieDataset();
+        StringBuilder etat = Formatage.tampon().append("<html>Valeurs approchées, calcul exact en cours");
+
+        estimations.forEach((type, estimation) -> {
+            densityDataset.add(estimation.getMoyenne(), estimation.getMarge(), "Densité moyenne", type.toString());
+            proportionDataset.setValue(type.toString(), estimation.getNombre());
+            etat.append("<br>").append(type).append(" : ");
+            Formatage.DECIMAL_2.ajouter(etat, estimation.getMoyenne()).append(" ± ");
+            Formatage.DECIMAL_2.ajouter(etat, estimation.getMarge()).append(", médiane ≈ ");
+            Formatage.DECIMAL_2.ajouter(etat, estimation.getMediane()).append(" (± ");
+            Formatage.ENTIER_GROUPE.ajouter(etat, Math.round(estimation.getErreurQuantiles() * 100)).append(" %)");
+        });
+
+        densityChart = ChartFactory.createBarChart(
+                "Densité par type (estimation à 95 %)", "Type", "Densité moyenne (hab/km²)",
+                densityDataset
+        );
+        densityChart.getCategoryPlot().setRenderer(new StatisticalBarRenderer());
+
+        proportionChart = ChartFactory.createPieChart(
+                "Répartition des localités",
+                proportionDataset,
+                true, true, false
+        );
+
+        etatStatistiques.setText(etat.append("</html>").toString());
+        etatStatistiques.setVisible(true);
+        updateChartsPanel();
+    }
+
+    public void setSourcePyramide(SourcePyramide source) {
+        this.sourcePyramide = source;
+        rafraichirPyramide();
+    }
+
+    // La pyramide est lue à chaque rafraîchissement : elle est tenue à jour par région, la
+    // lecture ne fait qu'additionner quelques tableaux
+    private void rafraichirPyramide() {
+        if (sourcePyramide == null) {
+            updateChartsPanel();
+            return;
+        }
+        Object type = typeProjection.getSelectedItem();
+        String region = regionPyramide.getSelectedIndex() > 0 ? (String) regionPyramide.getSelectedItem() : null;
+        Pyramide pyramide = sourcePyramide.lire(region, type instanceof TypePopulation ? (TypePopulation) type : null);
+        DefaultCategoryDataset dataset = new DefaultCategoryDataset();
+        for (int tranche = Pyramide.NOMBRE_TRANCHES - 1; tranche >= 0; tranche--) {
+            String libelle = Pyramide.libelleTranche(tranche);
+            dataset.addValue(-pyramide.getHommes(tranche), "Hommes", libelle);
+            dataset.addValue(pyramide.getFemmes(tranche), "Femmes", libelle);
+        }
+        pyramideChart = creerGraphiquePyramide(dataset, pyramide.getNombreLocalites());
+        updateChartsPanel();
+    }
+
+    // Une courbe par scénario : population actuelle puis à chaque horizon, pour le type choisi
+    public void updateProjections(Map<ScenarioCroissance, Projection> projections) {
+        this.projections = projections;
+        Object choix = typeProjection.getSelectedItem();
+        TypePopulation type = choix instanceof TypePopulation ? (TypePopulation) choix : null;
+        DefaultCategoryDataset dataset = new DefaultCategoryDataset();
+        projections.forEach((scenario, projection) -> {
+            dataset.addValue(type == null ? projection.getPopulationActuelle() : projection.getPopulationActuelle(type),
+                    scenario.getNom(), "Actuelle");
+            int[] horizons = projection.getHorizons();
+            for (int h = 0; h < horizons.length; h++) {
+                dataset.addValue(type == null ? projection.getPopulation(h) : projection.getPopulation(h, type),
+                        scenario.getNom(), "+" + horizons[h] + " ans");
+            }
+        });
+        projectionChart = creerGraphiqueProjections(dataset);
         updateChartsPanel();
     }
 }
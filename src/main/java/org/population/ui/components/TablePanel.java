@@ -1,21 +1,51 @@
 package org.population.ui.components;
+import org.population.gestion.SourcePagesLocalites;
 import org.population.modele.Localite;
+import org.population.utils.Formatage;
 import org.population.ui.utils.Styles;
 
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
 import javax.swing.table.DefaultTableModel;
 import java.awt.*;
-import java.time.format.DateTimeFormatter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 import static org.population.ui.utils.Styles.Fonts.TITLE;
 
 public class TablePanel extends JPanel {
     private JTable tableLocalites;
     private DefaultTableModel tableModel;
+    private LocalitesPagineesTableModel modelePagine;
     private JTextField searchField;
     private JLabel labelPopulationTotale;
+    // Localités affichées en mode liste, dans l'ordre des lignes
+    private final List<Localite> lignes = new ArrayList<>();
+    private final JMenuItem itemModifier = new JMenuItem("Modifier...");
+    private final JMenuItem itemSupprimer = new JMenuItem("Supprimer");
+    // Autocomplétion du champ de recherche
+    private static final int NOMBRE_SUGGESTIONS = 8;
+    private final JPopupMenu popupSuggestions = new JPopupMenu();
+    private final DefaultListModel<Localite> suggestions = new DefaultListModel<>();
+    private final JList<Localite> listeSuggestions = new JList<>(suggestions);
+    private Function<String, List<Localite>> fournisseurSuggestions;
+    private boolean selectionEnCours;
+    // Filtre par tranche de densité ou de population, appliqué par le bouton "Filtrer"
+    private final JComboBox<String> comboCritereTranche = new JComboBox<>(new String[]{"Densité", "Population"});
+    private final JTextField champTrancheMin = new JTextField(6);
+    private final JTextField champTrancheMax = new JTextField(6);
+    private final JLabel labelTranche = new JLabel();
+    private final List<Runnable> ecouteursTranche = new ArrayList<>();
+    private boolean filtreTrancheActif;
+    private boolean trancheSurDensite;
+    private Double trancheMin;
+    private Double trancheMax;
 
     public TablePanel() {
         setupUI();
@@ -33,7 +63,7 @@ public class TablePanel extends JPanel {
     }
 
     private void createTable() {
-        String[] colonnes = {"Nom", "Population", "Superficie", "Type", "Densité", "Date"};
+        String[] colonnes = {"Nom", "Population", "Superficie", "Type", "Région", "Densité", "Date"};
         tableModel = new DefaultTableModel(colonnes, 0) {
             @Override
             public boolean isCellEditable(int row, int column) {
@@ -46,32 +76,119 @@ public class TablePanel extends JPanel {
 
         JScrollPane scrollPane = new JScrollPane(tableLocalites);
         add(scrollPane, BorderLayout.CENTER);
+        createPopupMenu();
+    }
+
+    // Clic droit : modifier ou supprimer les lignes sélectionnées
+    private void createPopupMenu() {
+        JPopupMenu menu = new JPopupMenu();
+        menu.add(itemModifier);
+        menu.add(itemSupprimer);
+        tableLocalites.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) { afficherMenu(e); }
+            @Override
+            public void mouseReleased(MouseEvent e) { afficherMenu(e); }
+
+            private void afficherMenu(MouseEvent e) {
+                if (!e.isPopupTrigger()) {
+                    return;
+                }
+                int ligne = tableLocalites.rowAtPoint(e.getPoint());
+                if (ligne >= 0 && !tableLocalites.isRowSelected(ligne)) {
+                    tableLocalites.setRowSelectionInterval(ligne, ligne);
+                }
+                boolean selection = !getLocalitesSelectionnees().isEmpty();
+                itemModifier.setEnabled(selection);
+                itemSupprimer.setEnabled(selection);
+                menu.show(tableLocalites, e.getX(), e.getY());
+            }
+        });
+    }
+
+    public List<Localite> getLocalitesSelectionnees() {
+        List<Localite> selection = new ArrayList<>();
+        for (int ligne : tableLocalites.getSelectedRows()) {
+            Localite localite = tableLocalites.getModel() == modelePagine
+                    ? modelePagine.getLocaliteAt(ligne)
+                    : ligne < lignes.size() ? lignes.get(ligne) : null;
+            if (localite != null) {
+                selection.add(localite);
+            }
+        }
+        return selection;
+    }
+
+    public void addModifierListener(Consumer<List<Localite>> listener) {
+        itemModifier.addActionListener(e -> listener.accept(getLocalitesSelectionnees()));
+    }
+
+    public void addSupprimerListener(Consumer<List<Localite>> listener) {
+        itemSupprimer.addActionListener(e -> listener.accept(getLocalitesSelectionnees()));
     }
 
     private void configureTable() {
         Styles.styleTable(tableLocalites);
-        int[] columnWidths = {150, 100, 100, 100, 100, 150};
+        int[] columnWidths = {150, 100, 100, 100, 110, 100, 150};
         Styles.configureTableColumns(tableLocalites, columnWidths);
+        tableLocalites.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
     }
 
     public void updateTable(List<Localite> localites) {
+        if (tableLocalites.getModel() != tableModel) {
+            tableLocalites.setModel(tableModel);
+            configureTable();
+            // Le mode liste n'a plus besoin du chargeur de pages ; il sera recréé au besoin
+            if (modelePagine != null) {
+                modelePagine.fermer();
+                modelePagine = null;
+            }
+        }
         tableModel.setRowCount(0);
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
-        int populationTotale = 0;
+        lignes.clear();
+        lignes.addAll(localites);
+        long populationTotale = 0;
 
         for (Localite localite : localites) {
             tableModel.addRow(new Object[]{
                     localite.getNom(),
                     localite.getPopulation(),
-                    String.format("%.2f", localite.getSuperficie()),
+                    Formatage.DECIMAL_2.formater(localite.getSuperficie()),
                     localite.getType(),
-                    String.format("%.2f", localite.calculerDensite()),
-                    localite.getDateEnregistrement().format(formatter)
+                    localite.getRegion(),
+                    Formatage.DECIMAL_2.formater(localite.calculerDensite()),
+                    Formatage.formaterDate(localite.getDateEnregistrement())
             });
             populationTotale += localite.getPopulation();
         }
 
-        labelPopulationTotale.setText(String.format("Population totale: %,d habitants", populationTotale));
+        afficherPopulationTotale(populationTotale);
+    }
+
+    private void afficherPopulationTotale(long populationTotale) {
+        StringBuilder sb = Formatage.tampon().append("Population totale: ");
+        labelPopulationTotale.setText(Formatage.ENTIER_GROUPE.ajouter(sb, populationTotale).append(" habitants").toString());
+    }
+
+    // Mode virtuel : les lignes sont lues page par page depuis la source au fil du défilement
+    public void afficherPagination(SourcePagesLocalites source) {
+        if (modelePagine == null) {
+            modelePagine = new LocalitesPagineesTableModel();
+        }
+        if (tableLocalites.getModel() != modelePagine) {
+            tableModel.setRowCount(0);
+            lignes.clear();
+            tableLocalites.setModel(modelePagine);
+            configureTable();
+        }
+        labelPopulationTotale.setText("Population totale: ...");
+        modelePagine.setSource(source, this::afficherPopulationTotale);
+    }
+
+    public void arreter() {
+        if (modelePagine != null) {
+            modelePagine.fermer();
+        }
     }
 
     private void createSearchPanel() {
@@ -81,7 +198,175 @@ public class TablePanel extends JPanel {
         Styles.styleTextField(searchField);
         searchPanel.add(new JLabel("Rechercher une localité:"));
         searchPanel.add(searchField);
-        add(searchPanel, BorderLayout.NORTH);
+
+        JPanel nord = new JPanel(new GridLayout(2, 1));
+        nord.add(searchPanel);
+        nord.add(createTranchePanel());
+        add(nord, BorderLayout.NORTH);
+        createSuggestions();
+    }
+
+    // Bornes facultatives : un champ vide laisse l'intervalle ouvert de ce côté
+    private JPanel createTranchePanel() {
+        JPanel tranchePanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        Styles.styleTextField(champTrancheMin);
+        Styles.styleTextField(champTrancheMax);
+        JButton filtrer = new JButton("Filtrer");
+        JButton effacer = new JButton("Effacer");
+        filtrer.addActionListener(e -> appliquerTranche());
+        effacer.addActionListener(e -> {
+            champTrancheMin.setText("");
+            champTrancheMax.setText("");
+            labelTranche.setText("");
+            filtreTrancheActif = false;
+            ecouteursTranche.forEach(Runnable::run);
+        });
+        tranchePanel.add(comboCritereTranche);
+        tranchePanel.add(new JLabel("entre"));
+        tranchePanel.add(champTrancheMin);
+        tranchePanel.add(new JLabel("et"));
+        tranchePanel.add(champTrancheMax);
+        tranchePanel.add(filtrer);
+        tranchePanel.add(effacer);
+        tranchePanel.add(labelTranche);
+        return tranchePanel;
+    }
+
+    private void appliquerTranche() {
+        try {
+            trancheMin = lireBorne(champTrancheMin);
+            trancheMax = lireBorne(champTrancheMax);
+        } catch (NumberFormatException e) {
+            JOptionPane.showMessageDialog(this, "Bornes invalides: " + e.getMessage(), "Erreur",
+                    JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        trancheSurDensite = comboCritereTranche.getSelectedIndex() == 0;
+        filtreTrancheActif = trancheMin != null || trancheMax != null;
+        if (!filtreTrancheActif) {
+            labelTranche.setText("");
+        }
+        ecouteursTranche.forEach(Runnable::run);
+    }
+
+    private static Double lireBorne(JTextField champ) {
+        String valeur = champ.getText().trim().replace(',', '.');
+        return valeur.isEmpty() ? null : Double.valueOf(valeur);
+    }
+
+    public void addFiltreTrancheListener(Runnable listener) {
+        ecouteursTranche.add(listener);
+    }
+
+    public boolean isFiltreTrancheActif() { return filtreTrancheActif; }
+    public boolean isTrancheSurDensite() { return trancheSurDensite; }
+    public Double getTrancheMin() { return trancheMin; }
+    public Double getTrancheMax() { return trancheMax; }
+
+    // Résumé de la tranche filtrée (nombre de localités, habitants...)
+    public void afficherResumeTranche(String resume) {
+        labelTranche.setText(resume);
+    }
+
+    // Liste sous le champ, qui ne prend pas le focus : la saisie continue pendant l'affichage
+    private void createSuggestions() {
+        listeSuggestions.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        listeSuggestions.setFocusable(false);
+        listeSuggestions.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                          boolean isSelected, boolean cellHasFocus) {
+                Localite localite = (Localite) value;
+                StringBuilder sb = Formatage.tampon().append(localite.getNom()).append("  (");
+                Formatage.ENTIER_GROUPE.ajouter(sb, localite.getPopulation()).append(" hab., ")
+                        .append(localite.getRegion()).append(')');
+                return super.getListCellRendererComponent(list, sb.toString(), index, isSelected, cellHasFocus);
+            }
+        });
+        listeSuggestions.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                choisirSuggestion();
+            }
+        });
+        popupSuggestions.setFocusable(false);
+        popupSuggestions.add(new JScrollPane(listeSuggestions));
+
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) { SwingUtilities.invokeLater(TablePanel.this::majSuggestions); }
+            @Override
+            public void removeUpdate(DocumentEvent e) { SwingUtilities.invokeLater(TablePanel.this::majSuggestions); }
+            @Override
+            public void changedUpdate(DocumentEvent e) { }
+        });
+        InputMap touches = searchField.getInputMap(JComponent.WHEN_FOCUSED);
+        ActionMap actions = searchField.getActionMap();
+        touches.put(KeyStroke.getKeyStroke(KeyEvent.VK_DOWN, 0), "suggestionSuivante");
+        touches.put(KeyStroke.getKeyStroke(KeyEvent.VK_UP, 0), "suggestionPrecedente");
+        touches.put(KeyStroke.getKeyStroke(KeyEvent.VK_ENTER, 0), "choisirSuggestion");
+        touches.put(KeyStroke.getKeyStroke(KeyEvent.VK_ESCAPE, 0), "masquerSuggestions");
+        actions.put("suggestionSuivante", action(() -> deplacerSelection(1)));
+        actions.put("suggestionPrecedente", action(() -> deplacerSelection(-1)));
+        actions.put("choisirSuggestion", action(this::choisirSuggestion));
+        actions.put("masquerSuggestions", action(() -> popupSuggestions.setVisible(false)));
+    }
+
+    private static Action action(Runnable traitement) {
+        return new AbstractAction() {
+            @Override
+            public void actionPerformed(java.awt.event.ActionEvent e) {
+                traitement.run();
+            }
+        };
+    }
+
+    // Fonction (préfixe -> localités) ; sans fournisseur, pas de suggestions
+    public void setFournisseurSuggestions(Function<String, List<Localite>> fournisseur) {
+        this.fournisseurSuggestions = fournisseur;
+    }
+
+    private void majSuggestions() {
+        String texte = searchField.getText().trim();
+        if (selectionEnCours || fournisseurSuggestions == null || texte.isEmpty() || !searchField.isShowing()) {
+            popupSuggestions.setVisible(false);
+            return;
+        }
+        List<Localite> trouvees = fournisseurSuggestions.apply(texte);
+        suggestions.clear();
+        trouvees.stream().limit(NOMBRE_SUGGESTIONS).forEach(suggestions::addElement);
+        if (suggestions.isEmpty()
+                || (suggestions.size() == 1 && suggestions.get(0).getNom().equalsIgnoreCase(texte))) {
+            popupSuggestions.setVisible(false);
+            return;
+        }
+        listeSuggestions.setVisibleRowCount(suggestions.size());
+        popupSuggestions.pack();
+        popupSuggestions.setPopupSize(Math.max(searchField.getWidth(), popupSuggestions.getPreferredSize().width),
+                popupSuggestions.getPreferredSize().height);
+        popupSuggestions.show(searchField, 0, searchField.getHeight());
+        searchField.requestFocusInWindow();
+    }
+
+    private void deplacerSelection(int pas) {
+        if (!popupSuggestions.isVisible() || suggestions.isEmpty()) {
+            return;
+        }
+        int index = Math.floorMod(listeSuggestions.getSelectedIndex() + pas, suggestions.size());
+        listeSuggestions.setSelectedIndex(index);
+        listeSuggestions.ensureIndexIsVisible(index);
+    }
+
+    private void choisirSuggestion() {
+        Localite choisie = listeSuggestions.getSelectedValue();
+        popupSuggestions.setVisible(false);
+        if (choisie == null) {
+            return;
+        }
+        // Les mises à jour déclenchées par setText passent avant la levée du drapeau
+        selectionEnCours = true;
+        searchField.setText(choisie.getNom());
+        SwingUtilities.invokeLater(() -> selectionEnCours = false);
     }
 
     private void createTotalPanel() {
@@ -0,0 +1,237 @@
+package org.population.utils;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.text.DecimalFormatSymbols;
+import java.time.LocalDateTime;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Formatage des nombres et des dates sans Formatter ni DecimalFormat : les formats sont
+// immuables (donc partageables entre threads), mis en cache, et ajoutent leurs caractères
+// directement dans un StringBuilder fourni par l'appelant
+public final class Formatage {
+    private static final long[] PUISSANCES_DIX = {1, 10, 100, 1_000, 10_000, 100_000, 1_000_000};
+    private static final Map<String, FormatNombre> FORMATS = new ConcurrentHashMap<>();
+    private static final ThreadLocal<StringBuilder> TAMPON = ThreadLocal.withInitial(() -> new StringBuilder(256));
+    private static final ThreadLocal<char[]> CARACTERES = ThreadLocal.withInitial(() -> new char[1024]);
+
+    // Équivalent de %.2f dans la locale par défaut
+    public static final FormatNombre DECIMAL_2 =
+            pour(Locale.getDefault(Locale.Category.FORMAT), 2, false, Arrondi.DEMI_SUPERIEUR);
+    // Équivalent de %,d dans la locale par défaut
+    public static final FormatNombre ENTIER_GROUPE =
+            pour(Locale.getDefault(Locale.Category.FORMAT), 0, true, Arrondi.DEMI_SUPERIEUR);
+    // Équivalent de DecimalFormat("#,##0.00") avec les symboles français
+    public static final FormatNombre DECIMAL_2_FRANCAIS = pour(Locale.FRANCE, 2, true, Arrondi.DEMI_PAIR);
+    // Point décimal, sans séparateur de milliers (JSON)
+    public static final FormatNombre DECIMAL_2_POINT = pour(Locale.ROOT, 2, false, Arrondi.DEMI_PAIR);
+
+    private Formatage() {
+    }
+
+    public enum Arrondi {
+        // Comme Formatter : demi supérieur sur la représentation décimale la plus courte
+        DEMI_SUPERIEUR,
+        // Comme DecimalFormat : demi au pair sur la représentation la plus courte, la valeur
+        // binaire exacte départageant une demi-unité exacte de cette représentation
+        DEMI_PAIR
+    }
+
+    public static FormatNombre pour(Locale locale, int decimales, boolean grouper, Arrondi arrondi) {
+        String cle = locale.toLanguageTag() + '|' + decimales + '|' + grouper + '|' + arrondi;
+        return FORMATS.computeIfAbsent(cle, k -> {
+            DecimalFormatSymbols symboles = DecimalFormatSymbols.getInstance(locale);
+            return new FormatNombre(decimales, symboles.getDecimalSeparator(),
+                    grouper ? symboles.getGroupingSeparator() : 0, symboles.getMinusSign(), arrondi);
+        });
+    }
+
+    public static final class FormatNombre {
+        private final int decimales;
+        private final char separateurDecimal;
+        private final char separateurMilliers;
+        private final char moins;
+        private final Arrondi arrondi;
+
+        private FormatNombre(int decimales, char separateurDecimal, char separateurMilliers, char moins,
+                             Arrondi arrondi) {
+            if (decimales < 0 || decimales >= PUISSANCES_DIX.length) {
+                throw new IllegalArgumentException("Nombre de décimales non pris en charge: " + decimales);
+            }
+            this.decimales = decimales;
+            this.separateurDecimal = separateurDecimal;
+            this.separateurMilliers = separateurMilliers;
+            this.moins = moins;
+            this.arrondi = arrondi;
+        }
+
+        public StringBuilder ajouter(StringBuilder sb, long valeur) {
+            if (valeur < 0) {
+                sb.append(moins);
+            }
+            ajouterChiffres(sb, valeur);
+            if (decimales > 0) {
+                sb.append(separateurDecimal);
+                for (int i = 0; i < decimales; i++) {
+                    sb.append('0');
+                }
+            }
+            return sb;
+        }
+
+        public StringBuilder ajouter(StringBuilder sb, double valeur) {
+            if (!Double.isFinite(valeur) || Math.abs(valeur) >= 1e15) {
+                return sb.append(Double.isNaN(valeur) ? "NaN" : Double.toString(valeur));
+            }
+            if ((Double.doubleToRawLongBits(valeur) & Long.MIN_VALUE) != 0) {
+                sb.append(moins);
+            }
+
+            long puissance = PUISSANCES_DIX[decimales];
+            double absolu = Math.abs(valeur);
+            double produit = absolu * puissance;
+            long echelle;
+            // Près d'une demi-unité, le produit en double peut trancher du mauvais côté :
+            // on revient alors au calcul décimal exact de la méthode d'arrondi choisie. Le
+            // produit est faux d'au plus quelques ulp, d'où une tolérance relative à son ulp
+            // (qui dépasse 1 vers 2^53 : tout passe alors par le calcul exact)
+            if (Math.abs(produit - Math.floor(produit) - 0.5) < Math.max(1e-6, 4 * Math.ulp(produit))) {
+                BigDecimal court = new BigDecimal(Double.toString(absolu));
+                BigDecimal exact = arrondi == Arrondi.DEMI_PAIR
+                        ? (estDemi(court, decimales) ? new BigDecimal(absolu) : court)
+                                .setScale(decimales, RoundingMode.HALF_EVEN)
+                        : court.setScale(decimales, RoundingMode.HALF_UP);
+                echelle = exact.unscaledValue().longValue();
+            } else {
+                echelle = Math.round(produit);
+            }
+
+            ajouterChiffres(sb, echelle / puissance);
+            if (decimales > 0) {
+                sb.append(separateurDecimal);
+                long fraction = echelle % puissance;
+                for (long p = puissance / 10; p > 0; p /= 10) {
+                    sb.append((char) ('0' + fraction / p));
+                    fraction %= p;
+                }
+            }
+            return sb;
+        }
+
+        // Vrai si la valeur décimale tombe exactement à une demi-unité de la dernière décimale
+        private static boolean estDemi(BigDecimal valeur, int decimales) {
+            BigDecimal reduite = valeur.stripTrailingZeros();
+            return reduite.scale() == decimales + 1
+                    && reduite.unscaledValue().mod(BigInteger.TEN).intValue() == 5;
+        }
+
+        // Pour les valeurs qui doivent être des String (cellules de table) : une seule allocation
+        public String formater(double valeur) {
+            return ajouter(tampon(), valeur).toString();
+        }
+
+        public String formater(long valeur) {
+            return ajouter(tampon(), valeur).toString();
+        }
+
+        // Chiffres de |valeur| avec séparateur de milliers éventuel
+        private void ajouterChiffres(StringBuilder sb, long valeur) {
+            int debut = sb.length();
+            long reste = valeur;
+            int n = 0;
+            do {
+                if (separateurMilliers != 0 && n > 0 && n % 3 == 0) {
+                    sb.append(separateurMilliers);
+                }
+                sb.append((char) ('0' + Math.abs(reste % 10)));
+                reste /= 10;
+                n++;
+            } while (reste != 0);
+            // Chiffres ajoutés du moins significatif au plus significatif : on les retourne
+            for (int i = debut, j = sb.length() - 1; i < j; i++, j--) {
+                char c = sb.charAt(i);
+                sb.setCharAt(i, sb.charAt(j));
+                sb.setCharAt(j, c);
+            }
+        }
+    }
+
+    // dd/MM/yyyy HH:mm
+    public static StringBuilder ajouterDate(StringBuilder sb, LocalDateTime date) {
+        deuxChiffres(sb, date.getDayOfMonth()).append('/');
+        deuxChiffres(sb, date.getMonthValue()).append('/');
+        sb.append(date.getYear()).append(' ');
+        deuxChiffres(sb, date.getHour()).append(':');
+        return deuxChiffres(sb, date.getMinute());
+    }
+
+    // yyyy-MM-ddTHH:mm:ss
+    public static StringBuilder ajouterDateIso(StringBuilder sb, LocalDateTime date) {
+        sb.append(date.getYear()).append('-');
+        deuxChiffres(sb, date.getMonthValue()).append('-');
+        deuxChiffres(sb, date.getDayOfMonth()).append('T');
+        deuxChiffres(sb, date.getHour()).append(':');
+        deuxChiffres(sb, date.getMinute()).append(':');
+        return deuxChiffres(sb, date.getSecond());
+    }
+
+    public static String formaterDate(LocalDateTime date) {
+        return ajouterDate(tampon(), date).toString();
+    }
+
+    private static StringBuilder deuxChiffres(StringBuilder sb, int valeur) {
+        return sb.append((char) ('0' + valeur / 10)).append((char) ('0' + valeur % 10));
+    }
+
+    // Complète avec des espaces ce qui a été ajouté depuis debut jusqu'à la largeur voulue (%-Ns)
+    public static StringBuilder completer(StringBuilder sb, int debut, int largeur) {
+        for (int i = sb.length() - debut; i < largeur; i++) {
+            sb.append(' ');
+        }
+        return sb;
+    }
+
+    // Texte échappé pour un contenu HTML
+    public static StringBuilder ajouterHtml(StringBuilder sb, String texte) {
+        for (int i = 0; i < texte.length(); i++) {
+            char c = texte.charAt(i);
+            switch (c) {
+                case '&' -> sb.append("&amp;");
+                case '<' -> sb.append("&lt;");
+                case '>' -> sb.append("&gt;");
+                case '"' -> sb.append("&quot;");
+                default -> sb.append(c);
+            }
+        }
+        return sb;
+    }
+
+    // StringBuilder propre au thread courant, vidé à chaque appel
+    public static StringBuilder tampon() {
+        StringBuilder sb = TAMPON.get();
+        sb.setLength(0);
+        return sb;
+    }
+
+    // Écrit le contenu sans passer par toString()
+    public static void ecrire(Writer writer, CharSequence contenu) throws IOException {
+        char[] caracteres = CARACTERES.get();
+        StringBuilder sb = contenu instanceof StringBuilder ? (StringBuilder) contenu : null;
+        for (int debut = 0; debut < contenu.length(); debut += caracteres.length) {
+            int fin = Math.min(debut + caracteres.length, contenu.length());
+            if (sb != null) {
+                sb.getChars(debut, fin, caracteres, 0);
+            } else {
+                for (int i = debut; i < fin; i++) {
+                    caracteres[i - debut] = contenu.charAt(i);
+                }
+            }
+            writer.write(caracteres, 0, fin - debut);
+        }
+    }
+}